@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.vmware.loginsightapi.Configuration;
+import com.vmware.loginsightapi.LogInsightClient;
+import com.vmware.loginsightapi.LogInsightHandler;
+import com.vmware.loginsightapi.LogInsightLogbackAppender;
+import com.vmware.loginsightapi.LogShipper;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+
+/**
+ * Cost per log call of the java.util.logging handler and the logback appender,
+ * against a file handler and a file appender flushing each event. <br>
+ *
+ * The LogInsight variants ship to a {@link StubLogInsightServer} in the same
+ * JVM. They drop the events the buffer can not hold, so the time per call
+ * stays bounded when the stub falls behind. The shipped and dropped counts are
+ * printed at the end of each trial, as a low time per call only means
+ * something along with them.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AppenderBenchmark {
+
+	private static final String PATTERN = "%d %-5level [%thread] %logger - %msg%n";
+
+	@Param({ "jul-file", "jul-loginsight", "logback-file", "logback-loginsight" })
+	public String appender;
+
+	private StubLogInsightServer server;
+	private LogInsightClient client;
+	private LogShipper shipper;
+	private File file;
+	private Handler handler;
+	private Logger julLogger;
+	private LoggerContext context;
+	private Appender<ILoggingEvent> logbackAppender;
+	private org.slf4j.Logger logbackLogger;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		if (appender.endsWith("loginsight")) {
+			StubLogInsightServer.enableLegacyTls();
+			server = new StubLogInsightServer().start();
+			Configuration config = new Configuration("localhost", "admin", "secret");
+			config.setPort(String.valueOf(server.getPort()));
+			config.setIngestionPort(String.valueOf(server.getPort()));
+			client = LogInsightClient.open(config);
+			shipper = new LogShipper(client, LogShipper.DEFAULT_BUFFER_SIZE, LogShipper.DEFAULT_BATCH_SIZE, 100,
+					LogShipper.DEFAULT_MAX_IN_FLIGHT, OverflowPolicy.DROP, 0);
+		} else {
+			file = File.createTempFile("appender-benchmark", ".log");
+		}
+		if (appender.startsWith("jul")) {
+			handler = null == shipper ? new FileHandler(file.getPath()) : new LogInsightHandler(shipper);
+			handler.setFormatter(new SimpleFormatter());
+			julLogger = Logger.getLogger("benchmark.jul." + appender);
+			julLogger.setUseParentHandlers(false);
+			julLogger.addHandler(handler);
+		} else {
+			context = new LoggerContext();
+			PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+			encoder.setContext(context);
+			encoder.setPattern(PATTERN);
+			encoder.start();
+			if (null == shipper) {
+				FileAppender<ILoggingEvent> fileAppender = new FileAppender<ILoggingEvent>();
+				fileAppender.setFile(file.getPath());
+				fileAppender.setEncoder(encoder);
+				logbackAppender = fileAppender;
+			} else {
+				LogInsightLogbackAppender loginsightAppender = new LogInsightLogbackAppender(shipper);
+				loginsightAppender.setLayout(encoder.getLayout());
+				logbackAppender = loginsightAppender;
+			}
+			logbackAppender.setContext(context);
+			logbackAppender.start();
+			ch.qos.logback.classic.Logger logger = context.getLogger("benchmark.logback");
+			logger.setAdditive(false);
+			logger.addAppender(logbackAppender);
+			logbackLogger = logger;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (null != handler) {
+			julLogger.removeHandler(handler);
+			handler.close();
+		}
+		if (null != logbackAppender) {
+			logbackAppender.stop();
+			context.stop();
+		}
+		if (null != shipper) {
+			System.out.println("Shipped: " + shipper.getShippedCount() + ", dropped: " + shipper.getDroppedCount()
+					+ ", failed: " + shipper.getFailedCount());
+			client.close();
+			server.close();
+		} else {
+			System.out.println("File size: " + file.length());
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	public void log() {
+		if (null != julLogger) {
+			julLogger.log(java.util.logging.Level.INFO, "Request {0} served in {1} ms", new Object[] { "42", 17 });
+		} else {
+			logbackLogger.info("Request {} served in {} ms", "42", 17);
+		}
+	}
+}
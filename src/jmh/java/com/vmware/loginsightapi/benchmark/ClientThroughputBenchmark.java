@@ -0,0 +1,126 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.vmware.loginsightapi.AggregateQuery;
+import com.vmware.loginsightapi.Configuration;
+import com.vmware.loginsightapi.LogInsightClient;
+import com.vmware.loginsightapi.MessageQuery;
+import com.vmware.loginsightapi.core.IngestionRequest;
+
+/**
+ * Load generator driving the real LogInsightClient, connection pool and TLS
+ * stack against a {@link StubLogInsightServer} in the same JVM. <br>
+ *
+ * The sample time modes report the p50 and p99 latency of each request. The
+ * {@code ingestMessages} benchmark reports messages per second, and with the
+ * gc profiler the bytes allocated per message, which include the allocations
+ * of the stub. Failed requests, injected by the error rate, are counted and
+ * printed at the end of each trial instead of failing the run.
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClientThroughputBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	private static final long TIMEOUT = 30;
+
+	@Param({ "0", "10" })
+	public long latency;
+
+	@Param({ "0" })
+	public double errorRate;
+
+	@Param({ "100" })
+	public int events;
+
+	private StubLogInsightServer server;
+	private LogInsightClient client;
+	private IngestionRequest batch;
+	private String messageQueryUrl;
+	private String aggregateQueryUrl;
+	private final AtomicLong failures = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		StubLogInsightServer.enableLegacyTls();
+		server = new StubLogInsightServer().latency(latency).errorRate(errorRate).events(events).bins(events)
+				.start();
+		Configuration config = new Configuration("localhost", "admin", "secret");
+		config.setPort(String.valueOf(server.getPort()));
+		config.setIngestionPort(String.valueOf(server.getPort()));
+		client = LogInsightClient.open(config);
+		client.whenConnected().get(TIMEOUT, TimeUnit.SECONDS);
+		batch = Payloads.ingestionRequest(BATCH_SIZE);
+		messageQueryUrl = new MessageQuery().limit(events).toUrlString();
+		aggregateQueryUrl = new AggregateQuery().binWidth(5000).toUrlString();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		System.out.println("Requests: " + server.getRequestCount() + ", failed: " + failures.getAndSet(0)
+				+ ", messages ingested: " + server.getIngestedCount());
+		client.close();
+		server.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	public Object ingest() throws InterruptedException {
+		return await(client.ingest(batch));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OperationsPerInvocation(BATCH_SIZE)
+	public Object ingestMessages() throws InterruptedException {
+		return await(client.ingest(batch));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	public Object messageQuery() throws InterruptedException {
+		return await(client.messageQuery(messageQueryUrl));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	public Object aggregateQuery() throws InterruptedException {
+		return await(client.aggregateQuery(aggregateQueryUrl));
+	}
+
+	private Object await(CompletableFuture<?> future) throws InterruptedException {
+		try {
+			return future.get(TIMEOUT, TimeUnit.SECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			failures.incrementAndGet();
+			return e;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.util.IngestionRequestEntity;
+
+/**
+ * Serializes an ingestion request uncompressed (level 0) and gzip compressed
+ * at several levels. The score divided by the number of messages is the CPU
+ * time per message. The size of the request body is printed at the start of
+ * each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+	@Param({ "100", "1000" })
+	public int messages;
+
+	@Param({ "0", "1", "6" })
+	public int level;
+
+	private IngestionRequestEntity entity;
+
+	@Setup
+	public void setUp() throws IOException {
+		IngestionRequest request = Payloads.ingestionRequest(messages);
+		entity = new IngestionRequestEntity(request, IngestionRequestEntity.DEFAULT_CHUNK_SIZE, level);
+		long bytes = writeEntity();
+		System.out.println("Request body: " + bytes + " bytes, " + (bytes / messages) + " bytes per message");
+	}
+
+	@Benchmark
+	public long writeEntity() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		entity.writeTo(out);
+		return out.count;
+	}
+
+	/**
+	 * Discards the written bytes, counting them
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
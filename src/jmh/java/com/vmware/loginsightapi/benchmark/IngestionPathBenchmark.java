@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageBuffer;
+import com.vmware.loginsightapi.core.MessageSlot;
+import com.vmware.loginsightapi.util.IngestionRequestEntity;
+
+/**
+ * Cost per message of batching and serializing log lines, with a Message,
+ * field list and fields per line against a recycled {@link MessageSlot} and
+ * {@link MessageBuffer}. The texts are built in setup, as a logging framework
+ * formats them in any case. With the gc profiler, the normalized allocation
+ * rate shows the bytes allocated per message; the buffer path only allocates
+ * the entity and the json generator of each batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestionPathBenchmark {
+
+	private static final int BATCH_SIZE = 500;
+	private static final long BASE_TIMESTAMP = 1432135888000L;
+	private static final OutputStream DISCARD = new OutputStream() {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	private final String[] texts = new String[BATCH_SIZE];
+	private final String[] hosts = new String[BATCH_SIZE];
+	private final MessageSlot slot = new MessageSlot();
+	private final MessageBuffer buffer = new MessageBuffer(BATCH_SIZE);
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			texts[i] = "log line " + i + " service request completed with status 200";
+			hosts[i] = "host-" + (i % 16);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void messages() throws IOException {
+		List<Message> messages = new ArrayList<Message>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			Message message = new Message(texts[i], BASE_TIMESTAMP + i);
+			message.addField("hostname", hosts[i]);
+			message.addField("appname", "service");
+			message.addField("status", "200");
+			messages.add(message);
+		}
+		new IngestionRequestEntity(new IngestionRequest(messages)).writeTo(DISCARD);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void pooledBuffer() throws IOException {
+		buffer.clear();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			slot.clear();
+			slot.setText(texts[i]);
+			slot.setTimestamp(BASE_TIMESTAMP + i);
+			slot.addField("hostname", hosts[i]);
+			slot.addField("appname", "service");
+			slot.addField("status", "200");
+			buffer.add(slot);
+		}
+		new IngestionRequestEntity(new IngestionRequest(buffer)).writeTo(DISCARD);
+	}
+}
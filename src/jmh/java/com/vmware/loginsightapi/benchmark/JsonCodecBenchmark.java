@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.loginsightapi.core.AuthInfo;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.JsonCodec;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+/**
+ * Compares a fresh ObjectMapper per call (the former behaviour) with the
+ * shared readers and writers of {@link JsonCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonCodecBenchmark {
+
+	private static final String AUTH_RESPONSE = "{\"userId\":\"7506ecf5-cd7a-4ae3-88b7-f72fc1955c73\","
+			+ "\"sessionId\":\"qyOLWEe7f/GjdM1WnczrCeQure97B/NpTbWTeqqYPBd1AYMf9cMNfQYqltITI4ffPMx822Sz9i\",\"ttl\":1800}";
+
+	@Param({ "1", "100" })
+	public int events;
+
+	private String messageQueryResponse;
+	private IngestionRequest ingestionRequest;
+
+	@Setup
+	public void setUp() {
+		messageQueryResponse = Payloads.messageQueryResponse(events);
+		ingestionRequest = Payloads.ingestionRequest(events);
+	}
+
+	@Benchmark
+	public AuthInfo authInfoNewMapper() throws IOException {
+		return new ObjectMapper().readValue(AUTH_RESPONSE, AuthInfo.class);
+	}
+
+	@Benchmark
+	public AuthInfo authInfoSharedReader() throws IOException {
+		return JsonCodec.reader(AuthInfo.class).readValue(AUTH_RESPONSE);
+	}
+
+	@Benchmark
+	public MessageQueryResponse messageQueryResponseNewMapper() throws IOException {
+		return new ObjectMapper().readValue(messageQueryResponse, MessageQueryResponse.class);
+	}
+
+	@Benchmark
+	public MessageQueryResponse messageQueryResponseSharedReader() throws IOException {
+		return JsonCodec.reader(MessageQueryResponse.class).readValue(messageQueryResponse);
+	}
+
+	@Benchmark
+	public String ingestionRequestNewMapper() throws IOException {
+		return new ObjectMapper().writeValueAsString(ingestionRequest);
+	}
+
+	@Benchmark
+	public String ingestionRequestSharedWriter() throws IOException {
+		return JsonCodec.writer(IngestionRequest.class).writeValueAsString(ingestionRequest);
+	}
+}
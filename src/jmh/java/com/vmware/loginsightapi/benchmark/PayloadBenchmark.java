@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vmware.loginsightapi.core.AggregateColumns;
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+/**
+ * Serializes ingestion requests and parses query responses through the public
+ * entry points, at several payload sizes. The size is the number of messages
+ * of the request, events of the message query response and bins of the
+ * aggregate response. With the gc profiler enabled in the build, the
+ * normalized allocation rate is reported per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadBenchmark {
+
+	@Param({ "1", "100", "10000" })
+	public int size;
+
+	private IngestionRequest ingestionRequest;
+	private String messageQueryResponse;
+	private String aggregateQueryResponse;
+
+	@Setup
+	public void setUp() {
+		ingestionRequest = Payloads.ingestionRequest(size);
+		messageQueryResponse = Payloads.messageQueryResponse(size);
+		aggregateQueryResponse = Payloads.aggregateQueryResponse(size);
+	}
+
+	@Benchmark
+	public String ingestionRequestToJson() {
+		return ingestionRequest.toJson();
+	}
+
+	@Benchmark
+	public MessageQueryResponse messageQueryResponseFromJson() {
+		return MessageQueryResponse.fromJsonString(messageQueryResponse);
+	}
+
+	@Benchmark
+	public AggregateResponse aggregateResponseFromJson() {
+		return AggregateResponse.fromJsonString(aggregateQueryResponse);
+	}
+
+	@Benchmark
+	public AggregateColumns aggregateColumnsFromJson() {
+		return AggregateColumns.fromJsonString(aggregateQueryResponse);
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import com.vmware.loginsightapi.IngestionRequestBuilder;
+import com.vmware.loginsightapi.MessageBuilder;
+import com.vmware.loginsightapi.core.IngestionRequest;
+
+/**
+ * Builds synthetic request and response payloads for the benchmarks.
+ */
+final class Payloads {
+
+	private static final long BASE_TIMESTAMP = 1432135888000L;
+
+	private Payloads() {
+	}
+
+	/**
+	 * Builds a message query response json with the given number of events
+	 */
+	static String messageQueryResponse(int events) {
+		StringBuilder sb = new StringBuilder("{\"complete\":true,\"duration\":57,\"events\":[");
+		for (int i = 0; i < events; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"text\":\"log line ").append(i).append(" service request completed with status 200\",")
+					.append("\"timestamp\":").append(BASE_TIMESTAMP + i).append(",\"fields\":[")
+					.append("{\"name\":\"hostname\",\"content\":\"host-").append(i % 16).append("\"},")
+					.append("{\"name\":\"appname\",\"content\":\"service\"},")
+					.append("{\"name\":\"status\",\"content\":\"200\"}]}");
+		}
+		return sb.append("]}").toString();
+	}
+
+	/**
+	 * Builds an aggregate query response json with the given number of bins
+	 */
+	static String aggregateQueryResponse(int bins) {
+		StringBuilder sb = new StringBuilder("{\"complete\":true,\"duration\":52,\"bins\":[");
+		for (int i = 0; i < bins; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			long minTimestamp = BASE_TIMESTAMP + i * 5000L;
+			sb.append("{\"minTimestamp\":").append(minTimestamp).append(",\"maxTimestamp\":")
+					.append(minTimestamp + 4999).append(",\"value\":").append(200000 + i % 1000).append('}');
+		}
+		return sb.append("]}").toString();
+	}
+
+	/**
+	 * Builds an ingestion request with the given number of messages
+	 */
+	static IngestionRequest ingestionRequest(int messages) {
+		IngestionRequestBuilder builder = new IngestionRequestBuilder();
+		for (int i = 0; i < messages; i++) {
+			builder.message(new MessageBuilder("log line " + i + " service request completed with status 200")
+					.field("hostname", "host-" + (i % 16)).field("appname", "service").field("status", "200")
+					.timestamp(BASE_TIMESTAMP + i).build());
+		}
+		return builder.build();
+	}
+}
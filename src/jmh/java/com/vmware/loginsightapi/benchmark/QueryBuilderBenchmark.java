@@ -0,0 +1,61 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vmware.loginsightapi.AggregateQuery;
+import com.vmware.loginsightapi.core.FieldConstraint;
+import com.vmware.loginsightapi.core.OrderBy;
+
+/**
+ * Builds the url of an aggregate query with a growing number of constraints,
+ * and encodes a single constraint expression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryBuilderBenchmark {
+
+	@Param({ "1", "10" })
+	public int constraints;
+
+	private AggregateQuery query;
+	private FieldConstraint constraint;
+
+	@Setup
+	public void setUp() {
+		query = new AggregateQuery().binWidth(5000).sum("size");
+		for (int i = 0; i < constraints; i++) {
+			query.addConstraint("field_" + i, FieldConstraint.Operator.CONTAINS, "value with spaces/" + i);
+		}
+		query.orderBy(OrderBy.OrderByFunction.SUM, "size", OrderBy.Direction.DESC);
+		constraint = new FieldConstraint("hostname", FieldConstraint.Operator.MATCHES_REGEX, "host-[0-9]+/.*");
+	}
+
+	@Benchmark
+	public String aggregateQueryToUrlString() {
+		return query.toUrlString();
+	}
+
+	@Benchmark
+	public String fieldConstraintToExpressionEncoded() throws UnsupportedEncodingException {
+		return constraint.toExpressionEncoded();
+	}
+}
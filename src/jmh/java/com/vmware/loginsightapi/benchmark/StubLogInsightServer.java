@@ -0,0 +1,315 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Security;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import com.vmware.loginsightapi.LogInsightClient;
+
+/**
+ * In-process stub of the LogInsight REST API, for end-to-end benchmarks of
+ * the client. <br>
+ *
+ * Serves the session, version, message query, aggregate query and ingestion
+ * APIs over https with a self-signed certificate generated by keytool at
+ * start. Query responses are rendered once at start, so the stub allocates
+ * little per request. Each request is delayed by the configured latency, and
+ * fails with status 503 at the configured error rate. Queries with a missing
+ * or unknown session id are answered with status 440.
+ */
+public class StubLogInsightServer implements AutoCloseable {
+
+	private static final String KEYSTORE_PASSWORD = "changeit";
+	private static final String SESSION_EXPIRED = "{\"errorMessage\":\"session expired\"}";
+	private static final String FAILURE = "{\"errorMessage\":\"stub failure\"}";
+	private static final byte[] TEXT_FIELD = "\"text\":".getBytes(StandardCharsets.UTF_8);
+
+	private final String sessionId = UUID.randomUUID().toString();
+	private long latency;
+	private double errorRate;
+	private int events = 100;
+	private int bins = 100;
+
+	private HttpsServer server;
+	private ExecutorService executor;
+	private byte[] messageQueryResponse;
+	private byte[] aggregateQueryResponse;
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong ingestedCount = new AtomicLong();
+
+	/**
+	 * Sets the delay of each response
+	 *
+	 * @param latency
+	 *            delay in milliseconds
+	 * @return StubLogInsightServer instance (this)
+	 */
+	public StubLogInsightServer latency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * Sets the fraction of the query and ingestion requests failing with
+	 * status 503
+	 *
+	 * @param errorRate
+	 *            between 0 and 1
+	 * @return StubLogInsightServer instance (this)
+	 */
+	public StubLogInsightServer errorRate(double errorRate) {
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/**
+	 * Sets the number of events of each message query response
+	 *
+	 * @param events
+	 *            number of events
+	 * @return StubLogInsightServer instance (this)
+	 */
+	public StubLogInsightServer events(int events) {
+		this.events = events;
+		return this;
+	}
+
+	/**
+	 * Sets the number of bins of each aggregate query response
+	 *
+	 * @param bins
+	 *            number of bins
+	 * @return StubLogInsightServer instance (this)
+	 */
+	public StubLogInsightServer bins(int bins) {
+		this.bins = bins;
+		return this;
+	}
+
+	/**
+	 * Starts the server on an ephemeral port of the loopback interface
+	 *
+	 * @return StubLogInsightServer instance (this)
+	 * @throws IOException
+	 *             when the server or the certificate can not be set up
+	 */
+	public StubLogInsightServer start() throws IOException {
+		messageQueryResponse = Payloads.messageQueryResponse(events).getBytes(StandardCharsets.UTF_8);
+		aggregateQueryResponse = Payloads.aggregateQueryResponse(bins).getBytes(StandardCharsets.UTF_8);
+		server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setHttpsConfigurator(new HttpsConfigurator(buildSSLContext()));
+		server.createContext("/api/v1/", this::handle);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Port the server listens on, for both queries and ingestion
+	 *
+	 * @return port number
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Number of requests received
+	 *
+	 * @return request count
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Number of requests failed on purpose
+	 *
+	 * @return error count
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * Number of messages ingested
+	 *
+	 * @return ingested count
+	 */
+	public long getIngestedCount() {
+		return ingestedCount.get();
+	}
+
+	@Override
+	public void close() {
+		if (null != server) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Re-enables TLSv1, used by the client, on JDKs that disable it by
+	 * default. Should be called before the first SSLContext is built.
+	 */
+	public static void enableLegacyTls() {
+		String disabled = Security.getProperty("jdk.tls.disabledAlgorithms");
+		if (null != disabled) {
+			Security.setProperty("jdk.tls.disabledAlgorithms",
+					disabled.replaceAll("(^|,)\\s*TLSv1(\\.1)?\\s*(?=,|$)", ""));
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		try {
+			String path = exchange.getRequestURI().getRawPath();
+			if (path.startsWith(LogInsightClient.API_URL_SESSION_PATH)) {
+				respond(exchange, 200, ("{\"userId\":\"stub\",\"sessionId\":\"" + sessionId + "\",\"ttl\":1800}")
+						.getBytes(StandardCharsets.UTF_8));
+			} else if (path.startsWith(LogInsightClient.API_URL_VERSION_PATH)) {
+				respond(exchange, 200, "{\"version\":\"3.3.0-stub\"}".getBytes(StandardCharsets.UTF_8));
+			} else if (path.startsWith(LogInsightClient.API_URL_INGESTION)) {
+				long ingested = countMessages(exchange);
+				if (!delay(exchange)) {
+					return;
+				}
+				ingestedCount.addAndGet(ingested);
+				respond(exchange, 200, ("{\"status\":\"ok\",\"message\":\"messages ingested\",\"ingested\":" + ingested
+						+ "}").getBytes(StandardCharsets.UTF_8));
+			} else if (path.startsWith("/api/v1/events/") || path.startsWith("/api/v1/aggregated-events/")) {
+				if (!sessionId.equals(exchange.getRequestHeaders().getFirst(LogInsightClient.SESSION_HEADER))) {
+					respond(exchange, 440, SESSION_EXPIRED.getBytes(StandardCharsets.UTF_8));
+				} else if (delay(exchange)) {
+					respond(exchange, 200,
+							path.startsWith("/api/v1/events/") ? messageQueryResponse : aggregateQueryResponse);
+				}
+			} else {
+				respond(exchange, 404, "{\"errorMessage\":\"not found\"}".getBytes(StandardCharsets.UTF_8));
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Waits for the latency, then fails the request at the error rate
+	 *
+	 * @return false if the request failed
+	 */
+	private boolean delay(HttpExchange exchange) throws IOException {
+		if (latency > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			errorCount.incrementAndGet();
+			respond(exchange, 503, FAILURE.getBytes(StandardCharsets.UTF_8));
+			return false;
+		}
+		return true;
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Counts the messages of an ingestion request without parsing it
+	 */
+	private static long countMessages(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			in = new GZIPInputStream(in);
+		}
+		long count = 0;
+		int matched = 0;
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == TEXT_FIELD[matched]) {
+					if (++matched == TEXT_FIELD.length) {
+						count++;
+						matched = 0;
+					}
+				} else {
+					matched = buffer[i] == TEXT_FIELD[0] ? 1 : 0;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static SSLContext buildSSLContext() throws IOException {
+		File keyStoreFile = File.createTempFile("loginsight-stub", ".p12");
+		keyStoreFile.delete();
+		try {
+			String keytool = new File(new File(System.getProperty("java.home"), "bin"), "keytool").getPath();
+			Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "stub", "-keyalg", "RSA",
+					"-keysize", "2048", "-validity", "1", "-dname", "CN=localhost", "-storetype", "PKCS12",
+					"-keystore", keyStoreFile.getPath(), "-storepass", KEYSTORE_PASSWORD, "-keypass",
+					KEYSTORE_PASSWORD).redirectErrorStream(true).start();
+			process.getInputStream().close();
+			if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+				throw new IOException("Unable to generate the stub certificate with " + keytool);
+			}
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try (InputStream in = new FileInputStream(keyStoreFile)) {
+				keyStore.load(in, KEYSTORE_PASSWORD.toCharArray());
+			}
+			KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagers.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(keyManagers.getKeyManagers(), null, null);
+			return context;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to build the stub SSL context", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while generating the stub certificate", e);
+		} finally {
+			Files.deleteIfExists(keyStoreFile.toPath());
+		}
+	}
+}
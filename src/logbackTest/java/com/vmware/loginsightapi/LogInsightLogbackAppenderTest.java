@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.Field;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class LogInsightLogbackAppenderTest {
+
+	private List<Message> received;
+	private LoggerContext context;
+	private LogInsightLogbackAppender appender;
+
+	@Before
+	public void setUp() {
+		received = Collections.synchronizedList(new ArrayList<Message>());
+		LogInsightClient client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			received.addAll(request.getMessages());
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus("ok");
+			response.setIngested(request.count());
+			return CompletableFuture.completedFuture(response);
+		});
+		LogShipper shipper = new LogShipper(client, 16, 10, 60000, 1, OverflowPolicy.DROP, 0);
+		context = new LoggerContext();
+		appender = new LogInsightLogbackAppender(shipper);
+		appender.setContext(context);
+		appender.start();
+	}
+
+	private LoggingEvent event(String loggerName, String text, Throwable thrown) {
+		LoggingEvent event = new LoggingEvent(loggerName, context.getLogger(loggerName), Level.WARN, text, thrown,
+				null);
+		event.setThreadName("main");
+		event.setTimeStamp(1432135888000L);
+		Map<String, String> mdc = new HashMap<String, String>();
+		mdc.put("request_id", "42");
+		event.setMDCPropertyMap(mdc);
+		return event;
+	}
+
+	private static String field(Message message, String name) {
+		for (Field field : message.getFields()) {
+			if (name.equals(field.getName())) {
+				return field.getContent();
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testEventShipped() {
+		appender.doAppend(event("com.example.Service", "System failed", null));
+		appender.stop();
+		assertEquals(1, received.size());
+		Message message = received.get(0);
+		assertEquals("System failed", message.getText());
+		assertEquals(1432135888000L, message.getTimestamp().longValue());
+		assertEquals("com.example.Service", field(message, "logger"));
+		assertEquals("WARN", field(message, "level"));
+		assertEquals("main", field(message, "thread"));
+		assertEquals("42", field(message, "request_id"));
+	}
+
+	@Test
+	public void testStackTraceAppended() {
+		appender.doAppend(event("com.example.Service", "System failed", new IllegalStateException("broken")));
+		appender.stop();
+		String text = received.get(0).getText();
+		assertTrue(text.startsWith("System failed"));
+		assertTrue(text.contains("java.lang.IllegalStateException: broken"));
+	}
+
+	@Test
+	public void testInternalEventsIgnored() {
+		appender.doAppend(event("com.vmware.loginsightapi.LogInsightClient", "Sending", null));
+		appender.stop();
+		assertEquals(0, received.size());
+	}
+
+	@Test
+	public void testInvalidConfigurationNotStarted() {
+		LogInsightLogbackAppender unconfigured = new LogInsightLogbackAppender();
+		unconfigured.setContext(context);
+		unconfigured.setHost("localhost");
+		unconfigured.setOverflowPolicy("sometimes");
+		unconfigured.start();
+		assertFalse(unconfigured.isStarted());
+		unconfigured.stop();
+	}
+}
@@ -365,6 +365,51 @@ public class AggregateQuery extends AbstractQuery<AggregateQuery> {
 		return this;
 	}
 
+	/**
+	 * Getter for the bin width
+	 *
+	 * @return bin width in milliseconds
+	 */
+	public int getBinWidth() {
+		return this.binWidth;
+	}
+
+	/**
+	 * Getter for the aggregation function
+	 *
+	 * @return aggregation function
+	 */
+	public AggregationFunction getAggregationFunction() {
+		return this.aggregationFunction;
+	}
+
+	/**
+	 * Getter for the aggregation field
+	 *
+	 * @return aggregation field, null for COUNT and SAMPLE
+	 */
+	public String getAggregationField() {
+		return this.aggregationField;
+	}
+
+	/**
+	 * Getter for the GroupBy clauses
+	 *
+	 * @return list of GroupBy objects
+	 */
+	public List<GroupBy> getGroupBy() {
+		return this.groupBy;
+	}
+
+	/**
+	 * Getter for the OrderBy clauses
+	 *
+	 * @return list of OrderBy objects
+	 */
+	public List<OrderBy> getOrderBy() {
+		return this.orderBys;
+	}
+
 	/**
 	 * Builds Url parameters for aggregate query
 	 * 
@@ -0,0 +1,216 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.vmware.loginsightapi.core.Message;
+
+/**
+ * Accumulates messages into batches, shared by {@link BatchingIngestor} and
+ * {@link IngestionSubscriber}. <br>
+ *
+ * A batch is handed to the sink as soon as it reaches the number of messages
+ * or the (estimated) size, when its oldest message has waited for the linger
+ * time, and on close. The sink is called without holding the lock of the
+ * accumulator. The linger timer thread is started with the first message.
+ * <br>
+ * <br>
+ * This class is thread safe.
+ */
+class BatchAccumulator {
+
+	private final int maxBatchMessages;
+	private final int maxBatchBytes;
+	private final long lingerMillis;
+	private final String threadName;
+	private final Consumer<List<Message>> sink;
+
+	private final Object lock = new Object();
+	private List<Message> pending = new ArrayList<Message>();
+	private int pendingBytes;
+	private long generation;
+	private ScheduledExecutorService scheduler;
+	private Thread timerThread;
+	private ScheduledFuture<?> lingerTask;
+	// batches drained by the linger timer and not yet handed to the sink
+	private int handoffs;
+	private boolean closed;
+
+	/**
+	 * Builds the accumulator
+	 *
+	 * @param maxBatchMessages
+	 *            maximum number of messages in a batch
+	 * @param maxBatchBytes
+	 *            maximum (estimated) size of a batch in bytes
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 * @param threadName
+	 *            name of the linger timer thread
+	 * @param sink
+	 *            receives the batches, may block
+	 */
+	BatchAccumulator(int maxBatchMessages, int maxBatchBytes, long lingerMillis, String threadName,
+			Consumer<List<Message>> sink) {
+		this.maxBatchMessages = maxBatchMessages;
+		this.maxBatchBytes = maxBatchBytes;
+		this.lingerMillis = lingerMillis;
+		this.threadName = threadName;
+		this.sink = sink;
+	}
+
+	/**
+	 * Adds a message to the current batch. Hands the batch to the sink if it
+	 * is full.
+	 *
+	 * @param message
+	 *            Message object
+	 * @return false if the accumulator is closed and the message is not added
+	 */
+	boolean add(Message message) {
+		int size = message.estimatedSize();
+		List<Message> fullBatch = null;
+		List<Message> overflowBatch = null;
+		synchronized (lock) {
+			// checked with the lock held, so that close drains every added message
+			if (closed) {
+				return false;
+			}
+			if (!pending.isEmpty() && pendingBytes + size > maxBatchBytes) {
+				overflowBatch = drain();
+			}
+			if (pending.isEmpty()) {
+				scheduleLinger();
+			}
+			pending.add(message);
+			pendingBytes += size;
+			if (pending.size() >= maxBatchMessages || pendingBytes >= maxBatchBytes) {
+				fullBatch = drain();
+			}
+		}
+		if (null != overflowBatch) {
+			sink.accept(overflowBatch);
+		}
+		if (null != fullBatch) {
+			sink.accept(fullBatch);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the current batch without handing it to the sink
+	 *
+	 * @return pending messages, possibly none
+	 */
+	List<Message> takePending() {
+		synchronized (lock) {
+			return drain();
+		}
+	}
+
+	/**
+	 * Stops accepting messages and hands the pending messages to the sink.
+	 * Returns once the batches drained by the linger timer are handed to the
+	 * sink as well, unless called by the sink on the timer thread.
+	 *
+	 * @return false if the accumulator was already closed
+	 */
+	boolean close() {
+		List<Message> batch;
+		synchronized (lock) {
+			if (closed) {
+				return false;
+			}
+			closed = true;
+			batch = drain();
+			stopTimer();
+		}
+		if (!batch.isEmpty()) {
+			sink.accept(batch);
+		}
+		synchronized (lock) {
+			try {
+				while (handoffs > 0 && Thread.currentThread() != timerThread) {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops accepting messages and discards the pending messages
+	 */
+	void discard() {
+		synchronized (lock) {
+			closed = true;
+			drain();
+			stopTimer();
+		}
+	}
+
+	private List<Message> drain() {
+		List<Message> batch = pending;
+		pending = new ArrayList<Message>();
+		pendingBytes = 0;
+		generation++;
+		if (null != lingerTask) {
+			lingerTask.cancel(false);
+			lingerTask = null;
+		}
+		return batch;
+	}
+
+	private void stopTimer() {
+		if (null != scheduler) {
+			// a linger task handing off a batch completes
+			scheduler.shutdown();
+		}
+	}
+
+	private void scheduleLinger() {
+		if (null == scheduler) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				timerThread = thread;
+				return thread;
+			});
+		}
+		final long scheduledGeneration = generation;
+		lingerTask = scheduler.schedule(() -> {
+			List<Message> batch = null;
+			synchronized (lock) {
+				if (generation == scheduledGeneration && !pending.isEmpty()) {
+					batch = drain();
+					handoffs++;
+				}
+			}
+			if (null != batch) {
+				try {
+					sink.accept(batch);
+				} finally {
+					synchronized (lock) {
+						handoffs--;
+						lock.notifyAll();
+					}
+				}
+			}
+		}, lingerMillis, TimeUnit.MILLISECONDS);
+	}
+}
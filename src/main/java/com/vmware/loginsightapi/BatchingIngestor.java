@@ -0,0 +1,214 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+
+/**
+ * Collects individual messages and ingests them to LogInsight in batches. <br>
+ *
+ * A batch is sent through {@link LogInsightClient#ingest(IngestionRequest)}
+ * as soon as it reaches the configured number of messages or the configured
+ * (estimated) size, or when its oldest message has waited for the linger time.
+ * The number of ingestion requests in flight is bounded; once the bound is
+ * reached the thread completing a batch waits for a free slot. <br>
+ * <br>
+ * This class is thread safe. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * BatchingIngestor ingestor = new BatchingIngestor(client);
+ * ingestor.add(new Message("System failed"));
+ * ingestor.close();
+ * }
+ */
+public class BatchingIngestor implements AutoCloseable {
+
+	/**
+	 * Default maximum number of messages in a batch
+	 */
+	public static final int DEFAULT_MAX_BATCH_MESSAGES = 1000;
+
+	/**
+	 * Default maximum (estimated) size of a batch in bytes
+	 */
+	public static final int DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+
+	/**
+	 * Default time in milliseconds a message may wait before its batch is sent
+	 */
+	public static final long DEFAULT_LINGER_MILLIS = 1000;
+
+	/**
+	 * Default maximum number of ingestion requests in flight
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+	/**
+	 * Time in milliseconds {@code close} waits for in flight requests
+	 */
+	public static final long CLOSE_TIMEOUT_MILLIS = 30000;
+
+	private final LogInsightClient client;
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+	private final BatchAccumulator batches;
+
+	private final AtomicLong ingestedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final static Logger logger = LoggerFactory.getLogger(BatchingIngestor.class);
+
+	/**
+	 * Builds a BatchingIngestor with default batching parameters
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 */
+	public BatchingIngestor(LogInsightClient client) {
+		this(client, DEFAULT_MAX_BATCH_MESSAGES, DEFAULT_MAX_BATCH_BYTES, DEFAULT_LINGER_MILLIS,
+				DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Builds a BatchingIngestor
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param maxBatchMessages
+	 *            maximum number of messages in a batch
+	 * @param maxBatchBytes
+	 *            maximum (estimated) size of a batch in bytes
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 * @param maxInFlight
+	 *            maximum number of ingestion requests in flight
+	 */
+	public BatchingIngestor(LogInsightClient client, int maxBatchMessages, int maxBatchBytes, long lingerMillis,
+			int maxInFlight) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (maxBatchMessages <= 0 || maxBatchBytes <= 0 || lingerMillis <= 0 || maxInFlight <= 0) {
+			throw new IllegalArgumentException("Batching parameters should be positive");
+		}
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.batches = new BatchAccumulator(maxBatchMessages, maxBatchBytes, lingerMillis,
+				"loginsight-batching-ingestor", this::send);
+	}
+
+	/**
+	 * Adds a message to the current batch. Sends the batch if it is full. May
+	 * block when the maximum number of ingestion requests are in flight.
+	 *
+	 * @param message
+	 *            Message object
+	 * @throws LogInsightApiException
+	 *             when the ingestor is closed
+	 */
+	public void add(Message message) {
+		if (!batches.add(message)) {
+			throw new LogInsightApiException("BatchingIngestor is closed");
+		}
+	}
+
+	/**
+	 * Sends the current batch regardless of its size
+	 *
+	 * @return IngestionResponse CompletableFuture of the sent batch. Completes
+	 *         with null if there was nothing to send.
+	 */
+	public CompletableFuture<IngestionResponse> flush() {
+		List<Message> batch = batches.takePending();
+		if (batch.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return send(batch);
+	}
+
+	/**
+	 * Number of messages acknowledged by LogInsight
+	 *
+	 * @return number of ingested messages
+	 */
+	public long getIngestedCount() {
+		return ingestedCount.get();
+	}
+
+	/**
+	 * Number of messages in batches which could not be ingested
+	 *
+	 * @return number of failed messages
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * Flushes the pending messages and waits for the in flight requests to
+	 * complete. Does not close the underlying LogInsightClient.
+	 */
+	@Override
+	public void close() {
+		if (!batches.close()) {
+			return;
+		}
+		try {
+			if (inFlight.tryAcquire(maxInFlight, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				inFlight.release(maxInFlight);
+			} else {
+				logger.warn("Timed out waiting for in flight ingestion requests");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private CompletableFuture<IngestionResponse> send(List<Message> batch) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failedCount.addAndGet(batch.size());
+			throw new LogInsightApiException("Interrupted while waiting to send the batch", e);
+		}
+		CompletableFuture<IngestionResponse> responseFuture;
+		try {
+			responseFuture = client.ingest(new IngestionRequest(batch));
+		} catch (RuntimeException e) {
+			inFlight.release();
+			failedCount.addAndGet(batch.size());
+			throw e;
+		}
+		return responseFuture.whenComplete((response, ex) -> {
+			inFlight.release();
+			if (null != ex) {
+				failedCount.addAndGet(batch.size());
+				logger.error("Unable to ingest a batch of " + batch.size() + " messages", ex);
+			} else if (null != response) {
+				ingestedCount.addAndGet(response.getIngested());
+			}
+		});
+	}
+
+}
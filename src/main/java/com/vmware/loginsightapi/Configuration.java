@@ -8,7 +8,9 @@
  */
 package com.vmware.loginsightapi;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,6 +31,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vmware.loginsightapi.core.OverflowPolicy;
+import com.vmware.loginsightapi.util.WireLogger;
+
 /**
  * This class builds configuration from the apache commons properties file. or
  * allow developer to programmatically build the configuration. <br>
@@ -51,6 +56,11 @@ public class Configuration {
 	 */
 	public final static String KEY_LI_HOST = "loginsight.host";
 
+	/**
+	 * Property key for comma separated host names of the cluster nodes
+	 */
+	public final static String KEY_LI_HOSTS = "loginsight.hosts";
+
 	/**
 	 * Property key for port
 	 */
@@ -81,6 +91,184 @@ public class Configuration {
 	 */
 	public static final String KEY_AGENT_ID = "loginsight.ingestion.agentId";
 
+	/**
+	 * Property key for maximum number of pooled connections
+	 */
+	public static final String KEY_MAX_CONNECTIONS = "loginsight.connection.maxTotal";
+
+	/**
+	 * Property key for maximum number of pooled connections to the query port
+	 */
+	public static final String KEY_MAX_CONNECTIONS_PER_ROUTE = "loginsight.connection.maxPerRoute";
+
+	/**
+	 * Property key for maximum number of pooled connections to the ingestion
+	 * port
+	 */
+	public static final String KEY_MAX_INGESTION_CONNECTIONS = "loginsight.ingestion.connection.maxPerRoute";
+
+	/**
+	 * Property key for number of IO reactor threads
+	 */
+	public static final String KEY_IO_THREADS = "loginsight.connection.ioThreads";
+
+	/**
+	 * Property key for maximum keep alive of pooled connections (milliseconds)
+	 */
+	public static final String KEY_KEEP_ALIVE = "loginsight.connection.keepAlive";
+
+	/**
+	 * Property key for idle time after which pooled connections are evicted
+	 * (milliseconds)
+	 */
+	public static final String KEY_IDLE_TIMEOUT = "loginsight.connection.idleTimeout";
+
+	/**
+	 * Property key for load balancer distributing the requests across the
+	 * nodes. One of round-robin, least-outstanding, ewma or the class name of
+	 * a LoadBalancer implementation.
+	 */
+	public static final String KEY_LOAD_BALANCER = "loginsight.loadBalancer";
+
+	/**
+	 * Property key for initial delay before probing a failed node
+	 * (milliseconds)
+	 */
+	public static final String KEY_NODE_BACKOFF = "loginsight.node.backoff";
+
+	/**
+	 * Property key for maximum delay before probing a failed node
+	 * (milliseconds)
+	 */
+	public static final String KEY_NODE_MAX_BACKOFF = "loginsight.node.maxBackoff";
+
+	/**
+	 * Property key for ingestion request compression. One of none or gzip.
+	 */
+	public static final String KEY_INGESTION_COMPRESSION = "loginsight.ingestion.compression";
+
+	/**
+	 * Property key for gzip compression level of ingestion requests (1-9)
+	 */
+	public static final String KEY_COMPRESSION_LEVEL = "loginsight.ingestion.compressionLevel";
+
+	/**
+	 * Property key for minimum (estimated) size of a compressed ingestion
+	 * request in bytes
+	 */
+	public static final String KEY_COMPRESSION_MIN_SIZE = "loginsight.ingestion.compressionMinSize";
+
+	/**
+	 * Property key for accepting compressed query responses (true or false)
+	 */
+	public static final String KEY_QUERY_COMPRESSION = "loginsight.query.compression";
+
+	/**
+	 * Property key for maximum number of ingestion requests in flight
+	 */
+	public static final String KEY_INGESTION_MAX_IN_FLIGHT = "loginsight.ingestion.maxInFlight";
+
+	/**
+	 * Property key for maximum (estimated) size of the ingestion requests in
+	 * flight in bytes
+	 */
+	public static final String KEY_INGESTION_MAX_IN_FLIGHT_BYTES = "loginsight.ingestion.maxInFlightBytes";
+
+	/**
+	 * Property key for behaviour once the ingestion budget is exhausted. One
+	 * of block, reject or drop.
+	 */
+	public static final String KEY_INGESTION_OVERFLOW_POLICY = "loginsight.ingestion.overflowPolicy";
+
+	/**
+	 * Property key for maximum time an ingestion waits for budget with the
+	 * block policy (milliseconds)
+	 */
+	public static final String KEY_INGESTION_BLOCK_TIMEOUT = "loginsight.ingestion.blockTimeout";
+
+	/**
+	 * Property key for maximum number of cached aggregate query responses (0
+	 * disables the cache)
+	 */
+	public static final String KEY_QUERY_CACHE_MAX_ENTRIES = "loginsight.query.cache.maxEntries";
+
+	/**
+	 * Property key for maximum number of bins of the cached aggregate query
+	 * responses
+	 */
+	public static final String KEY_QUERY_CACHE_MAX_BINS = "loginsight.query.cache.maxBins";
+
+	/**
+	 * Property key for time to live of the cached aggregate query responses
+	 * (milliseconds)
+	 */
+	public static final String KEY_QUERY_CACHE_TTL = "loginsight.query.cache.ttl";
+
+	/**
+	 * Property key for time to live of the cached aggregate query responses
+	 * of closed time ranges (milliseconds)
+	 */
+	public static final String KEY_QUERY_CACHE_HISTORICAL_TTL = "loginsight.query.cache.historicalTtl";
+
+	/**
+	 * Property key for sharing a single request between concurrent identical
+	 * queries (true or false)
+	 */
+	public static final String KEY_QUERY_COALESCING = "loginsight.query.coalescing";
+
+	/**
+	 * Property key for metrics of the client. One of none, hdr or the class
+	 * name of a ClientMetrics implementation.
+	 */
+	public static final String KEY_METRICS = "loginsight.metrics";
+
+	/**
+	 * Property key for the fraction of the requests and responses logged by
+	 * the wire logger, between 0 (disabled) and 1
+	 */
+	public static final String KEY_WIRE_LOG_SAMPLE_RATE = "loginsight.wire.sampleRate";
+
+	/**
+	 * Property key for the maximum number of characters of a body logged by the
+	 * wire logger
+	 */
+	public static final String KEY_WIRE_LOG_MAX_LENGTH = "loginsight.wire.maxLength";
+
+	/**
+	 * Round robin load balancer
+	 */
+	public static final String LOAD_BALANCER_ROUND_ROBIN = "round-robin";
+
+	/**
+	 * Least outstanding requests load balancer
+	 */
+	public static final String LOAD_BALANCER_LEAST_OUTSTANDING = "least-outstanding";
+
+	/**
+	 * Latency weighted (EWMA) load balancer
+	 */
+	public static final String LOAD_BALANCER_EWMA = "ewma";
+
+	/**
+	 * Uncompressed ingestion requests
+	 */
+	public static final String COMPRESSION_NONE = "none";
+
+	/**
+	 * Gzip compressed ingestion requests
+	 */
+	public static final String COMPRESSION_GZIP = "gzip";
+
+	/**
+	 * Metrics not recorded
+	 */
+	public static final String METRICS_NONE = "none";
+
+	/**
+	 * Metrics recorded in memory with HdrHistogram
+	 */
+	public static final String METRICS_HDR = "hdr";
+
 	/**
 	 * Default protocol scheme
 	 */
@@ -96,6 +284,75 @@ public class Configuration {
 	 */
 	public static final int DEFAULT_INGESTION_PORT = 9543;
 
+	/**
+	 * Default maximum number of pooled connections
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 40;
+
+	/**
+	 * Default maximum number of pooled connections per port
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+	/**
+	 * Default maximum keep alive of pooled connections (milliseconds)
+	 */
+	public static final int DEFAULT_KEEP_ALIVE = 30000;
+
+	/**
+	 * Default idle time after which pooled connections are evicted
+	 * (milliseconds)
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+	/**
+	 * Default initial delay before probing a failed node (milliseconds)
+	 */
+	public static final int DEFAULT_NODE_BACKOFF = 1000;
+
+	/**
+	 * Default maximum delay before probing a failed node (milliseconds)
+	 */
+	public static final int DEFAULT_NODE_MAX_BACKOFF = 60000;
+
+	/**
+	 * Default gzip compression level of ingestion requests
+	 */
+	public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+	/**
+	 * Default minimum (estimated) size of a compressed ingestion request in
+	 * bytes
+	 */
+	public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+
+	/**
+	 * Default maximum time an ingestion waits for budget (milliseconds)
+	 */
+	public static final int DEFAULT_INGESTION_BLOCK_TIMEOUT = 30000;
+
+	/**
+	 * Default maximum number of bins of the cached aggregate query responses
+	 */
+	public static final long DEFAULT_QUERY_CACHE_MAX_BINS = 1000000;
+
+	/**
+	 * Default time to live of the cached aggregate query responses
+	 * (milliseconds)
+	 */
+	public static final int DEFAULT_QUERY_CACHE_TTL = 5000;
+
+	/**
+	 * Default time to live of the cached aggregate query responses of closed
+	 * time ranges (milliseconds)
+	 */
+	public static final int DEFAULT_QUERY_CACHE_HISTORICAL_TTL = 600000;
+
+	/**
+	 * Default maximum number of characters of a body logged by the wire logger
+	 */
+	public static final int DEFAULT_WIRE_LOG_MAX_LENGTH = 1024;
+
 	String host;
 	String user;
 	String password;
@@ -103,6 +360,32 @@ public class Configuration {
 	String ingestionPort;
 	String agentId;
 	String scheme;
+	int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	int maxIngestionConnections = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	int ioThreads = Runtime.getRuntime().availableProcessors();
+	int keepAlive = DEFAULT_KEEP_ALIVE;
+	int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	List<String> hosts = Collections.emptyList();
+	String loadBalancer = LOAD_BALANCER_ROUND_ROBIN;
+	int nodeBackoff = DEFAULT_NODE_BACKOFF;
+	int nodeMaxBackoff = DEFAULT_NODE_MAX_BACKOFF;
+	String ingestionCompression = COMPRESSION_NONE;
+	int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+	int compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+	boolean queryCompression;
+	int ingestionMaxInFlight = Integer.MAX_VALUE;
+	long ingestionMaxInFlightBytes = Long.MAX_VALUE;
+	OverflowPolicy ingestionOverflowPolicy = OverflowPolicy.BLOCK;
+	int ingestionBlockTimeout = DEFAULT_INGESTION_BLOCK_TIMEOUT;
+	int queryCacheMaxEntries;
+	long queryCacheMaxBins = DEFAULT_QUERY_CACHE_MAX_BINS;
+	int queryCacheTtl = DEFAULT_QUERY_CACHE_TTL;
+	int queryCacheHistoricalTtl = DEFAULT_QUERY_CACHE_HISTORICAL_TTL;
+	boolean queryCoalescing;
+	String metrics = METRICS_NONE;
+	double wireLogSampleRate;
+	int wireLogMaxLength = DEFAULT_WIRE_LOG_MAX_LENGTH;
 
 	private final static Logger logger = LoggerFactory.getLogger(Configuration.class);
 
@@ -157,6 +440,16 @@ public class Configuration {
 			liConfig.setHost(configData.get(KEY_LI_HOST));
 		}
 
+		if (configData.containsKey(KEY_LI_HOSTS)) {
+			List<String> hosts = new ArrayList<String>();
+			for (String host : StringUtils.split(configData.get(KEY_LI_HOSTS), ',')) {
+				if (StringUtils.isNotBlank(host)) {
+					hosts.add(host.trim());
+				}
+			}
+			liConfig.setHosts(hosts);
+		}
+
 		if (configData.containsKey(KEY_LI_PORT)) {
 			logger.info("setting port as well");
 			liConfig.setPort(configData.get(KEY_LI_PORT));
@@ -180,9 +473,114 @@ public class Configuration {
 		if (configData.containsKey(KEY_AGENT_ID)) {
 			liConfig.setAgentId(configData.get(KEY_AGENT_ID));
 		}
+		if (configData.containsKey(KEY_MAX_CONNECTIONS)) {
+			liConfig.setMaxConnections(parseInt(KEY_MAX_CONNECTIONS, configData.get(KEY_MAX_CONNECTIONS)));
+		}
+		if (configData.containsKey(KEY_MAX_CONNECTIONS_PER_ROUTE)) {
+			liConfig.setMaxConnectionsPerRoute(
+					parseInt(KEY_MAX_CONNECTIONS_PER_ROUTE, configData.get(KEY_MAX_CONNECTIONS_PER_ROUTE)));
+		}
+		if (configData.containsKey(KEY_MAX_INGESTION_CONNECTIONS)) {
+			liConfig.setMaxIngestionConnections(
+					parseInt(KEY_MAX_INGESTION_CONNECTIONS, configData.get(KEY_MAX_INGESTION_CONNECTIONS)));
+		}
+		if (configData.containsKey(KEY_IO_THREADS)) {
+			liConfig.setIoThreads(parseInt(KEY_IO_THREADS, configData.get(KEY_IO_THREADS)));
+		}
+		if (configData.containsKey(KEY_KEEP_ALIVE)) {
+			liConfig.setKeepAlive(parseInt(KEY_KEEP_ALIVE, configData.get(KEY_KEEP_ALIVE)));
+		}
+		if (configData.containsKey(KEY_IDLE_TIMEOUT)) {
+			liConfig.setIdleTimeout(parseInt(KEY_IDLE_TIMEOUT, configData.get(KEY_IDLE_TIMEOUT)));
+		}
+		if (configData.containsKey(KEY_LOAD_BALANCER)) {
+			liConfig.setLoadBalancer(configData.get(KEY_LOAD_BALANCER));
+		}
+		if (configData.containsKey(KEY_NODE_BACKOFF)) {
+			liConfig.setNodeBackoff(parseInt(KEY_NODE_BACKOFF, configData.get(KEY_NODE_BACKOFF)));
+		}
+		if (configData.containsKey(KEY_NODE_MAX_BACKOFF)) {
+			liConfig.setNodeMaxBackoff(parseInt(KEY_NODE_MAX_BACKOFF, configData.get(KEY_NODE_MAX_BACKOFF)));
+		}
+		if (configData.containsKey(KEY_INGESTION_COMPRESSION)) {
+			liConfig.setIngestionCompression(StringUtils.trim(configData.get(KEY_INGESTION_COMPRESSION)));
+		}
+		if (configData.containsKey(KEY_COMPRESSION_LEVEL)) {
+			liConfig.setCompressionLevel(parseInt(KEY_COMPRESSION_LEVEL, configData.get(KEY_COMPRESSION_LEVEL)));
+		}
+		if (configData.containsKey(KEY_COMPRESSION_MIN_SIZE)) {
+			liConfig.setCompressionMinSize(parseInt(KEY_COMPRESSION_MIN_SIZE, configData.get(KEY_COMPRESSION_MIN_SIZE)));
+		}
+		if (configData.containsKey(KEY_QUERY_COMPRESSION)) {
+			liConfig.setQueryCompression(Boolean.parseBoolean(StringUtils.trim(configData.get(KEY_QUERY_COMPRESSION))));
+		}
+		if (configData.containsKey(KEY_INGESTION_MAX_IN_FLIGHT)) {
+			liConfig.setIngestionMaxInFlight(parseInt(KEY_INGESTION_MAX_IN_FLIGHT, configData.get(KEY_INGESTION_MAX_IN_FLIGHT)));
+		}
+		if (configData.containsKey(KEY_INGESTION_MAX_IN_FLIGHT_BYTES)) {
+			liConfig.setIngestionMaxInFlightBytes(
+					parseLong(KEY_INGESTION_MAX_IN_FLIGHT_BYTES, configData.get(KEY_INGESTION_MAX_IN_FLIGHT_BYTES)));
+		}
+		if (configData.containsKey(KEY_INGESTION_OVERFLOW_POLICY)) {
+			liConfig.setIngestionOverflowPolicy(
+					OverflowPolicy.fromString(StringUtils.trim(configData.get(KEY_INGESTION_OVERFLOW_POLICY))));
+		}
+		if (configData.containsKey(KEY_INGESTION_BLOCK_TIMEOUT)) {
+			liConfig.setIngestionBlockTimeout(parseInt(KEY_INGESTION_BLOCK_TIMEOUT, configData.get(KEY_INGESTION_BLOCK_TIMEOUT)));
+		}
+		if (configData.containsKey(KEY_QUERY_CACHE_MAX_ENTRIES)) {
+			liConfig.setQueryCacheMaxEntries(parseInt(KEY_QUERY_CACHE_MAX_ENTRIES, configData.get(KEY_QUERY_CACHE_MAX_ENTRIES)));
+		}
+		if (configData.containsKey(KEY_QUERY_CACHE_MAX_BINS)) {
+			liConfig.setQueryCacheMaxBins(parseLong(KEY_QUERY_CACHE_MAX_BINS, configData.get(KEY_QUERY_CACHE_MAX_BINS)));
+		}
+		if (configData.containsKey(KEY_QUERY_CACHE_TTL)) {
+			liConfig.setQueryCacheTtl(parseInt(KEY_QUERY_CACHE_TTL, configData.get(KEY_QUERY_CACHE_TTL)));
+		}
+		if (configData.containsKey(KEY_QUERY_CACHE_HISTORICAL_TTL)) {
+			liConfig.setQueryCacheHistoricalTtl(
+					parseInt(KEY_QUERY_CACHE_HISTORICAL_TTL, configData.get(KEY_QUERY_CACHE_HISTORICAL_TTL)));
+		}
+		if (configData.containsKey(KEY_QUERY_COALESCING)) {
+			liConfig.setQueryCoalescing(Boolean.parseBoolean(StringUtils.trim(configData.get(KEY_QUERY_COALESCING))));
+		}
+		if (configData.containsKey(KEY_METRICS)) {
+			liConfig.setMetrics(StringUtils.trim(configData.get(KEY_METRICS)));
+		}
+		if (configData.containsKey(KEY_WIRE_LOG_SAMPLE_RATE)) {
+			liConfig.setWireLogSampleRate(
+					parseDouble(KEY_WIRE_LOG_SAMPLE_RATE, configData.get(KEY_WIRE_LOG_SAMPLE_RATE)));
+		}
+		if (configData.containsKey(KEY_WIRE_LOG_MAX_LENGTH)) {
+			liConfig.setWireLogMaxLength(parseInt(KEY_WIRE_LOG_MAX_LENGTH, configData.get(KEY_WIRE_LOG_MAX_LENGTH)));
+		}
 		return liConfig;
 	}
 
+	private static int parseInt(String key, String value) {
+		try {
+			return Integer.parseInt(StringUtils.trim(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
+	private static long parseLong(String key, String value) {
+		try {
+			return Long.parseLong(StringUtils.trim(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
+	private static double parseDouble(String key, String value) {
+		try {
+			return Double.parseDouble(StringUtils.trim(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
 	/**
 	 * Returns the http or https
 	 * 
@@ -352,6 +750,625 @@ public class Configuration {
 		return this.password;
 	}
 
+	/**
+	 * Getter for maximum number of pooled connections
+	 * 
+	 * @return maximum number of pooled connections
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Updates the maximum number of pooled connections
+	 * 
+	 * @param maxConnections
+	 *            maximum number of pooled connections
+	 */
+	public void setMaxConnections(int maxConnections) {
+		if (maxConnections > 0) {
+			this.maxConnections = maxConnections;
+		} else {
+			throw new IllegalArgumentException("Invalid maximum connections");
+		}
+	}
+
+	/**
+	 * Getter for maximum number of pooled connections to the query port
+	 * 
+	 * @return maximum number of pooled connections to the query port
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * Updates the maximum number of pooled connections to the query port
+	 * 
+	 * @param maxConnectionsPerRoute
+	 *            maximum number of pooled connections to the query port
+	 */
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		if (maxConnectionsPerRoute > 0) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		} else {
+			throw new IllegalArgumentException("Invalid maximum connections per route");
+		}
+	}
+
+	/**
+	 * Getter for maximum number of pooled connections to the ingestion port
+	 * 
+	 * @return maximum number of pooled connections to the ingestion port
+	 */
+	public int getMaxIngestionConnections() {
+		return maxIngestionConnections;
+	}
+
+	/**
+	 * Updates the maximum number of pooled connections to the ingestion port
+	 * 
+	 * @param maxIngestionConnections
+	 *            maximum number of pooled connections to the ingestion port
+	 */
+	public void setMaxIngestionConnections(int maxIngestionConnections) {
+		if (maxIngestionConnections > 0) {
+			this.maxIngestionConnections = maxIngestionConnections;
+		} else {
+			throw new IllegalArgumentException("Invalid maximum ingestion connections");
+		}
+	}
+
+	/**
+	 * Getter for number of IO reactor threads
+	 * 
+	 * @return number of IO reactor threads
+	 */
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	/**
+	 * Updates the number of IO reactor threads
+	 * 
+	 * @param ioThreads
+	 *            number of IO reactor threads
+	 */
+	public void setIoThreads(int ioThreads) {
+		if (ioThreads > 0) {
+			this.ioThreads = ioThreads;
+		} else {
+			throw new IllegalArgumentException("Invalid IO thread count");
+		}
+	}
+
+	/**
+	 * Getter for maximum keep alive of pooled connections
+	 * 
+	 * @return keep alive in milliseconds
+	 */
+	public int getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Updates the maximum keep alive of pooled connections. A shorter keep
+	 * alive sent by the server takes precedence.
+	 * 
+	 * @param keepAlive
+	 *            keep alive in milliseconds
+	 */
+	public void setKeepAlive(int keepAlive) {
+		if (keepAlive > 0) {
+			this.keepAlive = keepAlive;
+		} else {
+			throw new IllegalArgumentException("Invalid keep alive");
+		}
+	}
+
+	/**
+	 * Getter for idle time after which pooled connections are evicted
+	 * 
+	 * @return idle timeout in milliseconds
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Updates the idle time after which pooled connections are evicted
+	 * 
+	 * @param idleTimeout
+	 *            idle timeout in milliseconds
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		if (idleTimeout > 0) {
+			this.idleTimeout = idleTimeout;
+		} else {
+			throw new IllegalArgumentException("Invalid idle timeout");
+		}
+	}
+
+	/**
+	 * Getter for the host names of the cluster nodes
+	 * 
+	 * @return host names of the nodes, or the host name when no node list is
+	 *         set
+	 */
+	public List<String> getHosts() {
+		if (hosts.isEmpty() && StringUtils.isNotEmpty(host)) {
+			return Collections.singletonList(host);
+		}
+		return hosts;
+	}
+
+	/**
+	 * Updates the host names of the cluster nodes. The host name is set to
+	 * the first node when it is not set.
+	 * 
+	 * @param hosts
+	 *            host names of the nodes
+	 */
+	public void setHosts(List<String> hosts) {
+		if (null == hosts || hosts.isEmpty()) {
+			throw new IllegalArgumentException("Invalid host list");
+		}
+		for (String node : hosts) {
+			if (StringUtils.isEmpty(node)) {
+				throw new IllegalArgumentException("Invalid host name");
+			}
+		}
+		this.hosts = Collections.unmodifiableList(new ArrayList<String>(hosts));
+		if (StringUtils.isEmpty(host)) {
+			this.host = hosts.get(0);
+		}
+	}
+
+	/**
+	 * Getter for the load balancer
+	 * 
+	 * @return load balancer name or class name
+	 */
+	public String getLoadBalancer() {
+		return loadBalancer;
+	}
+
+	/**
+	 * Updates the load balancer distributing the requests across the nodes
+	 * 
+	 * @param loadBalancer
+	 *            round-robin, least-outstanding, ewma or the class name of a
+	 *            LoadBalancer implementation
+	 */
+	public void setLoadBalancer(String loadBalancer) {
+		if (StringUtils.isNotEmpty(loadBalancer)) {
+			this.loadBalancer = loadBalancer;
+		} else {
+			throw new IllegalArgumentException("Invalid load balancer");
+		}
+	}
+
+	/**
+	 * Getter for initial delay before probing a failed node
+	 * 
+	 * @return backoff in milliseconds
+	 */
+	public int getNodeBackoff() {
+		return nodeBackoff;
+	}
+
+	/**
+	 * Updates the initial delay before probing a failed node. The delay
+	 * doubles on each failed probe.
+	 * 
+	 * @param nodeBackoff
+	 *            backoff in milliseconds
+	 */
+	public void setNodeBackoff(int nodeBackoff) {
+		if (nodeBackoff > 0) {
+			this.nodeBackoff = nodeBackoff;
+		} else {
+			throw new IllegalArgumentException("Invalid node backoff");
+		}
+	}
+
+	/**
+	 * Getter for maximum delay before probing a failed node
+	 * 
+	 * @return maximum backoff in milliseconds
+	 */
+	public int getNodeMaxBackoff() {
+		return nodeMaxBackoff;
+	}
+
+	/**
+	 * Updates the maximum delay before probing a failed node
+	 * 
+	 * @param nodeMaxBackoff
+	 *            maximum backoff in milliseconds
+	 */
+	public void setNodeMaxBackoff(int nodeMaxBackoff) {
+		if (nodeMaxBackoff > 0) {
+			this.nodeMaxBackoff = nodeMaxBackoff;
+		} else {
+			throw new IllegalArgumentException("Invalid node max backoff");
+		}
+	}
+
+	/**
+	 * Getter for ingestion request compression
+	 * 
+	 * @return none or gzip
+	 */
+	public String getIngestionCompression() {
+		return ingestionCompression;
+	}
+
+	/**
+	 * Updates the compression of ingestion requests
+	 * 
+	 * @param ingestionCompression
+	 *            none or gzip
+	 */
+	public void setIngestionCompression(String ingestionCompression) {
+		if (COMPRESSION_NONE.equals(ingestionCompression) || COMPRESSION_GZIP.equals(ingestionCompression)) {
+			this.ingestionCompression = ingestionCompression;
+		} else {
+			throw new IllegalArgumentException("Invalid ingestion compression");
+		}
+	}
+
+	/**
+	 * Getter for gzip compression level of ingestion requests
+	 * 
+	 * @return compression level
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Updates the gzip compression level of ingestion requests
+	 * 
+	 * @param compressionLevel
+	 *            1 (fastest) to 9 (smallest)
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if (compressionLevel >= 1 && compressionLevel <= 9) {
+			this.compressionLevel = compressionLevel;
+		} else {
+			throw new IllegalArgumentException("Invalid compression level");
+		}
+	}
+
+	/**
+	 * Getter for minimum size of a compressed ingestion request
+	 * 
+	 * @return minimum (estimated) size in bytes
+	 */
+	public int getCompressionMinSize() {
+		return compressionMinSize;
+	}
+
+	/**
+	 * Updates the minimum size of a compressed ingestion request. Smaller
+	 * requests are sent uncompressed.
+	 * 
+	 * @param compressionMinSize
+	 *            minimum (estimated) size in bytes
+	 */
+	public void setCompressionMinSize(int compressionMinSize) {
+		if (compressionMinSize >= 0) {
+			this.compressionMinSize = compressionMinSize;
+		} else {
+			throw new IllegalArgumentException("Invalid compression min size");
+		}
+	}
+
+	/**
+	 * Tells whether compressed query responses are accepted
+	 * 
+	 * @return true if queries send Accept-Encoding
+	 */
+	public boolean isQueryCompression() {
+		return queryCompression;
+	}
+
+	/**
+	 * Updates whether compressed query responses are accepted
+	 * 
+	 * @param queryCompression
+	 *            true to accept gzip and deflate responses
+	 */
+	public void setQueryCompression(boolean queryCompression) {
+		this.queryCompression = queryCompression;
+	}
+
+	/**
+	 * Getter for maximum number of ingestion requests in flight
+	 * 
+	 * @return maximum requests in flight
+	 */
+	public int getIngestionMaxInFlight() {
+		return ingestionMaxInFlight;
+	}
+
+	/**
+	 * Updates the maximum number of ingestion requests in flight
+	 * 
+	 * @param ingestionMaxInFlight
+	 *            maximum requests in flight
+	 */
+	public void setIngestionMaxInFlight(int ingestionMaxInFlight) {
+		if (ingestionMaxInFlight > 0) {
+			this.ingestionMaxInFlight = ingestionMaxInFlight;
+		} else {
+			throw new IllegalArgumentException("Invalid ingestion max in flight");
+		}
+	}
+
+	/**
+	 * Getter for maximum (estimated) size of the ingestion requests in flight
+	 * 
+	 * @return maximum bytes in flight
+	 */
+	public long getIngestionMaxInFlightBytes() {
+		return ingestionMaxInFlightBytes;
+	}
+
+	/**
+	 * Updates the maximum (estimated) size of the ingestion requests in
+	 * flight
+	 * 
+	 * @param ingestionMaxInFlightBytes
+	 *            maximum bytes in flight
+	 */
+	public void setIngestionMaxInFlightBytes(long ingestionMaxInFlightBytes) {
+		if (ingestionMaxInFlightBytes > 0) {
+			this.ingestionMaxInFlightBytes = ingestionMaxInFlightBytes;
+		} else {
+			throw new IllegalArgumentException("Invalid ingestion max in flight bytes");
+		}
+	}
+
+	/**
+	 * Getter for the behaviour once the ingestion budget is exhausted
+	 * 
+	 * @return overflow policy
+	 */
+	public OverflowPolicy getIngestionOverflowPolicy() {
+		return ingestionOverflowPolicy;
+	}
+
+	/**
+	 * Updates the behaviour once the ingestion budget is exhausted. BLOCK
+	 * rejects instead of waiting on an I/O dispatcher thread of the client.
+	 * 
+	 * @param ingestionOverflowPolicy
+	 *            overflow policy
+	 */
+	public void setIngestionOverflowPolicy(OverflowPolicy ingestionOverflowPolicy) {
+		if (null != ingestionOverflowPolicy) {
+			this.ingestionOverflowPolicy = ingestionOverflowPolicy;
+		} else {
+			throw new IllegalArgumentException("Invalid ingestion overflow policy");
+		}
+	}
+
+	/**
+	 * Getter for maximum time an ingestion waits for budget
+	 * 
+	 * @return block timeout in milliseconds
+	 */
+	public int getIngestionBlockTimeout() {
+		return ingestionBlockTimeout;
+	}
+
+	/**
+	 * Updates the maximum time an ingestion waits for budget with the block
+	 * policy
+	 * 
+	 * @param ingestionBlockTimeout
+	 *            block timeout in milliseconds
+	 */
+	public void setIngestionBlockTimeout(int ingestionBlockTimeout) {
+		if (ingestionBlockTimeout >= 0) {
+			this.ingestionBlockTimeout = ingestionBlockTimeout;
+		} else {
+			throw new IllegalArgumentException("Invalid ingestion block timeout");
+		}
+	}
+
+	/**
+	 * Getter for maximum number of cached aggregate query responses
+	 * 
+	 * @return maximum entries, 0 when the cache is disabled
+	 */
+	public int getQueryCacheMaxEntries() {
+		return queryCacheMaxEntries;
+	}
+
+	/**
+	 * Updates the maximum number of cached aggregate query responses
+	 * 
+	 * @param queryCacheMaxEntries
+	 *            maximum entries, 0 to disable the cache
+	 */
+	public void setQueryCacheMaxEntries(int queryCacheMaxEntries) {
+		if (queryCacheMaxEntries >= 0) {
+			this.queryCacheMaxEntries = queryCacheMaxEntries;
+		} else {
+			throw new IllegalArgumentException("Invalid query cache max entries");
+		}
+	}
+
+	/**
+	 * Getter for maximum number of bins of the cached aggregate query
+	 * responses
+	 * 
+	 * @return maximum bins
+	 */
+	public long getQueryCacheMaxBins() {
+		return queryCacheMaxBins;
+	}
+
+	/**
+	 * Updates the maximum number of bins of the cached aggregate query
+	 * responses
+	 * 
+	 * @param queryCacheMaxBins
+	 *            maximum bins
+	 */
+	public void setQueryCacheMaxBins(long queryCacheMaxBins) {
+		if (queryCacheMaxBins > 0) {
+			this.queryCacheMaxBins = queryCacheMaxBins;
+		} else {
+			throw new IllegalArgumentException("Invalid query cache max bins");
+		}
+	}
+
+	/**
+	 * Getter for time to live of the cached aggregate query responses
+	 * 
+	 * @return TTL in milliseconds
+	 */
+	public int getQueryCacheTtl() {
+		return queryCacheTtl;
+	}
+
+	/**
+	 * Updates the time to live of the cached aggregate query responses
+	 * 
+	 * @param queryCacheTtl
+	 *            TTL in milliseconds
+	 */
+	public void setQueryCacheTtl(int queryCacheTtl) {
+		if (queryCacheTtl >= 0) {
+			this.queryCacheTtl = queryCacheTtl;
+		} else {
+			throw new IllegalArgumentException("Invalid query cache TTL");
+		}
+	}
+
+	/**
+	 * Getter for time to live of the cached aggregate query responses of
+	 * closed time ranges
+	 * 
+	 * @return TTL in milliseconds
+	 */
+	public int getQueryCacheHistoricalTtl() {
+		return queryCacheHistoricalTtl;
+	}
+
+	/**
+	 * Updates the time to live of the cached aggregate query responses of
+	 * closed time ranges
+	 * 
+	 * @param queryCacheHistoricalTtl
+	 *            TTL in milliseconds
+	 */
+	public void setQueryCacheHistoricalTtl(int queryCacheHistoricalTtl) {
+		if (queryCacheHistoricalTtl >= 0) {
+			this.queryCacheHistoricalTtl = queryCacheHistoricalTtl;
+		} else {
+			throw new IllegalArgumentException("Invalid query cache historical TTL");
+		}
+	}
+
+	/**
+	 * Tells whether concurrent identical queries share a single request
+	 * 
+	 * @return true if queries are coalesced
+	 */
+	public boolean isQueryCoalescing() {
+		return queryCoalescing;
+	}
+
+	/**
+	 * Updates whether concurrent identical queries share a single request
+	 * 
+	 * @param queryCoalescing
+	 *            true to coalesce queries
+	 */
+	public void setQueryCoalescing(boolean queryCoalescing) {
+		this.queryCoalescing = queryCoalescing;
+	}
+
+	/**
+	 * Getter for the metrics of the client
+	 * 
+	 * @return metrics name or class name
+	 */
+	public String getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Updates the metrics of the client
+	 * 
+	 * @param metrics
+	 *            none, hdr or the class name of a ClientMetrics
+	 *            implementation
+	 */
+	public void setMetrics(String metrics) {
+		if (StringUtils.isNotEmpty(metrics)) {
+			this.metrics = metrics;
+		} else {
+			throw new IllegalArgumentException("Invalid metrics");
+		}
+	}
+
+	/**
+	 * Getter for the fraction of the requests and responses logged by the wire
+	 * logger
+	 * 
+	 * @return sample rate between 0 and 1
+	 */
+	public double getWireLogSampleRate() {
+		return wireLogSampleRate;
+	}
+
+	/**
+	 * Updates the fraction of the requests and responses logged by the wire
+	 * logger. The bodies are logged at debug level of the logger
+	 * com.vmware.loginsightapi.wire.
+	 * 
+	 * @param wireLogSampleRate
+	 *            between 0 (disabled) and 1 (every request)
+	 */
+	public void setWireLogSampleRate(double wireLogSampleRate) {
+		if (wireLogSampleRate >= 0 && wireLogSampleRate <= 1) {
+			this.wireLogSampleRate = wireLogSampleRate;
+		} else {
+			throw new IllegalArgumentException("Invalid wire log sample rate");
+		}
+	}
+
+	/**
+	 * Getter for the maximum number of characters of a body logged by the wire
+	 * logger
+	 * 
+	 * @return maximum length
+	 */
+	public int getWireLogMaxLength() {
+		return wireLogMaxLength;
+	}
+
+	/**
+	 * Updates the maximum number of characters of a body logged by the wire
+	 * logger. Longer bodies are truncated.
+	 * 
+	 * @param wireLogMaxLength
+	 *            maximum length
+	 */
+	public void setWireLogMaxLength(int wireLogMaxLength) {
+		if (wireLogMaxLength > 0) {
+			this.wireLogMaxLength = wireLogMaxLength;
+		} else {
+			throw new IllegalArgumentException("Invalid wire log max length");
+		}
+	}
+
 	/**
 	 * Merges the values from environment variables into configuration object
 	 * (this) Values of the Environment variables takes priority
@@ -384,12 +1401,48 @@ public class Configuration {
 	 * 
 	 * List of the properties <br>
 	 * loginsight.host = host name <br>
+	 * loginsight.hosts = comma separated host names of the cluster nodes <br>
 	 * loginsight.port = port number <br>
 	 * loginsight.user = User name <br>
 	 * loginsight.password = password <br>
 	 * loginsight.ingestion.agentId = agentId <br>
 	 * loginsight.connection.scheme = http protocol scheme <br>
 	 * loginsight.ingestion.port = Ingestion port number <br>
+	 * loginsight.connection.maxTotal = maximum pooled connections <br>
+	 * loginsight.connection.maxPerRoute = maximum connections to query port
+	 * <br>
+	 * loginsight.ingestion.connection.maxPerRoute = maximum connections to
+	 * ingestion port <br>
+	 * loginsight.connection.ioThreads = IO reactor threads <br>
+	 * loginsight.connection.keepAlive = keep alive (milliseconds) <br>
+	 * loginsight.connection.idleTimeout = idle eviction (milliseconds) <br>
+	 * loginsight.loadBalancer = round-robin, least-outstanding or ewma <br>
+	 * loginsight.node.backoff = failed node backoff (milliseconds) <br>
+	 * loginsight.node.maxBackoff = maximum failed node backoff (milliseconds)
+	 * <br>
+	 * loginsight.ingestion.compression = none or gzip <br>
+	 * loginsight.ingestion.compressionLevel = gzip level (1-9) <br>
+	 * loginsight.ingestion.compressionMinSize = minimum compressed request
+	 * size (bytes) <br>
+	 * loginsight.query.compression = accept compressed query responses <br>
+	 * loginsight.ingestion.maxInFlight = ingestion requests in flight <br>
+	 * loginsight.ingestion.maxInFlightBytes = ingestion bytes in flight <br>
+	 * loginsight.ingestion.overflowPolicy = block, reject or drop <br>
+	 * loginsight.ingestion.blockTimeout = maximum wait for ingestion budget
+	 * (milliseconds) <br>
+	 * loginsight.query.cache.maxEntries = cached aggregate responses (0
+	 * disables the cache) <br>
+	 * loginsight.query.cache.maxBins = cached aggregate bins <br>
+	 * loginsight.query.cache.ttl = aggregate cache TTL (milliseconds) <br>
+	 * loginsight.query.cache.historicalTtl = aggregate cache TTL of closed
+	 * time ranges (milliseconds) <br>
+	 * loginsight.query.coalescing = share a request between concurrent
+	 * identical queries <br>
+	 * loginsight.metrics = none, hdr or class name of the client metrics <br>
+	 * loginsight.wire.sampleRate = fraction of the requests and responses
+	 * logged, 0 to disable <br>
+	 * loginsight.wire.maxLength = maximum number of characters of a logged
+	 * body <br>
 	 * 
 	 * @param configFileName
 	 *            Name of the config file to read
@@ -408,7 +1461,7 @@ public class Configuration {
 			Map<String, String> propMap = new HashMap<String, String>();
 			Iterator<String> keys = propConfig.getKeys();
 			keys.forEachRemaining(key -> {
-				logger.info(key + ":" + propConfig.getString(key));
+				logger.info(key + ":" + (KEY_LI_PASSWORD.equals(key) ? WireLogger.REDACTED : propConfig.getString(key)));
 				propMap.put(key, propConfig.getString(key));
 			});
 			Configuration config = Configuration.buildConfig(propMap);
@@ -59,6 +59,18 @@ public class IngestionRequestBuilder {
 		return this;
 	}
 	
+	/**
+	 * Overrides the ingestion compression of the client configuration
+	 * 
+	 * @param compressed
+	 *            true to gzip the request, false to send it uncompressed
+	 * @return IngestionRequestBuilder instance (this)
+	 */
+	public IngestionRequestBuilder compressed(boolean compressed) {
+		this.ingestionRequest.setCompressed(compressed);
+		return this;
+	}
+
 	/**
 	 * builds the IngestionRequest
 	 * 
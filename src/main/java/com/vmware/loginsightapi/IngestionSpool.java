@@ -0,0 +1,638 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.JsonCodec;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+
+/**
+ * Write-ahead spool for ingestion requests. <br>
+ *
+ * Each request is appended to a memory-mapped segment file in the spool
+ * directory before it is sent through
+ * {@link LogInsightClient#ingest(IngestionRequest)}. A request is
+ * acknowledged once the IngestionResponse reports all its messages as
+ * ingested; otherwise it stays in the spool and is sent again after the retry
+ * interval. While LogInsight is unreachable only the oldest request is retried,
+ * and new requests are only written to disk. Segments whose requests are all
+ * acknowledged are deleted. <br>
+ * <br>
+ * Unacknowledged requests are replayed when a spool is opened on the same
+ * directory, so messages survive a restart of the process. Delivery is at
+ * least once: a request may be ingested twice when its response is lost. When
+ * the spool reaches its disk quota the oldest segment is dropped along with
+ * its requests. <br>
+ * <br>
+ * This class is thread safe. A directory can be used by a single spool at a
+ * time. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * IngestionSpool spool = new IngestionSpool(client, Paths.get("/var/spool/loginsight"));
+ * spool.ingest(new IngestionRequestBuilder().message(new Message("System failed")).build());
+ * spool.close();
+ * }
+ */
+public class IngestionSpool implements AutoCloseable {
+
+	/**
+	 * Default size of a segment file in bytes
+	 */
+	public static final int DEFAULT_SEGMENT_BYTES = 8 * 1024 * 1024;
+
+	/**
+	 * Default disk quota of the spool in bytes
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	/**
+	 * Default time in milliseconds before a failed request is sent again
+	 */
+	public static final long DEFAULT_RETRY_MILLIS = 5000;
+
+	/**
+	 * Default maximum number of ingestion requests in flight
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+	static final String SEGMENT_PREFIX = "segment-";
+	static final String SEGMENT_SUFFIX = ".spool";
+	static final String LOCK_FILE = "spool.lock";
+
+	/*
+	 * Record layout: payload length, payload CRC32, message count, state and
+	 * the json payload. The length is written last and commits the record. A
+	 * zero length marks the end of a segment.
+	 */
+	private static final int HEADER_BYTES = 13;
+	private static final int CRC_OFFSET = 4;
+	private static final int COUNT_OFFSET = 8;
+	private static final int STATE_OFFSET = 12;
+	private static final byte PENDING = 0;
+	private static final byte ACKNOWLEDGED = 1;
+
+	private final LogInsightClient client;
+	private final Path directory;
+	private final int segmentBytes;
+	private final long maxBytes;
+	private final int maxInFlight;
+	private final ScheduledExecutorService scheduler;
+	private final FileChannel lockChannel;
+	private final FileLock directoryLock;
+
+	private final Object lock = new Object();
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+	private final Set<Entry> pending = new LinkedHashSet<Entry>();
+	private Segment active;
+	private long nextSequence;
+	private long diskBytes;
+	private long pendingMessages;
+	private int inFlight;
+	private boolean available = true;
+	private volatile boolean closed;
+
+	private final AtomicLong ingestedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final static Logger logger = LoggerFactory.getLogger(IngestionSpool.class);
+
+	/**
+	 * Builds an IngestionSpool with default parameters
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param directory
+	 *            directory of the segment files, created if missing
+	 */
+	public IngestionSpool(LogInsightClient client, Path directory) {
+		this(client, directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_BYTES, DEFAULT_RETRY_MILLIS,
+				DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Builds an IngestionSpool and replays the unacknowledged requests found
+	 * in the directory
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param directory
+	 *            directory of the segment files, created if missing
+	 * @param segmentBytes
+	 *            size of a segment file in bytes
+	 * @param maxBytes
+	 *            disk quota of the spool in bytes
+	 * @param retryMillis
+	 *            time in milliseconds before a failed request is sent again
+	 * @param maxInFlight
+	 *            maximum number of ingestion requests in flight
+	 * @throws LogInsightApiException
+	 *             when the directory cannot be opened or is used by another
+	 *             spool
+	 */
+	public IngestionSpool(LogInsightClient client, Path directory, int segmentBytes, long maxBytes,
+			long retryMillis, int maxInFlight) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (null == directory) {
+			throw new IllegalArgumentException("Invalid spool directory");
+		}
+		if (segmentBytes <= HEADER_BYTES || retryMillis <= 0 || maxInFlight <= 0) {
+			throw new IllegalArgumentException("Spool parameters should be positive");
+		}
+		if (maxBytes < segmentBytes) {
+			throw new IllegalArgumentException("Spool quota should hold at least one segment");
+		}
+		this.client = client;
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+		this.maxInFlight = maxInFlight;
+		try {
+			Files.createDirectories(directory);
+			this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new LogInsightApiException("Unable to open the spool directory " + directory, e);
+		}
+		try {
+			this.directoryLock = tryLock(lockChannel);
+			if (null == directoryLock) {
+				throw new LogInsightApiException("Spool directory " + directory + " is in use");
+			}
+			recover();
+		} catch (IOException | RuntimeException e) {
+			closeQuietly(lockChannel);
+			if (e instanceof LogInsightApiException) {
+				throw (LogInsightApiException) e;
+			}
+			throw new LogInsightApiException("Unable to recover the spool directory " + directory, e);
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "loginsight-ingestion-spool");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::retry, 0, retryMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Appends the request to the spool and sends it when LogInsight is
+	 * available
+	 *
+	 * @param request
+	 *            IngestionRequest object with list of messages
+	 * @return IngestionResponse CompletableFuture. Completes once the request
+	 *         is acknowledged, or exceptionally if it is dropped from the spool
+	 *         or still spooled when the spool is closed.
+	 * @throws LogInsightApiException
+	 *             when the spool is closed, the request exceeds the disk quota
+	 *             or cannot be written
+	 */
+	public CompletableFuture<IngestionResponse> ingest(IngestionRequest request) {
+		if (closed) {
+			throw new LogInsightApiException("IngestionSpool is closed");
+		}
+		byte[] payload = request.toJson().getBytes(StandardCharsets.UTF_8);
+		CompletableFuture<IngestionResponse> future = new CompletableFuture<IngestionResponse>();
+		Entry entry;
+		List<Entry> batch;
+		synchronized (lock) {
+			entry = append(payload, request.count(), future);
+			batch = available ? next() : Collections.<Entry> emptyList();
+		}
+		for (Entry next : batch) {
+			send(next, next == entry ? request : null);
+		}
+		return future;
+	}
+
+	/**
+	 * Number of messages acknowledged by LogInsight
+	 *
+	 * @return number of ingested messages
+	 */
+	public long getIngestedCount() {
+		return ingestedCount.get();
+	}
+
+	/**
+	 * Number of messages dropped because the disk quota was reached
+	 *
+	 * @return number of dropped messages
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Number of messages waiting for an acknowledgement
+	 *
+	 * @return number of spooled messages
+	 */
+	public long getPendingCount() {
+		synchronized (lock) {
+			return pendingMessages;
+		}
+	}
+
+	/**
+	 * Size of the segment files
+	 *
+	 * @return disk usage in bytes
+	 */
+	public long getDiskUsage() {
+		synchronized (lock) {
+			return diskBytes;
+		}
+	}
+
+	/**
+	 * Stops sending and flushes the segment files to disk. Unacknowledged
+	 * requests are kept for the next spool opened on the directory. Does not
+	 * close the underlying LogInsightClient.
+	 */
+	@Override
+	public void close() {
+		List<Entry> spooled;
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			scheduler.shutdownNow();
+			for (Segment segment : segments) {
+				segment.buffer.force();
+			}
+			spooled = new ArrayList<Entry>(pending);
+		}
+		try {
+			directoryLock.release();
+		} catch (IOException e) {
+			logger.warn("Unable to release the spool directory lock", e);
+		}
+		closeQuietly(lockChannel);
+		for (Entry entry : spooled) {
+			if (null != entry.future) {
+				entry.future.completeExceptionally(new LogInsightApiException("IngestionSpool closed, request remains spooled"));
+			}
+		}
+	}
+
+	private void recover() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+			nextSequence = Math.max(nextSequence, sequence + 1);
+			Segment segment;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+			}
+			List<Entry> entries = segment.scan();
+			if (segment.records == segment.acknowledged) {
+				delete(segment);
+				continue;
+			}
+			segments.add(segment);
+			diskBytes += segment.buffer.capacity();
+			for (Entry entry : entries) {
+				pending.add(entry);
+				pendingMessages += entry.count;
+			}
+		}
+		if (!pending.isEmpty()) {
+			logger.info("Replaying " + pendingMessages + " spooled messages from " + directory);
+		}
+	}
+
+	private Entry append(byte[] payload, int count, CompletableFuture<IngestionResponse> future) {
+		int recordBytes = HEADER_BYTES + payload.length;
+		if (recordBytes > maxBytes) {
+			throw new LogInsightApiException("Ingestion request exceeds the spool quota");
+		}
+		if (null == active || active.buffer.capacity() - active.position < recordBytes) {
+			roll(recordBytes);
+		}
+		Segment segment = active;
+		int offset = segment.position;
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.putInt(offset + CRC_OFFSET, (int) crc.getValue());
+		buffer.putInt(offset + COUNT_OFFSET, count);
+		buffer.put(offset + STATE_OFFSET, PENDING);
+		buffer.position(offset + HEADER_BYTES);
+		buffer.put(payload);
+		buffer.putInt(offset, payload.length);
+		segment.position += recordBytes;
+		segment.records++;
+		Entry entry = new Entry(segment, offset, payload.length, count, future);
+		pending.add(entry);
+		pendingMessages += count;
+		return entry;
+	}
+
+	private void roll(int recordBytes) {
+		if (null != active) {
+			active.buffer.force();
+			Segment sealed = active;
+			active = null;
+			if (sealed.records == sealed.acknowledged) {
+				remove(sealed);
+			}
+		}
+		int capacity = Math.max(segmentBytes, recordBytes);
+		while (!segments.isEmpty() && diskBytes + capacity > maxBytes) {
+			drop(segments.peekFirst());
+		}
+		Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			active = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+		} catch (IOException e) {
+			throw new LogInsightApiException("Unable to create the spool segment " + file, e);
+		}
+		segments.add(active);
+		diskBytes += capacity;
+	}
+
+	private void drop(Segment segment) {
+		List<Entry> dropped = new ArrayList<Entry>();
+		long messages = 0;
+		for (Iterator<Entry> it = pending.iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if (entry.segment == segment) {
+				it.remove();
+				dropped.add(entry);
+				messages += entry.count;
+			}
+		}
+		pendingMessages -= messages;
+		droppedCount.addAndGet(messages);
+		remove(segment);
+		logger.warn("Ingestion spool quota reached, dropped " + messages + " messages");
+		for (Entry entry : dropped) {
+			if (null != entry.future) {
+				entry.future.completeExceptionally(new LogInsightApiException("Request dropped from the ingestion spool"));
+			}
+		}
+	}
+
+	private void remove(Segment segment) {
+		segments.remove(segment);
+		diskBytes -= segment.buffer.capacity();
+		if (segment == active) {
+			active = null;
+		}
+		delete(segment);
+	}
+
+	private void delete(Segment segment) {
+		segment.deleted = true;
+		try {
+			Files.deleteIfExists(segment.file);
+		} catch (IOException e) {
+			logger.warn("Unable to delete the spool segment " + segment.file, e);
+		}
+	}
+
+	/**
+	 * Selects the requests to send. Only one request is in flight while
+	 * LogInsight is unavailable.
+	 */
+	private List<Entry> next() {
+		if (closed) {
+			return Collections.emptyList();
+		}
+		int limit = available ? maxInFlight : 1;
+		List<Entry> batch = new ArrayList<Entry>();
+		for (Entry entry : pending) {
+			if (inFlight >= limit) {
+				break;
+			}
+			if (!entry.sending) {
+				entry.sending = true;
+				inFlight++;
+				batch.add(entry);
+			}
+		}
+		return batch;
+	}
+
+	private void retry() {
+		List<Entry> batch;
+		synchronized (lock) {
+			batch = next();
+		}
+		for (Entry entry : batch) {
+			send(entry, null);
+		}
+	}
+
+	private void send(Entry entry, IngestionRequest request) {
+		CompletableFuture<IngestionResponse> responseFuture;
+		try {
+			responseFuture = client.ingest(null != request ? request : entry.read());
+		} catch (IOException e) {
+			logger.error("Unable to read a spooled request, discarding it", e);
+			completed(entry, null, e, true);
+			return;
+		} catch (RuntimeException e) {
+			responseFuture = new CompletableFuture<IngestionResponse>();
+			responseFuture.completeExceptionally(e);
+		}
+		responseFuture.whenComplete((response, ex) -> completed(entry, response, ex, false));
+	}
+
+	private void completed(Entry entry, IngestionResponse response, Throwable ex, boolean discard) {
+		boolean acknowledged = discard || (null == ex && null != response && response.getIngested() >= entry.count);
+		List<Entry> batch = Collections.emptyList();
+		synchronized (lock) {
+			inFlight--;
+			entry.sending = false;
+			if (acknowledged) {
+				available = true;
+				acknowledge(entry);
+				batch = next();
+			} else if (available) {
+				available = false;
+				if (null != ex) {
+					logger.warn("LogInsight ingestion failed, spooling requests", ex);
+				} else {
+					logger.warn("LogInsight ingested " + (null == response ? 0 : response.getIngested()) + " of "
+							+ entry.count + " messages, spooling requests");
+				}
+			}
+		}
+		if (acknowledged && !discard) {
+			ingestedCount.addAndGet(entry.count);
+			if (null != entry.future) {
+				entry.future.complete(response);
+			}
+		} else if (discard && null != entry.future) {
+			entry.future.completeExceptionally(ex);
+		}
+		for (Entry next : batch) {
+			send(next, null);
+		}
+	}
+
+	private void acknowledge(Entry entry) {
+		if (!pending.remove(entry)) {
+			return;
+		}
+		pendingMessages -= entry.count;
+		Segment segment = entry.segment;
+		if (segment.deleted) {
+			return;
+		}
+		segment.buffer.put(entry.offset + STATE_OFFSET, ACKNOWLEDGED);
+		segment.acknowledged++;
+		if (segment != active && segment.records == segment.acknowledged) {
+			remove(segment);
+		}
+	}
+
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// locked by this process
+			return null;
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.warn("Unable to close the spool directory lock", e);
+		}
+	}
+
+	/**
+	 * Memory-mapped segment file. The mapping stays valid after the file
+	 * channel is closed.
+	 */
+	private static final class Segment {
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private int position;
+		private int records;
+		private int acknowledged;
+		private boolean deleted;
+
+		private Segment(Path file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Reads the records of a segment written by a previous spool. Stops at
+		 * the first incomplete or corrupted record.
+		 *
+		 * @return unacknowledged records
+		 */
+		private List<Entry> scan() {
+			List<Entry> entries = new ArrayList<Entry>();
+			int capacity = buffer.capacity();
+			while (position + HEADER_BYTES <= capacity) {
+				int length = buffer.getInt(position);
+				if (length <= 0 || position + HEADER_BYTES + length > capacity) {
+					break;
+				}
+				byte[] payload = new byte[length];
+				ByteBuffer view = buffer.duplicate();
+				view.position(position + HEADER_BYTES);
+				view.get(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if (buffer.getInt(position + CRC_OFFSET) != (int) crc.getValue()) {
+					logger.warn("Corrupted record in spool segment " + file + " at offset " + position);
+					break;
+				}
+				records++;
+				if (buffer.get(position + STATE_OFFSET) == ACKNOWLEDGED) {
+					acknowledged++;
+				} else {
+					entries.add(new Entry(this, position, length, buffer.getInt(position + COUNT_OFFSET), null));
+				}
+				position += HEADER_BYTES + length;
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Spooled request. Only its location is kept in memory.
+	 */
+	private static final class Entry {
+		private final Segment segment;
+		private final int offset;
+		private final int length;
+		private final int count;
+		private final CompletableFuture<IngestionResponse> future;
+		private boolean sending;
+
+		private Entry(Segment segment, int offset, int length, int count,
+				CompletableFuture<IngestionResponse> future) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.count = count;
+			this.future = future;
+		}
+
+		private IngestionRequest read() throws IOException {
+			byte[] payload = new byte[length];
+			ByteBuffer view = segment.buffer.duplicate();
+			view.position(offset + HEADER_BYTES);
+			view.get(payload);
+			return JsonCodec.reader(IngestionRequest.class).readValue(payload);
+		}
+	}
+}
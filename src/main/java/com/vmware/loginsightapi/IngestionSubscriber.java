@@ -0,0 +1,257 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+
+/**
+ * Reactive Streams subscriber ingesting the received messages in batches. <br>
+ *
+ * The subscriber requests at most {@code batchSize * maxInFlight} messages
+ * ahead, and requests more only as the batches are acknowledged by
+ * LogInsight, so the upstream is slowed down to the ingestion rate. A batch
+ * is sent once it is full, or when its oldest message has waited for the
+ * linger time. <br>
+ * <br>
+ * When a batch fails the subscription is cancelled and
+ * {@link #whenCompleted()} completes exceptionally. When the upstream
+ * completes or fails, the pending messages are sent first. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * IngestionSubscriber sink = new IngestionSubscriber(client);
+ * flux.subscribe(sink);
+ * sink.whenCompleted().join();
+ * }
+ */
+public class IngestionSubscriber implements Subscriber<Message> {
+
+	/**
+	 * Default maximum number of messages in a batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Default maximum number of batches in flight
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+	/**
+	 * Default time in milliseconds a message may wait before its batch is sent
+	 */
+	public static final long DEFAULT_LINGER_MILLIS = 1000;
+
+	private final LogInsightClient client;
+	private final int batchSize;
+	private final int maxInFlight;
+	private final BatchAccumulator batches;
+
+	private final Object lock = new Object();
+	private final Object subscriptionLock = new Object();
+	private Subscription subscription;
+	private int inFlight;
+	private boolean upstreamDone;
+	private boolean done;
+	private Throwable failure;
+
+	private final CompletableFuture<Long> completion = new CompletableFuture<Long>();
+	private final AtomicLong ingestedCount = new AtomicLong();
+
+	private final static Logger logger = LoggerFactory.getLogger(IngestionSubscriber.class);
+
+	/**
+	 * Builds an IngestionSubscriber with default parameters
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 */
+	public IngestionSubscriber(LogInsightClient client) {
+		this(client, DEFAULT_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT, DEFAULT_LINGER_MILLIS);
+	}
+
+	/**
+	 * Builds an IngestionSubscriber
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param batchSize
+	 *            maximum number of messages in a batch
+	 * @param maxInFlight
+	 *            maximum number of batches in flight
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 */
+	public IngestionSubscriber(LogInsightClient client, int batchSize, int maxInFlight, long lingerMillis) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (batchSize <= 0 || maxInFlight <= 0 || lingerMillis <= 0) {
+			throw new IllegalArgumentException("Batching parameters should be positive");
+		}
+		this.client = client;
+		this.batchSize = batchSize;
+		this.maxInFlight = maxInFlight;
+		this.batches = new BatchAccumulator(batchSize, Integer.MAX_VALUE, lingerMillis,
+				"loginsight-ingestion-subscriber", this::send);
+	}
+
+	/**
+	 * Future completed once the upstream is done and all the batches are
+	 * acknowledged
+	 *
+	 * @return number of ingested messages, or the upstream or ingestion
+	 *         failure
+	 */
+	public CompletableFuture<Long> whenCompleted() {
+		return completion;
+	}
+
+	/**
+	 * Number of messages acknowledged by LogInsight
+	 *
+	 * @return number of ingested messages
+	 */
+	public long getIngestedCount() {
+		return ingestedCount.get();
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+		if (null == subscription) {
+			throw new NullPointerException("Subscription is null");
+		}
+		synchronized (lock) {
+			if (null != this.subscription || upstreamDone) {
+				subscription.cancel();
+				return;
+			}
+			this.subscription = subscription;
+		}
+		request((long) batchSize * maxInFlight);
+	}
+
+	@Override
+	public void onNext(Message message) {
+		if (null == message) {
+			throw new NullPointerException("Message is null");
+		}
+		synchronized (lock) {
+			if (upstreamDone || null != failure) {
+				return;
+			}
+		}
+		batches.add(message);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		if (null == throwable) {
+			throw new NullPointerException("Throwable is null");
+		}
+		finish(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		finish(null);
+	}
+
+	private void finish(Throwable upstreamFailure) {
+		synchronized (lock) {
+			if (upstreamDone) {
+				return;
+			}
+			upstreamDone = true;
+			if (null == failure) {
+				failure = upstreamFailure;
+			}
+		}
+		// the pending messages are sent before completing
+		batches.close();
+		completeIfDone();
+	}
+
+	private void send(List<Message> batch) {
+		synchronized (lock) {
+			if (done) {
+				return;
+			}
+			inFlight++;
+		}
+		CompletableFuture<IngestionResponse> responseFuture;
+		try {
+			responseFuture = client.ingest(new IngestionRequest(batch));
+		} catch (RuntimeException e) {
+			responseFuture = new CompletableFuture<IngestionResponse>();
+			responseFuture.completeExceptionally(e);
+		}
+		responseFuture.whenComplete((response, ex) -> acknowledged(batch.size(), response, ex));
+	}
+
+	private void acknowledged(int count, IngestionResponse response, Throwable ex) {
+		boolean requestMore;
+		boolean cancel = false;
+		synchronized (lock) {
+			inFlight--;
+			if (null != ex) {
+				logger.error("Unable to ingest a batch of " + count + " messages", ex);
+				cancel = null == failure && !upstreamDone;
+				if (null == failure) {
+					failure = ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex;
+				}
+			} else if (null != response) {
+				ingestedCount.addAndGet(response.getIngested());
+			}
+			requestMore = null == failure && !upstreamDone;
+		}
+		if (cancel) {
+			synchronized (subscriptionLock) {
+				subscription.cancel();
+			}
+		} else if (requestMore) {
+			request(count);
+		}
+		completeIfDone();
+	}
+
+	private void request(long n) {
+		synchronized (subscriptionLock) {
+			subscription.request(n);
+		}
+	}
+
+	private void completeIfDone() {
+		Throwable result;
+		synchronized (lock) {
+			if (inFlight > 0 || (!upstreamDone && null == failure) || done) {
+				return;
+			}
+			done = true;
+			result = failure;
+		}
+		batches.discard();
+		if (null == result) {
+			completion.complete(ingestedCount.get());
+		} else {
+			completion.completeExceptionally(result);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.AggregateResponseBin;
+import com.vmware.loginsightapi.core.FieldConstraint;
+
+/**
+ * Rolling time series of an aggregate query over the last window of time.
+ * <br>
+ *
+ * The first refresh queries the whole window. Later refreshes only query the
+ * bins from the start of the trailing partial bin of the previous refresh,
+ * replace those bins and drop the bins older than the window, so each
+ * refresh downloads and parses a few bins instead of the whole window. The
+ * window start is aligned on the bin width, so the bins of successive
+ * queries line up. <br>
+ * <br>
+ * Only time bins are supported, the query must not have GroupBy clauses.
+ * <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * LiveAggregate live = new LiveAggregate(client, new AggregateQuery().binWidth(60000), 3600000);
+ * AggregateResponse lastHour = live.refresh().get();
+ * }
+ */
+public class LiveAggregate {
+
+	private final LogInsightClient client;
+	private final AggregateQuery query;
+	private final long window;
+	private final long binWidth;
+	private final LongSupplier clock;
+
+	private List<AggregateResponseBin> bins = Collections.emptyList();
+	private long fetchFrom = Long.MIN_VALUE;
+	private CompletableFuture<AggregateResponse> refreshing;
+	private long fetchedBinCount;
+
+	private final static Logger logger = LoggerFactory.getLogger(LiveAggregate.class);
+
+	/**
+	 * Builds a rolling aggregate over the last window of time
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param query
+	 *            aggregate query, without timestamp range
+	 * @param window
+	 *            duration of the window in milliseconds
+	 */
+	public LiveAggregate(LogInsightClient client, AggregateQuery query, long window) {
+		this(client, query, window, System::currentTimeMillis);
+	}
+
+	/**
+	 * Builds a rolling aggregate over the last window of time
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param query
+	 *            aggregate query, without timestamp range
+	 * @param window
+	 *            duration of the window in milliseconds
+	 * @param clock
+	 *            current time in milliseconds since epoch
+	 */
+	public LiveAggregate(LogInsightClient client, AggregateQuery query, long window, LongSupplier clock) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (null == query || query.getBinWidth() <= 0 || !query.getGroupBy().isEmpty()) {
+			throw new IllegalArgumentException("Invalid query, only time bins are supported");
+		}
+		if (window < query.getBinWidth()) {
+			throw new IllegalArgumentException("Window should be larger than the bin width");
+		}
+		this.client = client;
+		this.query = query;
+		this.window = window;
+		this.binWidth = query.getBinWidth();
+		this.clock = clock;
+	}
+
+	/**
+	 * Queries the bins since the last refresh and returns the updated series.
+	 * Concurrent calls share the refresh in flight.
+	 *
+	 * @return AggregateResponse CompletableFuture with the bins of the window,
+	 *         oldest first. When a response is incomplete, the next refresh
+	 *         queries the same bins again.
+	 */
+	public synchronized CompletableFuture<AggregateResponse> refresh() {
+		if (null != refreshing) {
+			return refreshing;
+		}
+		long now = clock.getAsLong();
+		long windowStart = align(now - window);
+		long from = Math.max(windowStart, fetchFrom);
+		AggregateQuery incremental = new AggregateQuery().binWidth(query.getBinWidth())
+				.aggregator(query.getAggregationFunction(), query.getAggregationField())
+				.setOrderBy(query.getOrderBy());
+		incremental.limit(query.getLimit()).timeout(query.getTimeout())
+				.setContentPackFields(new ArrayList<String>(query.getContentPackFields()));
+		List<FieldConstraint> constraints = new ArrayList<FieldConstraint>(query.getConstraints());
+		constraints.add(new FieldConstraint(MessageQueryIterator.TIMESTAMP_FIELD, FieldConstraint.Operator.GE, from));
+		incremental.setConstraints(constraints);
+		CompletableFuture<AggregateResponse> result = client.aggregateQuery(incremental.toUrlString())
+				.thenApply(response -> splice(response, windowStart, from, now));
+		refreshing = result;
+		result.whenComplete((response, ex) -> {
+			synchronized (this) {
+				refreshing = null;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Bins of the last refresh, oldest first
+	 *
+	 * @return unmodifiable list of bins
+	 */
+	public synchronized List<AggregateResponseBin> getBins() {
+		return bins;
+	}
+
+	/**
+	 * Number of bins downloaded by all the refreshes
+	 *
+	 * @return fetched bin count
+	 */
+	public synchronized long getFetchedBinCount() {
+		return fetchedBinCount;
+	}
+
+	private synchronized AggregateResponse splice(AggregateResponse response, long windowStart, long from, long now) {
+		List<AggregateResponseBin> fetched = null == response.getBins() ? Collections.<AggregateResponseBin> emptyList()
+				: response.getBins();
+		List<AggregateResponseBin> series = new ArrayList<AggregateResponseBin>(bins.size() + fetched.size());
+		for (AggregateResponseBin bin : bins) {
+			if (null != bin.getMinTimestamp() && bin.getMinTimestamp() >= windowStart && bin.getMinTimestamp() < from) {
+				series.add(bin);
+			}
+		}
+		for (AggregateResponseBin bin : fetched) {
+			if (null != bin.getMinTimestamp()) {
+				series.add(bin);
+			}
+		}
+		series.sort(Comparator.comparing(AggregateResponseBin::getMinTimestamp));
+		fetchedBinCount += fetched.size();
+		if (response.isComplete()) {
+			// the bin holding now is partial and fetched again on the next
+			// refresh
+			fetchFrom = align(now);
+		} else {
+			logger.debug("Incomplete aggregate response, fetching again from " + from);
+		}
+		bins = Collections.unmodifiableList(series);
+
+		AggregateResponse live = new AggregateResponse();
+		live.setComplete(response.isComplete());
+		live.setDuration(response.getDuration());
+		live.setBins(bins);
+		return live;
+	}
+
+	private long align(long timestamp) {
+		return timestamp - Math.floorMod(timestamp, binWidth);
+	}
+}
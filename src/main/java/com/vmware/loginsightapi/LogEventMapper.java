@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import com.vmware.loginsightapi.core.MessageSlot;
+
+/**
+ * Maps the events of the logging frameworks to messages, the same way for
+ * every appender. <br>
+ *
+ * The logger, level and thread become the fields {@value #LOGGER_FIELD},
+ * {@value #LEVEL_FIELD} and {@value #THREAD_FIELD}, followed by the entries of
+ * the mapped diagnostic context. The stack trace, if any, follows the text on
+ * a new line. The events are written into a {@link MessageSlot} of the
+ * {@link LogShipper}, so that no message or field is allocated per event.
+ */
+public final class LogEventMapper {
+
+	/**
+	 * Field holding the logger name
+	 */
+	public static final String LOGGER_FIELD = "logger";
+
+	/**
+	 * Field holding the level
+	 */
+	public static final String LEVEL_FIELD = "level";
+
+	/**
+	 * Field holding the thread name
+	 */
+	public static final String THREAD_FIELD = "thread";
+
+	private static final String[] INTERNAL_LOGGERS = { "com.vmware.loginsightapi", "org.apache.http" };
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private LogEventMapper() {
+	}
+
+	/**
+	 * Tells whether the events of a logger come from this library or from the
+	 * http client. Such events are not shipped, as each batch would log more
+	 * events.
+	 *
+	 * @param loggerName
+	 *            name of the logger
+	 * @return true if the events should not be shipped
+	 */
+	public static boolean isInternal(String loggerName) {
+		if (null == loggerName) {
+			return false;
+		}
+		for (String internal : INTERNAL_LOGGERS) {
+			if (loggerName.startsWith(internal)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the message of a log event into a slot
+	 *
+	 * @param slot
+	 *            empty MessageSlot
+	 * @param text
+	 *            formatted text of the event
+	 * @param stackTrace
+	 *            stack trace of the exception, may be null
+	 * @param timestamp
+	 *            time of the event in milliseconds
+	 * @param loggerName
+	 *            name of the logger
+	 * @param level
+	 *            name of the level
+	 * @param threadName
+	 *            name of the thread
+	 * @param context
+	 *            mapped diagnostic context, may be null
+	 */
+	public static void write(MessageSlot slot, String text, String stackTrace, long timestamp, String loggerName,
+			String level, String threadName, Map<String, String> context) {
+		if (null != stackTrace) {
+			text = new StringBuilder(text.length() + LINE_SEPARATOR.length() + stackTrace.length()).append(text)
+					.append(LINE_SEPARATOR).append(stackTrace).toString();
+		}
+		slot.setText(text);
+		slot.setTimestamp(timestamp);
+		slot.addField(LOGGER_FIELD, loggerName);
+		slot.addField(LEVEL_FIELD, level);
+		slot.addField(THREAD_FIELD, threadName);
+		if (null != context && !context.isEmpty()) {
+			for (Map.Entry<String, String> entry : context.entrySet()) {
+				if (null != entry.getValue()) {
+					slot.addField(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Renders the stack trace of an exception
+	 *
+	 * @param thrown
+	 *            exception, may be null
+	 * @return stack trace, or null without exception
+	 */
+	public static String stackTrace(Throwable thrown) {
+		return null == thrown ? null : ExceptionUtils.getStackTrace(thrown);
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+import com.vmware.loginsightapi.core.MessageSlot;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+/**
+ * Log4j2 appender shipping the log events to LogInsight through a
+ * {@link LogShipper}. <br>
+ *
+ * Each event becomes a message with the logger, level and thread as fields,
+ * along with the entries of the thread context map. The text is formatted by
+ * the layout when one is configured, otherwise it is the formatted message
+ * followed by the stack trace of the exception. Events of this library and of
+ * the http client are not shipped. <br>
+ * <br>
+ * <b> Sample Configuration: </b> <br>
+ * {@code
+ * <LogInsight name="loginsight" host="loginsight.example.com" user="admin"
+ *     password="secret" batchSize="500" lingerMillis="1000" overflowPolicy="drop"/>
+ * }
+ */
+@Plugin(name = "LogInsight", category = "Core", elementType = "appender", printObject = true)
+public class LogInsightAppender extends AbstractAppender {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient LogShipper shipper;
+	private final transient LogInsightClient client;
+	private final transient BiConsumer<MessageSlot, LogEvent> writer = this::write;
+
+	/**
+	 * Builds an appender shipping through the shipper
+	 *
+	 * @param name
+	 *            name of the appender
+	 * @param filter
+	 *            filter of the events, may be null
+	 * @param layout
+	 *            layout of the text, may be null
+	 * @param ignoreExceptions
+	 *            false to propagate the exceptions to the caller
+	 * @param shipper
+	 *            LogShipper sending the messages
+	 * @param client
+	 *            LogInsightClient closed with the appender, may be null
+	 */
+	public LogInsightAppender(String name, Filter filter, Layout<? extends Serializable> layout,
+			boolean ignoreExceptions, LogShipper shipper, LogInsightClient client) {
+		super(name, filter, layout, ignoreExceptions);
+		if (null == shipper) {
+			throw new IllegalArgumentException("Invalid shipper");
+		}
+		this.shipper = shipper;
+		this.client = client;
+	}
+
+	/**
+	 * Builds the appender from the log4j2 configuration. The client is
+	 * configured from the configuration file when one is given, otherwise from
+	 * the host, user and password.
+	 *
+	 * @param name
+	 *            name of the appender
+	 * @param configFile
+	 *            LogInsight configuration file, may be null
+	 * @param host
+	 *            LogInsight host
+	 * @param user
+	 *            LogInsight user
+	 * @param password
+	 *            LogInsight password
+	 * @param ingestionPort
+	 *            ingestion port, may be null
+	 * @param bufferSize
+	 *            capacity of the ring buffer
+	 * @param batchSize
+	 *            maximum number of messages in a batch
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 * @param maxInFlight
+	 *            maximum number of ingestion requests in flight
+	 * @param overflowPolicy
+	 *            block, reject or drop
+	 * @param blockTimeoutMillis
+	 *            maximum time in milliseconds the block policy waits
+	 * @param maxRetries
+	 *            number of times a failed batch is sent again
+	 * @param retryBackoffMillis
+	 *            time in milliseconds before the first retry
+	 * @param ignoreExceptions
+	 *            false to propagate the exceptions to the caller
+	 * @param layout
+	 *            layout of the text, may be null
+	 * @param filter
+	 *            filter of the events, may be null
+	 * @return LogInsightAppender, or null when the configuration is invalid
+	 */
+	@PluginFactory
+	public static LogInsightAppender createAppender(@PluginAttribute("name") String name,
+			@PluginAttribute("configFile") String configFile, @PluginAttribute("host") String host,
+			@PluginAttribute("user") String user,
+			@PluginAttribute(value = "password", sensitive = true) String password,
+			@PluginAttribute("ingestionPort") String ingestionPort,
+			@PluginAttribute(value = "bufferSize", defaultInt = LogShipper.DEFAULT_BUFFER_SIZE) int bufferSize,
+			@PluginAttribute(value = "batchSize", defaultInt = LogShipper.DEFAULT_BATCH_SIZE) int batchSize,
+			@PluginAttribute(value = "lingerMillis", defaultLong = LogShipper.DEFAULT_LINGER_MILLIS) long lingerMillis,
+			@PluginAttribute(value = "maxInFlight", defaultInt = LogShipper.DEFAULT_MAX_IN_FLIGHT) int maxInFlight,
+			@PluginAttribute(value = "overflowPolicy", defaultString = "drop") String overflowPolicy,
+			@PluginAttribute(value = "blockTimeoutMillis", defaultLong = LogShipper.DEFAULT_BLOCK_TIMEOUT_MILLIS) long blockTimeoutMillis,
+			@PluginAttribute(value = "maxRetries", defaultInt = LogShipper.DEFAULT_MAX_RETRIES) int maxRetries,
+			@PluginAttribute(value = "retryBackoffMillis", defaultLong = LogShipper.DEFAULT_RETRY_BACKOFF_MILLIS) long retryBackoffMillis,
+			@PluginAttribute(value = "ignoreExceptions", defaultBoolean = true) boolean ignoreExceptions,
+			@PluginElement("Layout") Layout<? extends Serializable> layout,
+			@PluginElement("Filter") Filter filter) {
+		if (StringUtils.isEmpty(name)) {
+			LOGGER.error("No name provided for LogInsightAppender");
+			return null;
+		}
+		LogInsightClient client = null;
+		try {
+			Configuration config = StringUtils.isNotEmpty(configFile) ? Configuration.buildFromConfig(configFile)
+					: new Configuration(host, user, password);
+			if (StringUtils.isNotEmpty(ingestionPort)) {
+				config.setIngestionPort(ingestionPort);
+			}
+			client = LogInsightClient.open(config);
+			LogShipper shipper = new LogShipper(client, bufferSize, batchSize, lingerMillis, maxInFlight,
+					OverflowPolicy.fromString(overflowPolicy), blockTimeoutMillis, maxRetries, retryBackoffMillis);
+			return new LogInsightAppender(name, filter, layout, ignoreExceptions, shipper, client);
+		} catch (RuntimeException e) {
+			LOGGER.error("Unable to create LogInsightAppender " + name, e);
+			closeQuietly(client);
+			return null;
+		}
+	}
+
+	@Override
+	public void append(LogEvent event) {
+		if (LogEventMapper.isInternal(event.getLoggerName())) {
+			return;
+		}
+		shipper.offer(writer, event);
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		shipper.close();
+		closeQuietly(client);
+	}
+
+	/**
+	 * Shipper of this appender, exposing the shipped and dropped counts
+	 *
+	 * @return LogShipper of this appender
+	 */
+	public LogShipper getShipper() {
+		return shipper;
+	}
+
+	private void write(MessageSlot slot, LogEvent event) {
+		Layout<? extends Serializable> layout = getLayout();
+		if (null != layout) {
+			LogEventMapper.write(slot, String.valueOf(layout.toSerializable(event)), null, event.getTimeMillis(),
+					event.getLoggerName(), event.getLevel().name(), event.getThreadName(), event.getContextMap());
+			return;
+		}
+		LogEventMapper.write(slot, event.getMessage().getFormattedMessage(),
+				LogEventMapper.stackTrace(event.getThrown()), event.getTimeMillis(), event.getLoggerName(),
+				event.getLevel().name(), event.getThreadName(), event.getContextMap());
+	}
+
+	private static void closeQuietly(LogInsightClient client) {
+		if (null != client) {
+			try {
+				client.close();
+			} catch (Exception e) {
+				LOGGER.warn("Unable to close the LogInsightClient", e);
+			}
+		}
+	}
+}
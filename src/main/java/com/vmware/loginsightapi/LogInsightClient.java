@@ -13,31 +13,69 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.vmware.loginsightapi.core.AggregateColumns;
 import com.vmware.loginsightapi.core.AggregateResponse;
 import com.vmware.loginsightapi.core.AuthInfo;
+import com.vmware.loginsightapi.core.ClientMetrics;
+import com.vmware.loginsightapi.core.ClientMetrics.Operation;
 import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionRejectedException;
 import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.JsonCodec;
 import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.LoadBalancer;
 import com.vmware.loginsightapi.core.LogInsightConnectionStrategy;
+import com.vmware.loginsightapi.core.Message;
 import com.vmware.loginsightapi.core.MessageQueryResponse;
+import com.vmware.loginsightapi.core.Node;
+import com.vmware.loginsightapi.core.NodePool;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+import com.vmware.loginsightapi.util.AggregateQueryCache;
 import com.vmware.loginsightapi.util.AsyncLogInsightConnectionStrategy;
+import com.vmware.loginsightapi.util.EwmaLoadBalancer;
+import com.vmware.loginsightapi.util.HdrClientMetrics;
+import com.vmware.loginsightapi.util.HttpCompression;
+import com.vmware.loginsightapi.util.IngestionBudget;
+import com.vmware.loginsightapi.util.IngestionRequestEntity;
+import com.vmware.loginsightapi.util.LeastOutstandingLoadBalancer;
+import com.vmware.loginsightapi.util.MessageStreamConsumer;
+import com.vmware.loginsightapi.util.NodeLease;
+import com.vmware.loginsightapi.util.RoundRobinLoadBalancer;
+import com.vmware.loginsightapi.util.SingleFlight;
+import com.vmware.loginsightapi.util.WireLogger;
 
 /**
  * LogInsight client class providing mechanisms to connect to LogInsight, Query
@@ -61,13 +99,56 @@ public class LogInsightClient implements AutoCloseable {
 	 */
 	public static final String API_URL_INGESTION = "/api/v1/messages/ingest/";
 
-	private String sessionId;
+	/**
+	 * Header carrying the LogInsight session id
+	 */
+	public static final String SESSION_HEADER = "X-li-session-id";
+
+	/**
+	 * Status code returned by LogInsight for an expired session
+	 */
+	public static final int STATUS_LOGIN_TIMEOUT = 440;
+
+	/**
+	 * Relative url of the version API, used to probe the cluster nodes
+	 */
+	public static final String API_URL_VERSION_PATH = "/api/v1/version";
+
+	/**
+	 * Status of the ingestion response of a request dropped by the ingestion
+	 * budget
+	 */
+	public static final String INGESTION_STATUS_DROPPED = "dropped";
+
+	/**
+	 * Name prefix of the I/O dispatcher threads of the http client, which
+	 * deliver the responses and run the completion of the futures
+	 */
+	public static final String IO_DISPATCHER_THREAD_NAME = "I/O dispatcher";
+
+	private final SessionManager sessionManager = new SessionManager(this::authenticate);
 
 	private LogInsightConnectionStrategy connectionStrategy;
 	private Configuration config;
 
 	private final CloseableHttpAsyncClient asyncHttpClient;
 
+	private final NodePool nodePool;
+
+	private final IngestionBudget ingestionBudget;
+
+	private final AggregateQueryCache aggregateQueryCache;
+
+	private final SingleFlight<MessageQueryResponse> messageQueryFlights;
+
+	private final SingleFlight<AggregateResponse> aggregateQueryFlights;
+
+	private final ClientMetrics metrics;
+
+	private final WireLogger wireLogger;
+
+	private ExecutorService streamingExecutor;
+
 	private final static Logger logger = LoggerFactory.getLogger(LogInsightClient.class);
 
 	/**
@@ -78,9 +159,7 @@ public class LogInsightClient implements AutoCloseable {
 	 * @see Configuration
 	 */
 	public LogInsightClient(Configuration config) {
-		this.connectionStrategy = new AsyncLogInsightConnectionStrategy();
-		this.config = config;
-		asyncHttpClient = connectionStrategy.getHttpClient();
+		this(new AsyncLogInsightConnectionStrategy(config), config);
 		this.connect();
 	}
 
@@ -95,9 +174,7 @@ public class LogInsightClient implements AutoCloseable {
 	 */
 	public LogInsightClient(Configuration config,
 			LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy) {
-		this.connectionStrategy = connectionStrategy;
-		this.config = config;
-		asyncHttpClient = connectionStrategy.getHttpClient();
+		this(connectionStrategy, config);
 		this.connect();
 	}
 
@@ -113,10 +190,7 @@ public class LogInsightClient implements AutoCloseable {
 	 * 
 	 */
 	public LogInsightClient(String host, String user, String password) {
-		this.connectionStrategy = new AsyncLogInsightConnectionStrategy();
-		this.config = new Configuration(host, user, password);
-		asyncHttpClient = connectionStrategy.getHttpClient();
-		this.connect();
+		this(new Configuration(host, user, password));
 	}
 
 	/**
@@ -135,10 +209,115 @@ public class LogInsightClient implements AutoCloseable {
 	 */
 	public LogInsightClient(String host, String user, String password,
 			LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy) {
+		this(new Configuration(host, user, password), connectionStrategy);
+	}
+
+	/**
+	 * Builds LogInsightClient object without authenticating. Every other
+	 * constructor delegates to this one.
+	 * 
+	 * @param connectionStrategy
+	 *            Connection strategy to use
+	 * @param config
+	 *            Configuration object
+	 */
+	private LogInsightClient(LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy,
+			Configuration config) {
 		this.connectionStrategy = connectionStrategy;
-		this.config = new Configuration(host, user, password);
+		this.config = config;
 		asyncHttpClient = connectionStrategy.getHttpClient();
-		this.connect();
+		nodePool = buildNodePool();
+		ingestionBudget = buildIngestionBudget();
+		aggregateQueryCache = buildAggregateQueryCache();
+		messageQueryFlights = config.isQueryCoalescing() ? new SingleFlight<MessageQueryResponse>() : null;
+		aggregateQueryFlights = config.isQueryCoalescing() ? new SingleFlight<AggregateResponse>() : null;
+		metrics = buildMetrics(config.getMetrics());
+		wireLogger = new WireLogger(config.getWireLogSampleRate(), config.getWireLogMaxLength());
+	}
+
+	/**
+	 * Builds a LogInsightClient and starts the authentication without blocking
+	 * the calling thread. Queries issued before the session is established
+	 * are queued and sent once it is established.
+	 * 
+	 * @param config
+	 *            Configuration object
+	 * @return LogInsightClient object, connecting
+	 * @see #whenConnected()
+	 */
+	public static LogInsightClient open(Configuration config) {
+		return open(config, new AsyncLogInsightConnectionStrategy(config));
+	}
+
+	/**
+	 * Builds a LogInsightClient with the connection strategy and starts the
+	 * authentication without blocking the calling thread. Queries issued
+	 * before the session is established are queued and sent once it is
+	 * established.
+	 * 
+	 * @param config
+	 *            Configuration object
+	 * @param connectionStrategy
+	 *            Connection strategy to use
+	 * @return LogInsightClient object, connecting
+	 * @see #whenConnected()
+	 */
+	public static LogInsightClient open(Configuration config,
+			LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy) {
+		LogInsightClient client = new LogInsightClient(connectionStrategy, config);
+		client.sessionManager.session();
+		return client;
+	}
+
+	/**
+	 * Builds a LogInsightClient without blocking the calling thread. The
+	 * returned future completes once the client is authenticated. When the
+	 * authentication fails, the client is closed.
+	 * 
+	 * @param config
+	 *            Configuration object
+	 * @return LogInsightClient CompletableFuture, completed exceptionally with
+	 *         AuthFailure when the authentication fails
+	 */
+	public static CompletableFuture<LogInsightClient> connectAsync(Configuration config) {
+		return connectAsync(config, new AsyncLogInsightConnectionStrategy(config));
+	}
+
+	/**
+	 * Builds a LogInsightClient with the connection strategy without blocking
+	 * the calling thread. The returned future completes once the client is
+	 * authenticated. When the authentication fails, the client is closed.
+	 * 
+	 * @param config
+	 *            Configuration object
+	 * @param connectionStrategy
+	 *            Connection strategy to use
+	 * @return LogInsightClient CompletableFuture, completed exceptionally with
+	 *         AuthFailure when the authentication fails
+	 */
+	public static CompletableFuture<LogInsightClient> connectAsync(Configuration config,
+			LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy) {
+		LogInsightClient client = open(config, connectionStrategy);
+		// the caller never receives a client which failed to connect
+		return client.whenConnected().whenComplete((connected, ex) -> {
+			if (null != ex) {
+				client.stopAsyncHttpClient();
+			}
+		});
+	}
+
+	/**
+	 * Returns a future completed once the client holds a session. If the
+	 * client has no session and no authentication is in progress, a new
+	 * authentication is started.
+	 * 
+	 * @return LogInsightClient CompletableFuture (this), completed
+	 *         exceptionally with AuthFailure when the authentication fails
+	 */
+	public CompletableFuture<LogInsightClient> whenConnected() {
+		CompletableFuture<LogInsightClient> connected = new CompletableFuture<LogInsightClient>();
+		withSession(connected, () -> connected.complete(this));
+		return connected;
 	}
 
 	/**
@@ -147,7 +326,18 @@ public class LogInsightClient implements AutoCloseable {
 	 * @return api url for query
 	 */
 	public String apiUrl() {
-		return config.getScheme() + "://" + config.getHost() + ":" + config.getPort();
+		return apiUrl(config.getHost());
+	}
+
+	/**
+	 * Constructs and returns the API URL of a cluster node
+	 * 
+	 * @param host
+	 *            host name of the node
+	 * @return api url for query
+	 */
+	public String apiUrl(String host) {
+		return config.getScheme() + "://" + host + ":" + config.getPort();
 	}
 
 	/**
@@ -205,7 +395,18 @@ public class LogInsightClient implements AutoCloseable {
 	 * @return url of the ingestion API
 	 */
 	public String ingestionApiUrl() {
-		return config.getScheme() + "://" + config.getHost() + ":" + config.getIngestionPort() + API_URL_INGESTION
+		return ingestionApiUrl(config.getHost());
+	}
+
+	/**
+	 * Compute and return ingestion api url of a cluster node
+	 * 
+	 * @param host
+	 *            host name of the node
+	 * @return url of the ingestion API
+	 */
+	public String ingestionApiUrl(String host) {
+		return config.getScheme() + "://" + host + ":" + config.getIngestionPort() + API_URL_INGESTION
 				+ DEFAULT_INGESTION_AGENT_ID;
 	}
 
@@ -233,34 +434,101 @@ public class LogInsightClient implements AutoCloseable {
 	 *             authentication failure exception
 	 */
 	protected void connect() throws AuthFailure {
-
-		String body = String.format("{\"username\":\"%s\",\"password\":\"%s\"}", config.getUser(),
-				config.getPassword());
-		System.out.println("auth body " + body);
-		HttpPost httpPost = new HttpPost(sessionUrl());
-		httpPost.addHeader("Accept", "application/json");
-		httpPost.addHeader("Content-type", "application/json");
-		HttpResponse response = null;
-		httpPost.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+		long start = System.nanoTime();
+		boolean success = false;
+		metrics.started(Operation.CONNECT);
+		NodeLease lease = new NodeLease(nodePool);
+		HttpPost httpPost = getAuthHttpRequest(lease.getNode());
 		try {
 			Future<HttpResponse> future = asyncHttpClient.execute(httpPost, null);
-			response = future.get();
-			String serverResponse = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			logger.info("Auth response = " + serverResponse);
-			if (response.getStatusLine().getStatusCode() == 200) {
-				AuthInfo authInfo = AuthInfo.fromJsonString(serverResponse);
-				sessionId = authInfo.getSessionId();
+			HttpResponse response = future.get();
+			// reported as lease.track does for the other requests
+			if (getStatusCode(response) < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+				lease.succeeded();
 			} else {
-				logger.error("Unable to authenticate. StatusCode=" + response.getStatusLine().getStatusCode());
-				logger.error("Unable to authenticate. " + serverResponse);
-				throw new AuthFailure("Connection to LogInsight failed. " + serverResponse);
+				lease.failed();
 			}
+			metrics.networkTime(Operation.CONNECT, System.nanoTime() - start);
+			sessionManager.update(getAuthInfo(response));
+			success = true;
 		} catch (InterruptedException ie) {
+			lease.abort();
 			throw new AuthFailure("Connection to LogInsight failed", ie);
 		} catch (ExecutionException ee) {
+			lease.failed();
 			throw new AuthFailure("Connection to LogInsight failed", ee);
 		} catch (IOException e) {
 			throw new AuthFailure("Connection to LogInsight failed", e);
+		} finally {
+			metrics.completed(Operation.CONNECT, System.nanoTime() - start, success);
+		}
+	}
+
+	/**
+	 * Authenticates with LogInsight without blocking. Used to renew the
+	 * session.
+	 * 
+	 * @return AuthInfo CompletableFuture, completed exceptionally with
+	 *         AuthFailure when the authentication fails
+	 */
+	CompletableFuture<AuthInfo> authenticate() {
+		CompletableFuture<AuthInfo> completableFuture = measure(Operation.CONNECT, new CompletableFuture<AuthInfo>());
+		NodeLease lease = new NodeLease(nodePool);
+		try {
+			FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+
+				@Override
+				public void completed(HttpResponse httpResponse) {
+					try {
+						completableFuture.complete(getAuthInfo(httpResponse));
+					} catch (AuthFailure e) {
+						completableFuture.completeExceptionally(e);
+					} catch (Exception e) {
+						completableFuture
+								.completeExceptionally(new AuthFailure("Connection to LogInsight failed", e));
+					}
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					completableFuture.completeExceptionally(new AuthFailure("Connection to LogInsight failed", ex));
+				}
+
+				@Override
+				public void cancelled() {
+					completableFuture.completeExceptionally(new AuthFailure("Authentication cancelled"));
+				}
+
+			};
+			asyncHttpClient.execute(getAuthHttpRequest(lease.getNode()),
+					lease.track(timed(Operation.CONNECT, callback), LogInsightClient::getStatusCode));
+		} catch (Exception e) {
+			lease.abort();
+			completableFuture.completeExceptionally(new AuthFailure("Connection to LogInsight failed", e));
+		}
+		return completableFuture;
+	}
+
+	private HttpPost getAuthHttpRequest(Node node) {
+		String body = String.format("{\"username\":\"%s\",\"password\":\"%s\"}", config.getUser(),
+				config.getPassword());
+		wireLogger.request(Operation.CONNECT, () -> body);
+		HttpPost httpPost = new HttpPost(apiUrl(node.getHost()) + API_URL_SESSION_PATH);
+		httpPost.addHeader("Accept", "application/json");
+		httpPost.addHeader("Content-type", "application/json");
+		httpPost.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+		return httpPost;
+	}
+
+	private AuthInfo getAuthInfo(HttpResponse response) throws IOException {
+		String serverResponse = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
+		wireLogger.response(Operation.CONNECT, getStatusCode(response), serverResponse);
+		if (response.getStatusLine().getStatusCode() == 200) {
+			return AuthInfo.fromJsonString(serverResponse);
+		} else {
+			logger.error("Unable to authenticate. StatusCode=" + response.getStatusLine().getStatusCode());
+			logger.error("Unable to authenticate. " + serverResponse);
+			throw new AuthFailure("Connection to LogInsight failed. " + serverResponse);
 		}
 	}
 
@@ -269,6 +537,13 @@ public class LogInsightClient implements AutoCloseable {
 	 */
 	public void stopAsyncHttpClient() {
 		logger.debug("Stopping the AsyncHttpClient");
+		sessionManager.close();
+		nodePool.close();
+		synchronized (this) {
+			if (null != streamingExecutor) {
+				streamingExecutor.shutdownNow();
+			}
+		}
 		try {
 			asyncHttpClient.close();
 		} catch (IOException e) {
@@ -278,7 +553,11 @@ public class LogInsightClient implements AutoCloseable {
 
 	/**
 	 * Performs message query. Returns a CompletableFuture for
-	 * MessageQueryResponse
+	 * MessageQueryResponse. <br>
+	 * 
+	 * When query coalescing is enabled, concurrent queries with the same url
+	 * share a single request and response. Cancelling the future aborts the
+	 * request once all the callers sharing it have cancelled.
 	 * 
 	 * @param apiUrl
 	 *            relative url of the API
@@ -287,20 +566,42 @@ public class LogInsightClient implements AutoCloseable {
 	 *             Exception
 	 */
 	public CompletableFuture<MessageQueryResponse> messageQuery(String apiUrl) {
+		if (null != messageQueryFlights) {
+			return messageQueryFlights.execute(flightKey(apiUrl), () -> sendMessageQuery(apiUrl));
+		}
+		return sendMessageQuery(apiUrl);
+	}
+
+	private CompletableFuture<MessageQueryResponse> sendMessageQuery(String apiUrl) {
+		CompletableFuture<MessageQueryResponse> completableFuture = measure(Operation.MESSAGE_QUERY,
+				new CompletableFuture<MessageQueryResponse>());
+		withSession(completableFuture, () -> messageQuery(apiUrl, completableFuture, true));
+		return completableFuture;
+	}
+
+	private void messageQuery(String apiUrl, CompletableFuture<MessageQueryResponse> completableFuture,
+			boolean retryOnAuthFailure) {
 		HttpGet request = null;
-		CompletableFuture<MessageQueryResponse> completableFuture = new CompletableFuture<MessageQueryResponse>();
+		NodeLease lease = new NodeLease(nodePool);
 		try {
-			request = getHttpRequest(apiUrl, false);
-			asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+			request = getHttpRequest(lease.getNode(), apiUrl);
+			String requestSessionId = getSessionId(request);
+			FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
 
 				@Override
 				public void completed(HttpResponse httpResponse) {
 
+					if (retryOnAuthFailure && isSessionExpired(getStatusCode(httpResponse))) {
+						EntityUtils.consumeQuietly(httpResponse.getEntity());
+						renewSession(Operation.MESSAGE_QUERY, requestSessionId, completableFuture,
+								() -> messageQuery(apiUrl, completableFuture, false));
+						return;
+					}
 					try {
-						InputStream responseBody = httpResponse.getEntity().getContent();
-						String responseString = IOUtils.toString(responseBody, "UTF-8");
-						logger.warn("Response: " + responseString);
-						completableFuture.complete(MessageQueryResponse.fromJsonString(responseString));
+						completableFuture.complete(readResponse(Operation.MESSAGE_QUERY, httpResponse,
+								LogInsightClient::readMessageQueryResponse));
+					} catch (ParseException e) {
+						completableFuture.completeExceptionally(e);
 					} catch (IOException e) {
 						e.printStackTrace();
 						completableFuture.completeExceptionally(e);
@@ -317,37 +618,213 @@ public class LogInsightClient implements AutoCloseable {
 					completableFuture.completeExceptionally(new LogInsightApiException("Cancelled message Query"));
 				}
 
-			});
+			};
+			Future<HttpResponse> future = asyncHttpClient.execute(request,
+					lease.track(timed(Operation.MESSAGE_QUERY, callback), LogInsightClient::getStatusCode));
+			abortOnCancel(completableFuture, future);
 		} catch (Exception ie) {
+			lease.abort();
 			completableFuture.completeExceptionally(new LogInsightApiException("Message query failed", ie));
 		}
+	}
+
+	/**
+	 * Performs message query and streams the events of the response to the
+	 * consumer while the response is received, without holding the whole
+	 * response in memory. The events are parsed on a thread owned by this
+	 * client.
+	 * 
+	 * @param apiUrl
+	 *            relative url of the API
+	 * @param consumer
+	 *            receives each event of the response in order
+	 * @return MessageQueryResponse CompletableFuture object, completed once all
+	 *         the events are consumed. The events are not collected in the
+	 *         response.
+	 */
+	public CompletableFuture<MessageQueryResponse> messageQuery(String apiUrl, Consumer<Message> consumer) {
+		return messageQuery(apiUrl, consumer, getStreamingExecutor());
+	}
+
+	/**
+	 * Performs message query and streams the events of the response to the
+	 * consumer while the response is received, without holding the whole
+	 * response in memory.
+	 * 
+	 * @param apiUrl
+	 *            relative url of the API
+	 * @param consumer
+	 *            receives each event of the response in order
+	 * @param executor
+	 *            executor running the parser and the consumer. The parser
+	 *            blocks its thread while waiting for content.
+	 * @return MessageQueryResponse CompletableFuture object, completed once all
+	 *         the events are consumed. The events are not collected in the
+	 *         response.
+	 */
+	public CompletableFuture<MessageQueryResponse> messageQuery(String apiUrl, Consumer<Message> consumer,
+			Executor executor) {
+		CompletableFuture<MessageQueryResponse> completableFuture = measure(Operation.MESSAGE_QUERY,
+				new CompletableFuture<MessageQueryResponse>());
+		withSession(completableFuture, () -> messageQuery(apiUrl, consumer, executor, completableFuture, true));
 		return completableFuture;
 	}
 
+	private void messageQuery(String apiUrl, Consumer<Message> consumer, Executor executor,
+			CompletableFuture<MessageQueryResponse> completableFuture, boolean retryOnAuthFailure) {
+		CompletableFuture<MessageQueryResponse> attempt = new CompletableFuture<MessageQueryResponse>();
+		NodeLease lease = new NodeLease(nodePool);
+		try {
+			HttpGet request = getHttpRequest(lease.getNode(), apiUrl);
+			String requestSessionId = getSessionId(request);
+			MessageStreamConsumer responseConsumer = new MessageStreamConsumer(consumer, executor, attempt);
+			Future<Void> future = asyncHttpClient.execute(HttpAsyncMethods.create(request), responseConsumer,
+					lease.track(new FutureCallback<Void>() {
+
+						@Override
+						public void completed(Void result) {
+							// completed by the parser
+						}
+
+						@Override
+						public void failed(Exception ex) {
+							attempt.completeExceptionally(new LogInsightApiException("Failed message Query", ex));
+						}
+
+						@Override
+						public void cancelled() {
+							attempt.completeExceptionally(new LogInsightApiException("Cancelled message Query"));
+						}
+
+					}, result -> responseConsumer.getStatusCode()));
+			attempt.whenComplete((response, ex) -> {
+				if (null == ex) {
+					completableFuture.complete(response);
+					return;
+				}
+				if (null != future) {
+					future.cancel(true);
+				}
+				// no event is consumed from a rejected response
+				if (retryOnAuthFailure && isSessionExpired(responseConsumer.getStatusCode())) {
+					renewSession(Operation.MESSAGE_QUERY, requestSessionId, completableFuture,
+							() -> messageQuery(apiUrl, consumer, executor, completableFuture, false));
+				} else {
+					completableFuture.completeExceptionally(ex);
+				}
+			});
+			completableFuture.whenComplete((response, ex) -> {
+				if (null != ex) {
+					attempt.cancel(true);
+				}
+			});
+		} catch (Exception ie) {
+			lease.abort();
+			completableFuture.completeExceptionally(new LogInsightApiException("Message query failed", ie));
+		}
+	}
+
 	/**
-	 * Performs aggregate query. Accepts callback
+	 * Performs aggregate query. Accepts callback. <br>
+	 * 
+	 * When the aggregate query cache is enabled, the response may be a cached
+	 * response, or the response of an identical query in flight. When query
+	 * coalescing is enabled, concurrent queries with the same url share a
+	 * single request and response.
 	 * 
 	 * @param apiUrl
 	 *            relative url of the API
 	 * @return AggregateResponse CompletableFuture
-	 * 
+	 * @see #getAggregateQueryCache()
 	 */
 	public CompletableFuture<AggregateResponse> aggregateQuery(String apiUrl) {
+		if (null != aggregateQueryCache) {
+			return aggregateQueryCache.get(apiUrl, this::coalescedAggregateQuery);
+		}
+		return coalescedAggregateQuery(apiUrl);
+	}
+
+	private CompletableFuture<AggregateResponse> coalescedAggregateQuery(String apiUrl) {
+		if (null != aggregateQueryFlights) {
+			return aggregateQueryFlights.execute(flightKey(apiUrl), () -> sendAggregateQuery(apiUrl));
+		}
+		return sendAggregateQuery(apiUrl);
+	}
+
+	private CompletableFuture<AggregateResponse> sendAggregateQuery(String apiUrl) {
+		CompletableFuture<AggregateResponse> completableFuture = measure(Operation.AGGREGATE_QUERY,
+				new CompletableFuture<AggregateResponse>());
+		withSession(completableFuture,
+				() -> aggregateQuery(apiUrl, completableFuture, LogInsightClient::readAggregateResponse, true));
+		return completableFuture;
+	}
+
+	/**
+	 * Performs aggregate query and parses the bins into primitive columns.
+	 * <br>
+	 * 
+	 * The response is parsed from the http stream without building a list
+	 * of bins. It does not go through the aggregate query cache.
+	 * 
+	 * @param apiUrl
+	 *            relative url of the API
+	 * @return AggregateColumns CompletableFuture
+	 * @see AggregateColumns
+	 */
+	public CompletableFuture<AggregateColumns> aggregateQueryColumns(String apiUrl) {
+		CompletableFuture<AggregateColumns> completableFuture = measure(Operation.AGGREGATE_QUERY,
+				new CompletableFuture<AggregateColumns>());
+		withSession(completableFuture, () -> aggregateQuery(apiUrl, completableFuture, AggregateColumns::parse, true));
+		return completableFuture;
+	}
+
+	private static MessageQueryResponse readMessageQueryResponse(InputStream in) throws IOException {
+		return readJson(in, MessageQueryResponse.class, "Message query response parsing failed.");
+	}
+
+	private static IngestionResponse readIngestionResponse(InputStream in) throws IOException {
+		return readJson(in, IngestionResponse.class, "Unable parse the ingestion response.");
+	}
+
+	private static AggregateResponse readAggregateResponse(InputStream in) throws IOException {
+		return readJson(in, AggregateResponse.class, "Unable to parse the aggregation query response.");
+	}
+
+	/**
+	 * Parses the response directly from the content, without copying it into
+	 * a string
+	 */
+	private static <T> T readJson(InputStream in, Class<T> type, String error) throws IOException {
+		try {
+			return JsonCodec.reader(type).readValue(in);
+		} catch (JsonProcessingException e) {
+			throw new ParseException(error, e);
+		}
+	}
+
+	private <T> void aggregateQuery(String apiUrl, CompletableFuture<T> completableFuture, ResponseReader<T> reader,
+			boolean retryOnAuthFailure) {
 		HttpGet request = null;
-		CompletableFuture<AggregateResponse> completableFuture = new CompletableFuture<AggregateResponse>();
+		NodeLease lease = new NodeLease(nodePool);
 		try {
-			request = getHttpRequest(apiUrl, true);
-			logger.debug("Querying " + aggregateQueryUrl() + apiUrl);
-			asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+			request = getHttpRequest(lease.getNode(), apiUrl);
+			String requestSessionId = getSessionId(request);
+			logger.debug("Querying " + request.getURI());
+			FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
 
 				@Override
 				public void completed(HttpResponse httpResponse) {
 
+					if (retryOnAuthFailure && isSessionExpired(getStatusCode(httpResponse))) {
+						EntityUtils.consumeQuietly(httpResponse.getEntity());
+						renewSession(Operation.AGGREGATE_QUERY, requestSessionId, completableFuture,
+								() -> aggregateQuery(apiUrl, completableFuture, reader, false));
+						return;
+					}
 					try {
-						String responseString = IOUtils.toString(httpResponse.getEntity().getContent(), "UTF-8");
-						logger.warn("Response: " + responseString);
-						completableFuture.complete(AggregateResponse.fromJsonString(responseString));
-
+						completableFuture.complete(readResponse(Operation.AGGREGATE_QUERY, httpResponse, reader));
+					} catch (ParseException e) {
+						completableFuture.completeExceptionally(e);
 					} catch (IOException e) {
 						e.printStackTrace();
 						completableFuture.completeExceptionally(
@@ -366,15 +843,27 @@ public class LogInsightClient implements AutoCloseable {
 					completableFuture.completeExceptionally(new LogInsightApiException("Cancelled message Query"));
 				}
 
-			});
+			};
+			Future<HttpResponse> future = asyncHttpClient.execute(request,
+					lease.track(timed(Operation.AGGREGATE_QUERY, callback), LogInsightClient::getStatusCode));
+			abortOnCancel(completableFuture, future);
 		} catch (Exception ie) {
+			lease.abort();
 			completableFuture.completeExceptionally(new LogInsightApiException("Message query failed", ie));
 		}
-		return completableFuture;
 	}
 
 	/**
-	 * Ingest messages to loginsight
+	 * Ingest messages to loginsight. <br>
+	 * 
+	 * The number and the estimated size of the requests in flight are bounded
+	 * by the ingestion budget of the configuration. Once it is exhausted the
+	 * call blocks, or the future completes with an
+	 * {@link IngestionRejectedException}, or with a response of status
+	 * {@value #INGESTION_STATUS_DROPPED}, depending on the overflow policy.
+	 * The call never blocks an I/O dispatcher thread, for instance inside the
+	 * completion of another request, the BLOCK policy rejects there instead.
+	 * The budget of a request is returned before its future completes.
 	 * 
 	 * @param messages
 	 *            IngestionRequest object with list of messages
@@ -383,45 +872,193 @@ public class LogInsightClient implements AutoCloseable {
 	 * @see IngestionResponse
 	 */
 	public CompletableFuture<IngestionResponse> ingest(IngestionRequest messages) {
+		int size = messages.estimatedSize();
+		// the buffer of the request may be reused once the future completes
+		int count = messages.count();
+		if (!ingestionBudget.acquire(size, !isDispatcherThread())) {
+			return overflow(messages);
+		}
+		// released before completing, so that dependents can send the next batch
+		AtomicBoolean budgetHeld = new AtomicBoolean(true);
+		Runnable releaseBudget = () -> {
+			if (budgetHeld.compareAndSet(true, false)) {
+				ingestionBudget.release(size);
+			}
+		};
 		HttpPost httpPost = null;
-		CompletableFuture<IngestionResponse> completableFuture = new CompletableFuture<IngestionResponse>();
+		CompletableFuture<IngestionResponse> completableFuture = measure(Operation.INGEST,
+				new CompletableFuture<IngestionResponse>());
+		NodeLease lease = new NodeLease(nodePool);
 		try {
-			httpPost = getIngestionHttpRequest(messages);
-			logger.info("Sending : " + messages.toJson());
-			asyncHttpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+			httpPost = getIngestionHttpRequest(lease.getNode(), messages);
+			IngestionRequestEntity entity = (IngestionRequestEntity) httpPost.getEntity();
+			completableFuture.whenComplete((response, ex) -> {
+				metrics.serializationTime(Operation.INGEST, entity.getSerializationTime());
+				metrics.requestBytes(Operation.INGEST, entity.getProducedBytes());
+				if (null == ex) {
+					metrics.ingested(count, response.getIngested());
+				}
+			});
+			wireLogger.request(Operation.INGEST, messages::toJson);
+			FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
 
 				@Override
 				public void completed(HttpResponse httpResponse) {
-
+					releaseBudget.run();
+					int statusCode = getStatusCode(httpResponse);
+					// a response without a status line is read as usual
+					if (statusCode >= HttpStatus.SC_MULTIPLE_CHOICES
+							|| (0 != statusCode && statusCode < HttpStatus.SC_OK)) {
+						EntityUtils.consumeQuietly(httpResponse.getEntity());
+						completableFuture.completeExceptionally(
+								new LogInsightApiException("Ingestion failed with status " + statusCode));
+						return;
+					}
 					try {
-						String responseString = IOUtils.toString(httpResponse.getEntity().getContent(), "UTF-8");
-						logger.warn("Response: " + responseString);
-						completableFuture.complete(IngestionResponse.fromJsonString(responseString));
-
+						completableFuture.complete(readResponse(Operation.INGEST, httpResponse,
+								LogInsightClient::readIngestionResponse));
 					} catch (IOException e) {
 						e.printStackTrace();
 						completableFuture.completeExceptionally(
 								new LogInsightApiException("Unable to process the query response", e));
+					} catch (RuntimeException e) {
+						completableFuture.completeExceptionally(e);
 					}
 				}
 
 				@Override
 				public void failed(Exception ex) {
+					releaseBudget.run();
 					completableFuture.completeExceptionally(new LogInsightApiException("Ingestion failed", ex));
 				}
 
 				@Override
 				public void cancelled() {
+					releaseBudget.run();
 					completableFuture.completeExceptionally(new LogInsightApiException("Ingestion cancelled"));
 				}
 
-			});
+			};
+			asyncHttpClient.execute(httpPost,
+					lease.track(timed(Operation.INGEST, callback), LogInsightClient::getStatusCode));
 		} catch (Exception e) {
+			lease.abort();
+			releaseBudget.run();
 			completableFuture.completeExceptionally(new LogInsightApiException("Ingestion failed", e));
 		}
 		return completableFuture;
 	}
 
+	/**
+	 * Tells whether the current thread is an I/O dispatcher thread of the http
+	 * client. The responses which return the ingestion budget are delivered
+	 * there, so it must not wait for the budget.
+	 */
+	private static boolean isDispatcherThread() {
+		return Thread.currentThread().getName().startsWith(IO_DISPATCHER_THREAD_NAME);
+	}
+
+	private CompletableFuture<IngestionResponse> overflow(IngestionRequest messages) {
+		CompletableFuture<IngestionResponse> completableFuture = new CompletableFuture<IngestionResponse>();
+		if (ingestionBudget.getPolicy() == OverflowPolicy.DROP) {
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus(INGESTION_STATUS_DROPPED);
+			response.setMessage(messages.count() + " messages dropped, ingestion budget exhausted");
+			completableFuture.complete(response);
+		} else {
+			completableFuture.completeExceptionally(new IngestionRejectedException("Ingestion budget exhausted"));
+		}
+		return completableFuture;
+	}
+
+	/**
+	 * Getter for the ingestion budget, exposing the requests and bytes in
+	 * flight
+	 * 
+	 * @return IngestionBudget of this client
+	 */
+	public IngestionBudget getIngestionBudget() {
+		return ingestionBudget;
+	}
+
+	private static int getStatusCode(HttpResponse httpResponse) {
+		StatusLine statusLine = httpResponse.getStatusLine();
+		return null == statusLine ? 0 : statusLine.getStatusCode();
+	}
+
+	/**
+	 * Identical queries share a flight only within the same session
+	 */
+	private String flightKey(String apiUrl) {
+		return sessionManager.getSessionId() + " " + apiUrl;
+	}
+
+	/**
+	 * Aborts the request when the future is cancelled
+	 */
+	private static void abortOnCancel(CompletableFuture<?> completableFuture, Future<?> future) {
+		if (null != future) {
+			completableFuture.whenComplete((response, ex) -> {
+				if (completableFuture.isCancelled()) {
+					future.cancel(true);
+				}
+			});
+		}
+	}
+
+	private static boolean isSessionExpired(int statusCode) {
+		return statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == STATUS_LOGIN_TIMEOUT;
+	}
+
+	private static String getSessionId(HttpRequest request) {
+		Header header = request.getFirstHeader(SESSION_HEADER);
+		return null == header ? null : header.getValue();
+	}
+
+	/**
+	 * Runs the request once the client holds a session, or fails the future
+	 * when the session can not be established.
+	 */
+	private void withSession(CompletableFuture<?> completableFuture, Runnable request) {
+		sessionManager.session().whenComplete((id, ex) -> {
+			if (null == ex) {
+				request.run();
+			} else {
+				Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+				completableFuture.completeExceptionally(cause instanceof AuthFailure ? cause
+						: new AuthFailure("Connection to LogInsight failed", cause));
+			}
+		});
+	}
+
+	/**
+	 * Renews the session rejected by the server and runs the retry, or fails
+	 * the future when the session can not be renewed.
+	 */
+	private void renewSession(Operation operation, String staleSessionId, CompletableFuture<?> completableFuture,
+			Runnable retry) {
+		logger.info("LogInsight session expired, renewing the session");
+		sessionManager.renew(staleSessionId).whenComplete((id, ex) -> {
+			if (null != ex) {
+				completableFuture.completeExceptionally(new AuthFailure("Unable to renew the session", ex));
+			} else {
+				metrics.retried(operation);
+				retry.run();
+			}
+		});
+	}
+
+	private synchronized ExecutorService getStreamingExecutor() {
+		if (null == streamingExecutor) {
+			streamingExecutor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "loginsight-message-stream");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return streamingExecutor;
+	}
+
 	/**
 	 * Returns sessionId if available. Throws AuthFailure in case sessionId not
 	 * available.
@@ -431,6 +1068,7 @@ public class LogInsightClient implements AutoCloseable {
 	 *             authentication failure
 	 */
 	public String getSessionId() throws AuthFailure {
+		String sessionId = sessionManager.getSessionId();
 		if (sessionId == null) {
 			throw new AuthFailure("Invalid session id");
 		}
@@ -452,7 +1090,7 @@ public class LogInsightClient implements AutoCloseable {
 	 */
 	public List<Header> getSessionHeaders() {
 		List<Header> headers = new ArrayList<>();
-		headers.add(new BasicHeader("X-li-session-id", getSessionId()));
+		headers.add(new BasicHeader(SESSION_HEADER, getSessionId()));
 		return headers;
 	}
 
@@ -493,29 +1131,260 @@ public class LogInsightClient implements AutoCloseable {
 		}
 		addHeaders(request, getDefaultHeaders());
 		addHeaders(request, getSessionHeaders());
+		if (config.isQueryCompression()) {
+			request.addHeader("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+		}
+		return request;
+	}
+
+	private HttpGet getHttpRequest(Node node, String apiUrl) {
+		HttpGet request = new HttpGet(apiUrl(node.getHost()) + apiUrl);
+		addHeaders(request, getDefaultHeaders());
+		addHeaders(request, getSessionHeaders());
+		if (config.isQueryCompression()) {
+			request.addHeader("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+		}
 		return request;
 	}
 
+	/**
+	 * Getter for the cluster nodes used by this client, with their load and
+	 * health
+	 * 
+	 * @return unmodifiable list of nodes
+	 */
+	public List<Node> getNodes() {
+		return nodePool.getNodes();
+	}
+
+	/**
+	 * Getter for the cache of aggregate query responses, with its hit and
+	 * miss counts
+	 * 
+	 * @return the cache, null when disabled
+	 */
+	public AggregateQueryCache getAggregateQueryCache() {
+		return aggregateQueryCache;
+	}
+
+	private AggregateQueryCache buildAggregateQueryCache() {
+		if (config.getQueryCacheMaxEntries() == 0) {
+			return null;
+		}
+		return new AggregateQueryCache(config.getQueryCacheMaxEntries(), config.getQueryCacheMaxBins(),
+				config.getQueryCacheTtl(), config.getQueryCacheHistoricalTtl());
+	}
+
+	private IngestionBudget buildIngestionBudget() {
+		return new IngestionBudget(config.getIngestionMaxInFlight(), config.getIngestionMaxInFlightBytes(),
+				config.getIngestionOverflowPolicy(), config.getIngestionBlockTimeout());
+	}
+
+	private NodePool buildNodePool() {
+		return new NodePool(config.getHosts(), buildLoadBalancer(config.getLoadBalancer()), config.getNodeBackoff(),
+				config.getNodeMaxBackoff(), this::probe);
+	}
+
+	private static LoadBalancer buildLoadBalancer(String name) {
+		switch (name) {
+		case Configuration.LOAD_BALANCER_ROUND_ROBIN:
+			return new RoundRobinLoadBalancer();
+		case Configuration.LOAD_BALANCER_LEAST_OUTSTANDING:
+			return new LeastOutstandingLoadBalancer();
+		case Configuration.LOAD_BALANCER_EWMA:
+			return new EwmaLoadBalancer();
+		default:
+			try {
+				return (LoadBalancer) Class.forName(name).newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IllegalArgumentException("Invalid load balancer " + name, e);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a node answers the version API
+	 */
+	private CompletableFuture<Boolean> probe(Node node) {
+		CompletableFuture<Boolean> available = new CompletableFuture<Boolean>();
+		HttpGet request = new HttpGet(apiUrl(node.getHost()) + API_URL_VERSION_PATH);
+		addHeaders(request, getDefaultHeaders());
+		asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse httpResponse) {
+				EntityUtils.consumeQuietly(httpResponse.getEntity());
+				int statusCode = getStatusCode(httpResponse);
+				available.complete(statusCode > 0 && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				available.complete(false);
+			}
+
+			@Override
+			public void cancelled() {
+				available.complete(false);
+			}
+
+		});
+		return available;
+	}
+
 	/**
 	 * Returns a properly formed {@code HttpPost} for the given
-	 * {@code IngestionRequest}
+	 * {@code IngestionRequest}. The messages are streamed into the request
+	 * body when it is sent.
 	 * 
 	 * @param ingestionRequest
 	 *            Ingestion request body
 	 * @return HttpPost object
 	 */
 	public HttpPost getIngestionHttpRequest(IngestionRequest ingestionRequest) {
+		return getIngestionHttpRequest(ingestionRequest, ingestionApiUrl());
+	}
+
+	/**
+	 * Compression level of an ingestion request. Requests smaller than the
+	 * configured minimum size are not compressed.
+	 */
+	private int getCompressionLevel(IngestionRequest ingestionRequest) {
+		boolean compressed = null != ingestionRequest.getCompressed() ? ingestionRequest.getCompressed()
+				: Configuration.COMPRESSION_GZIP.equals(config.getIngestionCompression());
+		if (compressed && ingestionRequest.estimatedSize() >= config.getCompressionMinSize()) {
+			return config.getCompressionLevel();
+		}
+		return Deflater.NO_COMPRESSION;
+	}
+
+	private HttpPost getIngestionHttpRequest(Node node, IngestionRequest ingestionRequest) {
+		return getIngestionHttpRequest(ingestionRequest, ingestionApiUrl(node.getHost()));
+	}
+
+	private HttpPost getIngestionHttpRequest(IngestionRequest ingestionRequest, String url) {
 		HttpPost httpPost = null;
 		try {
-			httpPost = new HttpPost(ingestionApiUrl());
+			httpPost = new HttpPost(url);
 
-			httpPost.setEntity(new StringEntity(ingestionRequest.toJson(), ContentType.APPLICATION_JSON));
+			IngestionRequestEntity entity = new IngestionRequestEntity(ingestionRequest,
+					IngestionRequestEntity.DEFAULT_CHUNK_SIZE, getCompressionLevel(ingestionRequest));
+			httpPost.setEntity(entity);
 			httpPost.addHeader("Content-Type", "application/json");
 			httpPost.addHeader("Accept", "application/json");
+			if (entity.isCompressed()) {
+				httpPost.addHeader("Content-Encoding", HttpCompression.GZIP);
+			}
 		} catch (IllegalArgumentException e) {
 			throw e;
 		}
 		return httpPost;
 	}
 
+	/**
+	 * Reports the latency and the outcome of the operation completing the
+	 * future
+	 */
+	private <T> CompletableFuture<T> measure(Operation operation, CompletableFuture<T> completableFuture) {
+		long start = System.nanoTime();
+		metrics.started(operation);
+		completableFuture.whenComplete(
+				(response, ex) -> metrics.completed(operation, System.nanoTime() - start, null == ex));
+		return completableFuture;
+	}
+
+	/**
+	 * Reports the time from sending the request to the outcome of the callback
+	 */
+	private <T> FutureCallback<T> timed(Operation operation, FutureCallback<T> callback) {
+		long start = System.nanoTime();
+		return new FutureCallback<T>() {
+
+			@Override
+			public void completed(T result) {
+				metrics.networkTime(operation, System.nanoTime() - start);
+				callback.completed(result);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				metrics.networkTime(operation, System.nanoTime() - start);
+				callback.failed(ex);
+			}
+
+			@Override
+			public void cancelled() {
+				callback.cancelled();
+			}
+		};
+	}
+
+	/**
+	 * Reads the body of the response, reporting the parse time and the size of
+	 * the body as received
+	 */
+	private <T> T readResponse(Operation operation, HttpResponse httpResponse, ResponseReader<T> reader)
+			throws IOException {
+		HttpEntity entity = httpResponse.getEntity();
+		long start = System.nanoTime();
+		CountingInputStream counting = new CountingInputStream(entity.getContent());
+		try (InputStream content = wireLogger.response(operation, getStatusCode(httpResponse),
+				HttpCompression.decode(counting, entity.getContentEncoding()))) {
+			return reader.read(content);
+		} finally {
+			metrics.parseTime(operation, System.nanoTime() - start);
+			metrics.responseBytes(operation, counting.getByteCount());
+		}
+	}
+
+	private ClientMetrics buildMetrics(String name) {
+		ClientMetrics clientMetrics;
+		switch (name) {
+		case Configuration.METRICS_NONE:
+			return ClientMetrics.NOOP;
+		case Configuration.METRICS_HDR:
+			clientMetrics = new HdrClientMetrics();
+			break;
+		default:
+			try {
+				clientMetrics = (ClientMetrics) Class.forName(name).newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IllegalArgumentException("Invalid metrics " + name, e);
+			}
+		}
+		if (connectionStrategy instanceof AsyncLogInsightConnectionStrategy) {
+			PoolingNHttpClientConnectionManager connectionManager = ((AsyncLogInsightConnectionStrategy) connectionStrategy)
+					.getConnectionManager();
+			if (null != connectionManager) {
+				clientMetrics.gauge("loginsight.pool.leased", () -> connectionManager.getTotalStats().getLeased());
+				clientMetrics.gauge("loginsight.pool.available",
+						() -> connectionManager.getTotalStats().getAvailable());
+				clientMetrics.gauge("loginsight.pool.pending", () -> connectionManager.getTotalStats().getPending());
+				clientMetrics.gauge("loginsight.pool.max", () -> connectionManager.getTotalStats().getMax());
+			}
+		}
+		clientMetrics.gauge("loginsight.ingest.budget.requests", () -> ingestionBudget.getInFlightRequests());
+		clientMetrics.gauge("loginsight.ingest.budget.bytes", () -> ingestionBudget.getInFlightBytes());
+		clientMetrics.gauge("loginsight.ingest.budget.rejected", () -> ingestionBudget.getRejectedCount());
+		clientMetrics.gauge("loginsight.ingest.budget.dropped", () -> ingestionBudget.getDroppedCount());
+		return clientMetrics;
+	}
+
+	/**
+	 * Getter for the metrics of this client, configured with
+	 * {@link Configuration#KEY_METRICS}
+	 * 
+	 * @return ClientMetrics of this client
+	 */
+	public ClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Reads a query response from the content of the http response
+	 */
+	@FunctionalInterface
+	private interface ResponseReader<T> {
+		T read(InputStream in) throws IOException;
+	}
 }
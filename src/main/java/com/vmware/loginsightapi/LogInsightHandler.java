@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.function.BiConsumer;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.vmware.loginsightapi.core.MessageSlot;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+/**
+ * java.util.logging handler shipping the log records to LogInsight through a
+ * {@link LogShipper}. <br>
+ *
+ * The records are mapped by {@link LogEventMapper}. The text is formatted by
+ * the formatter when one is set, otherwise it is the localized message
+ * followed by the stack trace of the exception. The thread field holds the
+ * name of the publishing thread, as log records only keep a thread id. <br>
+ * <br>
+ * <b> Sample Configuration (logging.properties): </b> <br>
+ * {@code
+ * handlers=com.vmware.loginsightapi.LogInsightHandler
+ * com.vmware.loginsightapi.LogInsightHandler.host=loginsight.example.com
+ * com.vmware.loginsightapi.LogInsightHandler.user=admin
+ * com.vmware.loginsightapi.LogInsightHandler.password=secret
+ * com.vmware.loginsightapi.LogInsightHandler.batchSize=500
+ * }
+ */
+public class LogInsightHandler extends Handler {
+
+	private static final String PREFIX = LogInsightHandler.class.getName() + ".";
+	private static final Formatter MESSAGE_FORMATTER = new SimpleFormatter();
+
+	private final LogShipper shipper;
+	private final LogInsightClient client;
+	private final BiConsumer<MessageSlot, LogRecord> writer = this::write;
+
+	/**
+	 * Builds a handler configured by the properties of the LogManager, prefixed
+	 * by the class name: configFile, host, user, password, ingestionPort,
+	 * bufferSize, batchSize, lingerMillis, maxInFlight, overflowPolicy,
+	 * blockTimeoutMillis, maxRetries, retryBackoffMillis and level
+	 */
+	public LogInsightHandler() {
+		LogManager manager = LogManager.getLogManager();
+		String level = manager.getProperty(PREFIX + "level");
+		if (StringUtils.isNotEmpty(level)) {
+			setLevel(Level.parse(level.trim()));
+		}
+		String configFile = manager.getProperty(PREFIX + "configFile");
+		Configuration config = StringUtils.isNotEmpty(configFile) ? Configuration.buildFromConfig(configFile)
+				: new Configuration(manager.getProperty(PREFIX + "host"), manager.getProperty(PREFIX + "user"),
+						manager.getProperty(PREFIX + "password"));
+		String ingestionPort = manager.getProperty(PREFIX + "ingestionPort");
+		if (StringUtils.isNotEmpty(ingestionPort)) {
+			config.setIngestionPort(ingestionPort);
+		}
+		this.client = LogInsightClient.open(config);
+		try {
+			this.shipper = new LogShipper(client, intProperty(manager, "bufferSize", LogShipper.DEFAULT_BUFFER_SIZE),
+					intProperty(manager, "batchSize", LogShipper.DEFAULT_BATCH_SIZE),
+					longProperty(manager, "lingerMillis", LogShipper.DEFAULT_LINGER_MILLIS),
+					intProperty(manager, "maxInFlight", LogShipper.DEFAULT_MAX_IN_FLIGHT),
+					OverflowPolicy.fromString(StringUtils.defaultIfEmpty(manager.getProperty(PREFIX + "overflowPolicy"),
+							"drop")),
+					longProperty(manager, "blockTimeoutMillis", LogShipper.DEFAULT_BLOCK_TIMEOUT_MILLIS),
+					intProperty(manager, "maxRetries", LogShipper.DEFAULT_MAX_RETRIES),
+					longProperty(manager, "retryBackoffMillis", LogShipper.DEFAULT_RETRY_BACKOFF_MILLIS));
+		} catch (RuntimeException e) {
+			closeClient(client);
+			throw e;
+		}
+	}
+
+	/**
+	 * Builds a handler shipping through the shipper
+	 *
+	 * @param shipper
+	 *            LogShipper sending the messages
+	 */
+	public LogInsightHandler(LogShipper shipper) {
+		if (null == shipper) {
+			throw new IllegalArgumentException("Invalid shipper");
+		}
+		this.shipper = shipper;
+		this.client = null;
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record) || LogEventMapper.isInternal(record.getLoggerName())) {
+			return;
+		}
+		try {
+			shipper.offer(writer, record);
+		} catch (RuntimeException e) {
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	@Override
+	public void flush() {
+		// the shipper sends the batches in the background
+	}
+
+	@Override
+	public void close() {
+		shipper.close();
+		closeClient(client);
+	}
+
+	/**
+	 * Shipper of this handler, exposing the shipped and dropped counts
+	 *
+	 * @return LogShipper of this handler
+	 */
+	public LogShipper getShipper() {
+		return shipper;
+	}
+
+	private void write(MessageSlot slot, LogRecord record) {
+		String threadName = Thread.currentThread().getName();
+		Formatter formatter = getFormatter();
+		if (null != formatter) {
+			LogEventMapper.write(slot, formatter.format(record), null, record.getMillis(), record.getLoggerName(),
+					record.getLevel().getName(), threadName, null);
+			return;
+		}
+		LogEventMapper.write(slot, MESSAGE_FORMATTER.formatMessage(record),
+				LogEventMapper.stackTrace(record.getThrown()), record.getMillis(), record.getLoggerName(),
+				record.getLevel().getName(), threadName, null);
+	}
+
+	private void closeClient(LogInsightClient client) {
+		if (null != client) {
+			try {
+				client.close();
+			} catch (Exception e) {
+				reportError("Unable to close the LogInsightClient", e, ErrorManager.CLOSE_FAILURE);
+			}
+		}
+	}
+
+	private static int intProperty(LogManager manager, String name, int defaultValue) {
+		String value = manager.getProperty(PREFIX + name);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + PREFIX + name + ": " + value, e);
+		}
+	}
+
+	private static long longProperty(LogManager manager, String name, long defaultValue) {
+		String value = manager.getProperty(PREFIX + name);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + PREFIX + name + ": " + value, e);
+		}
+	}
+}
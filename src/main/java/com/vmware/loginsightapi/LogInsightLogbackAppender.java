@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.vmware.loginsightapi.core.MessageSlot;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Logback appender shipping the log events to LogInsight through a
+ * {@link LogShipper}. <br>
+ *
+ * The events are mapped by {@link LogEventMapper}, with the entries of the MDC
+ * as fields. The text is formatted by the layout when one is configured,
+ * otherwise it is the formatted message followed by the stack trace of the
+ * exception. Logback is not a dependency of this library, the application
+ * provides it. <br>
+ * <br>
+ * <b> Sample Configuration: </b> <br>
+ * {@code
+ * <appender name="loginsight" class="com.vmware.loginsightapi.LogInsightLogbackAppender">
+ *     <host>loginsight.example.com</host> <user>admin</user> <password>secret</password>
+ *     <batchSize>500</batchSize> <overflowPolicy>drop</overflowPolicy>
+ * </appender>
+ * }
+ */
+public class LogInsightLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+	private String configFile;
+	private String host;
+	private String user;
+	private String password;
+	private String ingestionPort;
+	private int bufferSize = LogShipper.DEFAULT_BUFFER_SIZE;
+	private int batchSize = LogShipper.DEFAULT_BATCH_SIZE;
+	private long lingerMillis = LogShipper.DEFAULT_LINGER_MILLIS;
+	private int maxInFlight = LogShipper.DEFAULT_MAX_IN_FLIGHT;
+	private String overflowPolicy = "drop";
+	private long blockTimeoutMillis = LogShipper.DEFAULT_BLOCK_TIMEOUT_MILLIS;
+	private int maxRetries = LogShipper.DEFAULT_MAX_RETRIES;
+	private long retryBackoffMillis = LogShipper.DEFAULT_RETRY_BACKOFF_MILLIS;
+	private Layout<ILoggingEvent> layout;
+
+	private final BiConsumer<MessageSlot, ILoggingEvent> writer = this::write;
+	private LogShipper shipper;
+	private LogInsightClient client;
+
+	/**
+	 * Builds an appender configured by its properties, as done by logback
+	 */
+	public LogInsightLogbackAppender() {
+	}
+
+	/**
+	 * Builds an appender shipping through the shipper
+	 *
+	 * @param shipper
+	 *            LogShipper sending the messages
+	 */
+	public LogInsightLogbackAppender(LogShipper shipper) {
+		if (null == shipper) {
+			throw new IllegalArgumentException("Invalid shipper");
+		}
+		this.shipper = shipper;
+	}
+
+	@Override
+	public void start() {
+		if (null == shipper) {
+			try {
+				Configuration config = StringUtils.isNotEmpty(configFile) ? Configuration.buildFromConfig(configFile)
+						: new Configuration(host, user, password);
+				if (StringUtils.isNotEmpty(ingestionPort)) {
+					config.setIngestionPort(ingestionPort);
+				}
+				client = LogInsightClient.open(config);
+				shipper = new LogShipper(client, bufferSize, batchSize, lingerMillis, maxInFlight,
+						OverflowPolicy.fromString(overflowPolicy), blockTimeoutMillis, maxRetries, retryBackoffMillis);
+			} catch (RuntimeException e) {
+				addError("Unable to start LogInsight appender " + getName(), e);
+				closeClient();
+				return;
+			}
+		}
+		super.start();
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		if (null != shipper) {
+			shipper.close();
+		}
+		closeClient();
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		if (LogEventMapper.isInternal(event.getLoggerName())) {
+			return;
+		}
+		shipper.offer(writer, event);
+	}
+
+	private void write(MessageSlot slot, ILoggingEvent event) {
+		String level = event.getLevel().toString();
+		if (null != layout) {
+			LogEventMapper.write(slot, layout.doLayout(event), null, event.getTimeStamp(), event.getLoggerName(),
+					level, event.getThreadName(), event.getMDCPropertyMap());
+			return;
+		}
+		IThrowableProxy thrown = event.getThrowableProxy();
+		LogEventMapper.write(slot, event.getFormattedMessage(),
+				null == thrown ? null : ThrowableProxyUtil.asString(thrown), event.getTimeStamp(),
+				event.getLoggerName(), level, event.getThreadName(), event.getMDCPropertyMap());
+	}
+
+	private void closeClient() {
+		if (null != client) {
+			try {
+				client.close();
+			} catch (Exception e) {
+				addWarn("Unable to close the LogInsightClient", e);
+			}
+			client = null;
+		}
+	}
+
+	/**
+	 * Shipper of this appender, exposing the shipped and dropped counts
+	 *
+	 * @return LogShipper of this appender, null before the appender starts
+	 */
+	public LogShipper getShipper() {
+		return shipper;
+	}
+
+	public void setConfigFile(String configFile) {
+		this.configFile = configFile;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public void setIngestionPort(String ingestionPort) {
+		this.ingestionPort = ingestionPort;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setLingerMillis(long lingerMillis) {
+		this.lingerMillis = lingerMillis;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public void setOverflowPolicy(String overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+		this.blockTimeoutMillis = blockTimeoutMillis;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public void setRetryBackoffMillis(long retryBackoffMillis) {
+		this.retryBackoffMillis = retryBackoffMillis;
+	}
+
+	public void setLayout(Layout<ILoggingEvent> layout) {
+		this.layout = layout;
+	}
+}
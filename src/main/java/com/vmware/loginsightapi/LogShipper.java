@@ -0,0 +1,483 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageBuffer;
+import com.vmware.loginsightapi.core.MessageSlot;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+import com.vmware.loginsightapi.util.MessageRing;
+import com.vmware.loginsightapi.util.MpscRing;
+
+/**
+ * Ships messages from logging frameworks to LogInsight without blocking the
+ * logging threads. <br>
+ *
+ * Messages are written into the pre-allocated slots of a lock-free ring
+ * buffer. A single background thread copies them into a {@link MessageBuffer}
+ * and sends each batch through
+ * {@link LogInsightClient#ingest(IngestionRequest)} once it is full, or when
+ * its oldest message has waited for the linger time. The buffers are recycled
+ * once their batch completes, so that {@link #offer(BiConsumer, Object)} does
+ * not allocate a Message, its fields or its batch. <br>
+ * <br>
+ * When the ring buffer is full, the DROP and REJECT policies discard the
+ * message and count it as dropped, since a logging call can not fail. The
+ * BLOCK policy waits for a free slot up to the block timeout, then drops the
+ * message. A batch which fails is sent again by the background thread after
+ * an exponential backoff, up to the maximum number of retries, then counted as
+ * failed. <br>
+ * <br>
+ * This class is thread safe. Log records of this library should not be
+ * shipped, as each batch would log more records.
+ */
+public class LogShipper implements AutoCloseable {
+
+	/**
+	 * Default capacity of the ring buffer
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Default maximum number of messages in a batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Default time in milliseconds a message may wait before its batch is sent
+	 */
+	public static final long DEFAULT_LINGER_MILLIS = 1000;
+
+	/**
+	 * Default maximum number of ingestion requests in flight
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+	/**
+	 * Default time in milliseconds the BLOCK policy waits for a free slot
+	 */
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 100;
+
+	/**
+	 * Default number of times a failed batch is sent again
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/**
+	 * Default time in milliseconds before the first retry of a failed batch,
+	 * doubled for each following retry
+	 */
+	public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+
+	/**
+	 * Time in milliseconds {@code close} waits for the pending messages
+	 */
+	public static final long CLOSE_TIMEOUT_MILLIS = 30000;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long BATCH_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final LogInsightClient client;
+	private final MessageRing ring;
+	private final MpscRing<MessageBuffer> buffers;
+	private final int batchSize;
+	private final long lingerNanos;
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+	private final OverflowPolicy policy;
+	private final long blockTimeoutNanos;
+	private final int maxRetries;
+	private final long retryBackoffNanos;
+	private final ConcurrentLinkedQueue<Retry> retries = new ConcurrentLinkedQueue<Retry>();
+	private final Thread worker;
+	private volatile boolean waiting;
+	private volatile boolean closed;
+	private volatile boolean abandoned;
+
+	private final LongAdder shippedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+	private final LongAdder retryCount = new LongAdder();
+
+	private final static Logger logger = LoggerFactory.getLogger(LogShipper.class);
+
+	/**
+	 * Builds a LogShipper with default parameters, dropping the messages when
+	 * the buffer is full
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 */
+	public LogShipper(LogInsightClient client) {
+		this(client, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_LINGER_MILLIS, DEFAULT_MAX_IN_FLIGHT,
+				OverflowPolicy.DROP, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Builds a LogShipper with the default retries and starts its background
+	 * thread
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param bufferSize
+	 *            capacity of the ring buffer, rounded up to a power of two
+	 * @param batchSize
+	 *            maximum number of messages in a batch
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 * @param maxInFlight
+	 *            maximum number of ingestion requests in flight
+	 * @param policy
+	 *            behaviour when the buffer is full
+	 * @param blockTimeoutMillis
+	 *            maximum time in milliseconds the BLOCK policy waits
+	 */
+	public LogShipper(LogInsightClient client, int bufferSize, int batchSize, long lingerMillis, int maxInFlight,
+			OverflowPolicy policy, long blockTimeoutMillis) {
+		this(client, bufferSize, batchSize, lingerMillis, maxInFlight, policy, blockTimeoutMillis,
+				DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BACKOFF_MILLIS);
+	}
+
+	/**
+	 * Builds a LogShipper and starts its background thread
+	 *
+	 * @param client
+	 *            LogInsightClient used for ingestion
+	 * @param bufferSize
+	 *            capacity of the ring buffer, rounded up to a power of two
+	 * @param batchSize
+	 *            maximum number of messages in a batch
+	 * @param lingerMillis
+	 *            maximum time in milliseconds a message waits for its batch
+	 * @param maxInFlight
+	 *            maximum number of ingestion requests in flight
+	 * @param policy
+	 *            behaviour when the buffer is full
+	 * @param blockTimeoutMillis
+	 *            maximum time in milliseconds the BLOCK policy waits
+	 * @param maxRetries
+	 *            number of times a failed batch is sent again
+	 * @param retryBackoffMillis
+	 *            time in milliseconds before the first retry
+	 */
+	public LogShipper(LogInsightClient client, int bufferSize, int batchSize, long lingerMillis, int maxInFlight,
+			OverflowPolicy policy, long blockTimeoutMillis, int maxRetries, long retryBackoffMillis) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (null == policy) {
+			throw new IllegalArgumentException("Invalid overflow policy");
+		}
+		if (bufferSize <= 0 || batchSize <= 0 || lingerMillis <= 0 || maxInFlight <= 0 || blockTimeoutMillis < 0
+				|| maxRetries < 0 || retryBackoffMillis < 0) {
+			throw new IllegalArgumentException("Shipping parameters should be positive");
+		}
+		this.client = client;
+		this.ring = new MessageRing(bufferSize);
+		// batches in flight, waiting for a retry and being filled
+		this.buffers = new MpscRing<MessageBuffer>(2 * maxInFlight + 2);
+		this.batchSize = batchSize;
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.policy = policy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+		this.maxRetries = maxRetries;
+		this.retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(retryBackoffMillis);
+		this.worker = new Thread(this::run, "loginsight-log-shipper");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Queues a message for shipping. Never blocks, except with the BLOCK
+	 * policy when the buffer is full. The message is copied, it can be reused
+	 * once the call returns.
+	 *
+	 * @param message
+	 *            Message object
+	 * @return false if the message was dropped
+	 */
+	public boolean offer(Message message) {
+		if (null == message) {
+			throw new IllegalArgumentException("Invalid message");
+		}
+		return offer(MessageSlot::copyFrom, message);
+	}
+
+	/**
+	 * Queues a message written in place into a slot of the ring buffer, without
+	 * allocating. Never blocks, except with the BLOCK policy when the buffer is
+	 * full. Empty messages are not shipped. <br>
+	 *
+	 * The writer is called on the calling thread with an empty slot, and should
+	 * not keep a reference to it. An exception of the writer counts the message
+	 * as dropped and is rethrown.
+	 *
+	 * @param writer
+	 *            fills the slot from the event
+	 * @param event
+	 *            event to write
+	 * @param <T>
+	 *            type of the event
+	 * @return false if the message was dropped
+	 */
+	public <T> boolean offer(BiConsumer<MessageSlot, ? super T> writer, T event) {
+		if (closed) {
+			droppedCount.increment();
+			return false;
+		}
+		long sequence = ring.claim();
+		if (sequence < 0 && policy == OverflowPolicy.BLOCK) {
+			long deadline = System.nanoTime() + blockTimeoutNanos;
+			while (sequence < 0 && !closed && deadline - System.nanoTime() > 0) {
+				LockSupport.unpark(worker);
+				LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+				sequence = ring.claim();
+			}
+		}
+		if (sequence < 0) {
+			droppedCount.increment();
+			return false;
+		}
+		MessageSlot slot = ring.slot(sequence);
+		boolean written = false;
+		try {
+			writer.accept(slot, event);
+			written = true;
+		} finally {
+			if (!written) {
+				slot.clear();
+				droppedCount.increment();
+			}
+			// publishes even an empty slot, the background thread stops at
+			// a claimed slot until it is published
+			ring.publish(sequence);
+		}
+		wakeUp();
+		return true;
+	}
+
+	/**
+	 * Number of messages acknowledged by LogInsight
+	 *
+	 * @return number of shipped messages
+	 */
+	public long getShippedCount() {
+		return shippedCount.sum();
+	}
+
+	/**
+	 * Number of messages discarded because the buffer was full or the shipper
+	 * closed
+	 *
+	 * @return number of dropped messages
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * Number of messages in batches which could not be ingested
+	 *
+	 * @return number of failed messages
+	 */
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	/**
+	 * Number of times a failed batch was sent again
+	 *
+	 * @return number of retries
+	 */
+	public long getRetryCount() {
+		return retryCount.sum();
+	}
+
+	/**
+	 * Number of messages waiting in the buffer
+	 *
+	 * @return buffered messages
+	 */
+	public int getBufferedCount() {
+		return ring.size();
+	}
+
+	/**
+	 * Ships the buffered messages and waits for the in flight requests to
+	 * complete. Does not close the underlying LogInsightClient.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(worker);
+		long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+		try {
+			worker.join(CLOSE_TIMEOUT_MILLIS);
+			long remaining = Math.max(0, deadline - System.currentTimeMillis());
+			if (!worker.isAlive() && inFlight.tryAcquire(maxInFlight, remaining, TimeUnit.MILLISECONDS)) {
+				inFlight.release(maxInFlight);
+			} else {
+				logger.warn("Timed out shipping the buffered messages");
+				abandoned = true;
+				LockSupport.unpark(worker);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wakeUp() {
+		if (waiting) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	private void run() {
+		MessageBuffer batch = nextBuffer();
+		long deadline = 0;
+		while (true) {
+			Retry retry = retries.peek();
+			if (null != retry && (abandoned || retry.retryAt - System.nanoTime() <= 0)) {
+				retries.poll();
+				if (abandoned) {
+					failedCount.add(retry.batch.size());
+				} else {
+					retryCount.increment();
+					send(retry.batch, retry.attempt);
+				}
+				continue;
+			}
+			MessageSlot slot;
+			while (batch.size() < batchSize && null != (slot = ring.peek())) {
+				if (!slot.isEmpty()) {
+					if (batch.isEmpty()) {
+						deadline = System.nanoTime() + lingerNanos;
+					}
+					batch.add(slot);
+				}
+				ring.release();
+			}
+			boolean stopping = closed;
+			long now = System.nanoTime();
+			long parkNanos = null == retry ? IDLE_PARK_NANOS : Math.min(IDLE_PARK_NANOS, retry.retryAt - now);
+			if (batch.size() >= batchSize || (!batch.isEmpty() && (stopping || deadline - now <= 0))) {
+				send(batch, 0);
+				batch = nextBuffer();
+			} else if (!batch.isEmpty()) {
+				LockSupport.parkNanos(this, Math.min(parkNanos, Math.min(BATCH_PARK_NANOS, deadline - now)));
+			} else if (stopping && ring.isEmpty()) {
+				// failed batches in flight may still be retried
+				if (abandoned || (retries.isEmpty() && inFlight.availablePermits() == maxInFlight)) {
+					return;
+				}
+				LockSupport.parkNanos(this, Math.min(parkNanos, BATCH_PARK_NANOS));
+			} else {
+				waiting = true;
+				if (ring.isEmpty() && !closed) {
+					LockSupport.parkNanos(this, parkNanos);
+				}
+				waiting = false;
+			}
+		}
+	}
+
+	/**
+	 * Recycled buffer, or a new one while the batches in flight hold them all
+	 */
+	private MessageBuffer nextBuffer() {
+		MessageBuffer buffer = buffers.poll();
+		return null != buffer ? buffer : new MessageBuffer(batchSize);
+	}
+
+	private void recycle(MessageBuffer buffer) {
+		buffer.clear();
+		buffers.offer(buffer);
+	}
+
+	private void send(MessageBuffer batch, int attempt) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failedCount.add(batch.size());
+			return;
+		}
+		try {
+			client.ingest(new IngestionRequest(batch)).whenComplete((response, ex) -> {
+				try {
+					completed(batch, attempt, response, ex);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			try {
+				completed(batch, attempt, null, e);
+			} finally {
+				inFlight.release();
+			}
+		}
+	}
+
+	/**
+	 * Accounts for the outcome of a batch, and recycles its buffer unless it is
+	 * retried. Called before the batch releases its slot, so that the
+	 * background thread does not stop before a retry is queued.
+	 */
+	private void completed(MessageBuffer batch, int attempt, IngestionResponse response, Throwable ex) {
+		if (null != ex) {
+			if (attempt < maxRetries && !abandoned) {
+				long backoff = retryBackoffNanos << Math.min(attempt, 16);
+				retries.offer(new Retry(batch, attempt + 1, System.nanoTime() + backoff));
+				LockSupport.unpark(worker);
+				return;
+			}
+			failedCount.add(batch.size());
+			logger.warn("Unable to ship a batch of " + batch.size() + " messages", ex);
+		} else if (null == response || LogInsightClient.INGESTION_STATUS_DROPPED.equals(response.getStatus())) {
+			droppedCount.add(batch.size());
+		} else {
+			shippedCount.add(response.getIngested());
+		}
+		recycle(batch);
+	}
+
+	/**
+	 * Failed batch waiting to be sent again
+	 */
+	private static final class Retry {
+		private final MessageBuffer batch;
+		private final int attempt;
+		private final long retryAt;
+
+		private Retry(MessageBuffer batch, int attempt, long retryAt) {
+			this.batch = batch;
+			this.attempt = attempt;
+			this.retryAt = retryAt;
+		}
+	}
+}
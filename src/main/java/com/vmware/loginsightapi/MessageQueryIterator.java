@@ -0,0 +1,260 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.Field;
+import com.vmware.loginsightapi.core.FieldConstraint;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+/**
+ * Iterates over the events of a time range page by page. <br>
+ *
+ * Each page is a message query with the constraints of the base query, a
+ * {@code timestamp} constraint bounding the range and the limit of the base
+ * query as page size. The events API returns the newest events first, so the
+ * range is walked backwards: the upper bound of the next page is the oldest
+ * timestamp of the current page, inclusive, and the events of that timestamp
+ * already returned are skipped. The next page is requested as soon as the
+ * current page is received, while the current page is consumed. <br>
+ * <br>
+ * When a whole page shares a single timestamp, the remaining events of that
+ * timestamp cannot be reached with a larger offset, and are skipped with a
+ * warning. Use a page size larger than the number of events per millisecond.
+ * <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * try (Stream<Message> events = new MessageQueryIterator(client, query, start, end).stream()) {
+ *     events.forEach(message -> process(message));
+ * }
+ * }
+ */
+public class MessageQueryIterator implements Iterator<Message>, AutoCloseable {
+
+	/**
+	 * Name of the timestamp field
+	 */
+	public static final String TIMESTAMP_FIELD = "timestamp";
+
+	private final LogInsightClient client;
+	private final MessageQuery query;
+	private final long startTime;
+	private final int pageSize;
+
+	private long upperBound;
+	private boolean upperInclusive;
+	private Set<String> boundaryKeys = new HashSet<String>();
+
+	private CompletableFuture<Page> nextPage;
+	private Iterator<Message> current = Collections.<Message> emptyList().iterator();
+	private boolean exhausted;
+	private boolean closed;
+	private int pageCount;
+
+	private final static Logger logger = LoggerFactory.getLogger(MessageQueryIterator.class);
+
+	/**
+	 * Builds an iterator over the events of a time range. No query is sent
+	 * before the first event is requested.
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param query
+	 *            base query, its limit is the page size
+	 * @param startTime
+	 *            start of the range in milliseconds since epoch, inclusive
+	 * @param endTime
+	 *            end of the range in milliseconds since epoch, exclusive
+	 */
+	public MessageQueryIterator(LogInsightClient client, MessageQuery query, long startTime, long endTime) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (null == query || query.getLimit() <= 0) {
+			throw new IllegalArgumentException("Invalid query");
+		}
+		if (startTime >= endTime) {
+			throw new IllegalArgumentException("Invalid time range");
+		}
+		this.client = client;
+		this.query = query;
+		this.startTime = startTime;
+		this.upperBound = endTime;
+		this.upperInclusive = false;
+		this.pageSize = query.getLimit();
+	}
+
+	/**
+	 * Returns a sequential stream over the remaining events. Closing the
+	 * stream closes this iterator.
+	 *
+	 * @return Stream of events, newest first
+	 */
+	public Stream<Message> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Number of pages received so far
+	 *
+	 * @return number of pages
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (exhausted || closed) {
+				return false;
+			}
+			if (null == nextPage) {
+				nextPage = fetch();
+			}
+			Page page;
+			try {
+				page = nextPage.join();
+			} catch (CompletionException e) {
+				close();
+				throw e.getCause() instanceof LogInsightApiException ? (LogInsightApiException) e.getCause()
+						: new LogInsightApiException("Message query page failed", e.getCause());
+			}
+			pageCount++;
+			if (page.last) {
+				exhausted = true;
+				nextPage = null;
+			} else {
+				nextPage = fetch();
+			}
+			current = page.events.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public Message next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	/**
+	 * Discards the remaining events and cancels the prefetched page
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		current = Collections.<Message> emptyList().iterator();
+		if (null != nextPage) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+	}
+
+	private CompletableFuture<Page> fetch() {
+		List<FieldConstraint> constraints = new ArrayList<FieldConstraint>(query.getConstraints());
+		constraints.add(new FieldConstraint(TIMESTAMP_FIELD, FieldConstraint.Operator.GE, startTime));
+		constraints.add(new FieldConstraint(TIMESTAMP_FIELD,
+				upperInclusive ? FieldConstraint.Operator.LE : FieldConstraint.Operator.LT, upperBound));
+		MessageQuery page = new MessageQuery();
+		page.setConstraints(constraints).limit(pageSize).timeout(query.getTimeout())
+				.setContentPackFields(query.getContentPackFields());
+		return client.messageQuery(page.toUrlString()).thenApply(this::toPage);
+	}
+
+	/**
+	 * Filters the events already returned, and moves the upper bound to the
+	 * oldest timestamp of the page. Runs before the next page is requested.
+	 */
+	private Page toPage(MessageQueryResponse response) {
+		List<Message> events = null == response.getEvents() ? Collections.<Message> emptyList()
+				: response.getEvents();
+		List<Message> fresh = new ArrayList<Message>(events.size());
+		long oldest = Long.MAX_VALUE;
+		for (Message event : events) {
+			Long timestamp = event.getTimestamp();
+			if (null == timestamp) {
+				fresh.add(event);
+				continue;
+			}
+			oldest = Math.min(oldest, timestamp);
+			if (!upperInclusive || timestamp != upperBound || !boundaryKeys.contains(key(event))) {
+				fresh.add(event);
+			}
+		}
+		if (events.size() < pageSize) {
+			return new Page(fresh, true);
+		}
+		if (oldest == Long.MAX_VALUE) {
+			logger.warn("Events without timestamp, unable to request the next page");
+			return new Page(fresh, true);
+		}
+		if (oldest == upperBound && upperInclusive) {
+			if (fresh.isEmpty()) {
+				logger.warn("More than " + pageSize + " events at timestamp " + oldest + ", skipping the rest");
+				upperInclusive = false;
+				boundaryKeys = new HashSet<String>();
+				return new Page(fresh, false);
+			}
+		} else {
+			boundaryKeys = new HashSet<String>();
+		}
+		for (Message event : fresh) {
+			if (null != event.getTimestamp() && event.getTimestamp() == oldest) {
+				boundaryKeys.add(key(event));
+			}
+		}
+		upperBound = oldest;
+		upperInclusive = true;
+		return new Page(fresh, false);
+	}
+
+	private static String key(Message event) {
+		StringBuilder key = new StringBuilder().append(event.getText());
+		if (null != event.getFields()) {
+			for (Field field : event.getFields()) {
+				key.append('\0').append(field.getName()).append('=').append(field.getContent());
+			}
+		}
+		return key.toString();
+	}
+
+	private static final class Page {
+		private final List<Message> events;
+		private final boolean last;
+
+		private Page(List<Message> events, boolean last) {
+			this.events = events;
+			this.last = last;
+		}
+	}
+}
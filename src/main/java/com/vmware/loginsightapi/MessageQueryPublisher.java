@@ -0,0 +1,209 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+/**
+ * Reactive Streams publisher of the events of a message query. <br>
+ *
+ * Each subscription runs its own query through
+ * {@link LogInsightClient#messageQuery(String, java.util.function.Consumer, Executor)}
+ * once the subscriber requests the first event. The response is parsed while
+ * it is received, and the parser waits for demand before emitting the next
+ * event. While it waits, the response buffer fills up and reading from the
+ * connection is suspended, so a slow subscriber slows down the transfer
+ * instead of accumulating events in memory. Cancelling the subscription
+ * aborts the query. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * Flux.from(new MessageQueryPublisher(client, query.toUrlString())).subscribe(...)
+ * }
+ */
+public class MessageQueryPublisher implements Publisher<Message> {
+
+	private final LogInsightClient client;
+	private final String apiUrl;
+	private final Executor executor;
+
+	/**
+	 * Builds a publisher parsing on the client streaming executor
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param apiUrl
+	 *            relative url of the message query
+	 */
+	public MessageQueryPublisher(LogInsightClient client, String apiUrl) {
+		this(client, apiUrl, null);
+	}
+
+	/**
+	 * Builds a publisher
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param apiUrl
+	 *            relative url of the message query
+	 * @param executor
+	 *            executor running the parser and the onNext signals, null for
+	 *            the client streaming executor. Its thread is blocked while
+	 *            the subscriber has no demand.
+	 */
+	public MessageQueryPublisher(LogInsightClient client, String apiUrl, Executor executor) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (null == apiUrl) {
+			throw new IllegalArgumentException("Invalid query url");
+		}
+		this.client = client;
+		this.apiUrl = apiUrl;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super Message> subscriber) {
+		if (null == subscriber) {
+			throw new NullPointerException("Subscriber is null");
+		}
+		QuerySubscription subscription = new QuerySubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	private final class QuerySubscription implements Subscription {
+
+		private final Subscriber<? super Message> subscriber;
+		private final Object lock = new Object();
+
+		private long demand;
+		private boolean started;
+		private boolean cancelled;
+		private boolean terminated;
+		private CompletableFuture<MessageQueryResponse> query;
+
+		private QuerySubscription(Subscriber<? super Message> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			boolean start = false;
+			synchronized (lock) {
+				if (cancelled || terminated) {
+					return;
+				}
+				if (n <= 0) {
+					cancelled = true;
+					terminated = true;
+					lock.notifyAll();
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+					start = !started;
+					started = true;
+					lock.notifyAll();
+				}
+			}
+			if (n <= 0) {
+				cancelQuery();
+				subscriber.onError(new IllegalArgumentException("Requested " + n + " events, expected a positive number"));
+			} else if (start) {
+				start();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (lock) {
+				if (cancelled) {
+					return;
+				}
+				cancelled = true;
+				lock.notifyAll();
+			}
+			cancelQuery();
+		}
+
+		private void start() {
+			CompletableFuture<MessageQueryResponse> future = null == executor
+					? client.messageQuery(apiUrl, this::emit)
+					: client.messageQuery(apiUrl, this::emit, executor);
+			synchronized (lock) {
+				query = future;
+			}
+			if (isCancelled()) {
+				future.cancel(true);
+			}
+			future.whenComplete((response, ex) -> {
+				synchronized (lock) {
+					if (cancelled || terminated) {
+						return;
+					}
+					terminated = true;
+				}
+				if (null == ex) {
+					subscriber.onComplete();
+				} else {
+					subscriber.onError(ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex);
+				}
+			});
+		}
+
+		/**
+		 * Runs on the parser thread. Waits for demand before signalling the
+		 * event.
+		 */
+		private void emit(Message message) {
+			synchronized (lock) {
+				while (demand == 0 && !cancelled) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CancellationException("Interrupted while waiting for demand");
+					}
+				}
+				if (cancelled) {
+					throw new CancellationException("Subscription cancelled");
+				}
+				if (demand != Long.MAX_VALUE) {
+					demand--;
+				}
+			}
+			subscriber.onNext(message);
+		}
+
+		private boolean isCancelled() {
+			synchronized (lock) {
+				return cancelled;
+			}
+		}
+
+		private void cancelQuery() {
+			CompletableFuture<MessageQueryResponse> future;
+			synchronized (lock) {
+				future = query;
+			}
+			if (null != future) {
+				future.cancel(true);
+			}
+		}
+	}
+}
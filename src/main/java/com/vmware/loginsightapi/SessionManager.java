@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.AuthInfo;
+
+/**
+ * Holds the LogInsight session of a client and renews it. <br>
+ *
+ * The session is refreshed in the background before its TTL expires. A
+ * session rejected by the server can be renewed on demand; concurrent renewal
+ * requests share a single authentication call. The session id is swapped
+ * atomically, requests in flight keep the id they were sent with.
+ */
+final class SessionManager implements AutoCloseable {
+
+	/**
+	 * Fraction of the TTL after which the session is refreshed
+	 */
+	static final double REFRESH_RATIO = 0.8;
+
+	/**
+	 * Delay before retrying a failed background refresh (milliseconds)
+	 */
+	static final long RETRY_DELAY = 30000;
+
+	private final static Logger logger = LoggerFactory.getLogger(SessionManager.class);
+
+	private final Supplier<CompletableFuture<AuthInfo>> authenticator;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicReference<CompletableFuture<String>> renewal = new AtomicReference<>();
+
+	private volatile String sessionId;
+	private ScheduledFuture<?> refreshTask;
+
+	/**
+	 * Builds the session manager
+	 *
+	 * @param authenticator
+	 *            performs an authentication call to LogInsight
+	 */
+	SessionManager(Supplier<CompletableFuture<AuthInfo>> authenticator) {
+		this.authenticator = authenticator;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "loginsight-session-renewal");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Getter for the current session id
+	 *
+	 * @return session id or null if not authenticated
+	 */
+	String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * Returns the current session, authenticating if there is none. Callers
+	 * issued while the first authentication is in progress share it.
+	 *
+	 * @return CompletableFuture with the session id
+	 */
+	CompletableFuture<String> session() {
+		String current = sessionId;
+		if (null != current) {
+			return CompletableFuture.completedFuture(current);
+		}
+		return renew(null);
+	}
+
+	/**
+	 * Sets the session from a successful authentication and schedules its
+	 * refresh
+	 *
+	 * @param authInfo
+	 *            AuthInfo object
+	 */
+	void update(AuthInfo authInfo) {
+		sessionId = authInfo.getSessionId();
+		if (authInfo.getTtl() > 0) {
+			scheduleRefresh((long) (TimeUnit.SECONDS.toMillis(authInfo.getTtl()) * REFRESH_RATIO));
+		}
+	}
+
+	/**
+	 * Renews the session after it has been rejected. If the session was
+	 * already renewed since {@code staleSessionId} was used, the current
+	 * session id is returned without authenticating again.
+	 *
+	 * @param staleSessionId
+	 *            session id rejected by the server
+	 * @return CompletableFuture with the renewed session id
+	 */
+	CompletableFuture<String> renew(String staleSessionId) {
+		while (true) {
+			CompletableFuture<String> inFlight = renewal.get();
+			if (null != inFlight) {
+				return inFlight;
+			}
+			String current = sessionId;
+			if (null != current && !current.equals(staleSessionId)) {
+				return CompletableFuture.completedFuture(current);
+			}
+			CompletableFuture<String> next = new CompletableFuture<String>();
+			if (renewal.compareAndSet(null, next)) {
+				authenticate(next);
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Stops the background refresh
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	private void authenticate(CompletableFuture<String> next) {
+		CompletableFuture<AuthInfo> auth;
+		try {
+			auth = authenticator.get();
+		} catch (RuntimeException e) {
+			auth = new CompletableFuture<AuthInfo>();
+			auth.completeExceptionally(e);
+		}
+		auth.whenComplete((authInfo, ex) -> {
+			if (null == ex) {
+				update(authInfo);
+				renewal.set(null);
+				next.complete(authInfo.getSessionId());
+			} else {
+				renewal.set(null);
+				next.completeExceptionally(ex);
+			}
+		});
+	}
+
+	private synchronized void scheduleRefresh(long delay) {
+		if (null != refreshTask) {
+			refreshTask.cancel(false);
+		}
+		try {
+			refreshTask = scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed
+		}
+	}
+
+	private void refresh() {
+		logger.debug("Refreshing LogInsight session");
+		renew(sessionId).whenComplete((id, ex) -> {
+			if (null != ex) {
+				logger.warn("Unable to refresh LogInsight session, retrying in " + RETRY_DELAY + "ms", ex);
+				scheduleRefresh(RETRY_DELAY);
+			}
+		});
+	}
+}
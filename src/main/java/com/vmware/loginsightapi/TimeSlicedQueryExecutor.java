@@ -0,0 +1,424 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.AggregateQuery.AggregationFunction;
+import com.vmware.loginsightapi.core.AbstractQuery;
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.AggregateResponseBin;
+import com.vmware.loginsightapi.core.FieldConstraint;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+/**
+ * Runs a query over a time range as concurrent queries over slices of the
+ * range, and merges their results. <br>
+ *
+ * Large ranges are slow to query and often return incomplete results. Each
+ * slice adds a {@code timestamp} constraint to the base query, and at most
+ * {@code maxConcurrency} slices are queried at a time. <br>
+ * <br>
+ * The events of the slices are merged newest first and truncated to the
+ * limit of the base query. Aggregate bins are concatenated. The slices of an
+ * aggregate query are aligned on its bin width, and bins reported by two
+ * slices are combined for COUNT, SUM, MIN and MAX. A merged response is
+ * complete only when all the slices are complete. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * TimeSlicedQueryExecutor executor = new TimeSlicedQueryExecutor(client);
+ * MessageQueryResponse response = executor.messageQuery(query, start, end).get();
+ * }
+ */
+public class TimeSlicedQueryExecutor {
+
+	/**
+	 * Default maximum number of slices queried at a time
+	 */
+	public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+	/**
+	 * Default number of events per slice of adaptive slicing
+	 */
+	public static final long DEFAULT_EVENTS_PER_SLICE = 50000;
+
+	/**
+	 * Number of bins of the COUNT query estimating the distribution of the
+	 * events, which is also the maximum number of adaptive slices
+	 */
+	public static final int ADAPTIVE_BINS = 100;
+
+	private final LogInsightClient client;
+	private final int maxConcurrency;
+	private final long eventsPerSlice;
+
+	private final static Logger logger = LoggerFactory.getLogger(TimeSlicedQueryExecutor.class);
+
+	/**
+	 * Builds an executor with default parameters
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 */
+	public TimeSlicedQueryExecutor(LogInsightClient client) {
+		this(client, DEFAULT_MAX_CONCURRENCY, DEFAULT_EVENTS_PER_SLICE);
+	}
+
+	/**
+	 * Builds an executor
+	 *
+	 * @param client
+	 *            LogInsightClient used for the queries
+	 * @param maxConcurrency
+	 *            maximum number of slices queried at a time
+	 * @param eventsPerSlice
+	 *            target number of events per slice of adaptive slicing
+	 */
+	public TimeSlicedQueryExecutor(LogInsightClient client, int maxConcurrency, long eventsPerSlice) {
+		if (null == client) {
+			throw new IllegalArgumentException("Invalid client");
+		}
+		if (maxConcurrency <= 0 || eventsPerSlice <= 0) {
+			throw new IllegalArgumentException("Slicing parameters should be positive");
+		}
+		this.client = client;
+		this.maxConcurrency = maxConcurrency;
+		this.eventsPerSlice = eventsPerSlice;
+	}
+
+	/**
+	 * Performs a message query over a time range split in slices of equal
+	 * duration
+	 *
+	 * @param query
+	 *            base query
+	 * @param startTime
+	 *            start of the range in milliseconds since epoch, inclusive
+	 * @param endTime
+	 *            end of the range in milliseconds since epoch, exclusive
+	 * @param slices
+	 *            number of slices
+	 * @return merged MessageQueryResponse CompletableFuture
+	 */
+	public CompletableFuture<MessageQueryResponse> messageQuery(MessageQuery query, long startTime, long endTime,
+			int slices) {
+		checkRange(startTime, endTime, slices);
+		return messageQuery(query, split(startTime, endTime, slices, 1));
+	}
+
+	/**
+	 * Performs a message query over a time range split in slices of about
+	 * {@code eventsPerSlice} events each. The distribution of the events is
+	 * estimated first with a COUNT aggregate query over the range.
+	 *
+	 * @param query
+	 *            base query
+	 * @param startTime
+	 *            start of the range in milliseconds since epoch, inclusive
+	 * @param endTime
+	 *            end of the range in milliseconds since epoch, exclusive
+	 * @return merged MessageQueryResponse CompletableFuture
+	 */
+	public CompletableFuture<MessageQueryResponse> messageQuery(MessageQuery query, long startTime, long endTime) {
+		checkRange(startTime, endTime, 1);
+		long binWidth = Math.max(1, (endTime - startTime + ADAPTIVE_BINS - 1) / ADAPTIVE_BINS);
+		AggregateQuery count = new AggregateQuery().count().binWidth((int) Math.min(Integer.MAX_VALUE, binWidth));
+		copy(query, count);
+		count.setConstraints(withRange(query.getConstraints(), startTime, endTime));
+		return client.aggregateQuery(count.toUrlString()).thenCompose(
+				response -> messageQuery(query, adaptiveBoundaries(response, startTime, endTime, binWidth)));
+	}
+
+	/**
+	 * Performs an aggregate query over a time range split in slices of equal
+	 * duration, rounded to the bin width of the query
+	 *
+	 * @param query
+	 *            base query
+	 * @param startTime
+	 *            start of the range in milliseconds since epoch, inclusive
+	 * @param endTime
+	 *            end of the range in milliseconds since epoch, exclusive
+	 * @param slices
+	 *            maximum number of slices
+	 * @return merged AggregateResponse CompletableFuture
+	 */
+	public CompletableFuture<AggregateResponse> aggregateQuery(AggregateQuery query, long startTime, long endTime,
+			int slices) {
+		checkRange(startTime, endTime, slices);
+		long[] boundaries = split(startTime, endTime, slices, Math.max(1, query.getBinWidth()));
+		List<Supplier<CompletableFuture<AggregateResponse>>> tasks = new ArrayList<Supplier<CompletableFuture<AggregateResponse>>>();
+		for (int i = 0; i + 1 < boundaries.length; i++) {
+			AggregateQuery slice = new AggregateQuery().binWidth(query.getBinWidth())
+					.aggregator(query.getAggregationFunction(), query.getAggregationField())
+					.setGroupBy(query.getGroupBy()).setOrderBy(query.getOrderBy());
+			copy(query, slice);
+			slice.setConstraints(withRange(query.getConstraints(), boundaries[i], boundaries[i + 1]));
+			String url = slice.toUrlString();
+			tasks.add(() -> client.aggregateQuery(url));
+		}
+		return runAll(tasks).thenApply(responses -> mergeAggregates(responses, query.getAggregationFunction()));
+	}
+
+	private CompletableFuture<MessageQueryResponse> messageQuery(MessageQuery query, long[] boundaries) {
+		List<Supplier<CompletableFuture<MessageQueryResponse>>> tasks = new ArrayList<Supplier<CompletableFuture<MessageQueryResponse>>>();
+		for (int i = 0; i + 1 < boundaries.length; i++) {
+			MessageQuery slice = new MessageQuery();
+			copy(query, slice);
+			slice.setConstraints(withRange(query.getConstraints(), boundaries[i], boundaries[i + 1]));
+			String url = slice.toUrlString();
+			tasks.add(() -> client.messageQuery(url));
+		}
+		return runAll(tasks).thenApply(responses -> mergeMessages(responses, query.getLimit()));
+	}
+
+	private static void checkRange(long startTime, long endTime, int slices) {
+		if (startTime >= endTime) {
+			throw new IllegalArgumentException("Invalid time range");
+		}
+		if (slices <= 0) {
+			throw new IllegalArgumentException("Number of slices should be positive");
+		}
+	}
+
+	private static void copy(AbstractQuery<?> query, AbstractQuery<?> slice) {
+		slice.limit(query.getLimit()).timeout(query.getTimeout())
+				.setContentPackFields(new ArrayList<String>(query.getContentPackFields()));
+	}
+
+	private static List<FieldConstraint> withRange(List<FieldConstraint> constraints, long from, long to) {
+		List<FieldConstraint> range = new ArrayList<FieldConstraint>(constraints);
+		range.add(new FieldConstraint(MessageQueryIterator.TIMESTAMP_FIELD, FieldConstraint.Operator.GE, from));
+		range.add(new FieldConstraint(MessageQueryIterator.TIMESTAMP_FIELD, FieldConstraint.Operator.LT, to));
+		return range;
+	}
+
+	/**
+	 * Splits a range in slices of equal duration. Inner boundaries are rounded
+	 * down to multiples of the alignment, so fewer slices are returned when
+	 * the range holds fewer alignment units.
+	 */
+	static long[] split(long startTime, long endTime, int slices, long alignment) {
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(startTime);
+		for (int i = 1; i < slices; i++) {
+			long boundary = startTime + (endTime - startTime) / slices * i
+					+ (endTime - startTime) % slices * i / slices;
+			boundary -= Math.floorMod(boundary, alignment);
+			if (boundary > boundaries.get(boundaries.size() - 1) && boundary < endTime) {
+				boundaries.add(boundary);
+			}
+		}
+		boundaries.add(endTime);
+		return boundaries.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Places the boundaries between the COUNT bins so that each slice holds
+	 * about {@code eventsPerSlice} events
+	 */
+	private long[] adaptiveBoundaries(AggregateResponse counts, long startTime, long endTime, long binWidth) {
+		List<AggregateResponseBin> bins = null == counts.getBins() ? Collections.<AggregateResponseBin> emptyList()
+				: new ArrayList<AggregateResponseBin>(counts.getBins());
+		bins.removeIf(bin -> null == bin.getMinTimestamp() || null == bin.getValue());
+		bins.sort(Comparator.comparing(AggregateResponseBin::getMinTimestamp));
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(startTime);
+		long accumulated = 0;
+		for (AggregateResponseBin bin : bins) {
+			accumulated += bin.getValue();
+			long binEnd = bin.getMinTimestamp() + binWidth;
+			if (accumulated >= eventsPerSlice && binEnd > boundaries.get(boundaries.size() - 1) && binEnd < endTime) {
+				boundaries.add(binEnd);
+				accumulated = 0;
+			}
+		}
+		boundaries.add(endTime);
+		logger.debug("Querying " + (boundaries.size() - 1) + " slices between " + startTime + " and " + endTime);
+		return boundaries.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Runs the tasks, at most {@code maxConcurrency} at a time. Fails and
+	 * cancels the running tasks as soon as a task fails.
+	 */
+	private <T> CompletableFuture<List<T>> runAll(List<Supplier<CompletableFuture<T>>> tasks) {
+		CompletableFuture<List<T>> all = new CompletableFuture<List<T>>();
+		List<T> results = Collections.synchronizedList(new ArrayList<T>(Collections.<T> nCopies(tasks.size(), null)));
+		List<CompletableFuture<T>> running = Collections.synchronizedList(new ArrayList<CompletableFuture<T>>());
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger remaining = new AtomicInteger(tasks.size());
+		all.whenComplete((result, ex) -> {
+			if (null != ex) {
+				synchronized (running) {
+					running.forEach(future -> future.cancel(true));
+				}
+			}
+		});
+		for (int i = 0; i < Math.min(maxConcurrency, tasks.size()); i++) {
+			launch(tasks, next, remaining, results, running, all);
+		}
+		return all;
+	}
+
+	private <T> void launch(List<Supplier<CompletableFuture<T>>> tasks, AtomicInteger next, AtomicInteger remaining,
+			List<T> results, List<CompletableFuture<T>> running, CompletableFuture<List<T>> all) {
+		int index = next.getAndIncrement();
+		if (index >= tasks.size() || all.isDone()) {
+			return;
+		}
+		CompletableFuture<T> started;
+		try {
+			started = tasks.get(index).get();
+		} catch (RuntimeException e) {
+			started = new CompletableFuture<T>();
+			started.completeExceptionally(e);
+		}
+		CompletableFuture<T> future = started;
+		running.add(future);
+		future.whenComplete((result, ex) -> {
+			running.remove(future);
+			if (null != ex) {
+				all.completeExceptionally(ex);
+				return;
+			}
+			results.set(index, result);
+			if (remaining.decrementAndGet() == 0) {
+				all.complete(results);
+			} else {
+				launch(tasks, next, remaining, results, running, all);
+			}
+		});
+	}
+
+	/**
+	 * k-way merge of the events of the slices, newest first
+	 */
+	static MessageQueryResponse mergeMessages(List<MessageQueryResponse> responses, int limit) {
+		MessageQueryResponse merged = new MessageQueryResponse();
+		merged.setComplete(true);
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(Math.max(1, responses.size()));
+		for (MessageQueryResponse response : responses) {
+			merged.setComplete(merged.isComplete() && response.isComplete());
+			merged.setDuration(Math.max(merged.getDuration(), response.getDuration()));
+			if (null != response.getEvents()) {
+				Cursor cursor = new Cursor(response.getEvents().iterator());
+				if (null != cursor.head) {
+					cursors.add(cursor);
+				}
+			}
+		}
+		List<Message> events = new ArrayList<Message>();
+		while (!cursors.isEmpty() && events.size() < limit) {
+			Cursor cursor = cursors.poll();
+			events.add(cursor.head);
+			if (cursor.advance()) {
+				cursors.add(cursor);
+			}
+		}
+		merged.setEvents(events);
+		return merged;
+	}
+
+	/**
+	 * Concatenates the bins of the slices, combining the bins reported by two
+	 * slices when the aggregation function allows it
+	 */
+	static AggregateResponse mergeAggregates(List<AggregateResponse> responses, AggregationFunction function) {
+		AggregateResponse merged = new AggregateResponse();
+		merged.setComplete(true);
+		List<AggregateResponseBin> bins = new ArrayList<AggregateResponseBin>();
+		for (AggregateResponse response : responses) {
+			merged.setComplete(merged.isComplete() && response.isComplete());
+			merged.setDuration(Math.max(merged.getDuration(), response.getDuration()));
+			if (null != response.getBins()) {
+				bins.addAll(response.getBins());
+			}
+		}
+		bins.sort(Comparator.comparing(AggregateResponseBin::getMinTimestamp,
+				Comparator.nullsLast(Comparator.naturalOrder())));
+		List<AggregateResponseBin> combined = new ArrayList<AggregateResponseBin>(bins.size());
+		for (AggregateResponseBin bin : bins) {
+			AggregateResponseBin last = combined.isEmpty() ? null : combined.get(combined.size() - 1);
+			if (null == last || null == bin.getMinTimestamp() || !bin.getMinTimestamp().equals(last.getMinTimestamp())) {
+				combined.add(bin);
+				continue;
+			}
+			AggregateResponseBin union = new AggregateResponseBin();
+			union.setMinTimestamp(last.getMinTimestamp());
+			union.setMaxTimestamp(max(last.getMaxTimestamp(), bin.getMaxTimestamp()));
+			union.setValue(combine(function, last.getValue(), bin.getValue()));
+			combined.set(combined.size() - 1, union);
+		}
+		merged.setBins(combined);
+		return merged;
+	}
+
+	private static Long combine(AggregationFunction function, Long first, Long second) {
+		if (null == first || null == second) {
+			return null == first ? second : first;
+		}
+		switch (function) {
+		case COUNT:
+		case SUM:
+			return first + second;
+		case MIN:
+			return Math.min(first, second);
+		case MAX:
+			return Math.max(first, second);
+		default:
+			logger.warn("Unable to combine " + function + " bins split between slices");
+			return first;
+		}
+	}
+
+	private static Long max(Long first, Long second) {
+		if (null == first || null == second) {
+			return null == first ? second : first;
+		}
+		return Math.max(first, second);
+	}
+
+	private static final class Cursor implements Comparable<Cursor> {
+		private final Iterator<Message> events;
+		private Message head;
+
+		private Cursor(Iterator<Message> events) {
+			this.events = events;
+			advance();
+		}
+
+		private boolean advance() {
+			head = events.hasNext() ? events.next() : null;
+			return null != head;
+		}
+
+		private long timestamp() {
+			return null == head.getTimestamp() ? Long.MIN_VALUE : head.getTimestamp();
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			return Long.compare(other.timestamp(), timestamp());
+		}
+	}
+}
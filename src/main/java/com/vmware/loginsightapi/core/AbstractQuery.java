@@ -159,6 +159,42 @@ public abstract class AbstractQuery<T extends AbstractQuery<T>> {
 		return this;
 	}
 
+	/**
+	 * Getter for the field constraints
+	 *
+	 * @return List of FieldConstraint objects
+	 */
+	public List<FieldConstraint> getConstraints() {
+		return this.constraints;
+	}
+
+	/**
+	 * Getter for the limit on number of events in query response
+	 *
+	 * @return maximum number of events
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Getter for the timeout of the query
+	 *
+	 * @return Query execution timeout
+	 */
+	public int getTimeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * Getter for the content-pack-fields to be returned in the events
+	 *
+	 * @return List of content pack fields
+	 */
+	public List<String> getContentPackFields() {
+		return this.contentPackFields;
+	}
+
 	/**
 	 * Builds the path segment based on the FieldConstraints registered to this
 	 * object.
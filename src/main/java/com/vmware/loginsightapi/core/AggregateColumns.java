@@ -0,0 +1,410 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.vmware.loginsightapi.ParseException;
+
+/**
+ * Columnar view of an aggregate query response. <br>
+ *
+ * The bins are held in three primitive arrays instead of a list of
+ * {@link AggregateResponseBin}, so large responses are parsed without boxing
+ * and the columns can be scanned by tight loops. Missing bin values are read
+ * as 0. <br>
+ * <br>
+ * <b> Sample Usage: </b> <br>
+ * {@code
+ * AggregateColumns columns = client.aggregateQueryColumns(aqb.toUrlString()).get();
+ * double[] perSecond = columns.rate(1000);
+ * }
+ */
+public class AggregateColumns {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private boolean complete;
+	private int duration;
+	private int size;
+	private long[] minTimestamps;
+	private long[] maxTimestamps;
+	private long[] values;
+
+	/**
+	 * Builds an empty series
+	 */
+	public AggregateColumns() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Builds an empty series
+	 *
+	 * @param capacity
+	 *            initial number of bins
+	 */
+	public AggregateColumns(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		}
+		minTimestamps = new long[capacity];
+		maxTimestamps = new long[capacity];
+		values = new long[capacity];
+	}
+
+	/**
+	 * Indicates whether query is complete or not.
+	 *
+	 * @return true or false
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Setter for query complete indicator
+	 *
+	 * @param complete
+	 *            true or false
+	 */
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+
+	/**
+	 * Getter for query duration
+	 *
+	 * @return duration of the query
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Setter for query duration
+	 *
+	 * @param duration
+	 *            duration of the query
+	 */
+	public void setDuration(int duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * Appends a bin
+	 *
+	 * @param minTimestamp
+	 *            minimum (starting) timestamp of the bin
+	 * @param maxTimestamp
+	 *            maximum (end) timestamp of the bin
+	 * @param value
+	 *            value in the bin
+	 */
+	public void add(long minTimestamp, long maxTimestamp, long value) {
+		if (size == values.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+			minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+			maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		minTimestamps[size] = minTimestamp;
+		maxTimestamps[size] = maxTimestamp;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Number of bins
+	 *
+	 * @return bin count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Minimum (starting) timestamp of a bin
+	 *
+	 * @param index
+	 *            bin index
+	 * @return timestamp in millis
+	 */
+	public long getMinTimestamp(int index) {
+		checkIndex(index);
+		return minTimestamps[index];
+	}
+
+	/**
+	 * Maximum (end) timestamp of a bin
+	 *
+	 * @param index
+	 *            bin index
+	 * @return timestamp in millis
+	 */
+	public long getMaxTimestamp(int index) {
+		checkIndex(index);
+		return maxTimestamps[index];
+	}
+
+	/**
+	 * Value of a bin
+	 *
+	 * @param index
+	 *            bin index
+	 * @return value in the bin
+	 */
+	public long getValue(int index) {
+		checkIndex(index);
+		return values[index];
+	}
+
+	/**
+	 * Copy of the minimum timestamps column
+	 *
+	 * @return array of size {@link #size()}
+	 */
+	public long[] minTimestamps() {
+		return Arrays.copyOf(minTimestamps, size);
+	}
+
+	/**
+	 * Copy of the maximum timestamps column
+	 *
+	 * @return array of size {@link #size()}
+	 */
+	public long[] maxTimestamps() {
+		return Arrays.copyOf(maxTimestamps, size);
+	}
+
+	/**
+	 * Copy of the values column
+	 *
+	 * @return array of size {@link #size()}
+	 */
+	public long[] values() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Sum of the bin values
+	 *
+	 * @return sum, 0 when there are no bins
+	 */
+	public long sum() {
+		long[] column = values;
+		long sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += column[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Largest bin value
+	 *
+	 * @return maximum, {@link Long#MIN_VALUE} when there are no bins
+	 */
+	public long max() {
+		long[] column = values;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			max = Math.max(max, column[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Value of each bin per unit of time. The duration of a bin is its
+	 * maximum timestamp minus its minimum timestamp plus one millisecond.
+	 *
+	 * @param unit
+	 *            unit of time in milliseconds, 1000 for a rate per second
+	 * @return array of size {@link #size()} with the rates
+	 */
+	public double[] rate(long unit) {
+		if (unit <= 0) {
+			throw new IllegalArgumentException("Invalid unit " + unit);
+		}
+		long[] min = minTimestamps;
+		long[] max = maxTimestamps;
+		long[] column = values;
+		double[] rates = new double[size];
+		for (int i = 0; i < size; i++) {
+			rates[i] = (double) column[i] * unit / (max[i] - min[i] + 1);
+		}
+		return rates;
+	}
+
+	/**
+	 * Trailing moving average of the bin values. The first bins are averaged
+	 * over the bins available.
+	 *
+	 * @param window
+	 *            number of bins averaged
+	 * @return array of size {@link #size()} with the averages
+	 */
+	public double[] movingAverage(int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("Invalid window " + window);
+		}
+		long[] column = values;
+		double[] averages = new double[size];
+		long sum = 0;
+		int head = Math.min(window, size);
+		for (int i = 0; i < head; i++) {
+			sum += column[i];
+			averages[i] = (double) sum / (i + 1);
+		}
+		for (int i = head; i < size; i++) {
+			sum += column[i] - column[i - window];
+			averages[i] = (double) sum / window;
+		}
+		return averages;
+	}
+
+	/**
+	 * Converts the columns to an AggregateResponse with a list of bins
+	 *
+	 * @return AggregateResponse
+	 */
+	public AggregateResponse toAggregateResponse() {
+		List<AggregateResponseBin> bins = new ArrayList<AggregateResponseBin>(size);
+		for (int i = 0; i < size; i++) {
+			AggregateResponseBin bin = new AggregateResponseBin();
+			bin.setMinTimestamp(minTimestamps[i]);
+			bin.setMaxTimestamp(maxTimestamps[i]);
+			bin.setValue(values[i]);
+			bins.add(bin);
+		}
+		AggregateResponse response = new AggregateResponse();
+		response.setComplete(complete);
+		response.setDuration(duration);
+		response.setBins(bins);
+		return response;
+	}
+
+	/**
+	 * Builds the columns of an AggregateResponse
+	 *
+	 * @param response
+	 *            AggregateResponse
+	 * @return AggregateColumns
+	 */
+	public static AggregateColumns of(AggregateResponse response) {
+		List<AggregateResponseBin> bins = response.getBins();
+		AggregateColumns columns = new AggregateColumns(null == bins ? 0 : bins.size());
+		columns.setComplete(response.isComplete());
+		columns.setDuration(response.getDuration());
+		if (null != bins) {
+			for (AggregateResponseBin bin : bins) {
+				columns.add(unbox(bin.getMinTimestamp()), unbox(bin.getMaxTimestamp()), unbox(bin.getValue()));
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Static method to De-serialize a JSON string to AggregateColumns
+	 *
+	 * @param json
+	 *            JSON string (representing the AggregateResponse)
+	 * @return AggregateColumns
+	 */
+	public static AggregateColumns fromJsonString(String json) {
+		try (JsonParser parser = JsonCodec.factory().createParser(json)) {
+			return parse(parser);
+		} catch (IOException e) {
+			throw new ParseException("Unable to parse the aggregation query response.", e);
+		}
+	}
+
+	/**
+	 * Parses an aggregate query response from the stream. The stream is not
+	 * closed.
+	 *
+	 * @param in
+	 *            stream with the json aggregate query response
+	 * @return AggregateColumns
+	 * @throws IOException
+	 *             when the stream can not be read
+	 * @throws ParseException
+	 *             when the response is not a valid aggregate query response
+	 */
+	public static AggregateColumns parse(InputStream in) throws IOException {
+		try (JsonParser parser = JsonCodec.factory().createParser(in)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			return parse(parser);
+		}
+	}
+
+	private static AggregateColumns parse(JsonParser parser) throws IOException {
+		AggregateColumns columns = new AggregateColumns();
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new ParseException("Aggregate query response should be a json object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("complete".equals(name)) {
+					columns.setComplete(parser.getValueAsBoolean());
+				} else if ("duration".equals(name)) {
+					columns.setDuration(parser.getValueAsInt());
+				} else if ("bins".equals(name) && token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						parseBin(parser, columns);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (JsonProcessingException e) {
+			throw new ParseException("Aggregate query response parsing failed.", e);
+		}
+		return columns;
+	}
+
+	private static void parseBin(JsonParser parser, AggregateColumns columns) throws IOException {
+		long minTimestamp = 0;
+		long maxTimestamp = 0;
+		long value = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if ("minTimestamp".equals(name)) {
+				minTimestamp = parser.getValueAsLong();
+			} else if ("maxTimestamp".equals(name)) {
+				maxTimestamp = parser.getValueAsLong();
+			} else if ("value".equals(name)) {
+				value = parser.getValueAsLong();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		columns.add(minTimestamp, maxTimestamp, value);
+	}
+
+	private static long unbox(Long value) {
+		return null == value ? 0 : value;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+	}
+}
@@ -11,7 +11,6 @@ package com.vmware.loginsightapi.core;
 import java.io.IOException;
 import java.util.List;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.loginsightapi.ParseException;
 
 /**
@@ -87,9 +86,8 @@ public class AggregateResponse {
 	 * @return AggregateResponse
 	 */
 	public static AggregateResponse fromJsonString(String json) {
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(json, AggregateResponse.class);
+			return JsonCodec.reader(AggregateResponse.class).readValue(json);
 		} catch (IOException e) {
 			throw new ParseException("Unable to parse the aggregation query response.", e);
 		}
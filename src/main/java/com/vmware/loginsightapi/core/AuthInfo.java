@@ -10,7 +10,6 @@ package com.vmware.loginsightapi.core;
 
 import java.io.IOException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.loginsightapi.ParseException;
 
 /**
@@ -95,9 +94,8 @@ public class AuthInfo {
 	 * @return AuthInfo object
 	 */
 	public static AuthInfo fromJsonString(String json) {
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(json, AuthInfo.class);
+			return JsonCodec.reader(AuthInfo.class).readValue(json);
 		} catch (IOException e) {
 			throw new ParseException("Unable parse the auth response.", e);
 		}
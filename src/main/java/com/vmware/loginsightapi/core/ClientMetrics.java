@@ -0,0 +1,165 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the measurements of the LogInsightClient. <br>
+ *
+ * All the methods do nothing by default, implementations override the ones
+ * they record. Methods are called from the caller threads and from the IO
+ * threads of the http client, so they should be thread safe and should not
+ * block. Times are in nanoseconds.
+ *
+ * @see com.vmware.loginsightapi.util.HdrClientMetrics
+ */
+public interface ClientMetrics {
+
+	/**
+	 * Metrics discarding all the measurements
+	 */
+	ClientMetrics NOOP = new ClientMetrics() {
+	};
+
+	/**
+	 * Operations of the client
+	 */
+	enum Operation {
+		/**
+		 * Authentication with LogInsight
+		 */
+		CONNECT,
+
+		/**
+		 * Message query
+		 */
+		MESSAGE_QUERY,
+
+		/**
+		 * Aggregate query
+		 */
+		AGGREGATE_QUERY,
+
+		/**
+		 * Ingestion of messages
+		 */
+		INGEST
+	}
+
+	/**
+	 * Called when an operation is started
+	 *
+	 * @param operation
+	 *            operation started
+	 */
+	default void started(Operation operation) {
+	}
+
+	/**
+	 * Called when an operation completes, including the time waiting for the
+	 * session and the retries
+	 *
+	 * @param operation
+	 *            operation completed
+	 * @param latency
+	 *            time since the operation started
+	 * @param success
+	 *            false if the operation failed
+	 */
+	default void completed(Operation operation, long latency, boolean success) {
+	}
+
+	/**
+	 * Time from sending a request to receiving its response
+	 *
+	 * @param operation
+	 *            operation of the request
+	 * @param time
+	 *            network time of the request
+	 */
+	default void networkTime(Operation operation, long time) {
+	}
+
+	/**
+	 * Time spent serializing the body of a request
+	 *
+	 * @param operation
+	 *            operation of the request
+	 * @param time
+	 *            serialization time
+	 */
+	default void serializationTime(Operation operation, long time) {
+	}
+
+	/**
+	 * Time spent reading and parsing the body of a response
+	 *
+	 * @param operation
+	 *            operation of the response
+	 * @param time
+	 *            parse time
+	 */
+	default void parseTime(Operation operation, long time) {
+	}
+
+	/**
+	 * Size of the body of a request, as sent
+	 *
+	 * @param operation
+	 *            operation of the request
+	 * @param bytes
+	 *            number of bytes
+	 */
+	default void requestBytes(Operation operation, long bytes) {
+	}
+
+	/**
+	 * Size of the body of a response, as received
+	 *
+	 * @param operation
+	 *            operation of the response
+	 * @param bytes
+	 *            number of bytes
+	 */
+	default void responseBytes(Operation operation, long bytes) {
+	}
+
+	/**
+	 * Called when a request is sent again after renewing the session
+	 *
+	 * @param operation
+	 *            operation retried
+	 */
+	default void retried(Operation operation) {
+	}
+
+	/**
+	 * Messages of an ingestion request accepted by LogInsight
+	 *
+	 * @param submitted
+	 *            number of messages sent
+	 * @param ingested
+	 *            number of messages LogInsight reported as ingested
+	 */
+	default void ingested(long submitted, long ingested) {
+	}
+
+	/**
+	 * Registers a value sampled by the metrics, such as the connection pool
+	 * utilization
+	 *
+	 * @param name
+	 *            name of the gauge
+	 * @param gauge
+	 *            returns the current value
+	 */
+	default void gauge(String name, LongSupplier gauge) {
+	}
+}
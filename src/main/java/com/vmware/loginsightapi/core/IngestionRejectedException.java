@@ -0,0 +1,28 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+/**
+ * Ingestion request refused because the in-flight budget is exhausted. The
+ * request was not sent and can be retried.
+ */
+public class IngestionRejectedException extends LogInsightApiException {
+
+	private static final long serialVersionUID = 3198823461745110245L;
+
+	/**
+	 * Constructs IngestionRejectedException with provided message
+	 * 
+	 * @param message
+	 *            error message
+	 */
+	public IngestionRejectedException(String message) {
+		super(message);
+	}
+}
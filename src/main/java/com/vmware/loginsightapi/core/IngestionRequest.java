@@ -8,12 +8,15 @@
  */
 package com.vmware.loginsightapi.core;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Class representing the LogInsight Ingestion request object
@@ -22,6 +25,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class IngestionRequest {
 	private List<Message> messages;
+	private MessageBuffer buffer;
+	private Boolean compressed;
 	
 	/**
 	 * Constructs IngestionRequest object with empty list of messages
@@ -41,11 +46,29 @@ public class IngestionRequest {
 	}
 
 	/**
-	 * Getter for messages
+	 * Constructs IngestionRequest object holding the messages of a buffer. The
+	 * messages are serialized from the buffer, without Message objects. The
+	 * buffer should not be modified until the ingestion completes.
+	 * 
+	 * @param buffer MessageBuffer object
+	 */
+	public IngestionRequest (MessageBuffer buffer) {
+		if (null == buffer) {
+			throw new IllegalArgumentException("Invalid message buffer");
+		}
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Getter for messages. A request holding a buffer returns a copy of its
+	 * messages.
 	 * 
 	 * @return the messages
 	 */
 	public List<Message> getMessages() {
+		if (null != buffer) {
+			return buffer.toMessages();
+		}
 		return messages;
 	}
 
@@ -56,6 +79,17 @@ public class IngestionRequest {
 	 */
 	public void setMessages(List<Message> messages) {
 		this.messages = messages;
+		this.buffer = null;
+	}
+
+	/**
+	 * Getter for the buffer holding the messages
+	 * 
+	 * @return MessageBuffer object, null when the request holds a list
+	 */
+	@JsonIgnore
+	public MessageBuffer getBuffer() {
+		return buffer;
 	}
 	
 	/**
@@ -64,7 +98,11 @@ public class IngestionRequest {
 	 * @param message Message object
 	 */
 	public void addMessage(Message message) {
-		messages.add(message);
+		if (null != buffer) {
+			buffer.add(message);
+		} else {
+			messages.add(message);
+		}
 	}
 	
 	/**
@@ -73,7 +111,13 @@ public class IngestionRequest {
 	 * @param messages List of Message objects
 	 */
 	public void addMessages(List<Message> messages) {
-		this.messages.addAll(messages);
+		if (null != buffer) {
+			for (Message message : messages) {
+				buffer.add(message);
+			}
+		} else {
+			this.messages.addAll(messages);
+		}
 	}
 	
 	/**
@@ -82,22 +126,79 @@ public class IngestionRequest {
 	 * @return count of messages
 	 */
 	public int count() {
-		return this.messages.size();
+		return null != buffer ? buffer.size() : this.messages.size();
 	}
 	
+	/**
+	 * Estimates the size of the serialized messages
+	 * 
+	 * @return estimated size in bytes
+	 */
+	public int estimatedSize() {
+		if (null != buffer) {
+			return buffer.estimatedSize();
+		}
+		int size = 0;
+		for (Message message : messages) {
+			size += message.estimatedSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Tells whether the request is sent compressed
+	 * 
+	 * @return true or false, null to follow the client configuration
+	 */
+	@JsonIgnore
+	public Boolean getCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Overrides the ingestion compression of the client configuration for
+	 * this request
+	 * 
+	 * @param compressed
+	 *            true to compress, false to send uncompressed, null to follow
+	 *            the client configuration
+	 */
+	@JsonIgnore
+	public void setCompressed(Boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	/**
 	 * Serializes the IngestionRequest to Json string
 	 * 
 	 * @return serialized json string of IngestinoRequest
 	 */
 	public String toJson() {
-		ObjectMapper mapper = new ObjectMapper();
-		String body;
+		if (null != buffer) {
+			return bufferToJson();
+		}
 		try {
-			body = mapper.writeValueAsString(this);
-			return body;
+			return JsonCodec.writer(IngestionRequest.class).writeValueAsString(this);
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException("Unable serialize messages to string");
 		}
 	}
+
+	private String bufferToJson() {
+		StringWriter writer = new StringWriter(buffer.estimatedSize() + 16);
+		try (JsonGenerator gen = JsonCodec.factory().createGenerator(writer)) {
+			gen.writeStartObject();
+			if (!buffer.isEmpty()) {
+				gen.writeArrayFieldStart("messages");
+				for (int i = 0; i < buffer.size(); i++) {
+					buffer.writeMessage(gen, i);
+				}
+				gen.writeEndArray();
+			}
+			gen.writeEndObject();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable serialize messages to string");
+		}
+		return writer.toString();
+	}
 }
@@ -13,7 +13,6 @@ import java.util.Optional;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.loginsightapi.ParseException;
 
 /**
@@ -86,9 +85,8 @@ public class IngestionResponse {
 	 * @return IngestionResponse object
 	 */
 	public static IngestionResponse fromJsonString(String json) {
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(json, IngestionResponse.class);
+			return JsonCodec.reader(IngestionResponse.class).readValue(json);
 		} catch (IOException e) {
 			throw new ParseException("Unable parse the ingestion response.", e);
 		}
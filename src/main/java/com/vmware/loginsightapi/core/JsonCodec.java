@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Shared json codec for the LogInsight request and response types. <br>
+ *
+ * Building an {@code ObjectMapper} and resolving (de)serializers is costly,
+ * so a single mapper is shared and one {@code ObjectReader} and
+ * {@code ObjectWriter} is cached per type. Readers and writers are immutable
+ * and thread safe. The readers and writers of the LogInsight types are built
+ * when this class is loaded. <br>
+ * <br>
+ * When jackson-module-afterburner is on the classpath it is registered to the
+ * mapper, unless the system property {@value #AFTERBURNER_PROPERTY} is set to
+ * false.
+ */
+public final class JsonCodec {
+
+	/**
+	 * System property to disable the afterburner module
+	 */
+	public static final String AFTERBURNER_PROPERTY = "loginsight.json.afterburner";
+
+	private static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+	private static final Logger logger = LoggerFactory.getLogger(JsonCodec.class);
+
+	private static final ObjectMapper MAPPER = buildMapper();
+	private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+	static {
+		reader(MessageQueryResponse.class);
+		reader(AggregateResponse.class);
+		reader(IngestionResponse.class);
+		reader(AuthInfo.class);
+		reader(Message.class);
+		writer(IngestionRequest.class);
+		writer(Message.class);
+	}
+
+	private JsonCodec() {
+	}
+
+	/**
+	 * Returns the shared ObjectMapper. The mapper should not be reconfigured.
+	 *
+	 * @return shared ObjectMapper
+	 */
+	public static ObjectMapper mapper() {
+		return MAPPER;
+	}
+
+	/**
+	 * Returns the JsonFactory of the shared mapper, for streaming reads and
+	 * writes.
+	 *
+	 * @return shared JsonFactory
+	 */
+	public static JsonFactory factory() {
+		return MAPPER.getFactory();
+	}
+
+	/**
+	 * Returns the cached ObjectReader for the given type
+	 *
+	 * @param type
+	 *            class to be deserialized
+	 * @return ObjectReader for the type
+	 */
+	public static ObjectReader reader(Class<?> type) {
+		return READERS.computeIfAbsent(type, MAPPER::readerFor);
+	}
+
+	/**
+	 * Returns the cached ObjectWriter for the given type
+	 *
+	 * @param type
+	 *            class to be serialized
+	 * @return ObjectWriter for the type
+	 */
+	public static ObjectWriter writer(Class<?> type) {
+		return WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+	}
+
+	private static ObjectMapper buildMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		if (!"false".equalsIgnoreCase(System.getProperty(AFTERBURNER_PROPERTY))) {
+			try {
+				Class<?> moduleClass = Class.forName(AFTERBURNER_MODULE);
+				mapper.registerModule((Module) moduleClass.newInstance());
+				logger.debug("Registered jackson afterburner module");
+			} catch (ClassNotFoundException e) {
+				// afterburner is optional
+			} catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+				logger.warn("Unable to register jackson afterburner module", e);
+			}
+		}
+		return mapper;
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.List;
+
+/**
+ * LoadBalancer selects the cluster node serving a request. Implement this
+ * interface to provide a custom distribution of the requests across the
+ * LogInsight nodes. Implementations must be thread safe.
+ */
+public interface LoadBalancer {
+
+	/**
+	 * Selects a node among the candidates
+	 *
+	 * @param candidates
+	 *            healthy nodes, never empty
+	 * @return selected node
+	 */
+	Node select(List<Node> candidates);
+
+}
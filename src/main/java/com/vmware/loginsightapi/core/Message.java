@@ -21,6 +21,10 @@ import com.fasterxml.jackson.annotation.JsonInclude;
  */
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class Message {
+	static final int MESSAGE_OVERHEAD = 32;
+	static final int TIMESTAMP_OVERHEAD = 28;
+	static final int FIELD_OVERHEAD = 64;
+
 	private String text;
 	private Long timestamp;
 	private List<Field> fields;
@@ -183,6 +187,26 @@ public class Message {
 		}
 	}
 
+	/**
+	 * Returns an approximate size of the message once serialized to json. The
+	 * estimate counts characters, not encoded bytes, and is only meant for
+	 * sizing ingestion batches.
+	 *
+	 * @return approximate serialized size in bytes
+	 */
+	public int estimatedSize() {
+		int size = MESSAGE_OVERHEAD + StringUtils.length(this.text);
+		if (null != this.timestamp) {
+			size += TIMESTAMP_OVERHEAD;
+		}
+		if (null != this.fields) {
+			for (Field field : fields) {
+				size += FIELD_OVERHEAD + StringUtils.length(field.getName()) + StringUtils.length(field.getContent());
+			}
+		}
+		return size;
+	}
+
 	/**
 	 * Checks whether message is a valid loginsight ingestion message object.
 	 * 
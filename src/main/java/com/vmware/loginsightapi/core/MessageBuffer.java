@@ -0,0 +1,335 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Recyclable batch of messages held in flat arrays, for the ingestion hot
+ * path. <br>
+ *
+ * A buffer holds the texts, primitive timestamps and fields of its messages
+ * without a {@link Message} or {@link Field} object per message, and writes
+ * them straight to a JsonGenerator in the format of {@link Message}. Once
+ * cleared, the buffer keeps its arrays, so that filling it again with batches
+ * of the same size does not allocate. {@link IngestionRequest} accepts a
+ * buffer in place of a list of messages. <br>
+ * <br>
+ * This class is not thread safe.
+ */
+public class MessageBuffer {
+
+	/**
+	 * Timestamp of a message sent without timestamp
+	 */
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	private static final int FIELDS_PER_MESSAGE = 4;
+	private static final SerializedString TEXT = new SerializedString("text");
+	private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+	private static final SerializedString FIELDS = new SerializedString("fields");
+	private static final SerializedString NAME = new SerializedString("name");
+	private static final SerializedString CONTENT = new SerializedString("content");
+	private static final SerializedString START_POSITION = new SerializedString("startPosition");
+	private static final SerializedString LENGTH = new SerializedString("length");
+
+	private String[] texts;
+	private long[] timestamps;
+	private int[] firstFields;
+	private String[] names;
+	private String[] contents;
+	private int[] startPositions;
+	private int[] lengths;
+	private int size;
+	private int fieldCount;
+	private int estimatedSize;
+
+	/**
+	 * Builds an empty buffer
+	 *
+	 * @param capacity
+	 *            initial number of messages, the buffer grows as needed
+	 */
+	public MessageBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid buffer capacity");
+		}
+		texts = new String[capacity];
+		timestamps = new long[capacity];
+		firstFields = new int[capacity];
+		names = new String[capacity * FIELDS_PER_MESSAGE];
+		contents = new String[capacity * FIELDS_PER_MESSAGE];
+		startPositions = new int[capacity * FIELDS_PER_MESSAGE];
+		lengths = new int[capacity * FIELDS_PER_MESSAGE];
+	}
+
+	/**
+	 * Appends a message without fields. The fields added next belong to this
+	 * message.
+	 *
+	 * @param text
+	 *            message text
+	 * @param timestamp
+	 *            message timestamp, or {@link #NO_TIMESTAMP}
+	 */
+	public void add(String text, long timestamp) {
+		if (size == texts.length) {
+			int capacity = texts.length * 2;
+			texts = Arrays.copyOf(texts, capacity);
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			firstFields = Arrays.copyOf(firstFields, capacity);
+		}
+		texts[size] = text;
+		timestamps[size] = timestamp;
+		firstFields[size] = fieldCount;
+		size++;
+		estimatedSize += Message.MESSAGE_OVERHEAD + StringUtils.length(text);
+		if (timestamp != NO_TIMESTAMP) {
+			estimatedSize += Message.TIMESTAMP_OVERHEAD;
+		}
+	}
+
+	/**
+	 * Adds a field by name and content to the last message
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param content
+	 *            content of the field
+	 */
+	public void addField(String name, String content) {
+		addField(name, content, 0, 0);
+	}
+
+	/**
+	 * Adds a field by name, startPosition and length to the last message
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param startPosition
+	 *            startPosition of the field in the text
+	 * @param length
+	 *            length of the field
+	 */
+	public void addField(String name, int startPosition, int length) {
+		if (startPosition < 0) {
+			throw new LogInsightApiException("Invalid startPosition " + startPosition);
+		}
+		addField(name, null, startPosition, length);
+	}
+
+	/**
+	 * Appends a copy of a message
+	 *
+	 * @param message
+	 *            Message object
+	 */
+	public void add(Message message) {
+		add(message.getText(), null == message.getTimestamp() ? NO_TIMESTAMP : message.getTimestamp());
+		if (null != message.getFields()) {
+			for (Field field : message.getFields()) {
+				addField(field.getName(), field.getContent(), field.getStartPosition(), field.getLength());
+			}
+		}
+	}
+
+	/**
+	 * Appends the content of a slot. The slot can be reused afterwards.
+	 *
+	 * @param slot
+	 *            MessageSlot object
+	 */
+	public void add(MessageSlot slot) {
+		add(slot.text, slot.timestamp);
+		for (int i = 0; i < slot.fieldCount; i++) {
+			addField(slot.names[i], slot.contents[i], slot.startPositions[i], slot.lengths[i]);
+		}
+	}
+
+	/**
+	 * Number of messages in the buffer
+	 *
+	 * @return count of messages
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Tells whether the buffer holds no message
+	 *
+	 * @return true or false
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Estimates the size of the serialized messages, the same way as
+	 * {@link Message#estimatedSize()}
+	 *
+	 * @return estimated size in bytes
+	 */
+	public int estimatedSize() {
+		return estimatedSize;
+	}
+
+	/**
+	 * Getter for the text of a message
+	 *
+	 * @param index
+	 *            index of the message
+	 * @return the text
+	 */
+	public String getText(int index) {
+		checkIndex(index);
+		return texts[index];
+	}
+
+	/**
+	 * Getter for the timestamp of a message
+	 *
+	 * @param index
+	 *            index of the message
+	 * @return the timestamp, or {@link #NO_TIMESTAMP}
+	 */
+	public long getTimestamp(int index) {
+		checkIndex(index);
+		return timestamps[index];
+	}
+
+	/**
+	 * Builds a Message object of a message
+	 *
+	 * @param index
+	 *            index of the message
+	 * @return Message object
+	 */
+	public Message toMessage(int index) {
+		checkIndex(index);
+		int end = endOfFields(index);
+		List<Field> fields = new ArrayList<Field>(end - firstFields[index]);
+		for (int i = firstFields[index]; i < end; i++) {
+			Field field = new Field(names[i], contents[i]);
+			field.setStartPosition(startPositions[i]);
+			field.setLength(lengths[i]);
+			fields.add(field);
+		}
+		return new Message(texts[index], timestamps[index] == NO_TIMESTAMP ? null : timestamps[index], fields);
+	}
+
+	/**
+	 * Builds the Message objects of all the messages
+	 *
+	 * @return List of Message objects
+	 */
+	public List<Message> toMessages() {
+		List<Message> messages = new ArrayList<Message>(size);
+		for (int i = 0; i < size; i++) {
+			messages.add(toMessage(i));
+		}
+		return messages;
+	}
+
+	/**
+	 * Writes a message as a json object, as the serialization of
+	 * {@link Message} would
+	 *
+	 * @param generator
+	 *            JsonGenerator to write to
+	 * @param index
+	 *            index of the message
+	 * @throws IOException
+	 *             if the generator fails
+	 */
+	public void writeMessage(JsonGenerator generator, int index) throws IOException {
+		checkIndex(index);
+		generator.writeStartObject();
+		if (StringUtils.isNotEmpty(texts[index])) {
+			generator.writeFieldName(TEXT);
+			generator.writeString(texts[index]);
+		}
+		if (timestamps[index] != NO_TIMESTAMP) {
+			generator.writeFieldName(TIMESTAMP);
+			generator.writeNumber(timestamps[index]);
+		}
+		int end = endOfFields(index);
+		if (end > firstFields[index]) {
+			generator.writeFieldName(FIELDS);
+			generator.writeStartArray();
+			for (int i = firstFields[index]; i < end; i++) {
+				generator.writeStartObject();
+				if (StringUtils.isNotEmpty(names[i])) {
+					generator.writeFieldName(NAME);
+					generator.writeString(names[i]);
+				}
+				if (StringUtils.isNotEmpty(contents[i])) {
+					generator.writeFieldName(CONTENT);
+					generator.writeString(contents[i]);
+				}
+				generator.writeFieldName(START_POSITION);
+				generator.writeNumber(startPositions[i]);
+				generator.writeFieldName(LENGTH);
+				generator.writeNumber(lengths[i]);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Empties the buffer, keeping its arrays
+	 */
+	public void clear() {
+		Arrays.fill(texts, 0, size, null);
+		Arrays.fill(names, 0, fieldCount, null);
+		Arrays.fill(contents, 0, fieldCount, null);
+		size = 0;
+		fieldCount = 0;
+		estimatedSize = 0;
+	}
+
+	private void addField(String name, String content, int startPosition, int length) {
+		if (size == 0) {
+			throw new IllegalStateException("No message to add the field to");
+		}
+		if (fieldCount == names.length) {
+			int capacity = names.length * 2;
+			names = Arrays.copyOf(names, capacity);
+			contents = Arrays.copyOf(contents, capacity);
+			startPositions = Arrays.copyOf(startPositions, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		names[fieldCount] = name;
+		contents[fieldCount] = content;
+		startPositions[fieldCount] = startPosition;
+		lengths[fieldCount] = length;
+		fieldCount++;
+		estimatedSize += Message.FIELD_OVERHEAD + StringUtils.length(name) + StringUtils.length(content);
+	}
+
+	private int endOfFields(int index) {
+		return index + 1 < size ? firstFields[index + 1] : fieldCount;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Invalid message index " + index);
+		}
+	}
+}
@@ -11,7 +11,6 @@ package com.vmware.loginsightapi.core;
 import java.io.IOException;
 import java.util.List;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.loginsightapi.ParseException;
 
 /**
@@ -98,9 +97,8 @@ public class MessageQueryResponse {
 	 * @return message query response object
 	 */
 	public static MessageQueryResponse fromJsonString(String json) {
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(json, MessageQueryResponse.class);
+			return JsonCodec.reader(MessageQueryResponse.class).readValue(json);
 		} catch (IOException e) {
 			throw new ParseException("Message query response parsing failed.", e);
 		}
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.vmware.loginsightapi.ParseException;
+
+/**
+ * Incremental parser for message query responses. <br>
+ *
+ * The {@code events} array is read with the Jackson token API and each event
+ * is handed to a consumer as soon as it is parsed, so only one event is held
+ * in memory at a time regardless of the size of the response.
+ */
+public final class MessageQueryStreamParser {
+
+	private MessageQueryStreamParser() {
+	}
+
+	/**
+	 * Parses a message query response from the stream and passes each event
+	 * to the consumer. The stream is not closed.
+	 *
+	 * @param in
+	 *            stream with the json message query response
+	 * @param consumer
+	 *            receives each event of the response in order
+	 * @return MessageQueryResponse with complete flag and duration. Events are
+	 *         not collected and the list of events is empty.
+	 * @throws IOException
+	 *             when the stream can not be read
+	 * @throws ParseException
+	 *             when the response is not a valid message query response
+	 */
+	public static MessageQueryResponse parse(InputStream in, Consumer<Message> consumer) throws IOException {
+		ObjectReader messageReader = JsonCodec.reader(Message.class);
+		MessageQueryResponse response = new MessageQueryResponse();
+		response.setEvents(new ArrayList<Message>(0));
+		try (JsonParser parser = JsonCodec.factory().createParser(in)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new ParseException("Message query response should be a json object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("complete".equals(name)) {
+					response.setComplete(parser.getValueAsBoolean());
+				} else if ("duration".equals(name)) {
+					response.setDuration(parser.getValueAsInt());
+				} else if ("events".equals(name) && token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						consumer.accept(messageReader.readValue(parser));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (JsonProcessingException e) {
+			throw new ParseException("Message query response parsing failed.", e);
+		}
+		return response;
+	}
+}
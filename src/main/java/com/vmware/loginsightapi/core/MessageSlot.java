@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Mutable message, reused for one message after another. <br>
+ *
+ * The fields are held in flat arrays and the timestamp in a primitive, so that
+ * once the arrays have grown to the largest message, filling the slot does not
+ * allocate. {@link MessageBuffer#add(MessageSlot)} copies the content of a
+ * slot into a batch. <br>
+ * <br>
+ * This class is not thread safe.
+ */
+public class MessageSlot {
+
+	private static final int INITIAL_FIELDS = 8;
+
+	String text;
+	long timestamp = MessageBuffer.NO_TIMESTAMP;
+	String[] names = new String[INITIAL_FIELDS];
+	String[] contents = new String[INITIAL_FIELDS];
+	int[] startPositions = new int[INITIAL_FIELDS];
+	int[] lengths = new int[INITIAL_FIELDS];
+	int fieldCount;
+
+	/**
+	 * Getter for message text
+	 *
+	 * @return the text
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Setter for message text
+	 *
+	 * @param text
+	 *            the text to set
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Getter for message timestamp
+	 *
+	 * @return the timestamp, {@link MessageBuffer#NO_TIMESTAMP} when not set
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Setter for message timestamp
+	 *
+	 * @param timestamp
+	 *            the timestamp in milliseconds
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Number of fields of the message
+	 *
+	 * @return field count
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Add a field by name and content
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param content
+	 *            content of the field
+	 */
+	public void addField(String name, String content) {
+		addField(name, content, 0, 0);
+	}
+
+	/**
+	 * Add a field by name, startPosition and length
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param startPosition
+	 *            startPosition of the field in the text
+	 * @param length
+	 *            length of the field
+	 */
+	public void addField(String name, int startPosition, int length) {
+		addField(name, null, startPosition, length);
+	}
+
+	/**
+	 * Tells whether the slot holds neither text nor fields
+	 *
+	 * @return true or false
+	 */
+	public boolean isEmpty() {
+		return StringUtils.isEmpty(text) && fieldCount == 0;
+	}
+
+	/**
+	 * Copies a message into the slot, replacing its content
+	 *
+	 * @param message
+	 *            Message object
+	 */
+	public void copyFrom(Message message) {
+		clear();
+		text = message.getText();
+		if (null != message.getTimestamp()) {
+			timestamp = message.getTimestamp();
+		}
+		if (null != message.getFields()) {
+			for (Field field : message.getFields()) {
+				addField(field.getName(), field.getContent(), field.getStartPosition(), field.getLength());
+			}
+		}
+	}
+
+	/**
+	 * Empties the slot, keeping its arrays
+	 */
+	public void clear() {
+		text = null;
+		timestamp = MessageBuffer.NO_TIMESTAMP;
+		Arrays.fill(names, 0, fieldCount, null);
+		Arrays.fill(contents, 0, fieldCount, null);
+		fieldCount = 0;
+	}
+
+	private void addField(String name, String content, int startPosition, int length) {
+		if (startPosition < 0) {
+			throw new LogInsightApiException("Invalid startPosition " + startPosition);
+		}
+		if (fieldCount == names.length) {
+			int capacity = names.length * 2;
+			names = Arrays.copyOf(names, capacity);
+			contents = Arrays.copyOf(contents, capacity);
+			startPositions = Arrays.copyOf(startPositions, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		names[fieldCount] = name;
+		contents[fieldCount] = content;
+		startPositions[fieldCount] = startPosition;
+		lengths[fieldCount] = length;
+		fieldCount++;
+	}
+}
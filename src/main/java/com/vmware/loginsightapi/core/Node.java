@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A LogInsight cluster member with its load and health statistics. Nodes are
+ * managed by a {@link NodePool}.
+ */
+public class Node {
+
+	/**
+	 * Weight of the latest sample in the latency moving average
+	 */
+	static final double LATENCY_DECAY = 0.3;
+
+	private final String host;
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private volatile double latency;
+	private volatile boolean healthy = true;
+	private volatile long retryAt;
+	private int failures;
+
+	/**
+	 * Builds a healthy node
+	 *
+	 * @param host
+	 *            host name of the node
+	 */
+	public Node(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * Getter for host name
+	 *
+	 * @return host name of the node
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Getter for the number of requests in progress on this node
+	 *
+	 * @return number of outstanding requests
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Getter for the exponentially weighted moving average of the request
+	 * latency
+	 *
+	 * @return average latency in nanoseconds, 0 if no request completed yet
+	 */
+	public double getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Tells whether the node accepts requests
+	 *
+	 * @return false when the node failed and has not been probed successfully
+	 */
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	/**
+	 * Getter for the number of consecutive failures
+	 *
+	 * @return consecutive failures
+	 */
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Getter for the time after which an unhealthy node is probed
+	 *
+	 * @return System.nanoTime() based time
+	 */
+	long getRetryAt() {
+		return retryAt;
+	}
+
+	void requestStarted() {
+		outstanding.incrementAndGet();
+	}
+
+	void requestCompleted() {
+		outstanding.decrementAndGet();
+	}
+
+	synchronized void recordLatency(long latencyNanos) {
+		latency = latency == 0 ? latencyNanos : LATENCY_DECAY * latencyNanos + (1 - LATENCY_DECAY) * latency;
+	}
+
+	synchronized void markHealthy() {
+		failures = 0;
+		healthy = true;
+	}
+
+	/**
+	 * Marks the node unhealthy for an exponentially growing backoff
+	 *
+	 * @return backoff in milliseconds if the node was healthy, -1 otherwise
+	 */
+	synchronized long markFailed(long backoff, long maxBackoff) {
+		failures++;
+		long delay = Math.min(maxBackoff, backoff << Math.min(failures - 1, 20));
+		retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+		boolean wasHealthy = healthy;
+		healthy = false;
+		return wasHealthy ? delay : -1;
+	}
+
+	/**
+	 * Computes the backoff of the node
+	 *
+	 * @return milliseconds until the node should be probed
+	 */
+	long getBackoff() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(retryAt - System.nanoTime()));
+	}
+
+	@Override
+	public String toString() {
+		return host;
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Nodes of a LogInsight cluster with their health. <br>
+ *
+ * Requests are distributed by a {@link LoadBalancer} across the healthy
+ * nodes. A node is marked unhealthy when a request fails, and is re-admitted
+ * once a probe succeeds. Probes are retried with an exponential backoff. When
+ * all the nodes are unhealthy, the node with the earliest retry time is used.
+ * The health of a single node is not tracked.
+ */
+public class NodePool implements AutoCloseable {
+
+	private final static Logger logger = LoggerFactory.getLogger(NodePool.class);
+
+	private final List<Node> nodes;
+	private final LoadBalancer loadBalancer;
+	private final long backoff;
+	private final long maxBackoff;
+	private final Function<Node, CompletableFuture<Boolean>> probe;
+
+	private ScheduledExecutorService scheduler;
+	private boolean closed;
+
+	/**
+	 * Builds the node pool
+	 *
+	 * @param hosts
+	 *            host names of the cluster nodes
+	 * @param loadBalancer
+	 *            selects the node serving a request
+	 * @param backoff
+	 *            initial delay before probing a failed node (milliseconds)
+	 * @param maxBackoff
+	 *            maximum delay before probing a failed node (milliseconds)
+	 * @param probe
+	 *            checks if a node is available. The future completes with true
+	 *            when the node can be re-admitted.
+	 */
+	public NodePool(List<String> hosts, LoadBalancer loadBalancer, long backoff, long maxBackoff,
+			Function<Node, CompletableFuture<Boolean>> probe) {
+		if (null == hosts || hosts.isEmpty()) {
+			throw new IllegalArgumentException("Invalid host list");
+		}
+		List<Node> list = new ArrayList<Node>(hosts.size());
+		for (String host : hosts) {
+			list.add(new Node(host));
+		}
+		this.nodes = Collections.unmodifiableList(list);
+		this.loadBalancer = loadBalancer;
+		this.backoff = backoff;
+		this.maxBackoff = maxBackoff;
+		this.probe = probe;
+	}
+
+	/**
+	 * Getter for the nodes
+	 *
+	 * @return unmodifiable list of nodes
+	 */
+	public List<Node> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Selects the node for a request. Each acquired node must be released
+	 * with {@link #release(Node, long, boolean)}.
+	 *
+	 * @return selected node
+	 */
+	public Node acquire() {
+		Node node;
+		if (nodes.size() == 1) {
+			node = nodes.get(0);
+		} else {
+			List<Node> candidates = new ArrayList<Node>(nodes.size());
+			for (Node candidate : nodes) {
+				if (candidate.isHealthy()) {
+					candidates.add(candidate);
+				}
+			}
+			node = candidates.isEmpty() ? earliestRetry() : loadBalancer.select(candidates);
+		}
+		node.requestStarted();
+		return node;
+	}
+
+	/**
+	 * Releases a node after the request completed
+	 *
+	 * @param node
+	 *            node returned by {@link #acquire()}
+	 * @param latencyNanos
+	 *            duration of the request, negative if not to be recorded
+	 * @param success
+	 *            false when the node failed to serve the request
+	 */
+	public void release(Node node, long latencyNanos, boolean success) {
+		node.requestCompleted();
+		if (success) {
+			if (latencyNanos >= 0) {
+				node.recordLatency(latencyNanos);
+			}
+			if (!node.isHealthy()) {
+				node.markHealthy();
+			}
+		} else if (nodes.size() > 1) {
+			long delay = node.markFailed(backoff, maxBackoff);
+			if (delay >= 0) {
+				logger.warn("LogInsight node " + node + " marked unhealthy, probing in " + delay + "ms");
+				scheduleProbe(node, delay);
+			}
+		}
+	}
+
+	/**
+	 * Stops probing the nodes
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (null != scheduler) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private Node earliestRetry() {
+		Node earliest = nodes.get(0);
+		for (Node node : nodes) {
+			if (node.getRetryAt() - earliest.getRetryAt() < 0) {
+				earliest = node;
+			}
+		}
+		return earliest;
+	}
+
+	private synchronized void scheduleProbe(Node node, long delay) {
+		if (closed) {
+			return;
+		}
+		if (null == scheduler) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "loginsight-node-probe");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		try {
+			scheduler.schedule(() -> probe(node), delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed
+		}
+	}
+
+	private void probe(Node node) {
+		if (node.isHealthy()) {
+			return;
+		}
+		CompletableFuture<Boolean> result;
+		try {
+			result = probe.apply(node);
+		} catch (RuntimeException e) {
+			result = new CompletableFuture<Boolean>();
+			result.completeExceptionally(e);
+		}
+		result.whenComplete((available, ex) -> {
+			if (null == ex && Boolean.TRUE.equals(available)) {
+				logger.info("LogInsight node " + node + " is available");
+				node.markHealthy();
+			} else if (!node.isHealthy()) {
+				node.markFailed(backoff, maxBackoff);
+				scheduleProbe(node, node.getBackoff());
+			}
+		});
+	}
+}
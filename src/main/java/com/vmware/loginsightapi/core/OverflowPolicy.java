@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.core;
+
+/**
+ * Behaviour of ingestion once the in-flight budget is exhausted
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Waits for in-flight requests to complete, up to the block timeout. On an
+	 * I/O dispatcher thread of the client, e.g. in the completion of another
+	 * request, the client does not wait and rejects as with REJECT.
+	 */
+	BLOCK,
+
+	/**
+	 * Completes the ingestion future with an IngestionRejectedException
+	 */
+	REJECT,
+
+	/**
+	 * Discards the request and completes the ingestion future with a dropped
+	 * response
+	 */
+	DROP;
+
+	/**
+	 * Parses a policy name, ignoring case
+	 *
+	 * @param name
+	 *            block, reject or drop
+	 * @return OverflowPolicy
+	 */
+	public static OverflowPolicy fromString(String name) {
+		for (OverflowPolicy policy : values()) {
+			if (policy.name().equalsIgnoreCase(name)) {
+				return policy;
+			}
+		}
+		throw new IllegalArgumentException("Invalid overflow policy: " + name);
+	}
+}
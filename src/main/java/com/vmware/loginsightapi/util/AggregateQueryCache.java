@@ -0,0 +1,362 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import com.vmware.loginsightapi.AggregateQuery;
+import com.vmware.loginsightapi.core.AbstractQuery;
+import com.vmware.loginsightapi.core.AggregateResponse;
+
+/**
+ * Cache of aggregate query responses. <br>
+ *
+ * Responses are keyed by a canonical form of the query url: constraints are
+ * decoded and sorted, order independent parameters are sorted, and the
+ * timeout and default limit are ignored. Identical queries in flight share a
+ * single request. Only complete responses are cached. <br>
+ * <br>
+ * Entries expire after the TTL, or after the historical TTL when the query
+ * has a {@code timestamp} upper bound in the past, as the result of a closed
+ * range does not change. The least recently used entries are evicted once
+ * the number of entries or of cached bins is exceeded. <br>
+ * <br>
+ * Cached responses are shared by all the callers and must not be modified.
+ */
+public class AggregateQueryCache {
+
+	private static final String TIMESTAMP_FIELD = "timestamp";
+	private static final List<String> UNORDERED_PARAMS = Arrays.asList("limit", "content-pack-fields",
+			"aggregation-function", "aggregation-field");
+
+	private final int maxEntries;
+	private final long maxWeight;
+	private final long ttl;
+	private final long historicalTtl;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final Map<String, CompletableFuture<AggregateResponse>> inFlight = new HashMap<String, CompletableFuture<AggregateResponse>>();
+	private long weight;
+	private long hitCount;
+	private long missCount;
+	private long coalescedCount;
+	private long evictionCount;
+
+	/**
+	 * Builds a cache
+	 *
+	 * @param maxEntries
+	 *            maximum number of cached responses
+	 * @param maxWeight
+	 *            maximum number of cached bins
+	 * @param ttl
+	 *            time to live of the responses in milliseconds
+	 * @param historicalTtl
+	 *            time to live of the responses of closed time ranges in
+	 *            milliseconds
+	 */
+	public AggregateQueryCache(int maxEntries, long maxWeight, long ttl, long historicalTtl) {
+		if (maxEntries <= 0 || maxWeight <= 0) {
+			throw new IllegalArgumentException("Cache bounds should be positive");
+		}
+		if (ttl < 0 || historicalTtl < 0) {
+			throw new IllegalArgumentException("Invalid cache TTL");
+		}
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.ttl = ttl;
+		this.historicalTtl = historicalTtl;
+	}
+
+	/**
+	 * Returns the cached response of the query, or the response of the query
+	 * in flight, or loads it
+	 *
+	 * @param apiUrl
+	 *            relative url of the aggregate query
+	 * @param loader
+	 *            performs the query on a miss
+	 * @return AggregateResponse CompletableFuture. Cancelling it does not
+	 *         cancel the shared request.
+	 */
+	public CompletableFuture<AggregateResponse> get(String apiUrl,
+			Function<String, CompletableFuture<AggregateResponse>> loader) {
+		String key = canonicalKey(apiUrl);
+		CompletableFuture<AggregateResponse> shared;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (null != entry) {
+				if (entry.expiresAt > System.currentTimeMillis()) {
+					hitCount++;
+					return CompletableFuture.completedFuture(entry.response);
+				}
+				remove(key);
+			}
+			shared = inFlight.get(key);
+			if (null != shared) {
+				coalescedCount++;
+				return shared.thenApply(Function.identity());
+			}
+			missCount++;
+			shared = new CompletableFuture<AggregateResponse>();
+			inFlight.put(key, shared);
+		}
+		CompletableFuture<AggregateResponse> loaded;
+		try {
+			loaded = loader.apply(apiUrl);
+		} catch (RuntimeException e) {
+			loaded = new CompletableFuture<AggregateResponse>();
+			loaded.completeExceptionally(e);
+		}
+		CompletableFuture<AggregateResponse> result = shared;
+		loaded.whenComplete((response, ex) -> {
+			synchronized (this) {
+				inFlight.remove(key, result);
+				if (null == ex && null != response && response.isComplete()) {
+					put(key, response, expiresAt(apiUrl));
+				}
+			}
+			if (null == ex) {
+				result.complete(response);
+			} else {
+				result.completeExceptionally(ex);
+			}
+		});
+		return shared.thenApply(Function.identity());
+	}
+
+	/**
+	 * Removes all the cached responses
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Number of queries answered from the cache
+	 *
+	 * @return hit count
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Number of queries sent to LogInsight
+	 *
+	 * @return miss count
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Number of queries answered by an identical query in flight
+	 *
+	 * @return coalesced count
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Number of responses evicted to respect the bounds
+	 *
+	 * @return eviction count
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Number of cached responses
+	 *
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Number of cached bins
+	 *
+	 * @return weight of the entries
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	private void put(String key, AggregateResponse response, long expiresAt) {
+		long entryWeight = 1 + (null == response.getBins() ? 0 : response.getBins().size());
+		if (entryWeight > maxWeight) {
+			return;
+		}
+		remove(key);
+		entries.put(key, new Entry(response, expiresAt, entryWeight));
+		weight += entryWeight;
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || weight > maxWeight) {
+			weight -= eldest.next().getValue().weight;
+			eldest.remove();
+			evictionCount++;
+		}
+	}
+
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (null != removed) {
+			weight -= removed.weight;
+		}
+	}
+
+	private long expiresAt(String apiUrl) {
+		long now = System.currentTimeMillis();
+		long upperBound = upperBound(apiUrl);
+		return now + (upperBound <= now ? historicalTtl : ttl);
+	}
+
+	/**
+	 * Returns the canonical form of an aggregate query url. Urls of other
+	 * APIs are returned unchanged.
+	 *
+	 * @param apiUrl
+	 *            relative url of the aggregate query
+	 * @return canonical url
+	 */
+	public static String canonicalKey(String apiUrl) {
+		int separator = apiUrl.indexOf('?');
+		String path = separator < 0 ? apiUrl : apiUrl.substring(0, separator);
+		String query = separator < 0 ? "" : apiUrl.substring(separator + 1);
+		if (!path.startsWith(AggregateQuery.API_URL_AGGREGATED_EVENTS_PATH)) {
+			return apiUrl;
+		}
+		List<String> constraints = constraints(path);
+		Collections.sort(constraints);
+
+		List<String> unordered = new ArrayList<String>();
+		List<String> ordered = new ArrayList<String>();
+		for (String param : query.split("&")) {
+			if (param.isEmpty()) {
+				continue;
+			}
+			int equals = param.indexOf('=');
+			String name = decode(equals < 0 ? param : param.substring(0, equals));
+			String value = equals < 0 ? "" : decode(param.substring(equals + 1));
+			if ("timeout".equals(name) || ("limit".equals(name) && String.valueOf(AbstractQuery.DEFAULT_LIMIT).equals(value))) {
+				continue;
+			}
+			String canonical = encode(name) + "=" + encode(value);
+			if (UNORDERED_PARAMS.contains(name)) {
+				unordered.add(canonical);
+			} else {
+				ordered.add(canonical);
+			}
+		}
+		Collections.sort(unordered);
+
+		StringBuilder key = new StringBuilder(AggregateQuery.API_URL_AGGREGATED_EVENTS_PATH);
+		for (String constraint : constraints) {
+			key.append(constraint).append('/');
+		}
+		key.append('?');
+		unordered.forEach(param -> key.append(param).append('&'));
+		ordered.forEach(param -> key.append(param).append('&'));
+		return key.toString();
+	}
+
+	/**
+	 * Decoded constraints of the path, as name/expression pairs
+	 */
+	private static List<String> constraints(String path) {
+		List<String> segments = new ArrayList<String>();
+		for (String segment : path.substring(AggregateQuery.API_URL_AGGREGATED_EVENTS_PATH.length()).split("/")) {
+			if (!segment.isEmpty()) {
+				segments.add(segment);
+			}
+		}
+		List<String> constraints = new ArrayList<String>();
+		for (int i = 0; i < segments.size(); i += 2) {
+			String name = decode(segments.get(i));
+			String expression = i + 1 < segments.size() ? decode(segments.get(i + 1)).trim().replaceAll("\\s+", " ")
+					: "";
+			constraints.add(encode(name) + "/" + encode(expression));
+		}
+		return constraints;
+	}
+
+	/**
+	 * Smallest timestamp upper bound of the query, Long.MAX_VALUE when the
+	 * range is open
+	 */
+	private static long upperBound(String apiUrl) {
+		int separator = apiUrl.indexOf('?');
+		String path = separator < 0 ? apiUrl : apiUrl.substring(0, separator);
+		if (!path.startsWith(AggregateQuery.API_URL_AGGREGATED_EVENTS_PATH)) {
+			return Long.MAX_VALUE;
+		}
+		long upperBound = Long.MAX_VALUE;
+		for (String constraint : constraints(path)) {
+			String[] parts = decode(constraint).split("/", 2);
+			if (!TIMESTAMP_FIELD.equals(parts[0]) || parts.length < 2) {
+				continue;
+			}
+			String[] expression = parts[1].split(" ", 2);
+			if (expression.length < 2 || !("LT".equals(expression[0]) || "LE".equals(expression[0]))) {
+				continue;
+			}
+			try {
+				upperBound = Math.min(upperBound, Long.parseLong(expression[1].trim()));
+			} catch (NumberFormatException e) {
+				// relative or symbolic bound, the range may touch now
+			}
+		}
+		return upperBound;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value;
+		}
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return value;
+		}
+	}
+
+	private static final class Entry {
+		private final AggregateResponse response;
+		private final long expiresAt;
+		private final long weight;
+
+		private Entry(AggregateResponse response, long expiresAt, long weight) {
+			this.response = response;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+		}
+	}
+}
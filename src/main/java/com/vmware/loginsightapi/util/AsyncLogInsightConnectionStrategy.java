@@ -9,29 +9,81 @@
 package com.vmware.loginsightapi.util;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
 import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.vmware.loginsightapi.Configuration;
 import com.vmware.loginsightapi.LogInsightClient;
+import com.vmware.loginsightapi.core.LogInsightApiException;
 import com.vmware.loginsightapi.core.LogInsightConnectionStrategy;
 
 /**
- * Defines the connection strategy with CloseableHttpAsyncClient
+ * Defines the connection strategy with CloseableHttpAsyncClient. <br>
+ *
+ * Connections are pooled by a PoolingNHttpClientConnectionManager sized from
+ * the Configuration. The query port and the ingestion port of each node are
+ * separate routes with their own limits, so ingestion does not queue behind
+ * queries. Idle and expired connections are evicted by a background thread
+ * while the client is running.
  */
 
 public class AsyncLogInsightConnectionStrategy implements LogInsightConnectionStrategy<CloseableHttpAsyncClient> {
 
+	private final static Logger logger = LoggerFactory.getLogger(AsyncLogInsightConnectionStrategy.class);
+
+	private static final long MIN_EVICTION_INTERVAL = 1000;
+
+	private final Configuration config;
+
 	private CloseableHttpAsyncClient asyncHttpClient;
 
+	private PoolingNHttpClientConnectionManager connectionManager;
+
+	/**
+	 * Builds the strategy with default pool settings
+	 */
+	public AsyncLogInsightConnectionStrategy() {
+		this(new Configuration());
+	}
+
+	/**
+	 * Builds the strategy with the pool settings of the configuration
+	 *
+	 * @param config
+	 *            Configuration object
+	 */
+	public AsyncLogInsightConnectionStrategy(Configuration config) {
+		if (null == config) {
+			throw new IllegalArgumentException("Invalid configuration");
+		}
+		this.config = config;
+	}
+
 	/**
 	 * Initializes and returns the httpClient with NoopHostnameVerifier
-	 * 
+	 *
 	 * @return CloseableHttpAsyncClient
 	 */
 	@Override
@@ -44,11 +96,103 @@ public class AsyncLogInsightConnectionStrategy implements LogInsightConnectionSt
 				new NoopHostnameVerifier());
 		List<Header> headers = LogInsightClient.getDefaultHeaders();
 
-		asyncHttpClient = HttpAsyncClients.custom().setSSLStrategy(sslSessionStrategy).setDefaultHeaders(headers)
-				.build();
+		connectionManager = buildConnectionManager(sslSessionStrategy);
+		asyncHttpClient = HttpAsyncClients.custom().setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(buildKeepAliveStrategy()).setDefaultHeaders(headers).build();
 		asyncHttpClient.start();
+		startIdleConnectionEvictor();
 
 		return asyncHttpClient;
 	}
 
+	/**
+	 * Getter for the connection manager of the last client built. Can be used
+	 * to read the pool statistics.
+	 *
+	 * @return PoolingNHttpClientConnectionManager or null if no client is built
+	 */
+	public PoolingNHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	private PoolingNHttpClientConnectionManager buildConnectionManager(SSLIOSessionStrategy sslSessionStrategy) {
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(config.getIoThreads())
+				.setSoKeepAlive(true).build();
+		Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy> create()
+				.register("http", NoopIOSessionStrategy.INSTANCE).register("https", sslSessionStrategy).build();
+		PoolingNHttpClientConnectionManager manager;
+		try {
+			manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig),
+					registry);
+		} catch (IOReactorException e) {
+			throw new LogInsightApiException("Unable to start the IO reactor", e);
+		}
+		manager.setMaxTotal(config.getMaxConnections());
+		manager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+		if (StringUtils.isNumeric(config.getPort()) && StringUtils.isNumeric(config.getIngestionPort())) {
+			for (String host : config.getHosts()) {
+				manager.setMaxPerRoute(route(host, config.getPort()), config.getMaxConnectionsPerRoute());
+				manager.setMaxPerRoute(route(host, config.getIngestionPort()), config.getMaxIngestionConnections());
+			}
+		}
+		return manager;
+	}
+
+	/**
+	 * Builds the route to the given port of the configured host
+	 *
+	 * @param port
+	 *            port number (string format)
+	 * @return HttpRoute object
+	 */
+	public HttpRoute route(String port) {
+		return route(config.getHost(), port);
+	}
+
+	/**
+	 * Builds the route to the given port of a cluster node
+	 *
+	 * @param host
+	 *            host name of the node
+	 * @param port
+	 *            port number (string format)
+	 * @return HttpRoute object
+	 */
+	public HttpRoute route(String host, String port) {
+		HttpHost target = new HttpHost(host, Integer.parseInt(port), config.getScheme());
+		return new HttpRoute(target, null, Configuration.DEFAULT_SCHEME.equals(config.getScheme()));
+	}
+
+	private ConnectionKeepAliveStrategy buildKeepAliveStrategy() {
+		long maxKeepAlive = config.getKeepAlive();
+		return (response, context) -> {
+			long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return keepAlive > 0 ? Math.min(keepAlive, maxKeepAlive) : maxKeepAlive;
+		};
+	}
+
+	private void startIdleConnectionEvictor() {
+		CloseableHttpAsyncClient client = asyncHttpClient;
+		PoolingNHttpClientConnectionManager manager = connectionManager;
+		long idleTimeout = config.getIdleTimeout();
+		long interval = Math.max(MIN_EVICTION_INTERVAL, idleTimeout / 2);
+		Thread evictor = new Thread(() -> {
+			try {
+				while (client.isRunning()) {
+					Thread.sleep(interval);
+					if (!client.isRunning()) {
+						break;
+					}
+					manager.closeExpiredConnections();
+					manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			logger.debug("Idle connection evictor stopped");
+		}, "loginsight-idle-connection-evictor");
+		evictor.setDaemon(true);
+		evictor.start();
+	}
+
 }
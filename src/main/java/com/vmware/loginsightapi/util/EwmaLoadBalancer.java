@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.vmware.loginsightapi.core.LoadBalancer;
+import com.vmware.loginsightapi.core.Node;
+
+/**
+ * Selects the healthy node with the lowest expected latency. The cost of a
+ * node is its moving average latency multiplied by its requests in progress
+ * plus one, so a fast node is preferred until it becomes loaded. Nodes
+ * without latency samples are preferred so that they get measured. Ties are
+ * broken randomly.
+ */
+public class EwmaLoadBalancer implements LoadBalancer {
+
+	@Override
+	public Node select(List<Node> candidates) {
+		int size = candidates.size();
+		int start = ThreadLocalRandom.current().nextInt(size);
+		Node selected = null;
+		double selectedCost = 0;
+		for (int i = 0; i < size; i++) {
+			Node node = candidates.get((start + i) % size);
+			double cost = node.getLatency() * (node.getOutstanding() + 1);
+			if (null == selected || cost < selectedCost) {
+				selected = node;
+				selectedCost = cost;
+			}
+		}
+		return selected;
+	}
+
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.vmware.loginsightapi.core.ClientMetrics;
+
+/**
+ * ClientMetrics recording into HdrHistogram histograms and counters, kept in
+ * memory. <br>
+ *
+ * Meters are named like a metrics registry, for example
+ * {@code loginsight.message_query.latency} or
+ * {@code loginsight.ingest.request.bytes}, so that they can be exported to
+ * Micrometer, Dropwizard Metrics or any other registry by iterating
+ * {@link #getCounters()}, {@link #getGauges()} and {@link #getHistograms()}.
+ * Histograms hold nanoseconds with 3 significant digits.
+ */
+public class HdrClientMetrics implements ClientMetrics {
+
+	private static final String PREFIX = "loginsight.";
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final Map<Operation, Meters> meters = new EnumMap<Operation, Meters>(Operation.class);
+	private final LongAdder submittedMessages = new LongAdder();
+	private final LongAdder ingestedMessages = new LongAdder();
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+
+	/**
+	 * Builds empty metrics
+	 */
+	public HdrClientMetrics() {
+		for (Operation operation : Operation.values()) {
+			meters.put(operation, new Meters());
+		}
+	}
+
+	@Override
+	public void started(Operation operation) {
+		meters.get(operation).inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void completed(Operation operation, long latency, boolean success) {
+		Meters meter = meters.get(operation);
+		meter.inFlight.decrementAndGet();
+		meter.requests.increment();
+		if (!success) {
+			meter.failures.increment();
+		}
+		record(meter.latency, latency);
+	}
+
+	@Override
+	public void networkTime(Operation operation, long time) {
+		record(meters.get(operation).network, time);
+	}
+
+	@Override
+	public void serializationTime(Operation operation, long time) {
+		record(meters.get(operation).serialization, time);
+	}
+
+	@Override
+	public void parseTime(Operation operation, long time) {
+		record(meters.get(operation).parse, time);
+	}
+
+	@Override
+	public void requestBytes(Operation operation, long bytes) {
+		meters.get(operation).requestBytes.add(bytes);
+	}
+
+	@Override
+	public void responseBytes(Operation operation, long bytes) {
+		meters.get(operation).responseBytes.add(bytes);
+	}
+
+	@Override
+	public void retried(Operation operation) {
+		meters.get(operation).retries.increment();
+	}
+
+	@Override
+	public void ingested(long submitted, long ingested) {
+		submittedMessages.add(submitted);
+		ingestedMessages.add(ingested);
+	}
+
+	@Override
+	public void gauge(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Histogram of the latency of an operation, including session waits and
+	 * retries
+	 *
+	 * @param operation
+	 *            operation
+	 * @return copy of the histogram, in nanoseconds
+	 */
+	public Histogram getLatency(Operation operation) {
+		return meters.get(operation).latency.copy();
+	}
+
+	/**
+	 * Histogram of the network time of the requests of an operation
+	 *
+	 * @param operation
+	 *            operation
+	 * @return copy of the histogram, in nanoseconds
+	 */
+	public Histogram getNetworkTime(Operation operation) {
+		return meters.get(operation).network.copy();
+	}
+
+	/**
+	 * Number of completed operations
+	 *
+	 * @param operation
+	 *            operation
+	 * @return request count
+	 */
+	public long getRequestCount(Operation operation) {
+		return meters.get(operation).requests.sum();
+	}
+
+	/**
+	 * Number of failed operations
+	 *
+	 * @param operation
+	 *            operation
+	 * @return failure count
+	 */
+	public long getFailureCount(Operation operation) {
+		return meters.get(operation).failures.sum();
+	}
+
+	/**
+	 * Number of operations in flight
+	 *
+	 * @param operation
+	 *            operation
+	 * @return in flight count
+	 */
+	public long getInFlight(Operation operation) {
+		return meters.get(operation).inFlight.get();
+	}
+
+	/**
+	 * Number of messages sent in the ingestion requests
+	 *
+	 * @return submitted message count
+	 */
+	public long getSubmittedMessageCount() {
+		return submittedMessages.sum();
+	}
+
+	/**
+	 * Number of messages LogInsight reported as ingested
+	 *
+	 * @return ingested message count
+	 */
+	public long getIngestedMessageCount() {
+		return ingestedMessages.sum();
+	}
+
+	/**
+	 * Current value of the counters, by meter name
+	 *
+	 * @return sorted map of counter values
+	 */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new TreeMap<String, Long>();
+		for (Map.Entry<Operation, Meters> entry : meters.entrySet()) {
+			String prefix = prefix(entry.getKey());
+			Meters meter = entry.getValue();
+			counters.put(prefix + "requests", meter.requests.sum());
+			counters.put(prefix + "failures", meter.failures.sum());
+			counters.put(prefix + "retries", meter.retries.sum());
+			counters.put(prefix + "request.bytes", meter.requestBytes.sum());
+			counters.put(prefix + "response.bytes", meter.responseBytes.sum());
+		}
+		counters.put(PREFIX + "ingest.messages.submitted", submittedMessages.sum());
+		counters.put(PREFIX + "ingest.messages.ingested", ingestedMessages.sum());
+		return counters;
+	}
+
+	/**
+	 * Current value of the gauges, by meter name. Includes the operations in
+	 * flight and the gauges registered by the client.
+	 *
+	 * @return sorted map of gauge values
+	 */
+	public Map<String, Long> getGauges() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<Operation, Meters> entry : meters.entrySet()) {
+			values.put(prefix(entry.getKey()) + "inflight", entry.getValue().inFlight.get());
+		}
+		for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsLong());
+		}
+		return values;
+	}
+
+	/**
+	 * Copy of the histograms, by meter name
+	 *
+	 * @return sorted map of histograms, in nanoseconds
+	 */
+	public Map<String, Histogram> getHistograms() {
+		Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+		for (Map.Entry<Operation, Meters> entry : meters.entrySet()) {
+			String prefix = prefix(entry.getKey());
+			Meters meter = entry.getValue();
+			histograms.put(prefix + "latency", meter.latency.copy());
+			histograms.put(prefix + "network", meter.network.copy());
+			histograms.put(prefix + "serialization", meter.serialization.copy());
+			histograms.put(prefix + "parse", meter.parse.copy());
+		}
+		return histograms;
+	}
+
+	private static String prefix(Operation operation) {
+		return PREFIX + operation.name().toLowerCase(Locale.ROOT) + ".";
+	}
+
+	private static void record(Histogram histogram, long time) {
+		histogram.recordValue(Math.max(0, time));
+	}
+
+	/**
+	 * Meters of an operation
+	 */
+	private static final class Meters {
+		private final Histogram latency = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final Histogram network = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final Histogram serialization = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final Histogram parse = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+		private final AtomicLong inFlight = new AtomicLong();
+	}
+}
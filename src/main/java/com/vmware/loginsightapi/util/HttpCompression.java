@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+
+/**
+ * Content codings of requests and responses
+ */
+public final class HttpCompression {
+
+	/**
+	 * Gzip content coding
+	 */
+	public static final String GZIP = "gzip";
+
+	/**
+	 * Deflate (zlib) content coding
+	 */
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * Accept-Encoding header value of compressed queries
+	 */
+	public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+	private HttpCompression() {
+	}
+
+	/**
+	 * Returns the decoded content of a response entity
+	 *
+	 * @param entity
+	 *            response entity
+	 * @return content, decompressed when the entity is gzip or deflate encoded
+	 * @throws IOException
+	 *             when the content cannot be read
+	 */
+	public static InputStream getContent(HttpEntity entity) throws IOException {
+		return decode(entity.getContent(), entity.getContentEncoding());
+	}
+
+	/**
+	 * Decodes a content stream
+	 *
+	 * @param in
+	 *            content as received
+	 * @param contentEncoding
+	 *            Content-Encoding header, may be null
+	 * @return decompressed stream, or the stream itself when not encoded
+	 * @throws IOException
+	 *             when the compression header is invalid
+	 */
+	public static InputStream decode(InputStream in, Header contentEncoding) throws IOException {
+		if (null == contentEncoding || null == in) {
+			return in;
+		}
+		String coding = contentEncoding.getValue().trim();
+		if (GZIP.equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+			return new GZIPInputStream(in);
+		}
+		if (DEFLATE.equalsIgnoreCase(coding)) {
+			return new InflaterInputStream(in);
+		}
+		return in;
+	}
+}
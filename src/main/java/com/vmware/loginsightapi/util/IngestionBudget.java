@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+/**
+ * Bounds the number and the (estimated) size of the ingestion requests in
+ * flight. <br>
+ *
+ * A request is admitted while both bounds hold. A request larger than the
+ * byte bound is admitted when nothing else is in flight, so that it can not
+ * wait forever. Once the budget is exhausted the {@link OverflowPolicy}
+ * decides whether the caller waits or the request is refused. <br>
+ * <br>
+ * This class is thread safe.
+ */
+public class IngestionBudget {
+
+	private final int maxRequests;
+	private final long maxBytes;
+	private final OverflowPolicy policy;
+	private final long blockTimeout;
+
+	private int requests;
+	private long bytes;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * Builds the budget
+	 *
+	 * @param maxRequests
+	 *            maximum number of requests in flight
+	 * @param maxBytes
+	 *            maximum (estimated) size of the requests in flight in bytes
+	 * @param policy
+	 *            behaviour once the budget is exhausted
+	 * @param blockTimeout
+	 *            maximum time in milliseconds a caller waits with the BLOCK
+	 *            policy
+	 */
+	public IngestionBudget(int maxRequests, long maxBytes, OverflowPolicy policy, long blockTimeout) {
+		if (maxRequests <= 0 || maxBytes <= 0 || blockTimeout < 0) {
+			throw new IllegalArgumentException("Ingestion budget should be positive");
+		}
+		if (null == policy) {
+			throw new IllegalArgumentException("Invalid overflow policy");
+		}
+		this.maxRequests = maxRequests;
+		this.maxBytes = maxBytes;
+		this.policy = policy;
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * Reserves budget for a request. Waits with the BLOCK policy. Each
+	 * successful acquire must be followed by a {@link #release(long)}.
+	 *
+	 * @param size
+	 *            estimated size of the request in bytes
+	 * @return true if the request can be sent, false if it is refused
+	 */
+	public boolean acquire(long size) {
+		return acquire(size, true);
+	}
+
+	/**
+	 * Reserves budget for a request. With the BLOCK policy, waits only when
+	 * allowed to, otherwise an exhausted budget refuses the request. Each
+	 * successful acquire must be followed by a {@link #release(long)}.
+	 *
+	 * @param size
+	 *            estimated size of the request in bytes
+	 * @param mayWait
+	 *            false when the caller must not be parked, e.g. on an I/O
+	 *            dispatcher thread
+	 * @return true if the request can be sent, false if it is refused
+	 */
+	public synchronized boolean acquire(long size, boolean mayWait) {
+		if (!fits(size) && policy == OverflowPolicy.BLOCK && mayWait) {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+			try {
+				long remaining;
+				while (!fits(size) && (remaining = deadline - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!fits(size)) {
+			if (policy == OverflowPolicy.DROP) {
+				droppedCount.incrementAndGet();
+			} else {
+				rejectedCount.incrementAndGet();
+			}
+			return false;
+		}
+		requests++;
+		bytes += size;
+		return true;
+	}
+
+	/**
+	 * Returns the budget of a completed request
+	 *
+	 * @param size
+	 *            estimated size given to {@link #acquire(long)}
+	 */
+	public synchronized void release(long size) {
+		requests--;
+		bytes -= size;
+		notifyAll();
+	}
+
+	private boolean fits(long size) {
+		return requests < maxRequests && (requests == 0 || bytes + size <= maxBytes);
+	}
+
+	/**
+	 * Getter for the overflow policy
+	 *
+	 * @return policy applied once the budget is exhausted
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Getter for the number of requests in flight
+	 *
+	 * @return requests in flight
+	 */
+	public synchronized int getInFlightRequests() {
+		return requests;
+	}
+
+	/**
+	 * Getter for the estimated size of the requests in flight
+	 *
+	 * @return bytes in flight
+	 */
+	public synchronized long getInFlightBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Getter for the maximum number of requests in flight
+	 *
+	 * @return request bound
+	 */
+	public int getMaxRequests() {
+		return maxRequests;
+	}
+
+	/**
+	 * Getter for the maximum size of the requests in flight
+	 *
+	 * @return byte bound
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Computes the occupancy of the budget, the larger of the request and the
+	 * byte occupancy
+	 *
+	 * @return occupancy between 0 and 1 (above 1 with an oversized request)
+	 */
+	public synchronized double getOccupancy() {
+		return Math.max((double) requests / maxRequests, (double) bytes / maxBytes);
+	}
+
+	/**
+	 * Number of requests refused with the BLOCK or REJECT policy
+	 *
+	 * @return rejected requests
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Number of requests discarded with the DROP policy
+	 *
+	 * @return dropped requests
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+}
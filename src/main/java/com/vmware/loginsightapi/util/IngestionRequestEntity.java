@@ -0,0 +1,354 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.JsonCodec;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageBuffer;
+
+/**
+ * Http entity which streams an {@link IngestionRequest} as json. <br>
+ *
+ * The messages are serialized one by one through a Jackson
+ * {@code JsonGenerator}. When used with the async http client the json is
+ * produced in chunks of {@code chunkSize} bytes as the connection becomes
+ * writable, so the whole request body is never held in memory. <br>
+ *
+ * With a compression level the json is gzip compressed while it is produced
+ * and the entity is sent with a gzip Content-Encoding.
+ */
+public class IngestionRequestEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+
+	/**
+	 * Default size of the chunks produced for the async http client
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+	private final IngestionRequest ingestionRequest;
+	private final int chunkSize;
+	private final int compressionLevel;
+
+	private ChunkBuffer chunk;
+	private ByteBuffer pendingBytes;
+	private GZIPOutputStream compressor;
+	private JsonGenerator generator;
+	private Iterator<Message> messages;
+	private int next;
+	private boolean finished;
+	private long serializationTime;
+	private long producedBytes;
+
+	/**
+	 * Builds the entity with default chunk size
+	 *
+	 * @param ingestionRequest
+	 *            ingestion request to be streamed
+	 */
+	public IngestionRequestEntity(IngestionRequest ingestionRequest) {
+		this(ingestionRequest, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Builds the entity
+	 *
+	 * @param ingestionRequest
+	 *            ingestion request to be streamed
+	 * @param chunkSize
+	 *            approximate size of the chunks produced for the async client
+	 */
+	public IngestionRequestEntity(IngestionRequest ingestionRequest, int chunkSize) {
+		this(ingestionRequest, chunkSize, Deflater.NO_COMPRESSION);
+	}
+
+	/**
+	 * Builds the entity
+	 *
+	 * @param ingestionRequest
+	 *            ingestion request to be streamed
+	 * @param chunkSize
+	 *            approximate size of the chunks produced for the async client
+	 * @param compressionLevel
+	 *            gzip compression level (1-9), 0 for uncompressed content
+	 */
+	public IngestionRequestEntity(IngestionRequest ingestionRequest, int chunkSize, int compressionLevel) {
+		if (null == ingestionRequest) {
+			throw new IllegalArgumentException("Invalid ingestion request");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size");
+		}
+		if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level");
+		}
+		this.ingestionRequest = ingestionRequest;
+		this.chunkSize = chunkSize;
+		this.compressionLevel = compressionLevel;
+		setContentType(ContentType.APPLICATION_JSON.toString());
+		if (isCompressed()) {
+			setContentEncoding(HttpCompression.GZIP);
+		}
+		setChunked(true);
+	}
+
+	/**
+	 * Returns the ingestion request held by this entity
+	 *
+	 * @return IngestionRequest object
+	 */
+	public IngestionRequest getIngestionRequest() {
+		return ingestionRequest;
+	}
+
+	/**
+	 * Time spent serializing and compressing the content produced for the
+	 * async client
+	 *
+	 * @return serialization time in nanoseconds
+	 */
+	public synchronized long getSerializationTime() {
+		return serializationTime;
+	}
+
+	/**
+	 * Number of bytes produced for the async client, after compression
+	 *
+	 * @return produced byte count
+	 */
+	public synchronized long getProducedBytes() {
+		return producedBytes;
+	}
+
+	/**
+	 * Tells whether the content is gzip compressed
+	 *
+	 * @return true when built with a compression level
+	 */
+	public boolean isCompressed() {
+		return compressionLevel != Deflater.NO_COMPRESSION;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * Length is not known until the messages are serialized.
+	 *
+	 * @return -1
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * Serializes the whole request into memory. Prefer
+	 * {@link #writeTo(OutputStream)}.
+	 *
+	 * @return input stream of the serialized request
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(chunkSize);
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		LevelGZIPOutputStream gzip = isCompressed() ? new LevelGZIPOutputStream(outstream, compressionLevel) : null;
+		JsonGenerator gen = JsonCodec.factory().createGenerator(null != gzip ? gzip : outstream, JsonEncoding.UTF8);
+		gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		writeStart(gen);
+		MessageBuffer buffer = ingestionRequest.getBuffer();
+		if (null != buffer) {
+			for (int i = 0; i < buffer.size(); i++) {
+				buffer.writeMessage(gen, i);
+			}
+		} else {
+			for (Message message : ingestionRequest.getMessages()) {
+				JsonCodec.writer(Message.class).writeValue(gen, message);
+			}
+		}
+		writeEnd(gen);
+		gen.close();
+		if (null != gzip) {
+			gzip.end();
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public synchronized void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+		if (null == generator) {
+			begin();
+		}
+		while (true) {
+			if (null != pendingBytes && pendingBytes.hasRemaining()) {
+				encoder.write(pendingBytes);
+				if (pendingBytes.hasRemaining()) {
+					// channel is full, wait to be called again
+					return;
+				}
+			}
+			if (finished) {
+				encoder.complete();
+				close();
+				return;
+			}
+			long start = System.nanoTime();
+			fillChunk();
+			serializationTime += System.nanoTime() - start;
+			producedBytes += pendingBytes.remaining();
+		}
+	}
+
+	/**
+	 * Resets the production state so that the entity can be produced again.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (null != generator) {
+			generator.close();
+		}
+		if (null != compressor) {
+			compressor.close();
+		}
+		generator = null;
+		compressor = null;
+		chunk = null;
+		pendingBytes = null;
+		messages = null;
+		next = 0;
+		finished = false;
+	}
+
+	private void begin() throws IOException {
+		chunk = new ChunkBuffer(chunkSize);
+		if (isCompressed()) {
+			compressor = new LevelGZIPOutputStream(chunk, compressionLevel);
+			generator = JsonCodec.factory().createGenerator(compressor, JsonEncoding.UTF8);
+		} else {
+			generator = JsonCodec.factory().createGenerator(chunk, JsonEncoding.UTF8);
+		}
+		if (null == ingestionRequest.getBuffer()) {
+			messages = ingestionRequest.getMessages().iterator();
+		}
+		next = 0;
+		writeStart(generator);
+	}
+
+	private void fillChunk() throws IOException {
+		if (null != pendingBytes) {
+			// keeps the gzip header written by begin()
+			chunk.reset();
+		}
+		while (hasNextMessage() && chunk.size() < chunkSize) {
+			writeNextMessage();
+		}
+		if (!hasNextMessage()) {
+			writeEnd(generator);
+			finished = true;
+		}
+		generator.flush();
+		if (finished && null != compressor) {
+			compressor.finish();
+		}
+		pendingBytes = chunk.toByteBuffer();
+	}
+
+	private boolean hasNextMessage() {
+		MessageBuffer buffer = ingestionRequest.getBuffer();
+		return null != buffer ? next < buffer.size() : messages.hasNext();
+	}
+
+	/**
+	 * Writes the next message, straight from the buffer of the request when it
+	 * has one
+	 */
+	private void writeNextMessage() throws IOException {
+		MessageBuffer buffer = ingestionRequest.getBuffer();
+		if (null != buffer) {
+			buffer.writeMessage(generator, next++);
+		} else {
+			JsonCodec.writer(Message.class).writeValue(generator, messages.next());
+		}
+	}
+
+	private static void writeStart(JsonGenerator gen) throws IOException {
+		gen.writeStartObject();
+		gen.writeFieldName("messages");
+		gen.writeStartArray();
+	}
+
+	private static void writeEnd(JsonGenerator gen) throws IOException {
+		gen.writeEndArray();
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Gzip stream with a configurable compression level. Flushing does not
+	 * force a deflate block, compressed bytes are emitted as the window fills.
+	 */
+	private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+		LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+			super(out, DEFAULT_CHUNK_SIZE, false);
+			def.setLevel(level);
+		}
+
+		/**
+		 * Writes the trailer and releases the deflater without closing the
+		 * underlying stream
+		 */
+		void end() throws IOException {
+			finish();
+			def.end();
+		}
+	}
+
+	/**
+	 * Reusable output buffer exposing its content without copying
+	 */
+	private static class ChunkBuffer extends ByteArrayOutputStream {
+
+		ChunkBuffer(int size) {
+			super(size);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.vmware.loginsightapi.core.LoadBalancer;
+import com.vmware.loginsightapi.core.Node;
+
+/**
+ * Selects the healthy node with the fewest requests in progress. Ties are
+ * broken randomly.
+ */
+public class LeastOutstandingLoadBalancer implements LoadBalancer {
+
+	@Override
+	public Node select(List<Node> candidates) {
+		int size = candidates.size();
+		int start = ThreadLocalRandom.current().nextInt(size);
+		Node selected = null;
+		for (int i = 0; i < size; i++) {
+			Node node = candidates.get((start + i) % size);
+			if (null == selected || node.getOutstanding() < selected.getOutstanding()) {
+				selected = node;
+			}
+		}
+		return selected;
+	}
+
+}
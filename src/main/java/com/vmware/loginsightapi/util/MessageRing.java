@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.vmware.loginsightapi.core.MessageSlot;
+
+/**
+ * Bounded lock-free ring of pre-allocated message slots, for many producers
+ * and a single consumer. <br>
+ *
+ * Unlike {@link MpscRing}, the slots are allocated once with the ring.
+ * Producers claim a sequence by advancing the tail with a compare and set,
+ * fill the slot of the sequence in place, then publish it. The consumer reads
+ * the slots in order and releases each one, which empties it and frees it for
+ * the producers. A claimed slot must always be published, or the consumer
+ * stops at it. <br>
+ * <br>
+ * {@link #claim()}, {@link #slot(long)} and {@link #publish(long)} may be
+ * called from any thread, {@link #peek()} and {@link #release()} from a single
+ * thread only.
+ */
+public class MessageRing {
+
+	private final MessageSlot[] slots;
+	private final AtomicLongArray published;
+	private final int capacity;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	/**
+	 * Builds a ring of empty slots
+	 *
+	 * @param capacity
+	 *            minimum number of slots, rounded up to a power of two
+	 */
+	public MessageRing(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid ring capacity");
+		}
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.slots = new MessageSlot[this.capacity];
+		this.published = new AtomicLongArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++) {
+			slots[i] = new MessageSlot();
+			published.set(i, -1);
+		}
+	}
+
+	/**
+	 * Claims the next slot without blocking
+	 *
+	 * @return sequence of the claimed slot, -1 if the ring is full
+	 */
+	public long claim() {
+		long claimed;
+		do {
+			claimed = tail.get();
+			if (claimed - head >= capacity) {
+				return -1;
+			}
+		} while (!tail.compareAndSet(claimed, claimed + 1));
+		return claimed;
+	}
+
+	/**
+	 * Slot of a claimed sequence, empty until the producer fills it
+	 *
+	 * @param sequence
+	 *            sequence returned by {@link #claim()}
+	 * @return MessageSlot of the sequence
+	 */
+	public MessageSlot slot(long sequence) {
+		return slots[index(sequence)];
+	}
+
+	/**
+	 * Makes a filled slot visible to the consumer
+	 *
+	 * @param sequence
+	 *            sequence returned by {@link #claim()}
+	 */
+	public void publish(long sequence) {
+		published.lazySet(index(sequence), sequence);
+	}
+
+	/**
+	 * Oldest published slot. Single consumer only.
+	 *
+	 * @return MessageSlot, or null if none is published
+	 */
+	public MessageSlot peek() {
+		long current = head;
+		int index = index(current);
+		return published.get(index) == current ? slots[index] : null;
+	}
+
+	/**
+	 * Empties the slot returned by {@link #peek()} and frees it for the
+	 * producers. Single consumer only.
+	 */
+	public void release() {
+		long current = head;
+		slots[index(current)].clear();
+		head = current + 1;
+	}
+
+	/**
+	 * Number of slots claimed and not yet released
+	 *
+	 * @return size of the ring
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/**
+	 * Tells whether no slot is claimed
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Number of slots
+	 *
+	 * @return capacity of the ring
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & mask;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+import com.vmware.loginsightapi.core.MessageQueryStreamParser;
+
+/**
+ * Async response consumer which parses a message query response while it is
+ * being received. <br>
+ *
+ * Content received by the I/O reactor is copied into a bounded
+ * {@code SharedInputBuffer}. Input from the connection is suspended while the
+ * buffer is full. The buffer is read and parsed by a task running on the
+ * supplied executor, which passes each event to the consumer and completes
+ * the response future once the whole response is parsed. Gzip and deflate
+ * encoded responses are decompressed by the parser task.
+ */
+public class MessageStreamConsumer extends AbstractAsyncResponseConsumer<Void> {
+
+	/**
+	 * Default size of the buffer between the I/O reactor and the parser
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final Consumer<Message> consumer;
+	private final Executor executor;
+	private final CompletableFuture<MessageQueryResponse> responseFuture;
+	private final int bufferSize;
+
+	private volatile int statusCode;
+	private volatile Header contentEncoding;
+	private volatile SharedInputBuffer buffer;
+
+	/**
+	 * Builds the consumer with default buffer size
+	 *
+	 * @param consumer
+	 *            receives each event of the response
+	 * @param executor
+	 *            executor running the parser
+	 * @param responseFuture
+	 *            completed once the response is parsed
+	 */
+	public MessageStreamConsumer(Consumer<Message> consumer, Executor executor,
+			CompletableFuture<MessageQueryResponse> responseFuture) {
+		this(consumer, executor, responseFuture, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Builds the consumer
+	 *
+	 * @param consumer
+	 *            receives each event of the response
+	 * @param executor
+	 *            executor running the parser
+	 * @param responseFuture
+	 *            completed once the response is parsed
+	 * @param bufferSize
+	 *            size of the buffer between the I/O reactor and the parser
+	 */
+	public MessageStreamConsumer(Consumer<Message> consumer, Executor executor,
+			CompletableFuture<MessageQueryResponse> responseFuture, int bufferSize) {
+		this.consumer = consumer;
+		this.executor = executor;
+		this.responseFuture = responseFuture;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Getter for the status code of the response
+	 *
+	 * @return status code or 0 if no response is received
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.statusCode = response.getStatusLine().getStatusCode();
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+		this.contentEncoding = entity.getContentEncoding();
+		this.buffer = new SharedInputBuffer(bufferSize);
+		try {
+			executor.execute(this::parse);
+		} catch (RejectedExecutionException e) {
+			throw new IOException("Unable to start the message query parser", e);
+		}
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+		buffer.consumeContent(decoder, ioctrl);
+	}
+
+	@Override
+	protected Void buildResult(HttpContext context) {
+		if (null == buffer) {
+			responseFuture.completeExceptionally(
+					new LogInsightApiException("Message query response has no content. StatusCode=" + statusCode));
+		}
+		return null;
+	}
+
+	@Override
+	protected void releaseResources() {
+		if (null != buffer) {
+			// marks the end of the content, the parser will consume what is
+			// already buffered
+			buffer.close();
+		}
+	}
+
+	private void parse() {
+		SharedInputBuffer input = this.buffer;
+		InputStream in = new ContentInputStream(input);
+		try {
+			if (statusCode != 200) {
+				IOUtils.toString(in, "UTF-8");
+				responseFuture.completeExceptionally(
+						new LogInsightApiException("Message query failed. StatusCode=" + statusCode));
+				return;
+			}
+			responseFuture.complete(MessageQueryStreamParser.parse(HttpCompression.decode(in, contentEncoding), consumer));
+		} catch (Exception e) {
+			// stop buffering, the request is cancelled by the client
+			input.shutdown();
+			responseFuture.completeExceptionally(new LogInsightApiException("Unable to process the query response", e));
+		}
+	}
+}
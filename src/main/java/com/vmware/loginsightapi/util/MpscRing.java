@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer for many producers and a single consumer.
+ * <br>
+ *
+ * Producers claim a slot by advancing the tail with a compare and set, then
+ * publish the element into the slot. The consumer takes the elements in
+ * order, and frees the slot before advancing the head. An element is visible
+ * to the consumer once published, so a slow producer may briefly hide the
+ * elements claimed after its own. <br>
+ * <br>
+ * {@link #offer(Object)} may be called from any thread, {@link #poll()} from a
+ * single thread only.
+ *
+ * @param <E>
+ *            type of the elements
+ */
+public class MpscRing<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	private final int capacity;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	/**
+	 * Builds an empty ring
+	 *
+	 * @param capacity
+	 *            minimum number of elements, rounded up to a power of two
+	 */
+	public MpscRing(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid ring capacity");
+		}
+		this.capacity = ceilingPowerOfTwo(capacity);
+		this.mask = this.capacity - 1;
+		this.slots = new AtomicReferenceArray<E>(this.capacity);
+	}
+
+	/**
+	 * Adds an element without blocking
+	 *
+	 * @param element
+	 *            element to add, not null
+	 * @return false if the ring is full
+	 */
+	public boolean offer(E element) {
+		if (null == element) {
+			throw new IllegalArgumentException("Invalid element");
+		}
+		long claimed;
+		do {
+			claimed = tail.get();
+			if (claimed - head >= capacity) {
+				return false;
+			}
+		} while (!tail.compareAndSet(claimed, claimed + 1));
+		slots.lazySet(index(claimed), element);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest published element. Single consumer only.
+	 *
+	 * @return element, or null if none is published
+	 */
+	public E poll() {
+		long current = head;
+		int index = index(current);
+		E element = slots.get(index);
+		if (null == element) {
+			return null;
+		}
+		slots.lazySet(index, null);
+		head = current + 1;
+		return element;
+	}
+
+	/**
+	 * Number of elements claimed and not yet taken
+	 *
+	 * @return size of the ring
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/**
+	 * Tells whether no element is claimed
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Maximum number of elements
+	 *
+	 * @return capacity of the ring
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & mask;
+	}
+
+	private static int ceilingPowerOfTwo(int value) {
+		return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+	}
+}
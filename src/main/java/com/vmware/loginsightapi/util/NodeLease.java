@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToIntFunction;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.vmware.loginsightapi.core.Node;
+import com.vmware.loginsightapi.core.NodePool;
+
+/**
+ * A node acquired from a {@link NodePool} for one request. The node is
+ * released once, either by the callback returned by
+ * {@link #track(FutureCallback, ToIntFunction)} or by {@link #abort()}.
+ */
+public class NodeLease {
+
+	private final NodePool nodePool;
+	private final Node node;
+	private final long start = System.nanoTime();
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	/**
+	 * Acquires a node from the pool
+	 *
+	 * @param nodePool
+	 *            pool of the cluster nodes
+	 */
+	public NodeLease(NodePool nodePool) {
+		this.nodePool = nodePool;
+		this.node = nodePool.acquire();
+	}
+
+	/**
+	 * Getter for the acquired node
+	 *
+	 * @return node serving the request
+	 */
+	public Node getNode() {
+		return node;
+	}
+
+	/**
+	 * Wraps the callback of the request so that the node is released before
+	 * the result is passed on. Connection failures and server errors are
+	 * reported as node failures.
+	 *
+	 * @param <T>
+	 *            result type of the request
+	 * @param callback
+	 *            callback receiving the result
+	 * @param statusCode
+	 *            returns the http status code of the result, 0 if unknown
+	 * @return FutureCallback releasing the node
+	 */
+	public <T> FutureCallback<T> track(FutureCallback<T> callback, ToIntFunction<T> statusCode) {
+		return new FutureCallback<T>() {
+
+			@Override
+			public void completed(T result) {
+				boolean success = statusCode.applyAsInt(result) < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+				release(success ? System.nanoTime() - start : -1, success);
+				callback.completed(result);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				release(-1, false);
+				callback.failed(ex);
+			}
+
+			@Override
+			public void cancelled() {
+				release(-1, true);
+				callback.cancelled();
+			}
+
+		};
+	}
+
+	/**
+	 * Releases the node after a successful request
+	 */
+	public void succeeded() {
+		release(System.nanoTime() - start, true);
+	}
+
+	/**
+	 * Releases the node after the node failed to serve the request
+	 */
+	public void failed() {
+		release(-1, false);
+	}
+
+	/**
+	 * Releases the node without affecting its health, when the request could
+	 * not be sent.
+	 */
+	public void abort() {
+		release(-1, true);
+	}
+
+	private void release(long latencyNanos, boolean success) {
+		if (released.compareAndSet(false, true)) {
+			nodePool.release(node, latencyNanos, success);
+		}
+	}
+}
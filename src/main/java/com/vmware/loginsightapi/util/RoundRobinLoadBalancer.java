@@ -0,0 +1,29 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.loginsightapi.core.LoadBalancer;
+import com.vmware.loginsightapi.core.Node;
+
+/**
+ * Selects the healthy nodes in turn
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Override
+	public Node select(List<Node> candidates) {
+		return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % candidates.size());
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls into a single call. <br>
+ *
+ * The callers of a key issued while a call for that key is in flight share
+ * its result. Each caller gets its own future: cancelling it only detaches
+ * that caller, and the shared call is cancelled once all its callers have
+ * cancelled. Results are not retained once the call completes.
+ *
+ * @param <T>
+ *            result type
+ */
+public class SingleFlight<T> {
+
+	private final Map<String, Flight<T>> flights = new HashMap<String, Flight<T>>();
+	private long callCount;
+	private long coalescedCount;
+
+	/**
+	 * Runs the call, or joins the call in flight for the same key
+	 *
+	 * @param key
+	 *            identifies identical calls
+	 * @param call
+	 *            starts the call when none is in flight
+	 * @return CompletableFuture of this caller
+	 */
+	public CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> call) {
+		Flight<T> flight;
+		boolean leader = false;
+		CompletableFuture<T> caller = new CompletableFuture<T>();
+		synchronized (this) {
+			flight = flights.get(key);
+			if (null == flight) {
+				flight = new Flight<T>();
+				flights.put(key, flight);
+				leader = true;
+				callCount++;
+			} else {
+				coalescedCount++;
+			}
+			flight.callers++;
+		}
+		Flight<T> joined = flight;
+		joined.shared.whenComplete((result, ex) -> {
+			if (null == ex) {
+				caller.complete(result);
+			} else {
+				caller.completeExceptionally(ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex);
+			}
+		});
+		caller.whenComplete((result, ex) -> {
+			if (caller.isCancelled()) {
+				detach(key, joined);
+			}
+		});
+		if (leader) {
+			start(key, joined, call);
+		}
+		return caller;
+	}
+
+	/**
+	 * Number of calls started
+	 *
+	 * @return call count
+	 */
+	public synchronized long getCallCount() {
+		return callCount;
+	}
+
+	/**
+	 * Number of callers that joined a call in flight
+	 *
+	 * @return coalesced count
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Number of calls in flight
+	 *
+	 * @return in flight count
+	 */
+	public synchronized int getInFlightCount() {
+		return flights.size();
+	}
+
+	private void start(String key, Flight<T> flight, Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> started;
+		try {
+			started = call.get();
+		} catch (RuntimeException e) {
+			started = new CompletableFuture<T>();
+			started.completeExceptionally(e);
+		}
+		CompletableFuture<T> loaded = started;
+		flight.shared.whenComplete((result, ex) -> {
+			synchronized (this) {
+				flights.remove(key, flight);
+			}
+			if (flight.shared.isCancelled()) {
+				loaded.cancel(true);
+			}
+		});
+		loaded.whenComplete((result, ex) -> {
+			if (null == ex) {
+				flight.shared.complete(result);
+			} else {
+				flight.shared.completeExceptionally(ex);
+			}
+		});
+	}
+
+	private void detach(String key, Flight<T> flight) {
+		synchronized (this) {
+			if (--flight.callers > 0) {
+				return;
+			}
+			flights.remove(key, flight);
+		}
+		flight.shared.cancel(true);
+	}
+
+	private static final class Flight<T> {
+		private final CompletableFuture<T> shared = new CompletableFuture<T>();
+		private int callers;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.loginsightapi.core.ClientMetrics.Operation;
+
+/**
+ * Logs a sample of the request and response bodies exchanged with LogInsight.
+ * <br>
+ *
+ * Bodies are logged at debug level of the logger {@value #LOGGER_NAME}, only
+ * when the sample rate is above 0. Unsampled requests cost a random draw: the
+ * body is neither formatted nor copied. Logged bodies are truncated to the
+ * maximum length, and the values of the password and session id fields are
+ * replaced by {@value #REDACTED}.
+ */
+public class WireLogger {
+
+	/**
+	 * Name of the logger of the request and response bodies
+	 */
+	public static final String LOGGER_NAME = "com.vmware.loginsightapi.wire";
+
+	/**
+	 * Replacement of the credentials in the logs
+	 */
+	public static final String REDACTED = "******";
+
+	/**
+	 * Wire logger logging nothing
+	 */
+	public static final WireLogger DISABLED = new WireLogger(0, 1);
+
+	private static final Pattern CREDENTIALS = Pattern
+			.compile("(\"(?:password|sessionId)\"\\s*:\\s*\")(?:[^\"\\\\]|\\\\.)*");
+
+	private final static Logger logger = LoggerFactory.getLogger(LOGGER_NAME);
+
+	private final double sampleRate;
+	private final int maxLength;
+
+	/**
+	 * Builds a wire logger
+	 *
+	 * @param sampleRate
+	 *            fraction of the requests and responses logged, between 0 and 1
+	 * @param maxLength
+	 *            maximum number of characters of a logged body
+	 */
+	public WireLogger(double sampleRate, int maxLength) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("Invalid wire log sample rate");
+		}
+		if (maxLength <= 0) {
+			throw new IllegalArgumentException("Invalid wire log max length");
+		}
+		this.sampleRate = sampleRate;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Decides whether the next body is logged
+	 *
+	 * @return true if the body should be logged
+	 */
+	public boolean sample() {
+		return sampleRate > 0 && logger.isDebugEnabled()
+				&& (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+	}
+
+	/**
+	 * Logs the body of a request when sampled. The body is only built when
+	 * logged.
+	 *
+	 * @param operation
+	 *            operation of the request
+	 * @param body
+	 *            supplies the body of the request
+	 */
+	public void request(Operation operation, Supplier<String> body) {
+		if (sample()) {
+			logger.debug("{} request: {}", operation, format(body.get()));
+		}
+	}
+
+	/**
+	 * Logs the body of a response when sampled. A sampled body is read in
+	 * memory and the returned stream replays it, otherwise the content is
+	 * returned as is.
+	 *
+	 * @param operation
+	 *            operation of the response
+	 * @param statusCode
+	 *            http status of the response
+	 * @param content
+	 *            content of the response
+	 * @return stream to read the content from
+	 * @throws IOException
+	 *             when the content of a sampled response can not be read
+	 */
+	public InputStream response(Operation operation, int statusCode, InputStream content) throws IOException {
+		if (!sample()) {
+			return content;
+		}
+		byte[] body = IOUtils.toByteArray(content);
+		content.close();
+		if (body.length > maxLength * 4) {
+			logger.debug("{} response {}: {}", operation, statusCode,
+					format(new String(body, 0, maxLength * 4, StandardCharsets.UTF_8), body.length));
+		} else {
+			logger.debug("{} response {}: {}", operation, statusCode,
+					format(new String(body, StandardCharsets.UTF_8), body.length));
+		}
+		return new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * Logs a response body already read, when sampled
+	 *
+	 * @param operation
+	 *            operation of the response
+	 * @param statusCode
+	 *            http status of the response
+	 * @param body
+	 *            body of the response
+	 */
+	public void response(Operation operation, int statusCode, String body) {
+		if (sample()) {
+			logger.debug("{} response {}: {}", operation, statusCode, format(body));
+		}
+	}
+
+	/**
+	 * Replaces the values of the password and session id fields of a json body
+	 *
+	 * @param body
+	 *            json body, possibly truncated
+	 * @return body without credentials
+	 */
+	public static String redact(String body) {
+		return null == body ? null : CREDENTIALS.matcher(body).replaceAll("$1" + REDACTED);
+	}
+
+	private String format(String body) {
+		return null == body ? null : format(body, body.length());
+	}
+
+	private String format(String body, int size) {
+		if (body.length() <= maxLength) {
+			return redact(body);
+		}
+		return redact(body.substring(0, maxLength)) + "... (" + size + " total)";
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AggregateColumns;
+import com.vmware.loginsightapi.core.AggregateResponse;
+
+public class AggregateColumnsTest {
+
+	private static final String RESPONSE = "{\"complete\":true,\"duration\":52,\"bins\":["
+			+ "{\"minTimestamp\":1000,\"maxTimestamp\":1999,\"value\":10},"
+			+ "{\"minTimestamp\":2000,\"maxTimestamp\":2999,\"value\":30,\"unknown\":{\"a\":[1]}},"
+			+ "{\"minTimestamp\":3000,\"maxTimestamp\":3999,\"value\":null},"
+			+ "{\"minTimestamp\":4000,\"maxTimestamp\":4499,\"value\":20}]}";
+
+	@Test
+	public void testParse() throws Exception {
+		AggregateColumns columns = AggregateColumns
+				.parse(new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+		assertTrue(columns.isComplete());
+		assertEquals(52, columns.getDuration());
+		assertEquals(4, columns.size());
+		assertArrayEquals(new long[] { 1000, 2000, 3000, 4000 }, columns.minTimestamps());
+		assertArrayEquals(new long[] { 1999, 2999, 3999, 4499 }, columns.maxTimestamps());
+		assertArrayEquals(new long[] { 10, 30, 0, 20 }, columns.values());
+
+		AggregateResponse response = AggregateResponse
+				.fromJsonString(RESPONSE.replace("null", "0").replace(",\"unknown\":{\"a\":[1]}", ""));
+		assertArrayEquals(columns.values(), AggregateColumns.of(response).values());
+		assertEquals(Long.valueOf(4499), columns.toAggregateResponse().getBins().get(3).getMaxTimestamp());
+	}
+
+	@Test
+	public void testOperations() {
+		AggregateColumns columns = AggregateColumns.fromJsonString(RESPONSE);
+		assertEquals(60, columns.sum());
+		assertEquals(30, columns.max());
+		assertArrayEquals(new double[] { 10, 30, 0, 40 }, columns.rate(1000), 1e-9);
+		assertArrayEquals(new double[] { 10, 20, 15, 10 }, columns.movingAverage(2), 1e-9);
+		assertArrayEquals(new double[] { 10, 20, 40.0 / 3, 15 }, columns.movingAverage(10), 1e-9);
+		assertEquals(Long.MIN_VALUE, new AggregateColumns().max());
+	}
+
+	@Test
+	public void testGrowth() {
+		AggregateColumns columns = new AggregateColumns(0);
+		for (int i = 0; i < 1000; i++) {
+			columns.add(i * 10, i * 10 + 9, i);
+		}
+		assertEquals(1000, columns.size());
+		assertEquals(9990, columns.getMinTimestamp(999));
+		assertEquals(999 * 1000 / 2, columns.sum());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testIndexOutOfBounds() {
+		AggregateColumns columns = new AggregateColumns();
+		columns.add(0, 9, 1);
+		columns.getValue(1);
+	}
+}
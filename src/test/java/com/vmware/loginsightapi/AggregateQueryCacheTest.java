@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.AggregateResponseBin;
+import com.vmware.loginsightapi.core.FieldConstraint;
+import com.vmware.loginsightapi.util.AggregateQueryCache;
+
+public class AggregateQueryCacheTest {
+
+	private List<String> sent;
+	private List<CompletableFuture<AggregateResponse>> pending;
+	private boolean deferred;
+	private boolean complete;
+	private Function<String, CompletableFuture<AggregateResponse>> loader;
+
+	@Before
+	public void setUp() {
+		sent = new ArrayList<String>();
+		pending = new ArrayList<CompletableFuture<AggregateResponse>>();
+		complete = true;
+		loader = url -> {
+			sent.add(url);
+			AggregateResponse response = new AggregateResponse();
+			response.setComplete(complete);
+			response.setBins(Collections.nCopies(3, new AggregateResponseBin()));
+			CompletableFuture<AggregateResponse> future = new CompletableFuture<AggregateResponse>();
+			if (deferred) {
+				pending.add(future);
+			} else {
+				future.complete(response);
+			}
+			return future;
+		};
+	}
+
+	private static String url(long upperBound) {
+		return new AggregateQuery().addConstraint("timestamp", FieldConstraint.Operator.LT, String.valueOf(upperBound))
+				.toUrlString();
+	}
+
+	@Test
+	public void testCanonicalKey() {
+		String first = new AggregateQuery().addConstraint("field_1", FieldConstraint.Operator.EQ, "value 1")
+				.addConstraint("field_2", FieldConstraint.Operator.GT, "2").addContentPackField("b")
+				.addContentPackField("a").limit(100).toUrlString();
+		String second = new AggregateQuery().addConstraint("field_2", FieldConstraint.Operator.GT, "2")
+				.addConstraint("field_1", FieldConstraint.Operator.EQ, "value 1").addContentPackField("a")
+				.addContentPackField("b").timeout(5000).toUrlString();
+		assertNotEquals(first, second);
+		assertEquals(AggregateQueryCache.canonicalKey(first), AggregateQueryCache.canonicalKey(second));
+		assertNotEquals(AggregateQueryCache.canonicalKey(first),
+				AggregateQueryCache.canonicalKey(new AggregateQuery().binWidth(1000).toUrlString()));
+	}
+
+	@Test
+	public void testHitAndMiss() throws Exception {
+		AggregateQueryCache cache = new AggregateQueryCache(10, 1000, 60000, 60000);
+		AggregateResponse first = cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		AggregateResponse second = cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		assertSame(first, second);
+		assertEquals(1, sent.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(4, cache.getWeight());
+	}
+
+	@Test
+	public void testInFlightQueriesCoalesced() throws Exception {
+		deferred = true;
+		AggregateQueryCache cache = new AggregateQueryCache(10, 1000, 60000, 60000);
+		CompletableFuture<AggregateResponse> first = cache.get(url(1000), loader);
+		CompletableFuture<AggregateResponse> second = cache.get(url(1000), loader);
+		second.cancel(true);
+		CompletableFuture<AggregateResponse> third = cache.get(url(1000), loader);
+		assertEquals(1, sent.size());
+		assertEquals(2, cache.getCoalescedCount());
+		AggregateResponse response = new AggregateResponse();
+		response.setComplete(true);
+		pending.get(0).complete(response);
+		assertSame(response, first.get(5, TimeUnit.SECONDS));
+		assertSame(response, third.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testOpenRangeExpiresBeforeClosedRange() throws Exception {
+		AggregateQueryCache cache = new AggregateQueryCache(10, 1000, 20, 60000);
+		long future = System.currentTimeMillis() + 3600000;
+		cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(future), loader).get(5, TimeUnit.SECONDS);
+		Thread.sleep(50);
+		cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(future), loader).get(5, TimeUnit.SECONDS);
+		assertEquals(3, sent.size());
+		assertEquals(url(future), sent.get(2));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() throws Exception {
+		AggregateQueryCache cache = new AggregateQueryCache(10, 8, 60000, 60000);
+		cache.get(url(1), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(2), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(1), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(3), loader).get(5, TimeUnit.SECONDS);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		cache.get(url(1), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(2), loader).get(5, TimeUnit.SECONDS);
+		assertEquals(url(2), sent.get(sent.size() - 1));
+		assertEquals(4, sent.size());
+	}
+
+	@Test
+	public void testIncompleteResponseNotCached() throws Exception {
+		complete = false;
+		AggregateQueryCache cache = new AggregateQueryCache(10, 1000, 60000, 60000);
+		cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		cache.get(url(1000), loader).get(5, TimeUnit.SECONDS);
+		assertEquals(2, sent.size());
+		assertTrue(cache.size() == 0);
+	}
+}
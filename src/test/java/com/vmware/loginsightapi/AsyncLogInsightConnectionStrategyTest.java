@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.util.AsyncLogInsightConnectionStrategy;
+
+public class AsyncLogInsightConnectionStrategyTest {
+
+	@Test
+	public void testConnectionPoolFromConfiguration() throws IOException {
+		Configuration config = new Configuration("hostname", "user", "password");
+		config.setMaxConnections(30);
+		config.setMaxConnectionsPerRoute(12);
+		config.setMaxIngestionConnections(18);
+		config.setIoThreads(1);
+
+		AsyncLogInsightConnectionStrategy strategy = new AsyncLogInsightConnectionStrategy(config);
+		CloseableHttpAsyncClient client = strategy.getHttpClient();
+		try {
+			assertTrue(client.isRunning());
+			PoolingNHttpClientConnectionManager manager = strategy.getConnectionManager();
+			assertEquals(30, manager.getMaxTotal());
+			assertEquals(12, manager.getDefaultMaxPerRoute());
+			assertEquals(12, manager.getMaxPerRoute(strategy.route(config.getPort())));
+			assertEquals(18, manager.getMaxPerRoute(strategy.route(config.getIngestionPort())));
+		} finally {
+			client.close();
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.Message;
+
+public class BatchAccumulatorTest {
+
+	private final List<List<Message>> batches = Collections.synchronizedList(new ArrayList<List<Message>>());
+
+	@Test
+	public void testFullBatchHandedToSink() {
+		BatchAccumulator accumulator = new BatchAccumulator(2, Integer.MAX_VALUE, 60000, "test", batches::add);
+		accumulator.add(new Message("message 1"));
+		assertTrue(batches.isEmpty());
+		accumulator.add(new Message("message 2"));
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).size());
+		accumulator.discard();
+	}
+
+	@Test
+	public void testCloseHandsPendingMessages() {
+		BatchAccumulator accumulator = new BatchAccumulator(10, Integer.MAX_VALUE, 60000, "test", batches::add);
+		accumulator.add(new Message("message 1"));
+		assertTrue(accumulator.close());
+		assertEquals(1, batches.size());
+		assertFalse("Closed accumulator refuses messages", accumulator.add(new Message("message 2")));
+		assertFalse(accumulator.close());
+		assertEquals(1, batches.size());
+	}
+
+	@Test
+	public void testCloseWaitsForLingerHandoff() throws Exception {
+		CountDownLatch handingOff = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BatchAccumulator accumulator = new BatchAccumulator(10, Integer.MAX_VALUE, 10, "test", batch -> {
+			handingOff.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			batches.add(batch);
+		});
+		accumulator.add(new Message("message 1"));
+		assertTrue(handingOff.await(5, TimeUnit.SECONDS));
+		CompletableFuture<Boolean> closed = CompletableFuture.supplyAsync(accumulator::close);
+		Thread.sleep(50);
+		assertFalse("Close waits for the batch drained by the linger timer", closed.isDone());
+		release.countDown();
+		assertTrue(closed.get(5, TimeUnit.SECONDS));
+		assertEquals(1, batches.size());
+	}
+
+	@Test
+	public void testDiscardDropsPendingMessages() {
+		BatchAccumulator accumulator = new BatchAccumulator(10, Integer.MAX_VALUE, 60000, "test", batches::add);
+		accumulator.add(new Message("message 1"));
+		accumulator.discard();
+		assertFalse(accumulator.add(new Message("message 2")));
+		assertTrue(batches.isEmpty());
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+
+public class BatchingIngestorTest {
+
+	private LogInsightClient client;
+	private BatchingIngestor ingestor;
+
+	@Before
+	public void setUp() {
+		client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus("ok");
+			response.setIngested(request.count());
+			return CompletableFuture.completedFuture(response);
+		});
+	}
+
+	@After
+	public void tearDown() {
+		if (null != ingestor) {
+			ingestor.close();
+		}
+	}
+
+	@Test
+	public void testBatchByMessageCount() {
+		ingestor = new BatchingIngestor(client, 3, Integer.MAX_VALUE, 60000, 2);
+		for (int i = 0; i < 7; i++) {
+			ingestor.add(new Message("message " + i));
+		}
+		ArgumentCaptor<IngestionRequest> captor = ArgumentCaptor.forClass(IngestionRequest.class);
+		verify(client, times(2)).ingest(captor.capture());
+		for (IngestionRequest request : captor.getAllValues()) {
+			assertEquals(3, request.count());
+		}
+		assertEquals(6, ingestor.getIngestedCount());
+	}
+
+	@Test
+	public void testBatchByEstimatedSize() {
+		Message message = new Message("a fairly long message line used to fill the batch");
+		ingestor = new BatchingIngestor(client, 1000, message.estimatedSize() * 2, 60000, 2);
+		for (int i = 0; i < 5; i++) {
+			ingestor.add(new Message("a fairly long message line used to fill the batch"));
+		}
+		ArgumentCaptor<IngestionRequest> captor = ArgumentCaptor.forClass(IngestionRequest.class);
+		verify(client, times(2)).ingest(captor.capture());
+		List<IngestionRequest> requests = captor.getAllValues();
+		assertEquals(2, requests.get(0).count());
+		assertEquals(2, requests.get(1).count());
+	}
+
+	@Test
+	public void testBatchSentAfterLinger() {
+		ingestor = new BatchingIngestor(client, 1000, Integer.MAX_VALUE, 50, 2);
+		ingestor.add(new Message("message 1"));
+		ingestor.add(new Message("message 2"));
+		verify(client, timeout(2000)).ingest(any(IngestionRequest.class));
+	}
+
+	@Test
+	public void testCloseFlushesPendingMessages() {
+		ingestor = new BatchingIngestor(client, 1000, Integer.MAX_VALUE, 60000, 2);
+		ingestor.add(new Message("message 1"));
+		verify(client, never()).ingest(any(IngestionRequest.class));
+		ingestor.close();
+		verify(client, times(1)).ingest(any(IngestionRequest.class));
+		assertEquals(1, ingestor.getIngestedCount());
+	}
+
+	@Test
+	public void testFailedBatchIsCounted() {
+		CompletableFuture<IngestionResponse> failed = new CompletableFuture<IngestionResponse>();
+		failed.completeExceptionally(new LogInsightApiException("Ingestion failed"));
+		doReturn(failed).when(client).ingest(any(IngestionRequest.class));
+		ingestor = new BatchingIngestor(client, 2, Integer.MAX_VALUE, 60000, 1);
+		ingestor.add(new Message("message 1"));
+		ingestor.add(new Message("message 2"));
+		ingestor.add(new Message("message 3"));
+		ingestor.add(new Message("message 4"));
+		assertEquals(4, ingestor.getFailedCount());
+		assertEquals(0, ingestor.getIngestedCount());
+	}
+
+	@Test(expected = LogInsightApiException.class)
+	public void testAddAfterClose() {
+		ingestor = new BatchingIngestor(client);
+		ingestor.close();
+		ingestor.add(new Message("message 1"));
+	}
+
+	@Test
+	public void testCloseRacingAdd() throws Exception {
+		ingestor = new BatchingIngestor(client, 100, Integer.MAX_VALUE, 1, 2);
+		AtomicLong accepted = new AtomicLong();
+		List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread producer = new Thread(() -> {
+				try {
+					while (true) {
+						ingestor.add(new Message("message"));
+						accepted.incrementAndGet();
+					}
+				} catch (LogInsightApiException e) {
+					// closed
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+		Thread.sleep(50);
+		ingestor.close();
+		for (Thread producer : producers) {
+			producer.join(5000);
+		}
+		assertEquals(0, errors.size());
+		assertEquals("Every accepted message is sent", accepted.get(), ingestor.getIngestedCount());
+	}
+}
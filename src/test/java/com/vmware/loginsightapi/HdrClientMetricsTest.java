@@ -0,0 +1,65 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.ClientMetrics.Operation;
+import com.vmware.loginsightapi.util.HdrClientMetrics;
+
+public class HdrClientMetricsTest {
+
+	@Test
+	public void testOperationsRecorded() {
+		HdrClientMetrics metrics = new HdrClientMetrics();
+		metrics.started(Operation.MESSAGE_QUERY);
+		metrics.started(Operation.MESSAGE_QUERY);
+		assertEquals(2, metrics.getInFlight(Operation.MESSAGE_QUERY));
+
+		metrics.completed(Operation.MESSAGE_QUERY, TimeUnit.MILLISECONDS.toNanos(10), true);
+		metrics.completed(Operation.MESSAGE_QUERY, TimeUnit.MILLISECONDS.toNanos(30), false);
+		metrics.retried(Operation.MESSAGE_QUERY);
+		metrics.responseBytes(Operation.MESSAGE_QUERY, 100);
+		metrics.ingested(10, 8);
+
+		assertEquals(0, metrics.getInFlight(Operation.MESSAGE_QUERY));
+		assertEquals(2, metrics.getRequestCount(Operation.MESSAGE_QUERY));
+		assertEquals(1, metrics.getFailureCount(Operation.MESSAGE_QUERY));
+		assertEquals(0, metrics.getRequestCount(Operation.INGEST));
+		Histogram latency = metrics.getLatency(Operation.MESSAGE_QUERY);
+		assertEquals(2, latency.getTotalCount());
+		assertTrue(latency.getValueAtPercentile(99) >= TimeUnit.MILLISECONDS.toNanos(29));
+
+		Map<String, Long> counters = metrics.getCounters();
+		assertEquals(1, counters.get("loginsight.message_query.retries").longValue());
+		assertEquals(100, counters.get("loginsight.message_query.response.bytes").longValue());
+		assertEquals(10, counters.get("loginsight.ingest.messages.submitted").longValue());
+		assertEquals(8, counters.get("loginsight.ingest.messages.ingested").longValue());
+		assertEquals(2, metrics.getHistograms().get("loginsight.message_query.latency").getTotalCount());
+	}
+
+	@Test
+	public void testGaugesSampled() {
+		HdrClientMetrics metrics = new HdrClientMetrics();
+		long[] value = { 1 };
+		metrics.gauge("loginsight.pool.leased", () -> value[0]);
+		metrics.started(Operation.INGEST);
+		assertEquals(1, metrics.getGauges().get("loginsight.pool.leased").longValue());
+		assertEquals(1, metrics.getGauges().get("loginsight.ingest.inflight").longValue());
+		value[0] = 5;
+		assertEquals(5, metrics.getGauges().get("loginsight.pool.leased").longValue());
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.OverflowPolicy;
+import com.vmware.loginsightapi.util.IngestionBudget;
+
+public class IngestionBudgetTest {
+
+	@Test
+	public void testRequestBound() {
+		IngestionBudget budget = new IngestionBudget(2, Long.MAX_VALUE, OverflowPolicy.REJECT, 0);
+		assertTrue(budget.acquire(10));
+		assertTrue(budget.acquire(10));
+		assertFalse(budget.acquire(10));
+		assertEquals(1, budget.getRejectedCount());
+		assertEquals(2, budget.getInFlightRequests());
+		assertEquals(20, budget.getInFlightBytes());
+		assertEquals(1.0, budget.getOccupancy(), 0.001);
+		budget.release(10);
+		assertTrue(budget.acquire(10));
+	}
+
+	@Test
+	public void testByteBound() {
+		IngestionBudget budget = new IngestionBudget(100, 1000, OverflowPolicy.DROP, 0);
+		assertTrue(budget.acquire(600));
+		assertFalse(budget.acquire(600));
+		assertEquals(1, budget.getDroppedCount());
+		assertEquals(0.6, budget.getOccupancy(), 0.001);
+		assertTrue(budget.acquire(400));
+	}
+
+	@Test
+	public void testOversizedRequestAdmittedAlone() {
+		IngestionBudget budget = new IngestionBudget(100, 1000, OverflowPolicy.REJECT, 0);
+		assertTrue(budget.acquire(5000));
+		assertFalse(budget.acquire(1));
+		budget.release(5000);
+		assertEquals(0, budget.getInFlightBytes());
+	}
+
+	@Test
+	public void testBlockUntilReleased() throws Exception {
+		IngestionBudget budget = new IngestionBudget(1, Long.MAX_VALUE, OverflowPolicy.BLOCK, 5000);
+		assertTrue(budget.acquire(10));
+		CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> budget.acquire(10));
+		Thread.sleep(50);
+		assertFalse(blocked.isDone());
+		budget.release(10);
+		assertTrue(blocked.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBlockTimeout() {
+		IngestionBudget budget = new IngestionBudget(1, Long.MAX_VALUE, OverflowPolicy.BLOCK, 20);
+		assertTrue(budget.acquire(10));
+		assertFalse(budget.acquire(10));
+		assertEquals(1, budget.getRejectedCount());
+	}
+
+	@Test
+	public void testBlockNotAllowed() {
+		IngestionBudget budget = new IngestionBudget(1, Long.MAX_VALUE, OverflowPolicy.BLOCK, 60000);
+		assertTrue(budget.acquire(10, false));
+		assertFalse(budget.acquire(10, false));
+		assertEquals(1, budget.getRejectedCount());
+	}
+}
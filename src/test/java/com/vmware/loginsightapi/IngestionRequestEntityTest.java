@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.nio.ContentEncoder;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageBuffer;
+import com.vmware.loginsightapi.util.IngestionRequestEntity;
+
+public class IngestionRequestEntityTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private IngestionRequest buildRequest(int count) {
+		IngestionRequestBuilder builder = new IngestionRequestBuilder();
+		for (int i = 0; i < count; i++) {
+			builder.message(new MessageBuilder("message line " + i).field("field1", "content " + i)
+					.field("field2", 0, 7).timestamp(1471886543205L + i).build());
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void testWriteToMatchesToJson() throws IOException {
+		IngestionRequest request = buildRequest(10);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new IngestionRequestEntity(request).writeTo(out);
+		assertEquals(mapper.readTree(request.toJson()), mapper.readTree(out.toByteArray()));
+	}
+
+	@Test
+	public void testBufferWriteToMatchesToJson() throws IOException {
+		IngestionRequest request = buildRequest(10);
+		MessageBuffer buffer = new MessageBuffer(4);
+		for (Message message : request.getMessages()) {
+			buffer.add(message);
+		}
+		IngestionRequest bufferRequest = new IngestionRequest(buffer);
+		assertEquals(request.toJson(), bufferRequest.toJson());
+		assertEquals(request.estimatedSize(), bufferRequest.estimatedSize());
+
+		LimitedContentEncoder encoder = new LimitedContentEncoder(700);
+		IngestionRequestEntity entity = new IngestionRequestEntity(bufferRequest, 256);
+		while (!encoder.isCompleted()) {
+			entity.produceContent(encoder, null);
+		}
+		assertEquals(mapper.readTree(request.toJson()), mapper.readTree(encoder.out.toByteArray()));
+	}
+
+	@Test
+	public void testProduceContentInChunks() throws IOException {
+		IngestionRequest request = buildRequest(500);
+		IngestionRequestEntity entity = new IngestionRequestEntity(request, 1024);
+		LimitedContentEncoder encoder = new LimitedContentEncoder(700);
+		int calls = 0;
+		while (!encoder.isCompleted()) {
+			entity.produceContent(encoder, null);
+			calls++;
+		}
+		assertTrue("Content should be produced over several calls", calls > 1);
+		assertEquals(mapper.readTree(request.toJson()), mapper.readTree(encoder.out.toByteArray()));
+
+		// entity is repeatable
+		LimitedContentEncoder secondEncoder = new LimitedContentEncoder(Integer.MAX_VALUE);
+		entity.produceContent(secondEncoder, null);
+		assertTrue(secondEncoder.isCompleted());
+		assertEquals(encoder.out.size(), secondEncoder.out.size());
+	}
+
+	@Test
+	public void testCompressedWriteTo() throws IOException {
+		IngestionRequest request = buildRequest(100);
+		IngestionRequestEntity entity = new IngestionRequestEntity(request, 1024, 6);
+		assertEquals("gzip", entity.getContentEncoding().getValue());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertTrue("Compressed content should be smaller", out.size() < request.toJson().length() / 2);
+		assertEquals(mapper.readTree(request.toJson()),
+				mapper.readTree(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+	}
+
+	@Test
+	public void testCompressedProduceContentInChunks() throws IOException {
+		IngestionRequest request = buildRequest(2000);
+		IngestionRequestEntity entity = new IngestionRequestEntity(request, 1024, 1);
+		LimitedContentEncoder encoder = new LimitedContentEncoder(700);
+		int calls = 0;
+		while (!encoder.isCompleted()) {
+			entity.produceContent(encoder, null);
+			calls++;
+		}
+		assertTrue("Content should be produced over several calls", calls > 1);
+		assertEquals(mapper.readTree(request.toJson()),
+				mapper.readTree(new GZIPInputStream(new ByteArrayInputStream(encoder.out.toByteArray()))));
+	}
+
+	@Test
+	public void testEmptyRequest() throws IOException {
+		IngestionRequestEntity entity = new IngestionRequestEntity(new IngestionRequest());
+		LimitedContentEncoder encoder = new LimitedContentEncoder(Integer.MAX_VALUE);
+		entity.produceContent(encoder, null);
+		assertTrue(encoder.isCompleted());
+		assertEquals("{\"messages\":[]}", encoder.out.toString("UTF-8"));
+	}
+
+	/**
+	 * Encoder accepting at most {@code limit} bytes per produceContent call
+	 */
+	private static class LimitedContentEncoder implements ContentEncoder {
+		private final int limit;
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private int written;
+		private boolean completed;
+
+		LimitedContentEncoder(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int length = Math.min(src.remaining(), limit - written);
+			for (int i = 0; i < length; i++) {
+				out.write(src.get());
+			}
+			written += length;
+			if (written >= limit) {
+				written = 0;
+			}
+			return length;
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+
+public class IngestionSpoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LogInsightClient client;
+	private List<String> received;
+	private volatile boolean reachable;
+	private AtomicInteger ingestedPerRequest;
+	private Path directory;
+	private IngestionSpool spool;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("spool").toPath();
+		received = Collections.synchronizedList(new ArrayList<String>());
+		reachable = true;
+		ingestedPerRequest = new AtomicInteger(-1);
+		client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			CompletableFuture<IngestionResponse> future = new CompletableFuture<IngestionResponse>();
+			if (!reachable) {
+				future.completeExceptionally(new LogInsightApiException("Ingestion failed"));
+				return future;
+			}
+			for (Message message : request.getMessages()) {
+				received.add(message.getText());
+			}
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus("ok");
+			response.setIngested(ingestedPerRequest.get() < 0 ? request.count() : ingestedPerRequest.get());
+			future.complete(response);
+			return future;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		if (null != spool) {
+			spool.close();
+		}
+	}
+
+	private static IngestionRequest request(String... texts) {
+		IngestionRequest request = new IngestionRequest();
+		for (String text : texts) {
+			request.addMessage(new Message(text));
+		}
+		return request;
+	}
+
+	private static long segmentCount(Path directory) throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(IngestionSpool.SEGMENT_SUFFIX)).count();
+		}
+	}
+
+	@Test
+	public void testAcknowledgedRequest() throws Exception {
+		spool = new IngestionSpool(client, directory);
+		IngestionResponse response = spool.ingest(request("message 1", "message 2")).get(5, TimeUnit.SECONDS);
+		assertEquals(2, response.getIngested());
+		assertEquals(2, spool.getIngestedCount());
+		assertEquals(0, spool.getPendingCount());
+	}
+
+	@Test
+	public void testReplayAfterRestart() throws Exception {
+		reachable = false;
+		spool = new IngestionSpool(client, directory, 4096, 65536, 60000, 2);
+		spool.ingest(request("message 1"));
+		spool.ingest(request("message 2", "message 3"));
+		assertEquals(3, spool.getPendingCount());
+		spool.close();
+
+		reachable = true;
+		spool = new IngestionSpool(client, directory, 4096, 65536, 60000, 2);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (spool.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, spool.getPendingCount());
+		assertEquals(3, spool.getIngestedCount());
+		assertTrue(received.containsAll(Arrays.asList("message 1", "message 2", "message 3")));
+	}
+
+	@Test
+	public void testAcknowledgedRequestsAreNotReplayed() throws Exception {
+		spool = new IngestionSpool(client, directory, 4096, 65536, 60000, 2);
+		spool.ingest(request("message 1")).get(5, TimeUnit.SECONDS);
+		reachable = false;
+		spool.ingest(request("message 2"));
+		spool.close();
+
+		received.clear();
+		reachable = true;
+		spool = new IngestionSpool(client, directory, 4096, 65536, 60000, 2);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (spool.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.singletonList("message 2"), received);
+	}
+
+	@Test
+	public void testPartialIngestionIsRetried() throws Exception {
+		ingestedPerRequest.set(1);
+		spool = new IngestionSpool(client, directory, 4096, 65536, 20, 2);
+		CompletableFuture<IngestionResponse> future = spool.ingest(request("message 1", "message 2"));
+		Thread.sleep(100);
+		assertEquals(2, spool.getPendingCount());
+		ingestedPerRequest.set(-1);
+		assertEquals(2, future.get(5, TimeUnit.SECONDS).getIngested());
+		assertEquals(0, spool.getPendingCount());
+	}
+
+	@Test
+	public void testQuotaDropsOldestSegment() throws Exception {
+		reachable = false;
+		spool = new IngestionSpool(client, directory, 1024, 2048, 60000, 1);
+		CompletableFuture<IngestionResponse> oldest = spool.ingest(request("first message"));
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			text.append("padding ");
+		}
+		for (int i = 0; i < 10; i++) {
+			spool.ingest(request(text.toString()));
+		}
+		assertTrue(spool.getDroppedCount() > 0);
+		assertTrue(spool.getDiskUsage() <= 2048);
+		assertTrue(segmentCount(directory) <= 2);
+		try {
+			oldest.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LogInsightApiException);
+			return;
+		}
+		throw new AssertionError("Oldest request should be dropped");
+	}
+
+	@Test(expected = LogInsightApiException.class)
+	public void testDirectoryInUse() {
+		spool = new IngestionSpool(client, directory);
+		new IngestionSpool(client, directory);
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.JsonCodec;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+public class JsonCodecTest {
+
+	private String resource(String name) throws IOException {
+		return IOUtils.toString(getClass().getResourceAsStream(name), "UTF-8");
+	}
+
+	@Test
+	public void testReadersAndWritersAreCached() {
+		assertSame(JsonCodec.reader(MessageQueryResponse.class), JsonCodec.reader(MessageQueryResponse.class));
+		assertSame(JsonCodec.writer(IngestionRequest.class), JsonCodec.writer(IngestionRequest.class));
+	}
+
+	@Test
+	public void testIngestionResponse() throws IOException {
+		IngestionResponse response = IngestionResponse.fromJsonString(resource("/data/ingestion_response_1.json"));
+		assertEquals("ok", response.getStatus());
+		assertEquals(18, response.getIngested());
+	}
+
+	@Test
+	public void testAggregateResponse() {
+		AggregateResponse response = AggregateResponse.fromJsonString("{\"complete\":true,\"duration\":52,"
+				+ "\"bins\":[{\"minTimestamp\":1432135885000,\"maxTimestamp\":1432135889999,\"value\":208515}]}");
+		assertEquals(1, response.getBins().size());
+		assertEquals(Long.valueOf(208515), response.getBins().get(0).getValue());
+	}
+
+	@Test
+	public void testIngestionRequestRoundTrip() throws IOException {
+		String json = resource("/data/ingestion_request_1.json");
+		IngestionRequest request = JsonCodec.reader(IngestionRequest.class).readValue(json);
+		assertEquals(JsonCodec.mapper().readTree(json), JsonCodec.mapper().readTree(request.toJson()));
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.AggregateResponseBin;
+
+public class LiveAggregateTest {
+
+	private static final Pattern FROM = Pattern.compile("timestamp/GE\\+(\\d+)");
+
+	private LogInsightClient client;
+	private List<Long> events;
+	private List<Long> queriedFrom;
+	private AtomicLong now;
+	private boolean complete;
+
+	@Before
+	public void setUp() {
+		events = new ArrayList<Long>();
+		queriedFrom = new ArrayList<Long>();
+		now = new AtomicLong();
+		complete = true;
+		client = mock(LogInsightClient.class);
+		when(client.aggregateQuery(anyString())).thenAnswer(invocation -> {
+			Matcher matcher = FROM.matcher((String) invocation.getArguments()[0]);
+			assertTrue(matcher.find());
+			long from = Long.parseLong(matcher.group(1));
+			queriedFrom.add(from);
+			TreeMap<Long, Long> counts = new TreeMap<Long, Long>();
+			for (long timestamp : events) {
+				if (timestamp >= from && timestamp <= now.get()) {
+					counts.merge(timestamp - timestamp % 10, 1L, Long::sum);
+				}
+			}
+			AggregateResponse response = new AggregateResponse();
+			response.setComplete(complete);
+			response.setBins(counts.entrySet().stream().map(count -> {
+				AggregateResponseBin bin = new AggregateResponseBin();
+				bin.setMinTimestamp(count.getKey());
+				bin.setMaxTimestamp(count.getKey() + 9);
+				bin.setValue(count.getValue());
+				return bin;
+			}).collect(Collectors.toList()));
+			return CompletableFuture.completedFuture(response);
+		});
+	}
+
+	private static List<Long> values(AggregateResponse response) {
+		return response.getBins().stream().map(AggregateResponseBin::getValue).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testRefreshFetchesOnlyNewBins() throws Exception {
+		LiveAggregate live = new LiveAggregate(client, new AggregateQuery().binWidth(10), 30, now::get);
+		events.addAll(Arrays.asList(101L, 105L, 112L, 121L, 125L));
+		now.set(125);
+		assertEquals(Arrays.asList(2L, 1L, 2L), values(live.refresh().get(5, TimeUnit.SECONDS)));
+		assertEquals(Long.valueOf(90), queriedFrom.get(0));
+
+		events.addAll(Arrays.asList(127L, 131L));
+		now.set(133);
+		AggregateResponse response = live.refresh().get(5, TimeUnit.SECONDS);
+		assertEquals(Long.valueOf(120), queriedFrom.get(1));
+		assertEquals(Arrays.asList(2L, 1L, 3L, 1L), values(response));
+
+		now.set(141);
+		response = live.refresh().get(5, TimeUnit.SECONDS);
+		assertEquals(Long.valueOf(130), queriedFrom.get(2));
+		assertEquals(Long.valueOf(110), response.getBins().get(0).getMinTimestamp());
+		assertEquals(Arrays.asList(1L, 3L, 1L), values(response));
+		assertEquals(6, live.getFetchedBinCount());
+	}
+
+	@Test
+	public void testIncompleteRefreshFetchedAgain() throws Exception {
+		LiveAggregate live = new LiveAggregate(client, new AggregateQuery().binWidth(10), 30, now::get);
+		events.add(101L);
+		now.set(105);
+		live.refresh().get(5, TimeUnit.SECONDS);
+		complete = false;
+		now.set(115);
+		assertFalse(live.refresh().get(5, TimeUnit.SECONDS).isComplete());
+		complete = true;
+		now.set(117);
+		live.refresh().get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(70L, 100L, 100L), queriedFrom);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGroupByRejected() {
+		new LiveAggregate(client, new AggregateQuery().groupByFixedBinWidth("size", 100), 60000);
+	}
+}
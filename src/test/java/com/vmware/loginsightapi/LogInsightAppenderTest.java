@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.Field;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+public class LogInsightAppenderTest {
+
+	private List<Message> received;
+	private LogInsightAppender appender;
+
+	@Before
+	public void setUp() {
+		received = Collections.synchronizedList(new ArrayList<Message>());
+		LogInsightClient client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			received.addAll(request.getMessages());
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus("ok");
+			response.setIngested(request.count());
+			return CompletableFuture.completedFuture(response);
+		});
+		LogShipper shipper = new LogShipper(client, 16, 10, 60000, 1, OverflowPolicy.DROP, 0);
+		appender = new LogInsightAppender("loginsight", null, null, true, shipper, null);
+		appender.start();
+	}
+
+	private static LogEvent event(String loggerName, String text, Throwable thrown) {
+		Map<String, String> context = new HashMap<String, String>();
+		context.put("request_id", "42");
+		return new Log4jLogEvent(loggerName, null, null, Level.WARN, new SimpleMessage(text), thrown, context, null,
+				"main", null, 1432135888000L);
+	}
+
+	private static String field(Message message, String name) {
+		for (Field field : message.getFields()) {
+			if (name.equals(field.getName())) {
+				return field.getContent();
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testEventShipped() {
+		appender.append(event("com.example.Service", "System failed", null));
+		appender.stop();
+		assertEquals(1, received.size());
+		Message message = received.get(0);
+		assertEquals("System failed", message.getText());
+		assertEquals(1432135888000L, message.getTimestamp().longValue());
+		assertEquals("com.example.Service", field(message, "logger"));
+		assertEquals("WARN", field(message, "level"));
+		assertEquals("main", field(message, "thread"));
+		assertEquals("42", field(message, "request_id"));
+	}
+
+	@Test
+	public void testStackTraceAppended() {
+		appender.append(event("com.example.Service", "System failed", new IllegalStateException("broken")));
+		appender.stop();
+		String text = received.get(0).getText();
+		assertTrue(text.startsWith("System failed"));
+		assertTrue(text.contains("java.lang.IllegalStateException: broken"));
+	}
+
+	@Test
+	public void testInternalEventsIgnored() {
+		appender.append(event("com.vmware.loginsightapi.LogInsightClient", "Sending", null));
+		appender.append(event("org.apache.http.wire", "bytes", null));
+		appender.stop();
+		assertEquals(0, received.size());
+		assertEquals(0, appender.getShipper().getDroppedCount());
+	}
+
+	@Test
+	public void testInvalidConfigurationIgnored() {
+		assertNull(LogInsightAppender.createAppender(null, null, "localhost", "admin", "secret", null, 16, 10, 1000, 1,
+				"drop", 0, 3, 500, true, null, null));
+	}
+}
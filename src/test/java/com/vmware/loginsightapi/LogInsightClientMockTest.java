@@ -12,16 +12,26 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentUtils;
@@ -35,6 +45,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,15 +58,20 @@ import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vmware.loginsightapi.core.AggregateColumns;
 import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.ClientMetrics.Operation;
 import com.vmware.loginsightapi.core.FieldConstraint;
 import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionRejectedException;
 import com.vmware.loginsightapi.core.IngestionResponse;
 import com.vmware.loginsightapi.core.LogInsightApiException;
 import com.vmware.loginsightapi.core.LogInsightConnectionStrategy;
 import com.vmware.loginsightapi.core.Message;
 import com.vmware.loginsightapi.core.MessageQueryResponse;
+import com.vmware.loginsightapi.core.OverflowPolicy;
 import com.vmware.loginsightapi.util.AsyncLogInsightConnectionStrategy;
+import com.vmware.loginsightapi.util.HdrClientMetrics;
 
 @RunWith(MockitoJUnitRunner.class)
 public class LogInsightClientMockTest {
@@ -695,4 +711,637 @@ public class LogInsightClientMockTest {
 			Assert.assertTrue(false);
 		}
 	}
+
+	private HttpResponse mockResponse(int statusCode, String body) throws IOException {
+		HttpResponse response = mock(HttpResponse.class);
+		HttpEntity httpEntity = mock(HttpEntity.class);
+		StatusLine statusLine = mock(StatusLine.class);
+		when(response.getEntity()).thenReturn(httpEntity);
+		when(response.getStatusLine()).thenReturn(statusLine);
+		when(statusLine.getStatusCode()).thenReturn(statusCode);
+		when(httpEntity.getContent()).thenReturn(IOUtils.toInputStream(body, "UTF-8"));
+		return response;
+	}
+
+	@Test
+	public void testMessageQueryRenewsExpiredSession() throws Exception {
+		MessageQuery mqb = getMessageQueryForTest();
+		HttpResponse expired = mockResponse(440, "{\"errorMessage\":\"session expired\"}");
+		HttpResponse auth = mockResponse(200,
+				"{\"userId\":\"7506ecf5-cd7a-4ae3-88b7-f72fc1955c73\",\"sessionId\":\"renewed\",\"ttl\":1800}");
+		HttpResponse ok = mockResponse(200, SERVER_EXPECTED_QUERY_RESPONSE);
+		List<String> sessions = new ArrayList<String>();
+
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request instanceof HttpPost) {
+					responseCallback.completed(auth);
+				} else {
+					String sessionId = request.getFirstHeader(LogInsightClient.SESSION_HEADER).getValue();
+					sessions.add(sessionId);
+					responseCallback.completed("renewed".equals(sessionId) ? ok : expired);
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		MessageQueryResponse messages = client.messageQuery(mqb.toUrlString()).get(0, TimeUnit.MILLISECONDS);
+		assertEquals(1, messages.getEvents().size());
+		assertEquals(2, sessions.size());
+		assertEquals("renewed", client.getSessionId());
+	}
+
+	@Test
+	public void testAggregateQueryFailsWhenRenewalFails() throws Exception {
+		AggregateQuery aqb = (AggregateQuery) new AggregateQuery().limit(100);
+		HttpResponse expired = mockResponse(401, "{\"errorMessage\":\"unauthorized\"}");
+		HttpResponse rejected = mockResponse(401, "{\"errorMessage\":\"invalid credentials\"}");
+
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				responseCallback.completed(request instanceof HttpPost ? rejected : expired);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		try {
+			client.aggregateQuery(aqb.toUrlString()).get(0, TimeUnit.MILLISECONDS);
+			Assert.fail("Query should fail");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof AuthFailure);
+		}
+	}
+
+	@Test
+	public void testQueriesQueuedUntilConnected() throws Exception {
+		MessageQuery mqb = getMessageQueryForTest();
+		HttpResponse auth = mockResponse(200, SERVER_RESPONSE_EXPECTED);
+		HttpResponse ok = mockResponse(200, SERVER_EXPECTED_QUERY_RESPONSE);
+		List<FutureCallback<HttpResponse>> authCallbacks = new ArrayList<FutureCallback<HttpResponse>>();
+
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request instanceof HttpPost) {
+					authCallbacks.add(responseCallback);
+				} else {
+					responseCallback.completed(ok);
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient pending = LogInsightClient.open(config, connectionStrategy);
+		CompletableFuture<LogInsightClient> connected = pending.whenConnected();
+		CompletableFuture<MessageQueryResponse> responseFuture = pending.messageQuery(mqb.toUrlString());
+		Assert.assertFalse(connected.isDone());
+		Assert.assertFalse(responseFuture.isDone());
+		assertEquals("Authentication should be shared", 1, authCallbacks.size());
+
+		authCallbacks.get(0).completed(auth);
+		Assert.assertSame(pending, connected.get(0, TimeUnit.MILLISECONDS));
+		assertEquals(1, responseFuture.get(0, TimeUnit.MILLISECONDS).getEvents().size());
+		pending.close();
+	}
+
+	@Test
+	public void testConnectAsyncFailure() throws Exception {
+		HttpResponse rejected = mockResponse(401, "{\"errorMessage\":\"invalid credentials\"}");
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				responseCallback.completed(rejected);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		try {
+			LogInsightClient.connectAsync(config, connectionStrategy).get(0, TimeUnit.MILLISECONDS);
+			Assert.fail("Connection should fail");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof AuthFailure);
+		}
+	}
+
+	@Test
+	public void testConnectAsyncFailureClosesClient() throws Exception {
+		HttpResponse rejected = mockResponse(401, "{\"errorMessage\":\"invalid credentials\"}");
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				responseCallback.completed(rejected);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		CompletableFuture<LogInsightClient> connecting = LogInsightClient.connectAsync(config, connectionStrategy);
+		Assert.assertTrue(connecting.isCompletedExceptionally());
+		verify(asyncHttpClient).close();
+	}
+
+	@Test
+	public void testCompressedIngestionRequest() throws Exception {
+		config.setIngestionCompression(Configuration.COMPRESSION_GZIP);
+		config.setCompressionMinSize(200);
+		IngestionRequest small = new IngestionRequestBuilder().message(new Message("short")).build();
+		Assert.assertNull(client.getIngestionHttpRequest(small).getFirstHeader("Content-Encoding"));
+
+		IngestionRequestBuilder builder = new IngestionRequestBuilder();
+		for (int i = 0; i < 20; i++) {
+			builder.message(new Message("log line " + i + " service request completed with status 200"));
+		}
+		IngestionRequest large = builder.build();
+		HttpPost post = client.getIngestionHttpRequest(large);
+		assertEquals("gzip", post.getFirstHeader("Content-Encoding").getValue());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		post.getEntity().writeTo(out);
+		assertEquals(large.toJson(), IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8"));
+
+		large.setCompressed(false);
+		Assert.assertNull(client.getIngestionHttpRequest(large).getFirstHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void testCompressedMessageQueryResponse() throws Exception {
+		config.setQueryCompression(true);
+		MessageQuery mqb = getMessageQueryForTest();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(SERVER_EXPECTED_QUERY_RESPONSE.getBytes("UTF-8"));
+		}
+		HttpResponse response = mockResponse(200, "");
+		when(response.getEntity().getContent()).thenReturn(new ByteArrayInputStream(compressed.toByteArray()));
+		when(response.getEntity().getContentEncoding()).thenReturn(new BasicHeader("Content-Encoding", "gzip"));
+		List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				requests.add(invocation.getArgumentAt(0, HttpUriRequest.class));
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				responseCallback.completed(response);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		MessageQueryResponse messages = client.messageQuery(mqb.toUrlString()).get(0, TimeUnit.MILLISECONDS);
+		assertEquals(1, messages.getEvents().size());
+		assertEquals("gzip, deflate", requests.get(0).getFirstHeader("Accept-Encoding").getValue());
+	}
+
+	@Test
+	public void testIngestionBudgetRejectsOverflow() throws Exception {
+		config.setIngestionMaxInFlight(1);
+		config.setIngestionOverflowPolicy(OverflowPolicy.REJECT);
+		List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+		List<FutureCallback<HttpResponse>> callbacks = new ArrayList<FutureCallback<HttpResponse>>();
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				requests.add(invocation.getArgumentAt(0, HttpUriRequest.class));
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				callbacks.add(responseCallback);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient limited = LogInsightClient.open(config, connectionStrategy);
+		IngestionRequest request = new IngestionRequestBuilder().message(new Message("message 1")).build();
+		CompletableFuture<IngestionResponse> first = limited.ingest(request);
+		CompletableFuture<IngestionResponse> second = limited.ingest(request);
+		try {
+			second.get(0, TimeUnit.MILLISECONDS);
+			Assert.fail("Ingestion should be rejected");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IngestionRejectedException);
+		}
+		assertEquals(1, limited.getIngestionBudget().getInFlightRequests());
+
+		callbacks.get(requests.size() - 1).completed(mockResponse(200, SERVER_EXPECTED_RESPONSE_FOR_INGESTION));
+		assertEquals("ok", first.get(0, TimeUnit.MILLISECONDS).getStatus());
+		assertEquals(0, limited.getIngestionBudget().getInFlightRequests());
+		Assert.assertFalse(limited.ingest(request).isDone());
+	}
+
+	@Test
+	public void testIngestionBudgetDropsOverflow() throws Exception {
+		config.setIngestionMaxInFlightBytes(1);
+		config.setIngestionOverflowPolicy(OverflowPolicy.DROP);
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient limited = LogInsightClient.open(config, connectionStrategy);
+		IngestionRequest request = new IngestionRequestBuilder().message(new Message("message 1")).build();
+		limited.ingest(request);
+		IngestionResponse dropped = limited.ingest(request).get(0, TimeUnit.MILLISECONDS);
+		assertEquals(LogInsightClient.INGESTION_STATUS_DROPPED, dropped.getStatus());
+		assertEquals(0, dropped.getIngested());
+		assertEquals(1, limited.getIngestionBudget().getDroppedCount());
+	}
+
+	@Test
+	public void testIngestionBudgetReleasedBeforeCompletion() throws Exception {
+		config.setIngestionMaxInFlight(1);
+		config.setIngestionOverflowPolicy(OverflowPolicy.REJECT);
+		List<FutureCallback<HttpResponse>> callbacks = new ArrayList<FutureCallback<HttpResponse>>();
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				callbacks.add(responseCallback);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient limited = LogInsightClient.open(config, connectionStrategy);
+		IngestionRequest request = new IngestionRequestBuilder().message(new Message("message 1")).build();
+		List<CompletableFuture<IngestionResponse>> next = new ArrayList<CompletableFuture<IngestionResponse>>();
+		limited.ingest(request).whenComplete((response, ex) -> next.add(limited.ingest(request)));
+		int sent = callbacks.size();
+
+		callbacks.get(sent - 1).completed(mockResponse(200, SERVER_EXPECTED_RESPONSE_FOR_INGESTION));
+		assertEquals(1, next.size());
+		Assert.assertFalse("Next batch should be sent", next.get(0).isDone());
+		assertEquals(sent + 1, callbacks.size());
+		assertEquals(0, limited.getIngestionBudget().getRejectedCount());
+		assertEquals(1, limited.getIngestionBudget().getInFlightRequests());
+	}
+
+	@Test
+	public void testIngestionBudgetNeverBlocksDispatcherThreads() throws Exception {
+		config.setIngestionMaxInFlight(1);
+		config.setIngestionOverflowPolicy(OverflowPolicy.BLOCK);
+		config.setIngestionBlockTimeout(60000);
+		List<FutureCallback<HttpResponse>> callbacks = new ArrayList<FutureCallback<HttpResponse>>();
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request.getURI().getPath().equals(LogInsightClient.API_URL_SESSION_PATH)) {
+					responseCallback.completed(mockResponse(200, SERVER_RESPONSE_EXPECTED));
+				} else {
+					callbacks.add(responseCallback);
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient limited = LogInsightClient.open(config, connectionStrategy);
+		IngestionRequest request = new IngestionRequestBuilder().message(new Message("message 1")).build();
+		limited.ingest(request);
+		FutureCallback<HttpResponse> ingestion = callbacks.get(callbacks.size() - 1);
+		List<CompletableFuture<IngestionResponse>> next = new ArrayList<CompletableFuture<IngestionResponse>>();
+		limited.messageQuery(getMessageQueryForTest().toUrlString())
+				.whenComplete((response, ex) -> next.add(limited.ingest(request)));
+
+		FutureCallback<HttpResponse> query = callbacks.get(callbacks.size() - 1);
+		HttpResponse queryResponse = mockResponse(200, SERVER_EXPECTED_QUERY_RESPONSE);
+		Thread dispatcher = new Thread(() -> query.completed(queryResponse),
+				LogInsightClient.IO_DISPATCHER_THREAD_NAME + " 1");
+		dispatcher.start();
+		dispatcher.join(10000);
+		Assert.assertFalse("The dispatcher should not wait for the budget", dispatcher.isAlive());
+		try {
+			next.get(0).get(0, TimeUnit.MILLISECONDS);
+			Assert.fail("Ingestion should be rejected");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IngestionRejectedException);
+		}
+
+		// other threads wait for the budget
+		CompletableFuture<CompletableFuture<IngestionResponse>> blocked = CompletableFuture
+				.supplyAsync(() -> limited.ingest(request));
+		Thread.sleep(50);
+		Assert.assertFalse(blocked.isDone());
+		ingestion.completed(mockResponse(200, SERVER_EXPECTED_RESPONSE_FOR_INGESTION));
+		Assert.assertFalse("Ingestion should be sent", blocked.get(5, TimeUnit.SECONDS).isDone());
+	}
+
+	@Test
+	public void testAggregateQueryCache() throws Exception {
+		config.setQueryCacheMaxEntries(16);
+		List<HttpUriRequest> queries = new ArrayList<HttpUriRequest>();
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request instanceof HttpPost) {
+					responseCallback.completed(mockResponse(200, SERVER_RESPONSE_EXPECTED));
+				} else {
+					queries.add(request);
+					responseCallback.completed(mockResponse(200, SERVER_EXPECTED_AGGREGATE_QUERY_RESPONSE));
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient cached = LogInsightClient.open(config, connectionStrategy);
+		AggregateQuery aqb = (AggregateQuery) new AggregateQuery().addConstraint("timestamp",
+				FieldConstraint.Operator.LT, "1432135890000");
+		AggregateResponse first = cached.aggregateQuery(aqb.toUrlString()).get(0, TimeUnit.MILLISECONDS);
+		AggregateResponse second = cached.aggregateQuery(aqb.toUrlString()).get(0, TimeUnit.MILLISECONDS);
+		Assert.assertSame(first, second);
+		assertEquals(1, queries.size());
+		assertEquals(1, cached.getAggregateQueryCache().getHitCount());
+		cached.close();
+	}
+
+	@Test
+	public void testAggregateQueryColumns() throws Exception {
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				responseCallback.completed(mockResponse(200, request instanceof HttpPost ? SERVER_RESPONSE_EXPECTED
+						: SERVER_EXPECTED_AGGREGATE_QUERY_RESPONSE));
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient columnar = LogInsightClient.open(config, connectionStrategy);
+		AggregateColumns columns = columnar.aggregateQueryColumns(new AggregateQuery().toUrlString())
+				.get(0, TimeUnit.MILLISECONDS);
+		AggregateResponse response = AggregateResponse.fromJsonString(SERVER_EXPECTED_AGGREGATE_QUERY_RESPONSE);
+		assertEquals(response.getBins().size(), columns.size());
+		assertEquals(response.getBins().get(0).getValue().longValue(), columns.getValue(0));
+		columnar.close();
+	}
+
+	@Test
+	public void testIdenticalQueriesCoalesced() throws Exception {
+		config.setQueryCoalescing(true);
+		List<FutureCallback<HttpResponse>> queries = new ArrayList<FutureCallback<HttpResponse>>();
+		@SuppressWarnings("unchecked")
+		Future<HttpResponse> httpFuture = mock(Future.class);
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request instanceof HttpPost) {
+					responseCallback.completed(mockResponse(200, SERVER_RESPONSE_EXPECTED));
+					return null;
+				}
+				queries.add(responseCallback);
+				return httpFuture;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient coalescing = LogInsightClient.open(config, connectionStrategy);
+		String url = getMessageQueryForTest().toUrlString();
+		CompletableFuture<MessageQueryResponse> first = coalescing.messageQuery(url);
+		CompletableFuture<MessageQueryResponse> second = coalescing.messageQuery(url);
+		assertEquals(1, queries.size());
+		queries.get(0).completed(mockResponse(200, SERVER_EXPECTED_QUERY_RESPONSE));
+		Assert.assertSame(first.get(0, TimeUnit.MILLISECONDS), second.get(0, TimeUnit.MILLISECONDS));
+
+		CompletableFuture<MessageQueryResponse> third = coalescing.messageQuery(url);
+		CompletableFuture<MessageQueryResponse> fourth = coalescing.messageQuery(url);
+		assertEquals(2, queries.size());
+		third.cancel(true);
+		verify(httpFuture, never()).cancel(true);
+		fourth.cancel(true);
+		verify(httpFuture).cancel(true);
+		coalescing.close();
+	}
+
+	@Test
+	public void testMalformedQueryResponseEndsCoalescedFlight() throws Exception {
+		config.setQueryCoalescing(true);
+		List<FutureCallback<HttpResponse>> queries = new ArrayList<FutureCallback<HttpResponse>>();
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				if (request instanceof HttpPost) {
+					responseCallback.completed(mockResponse(200, SERVER_RESPONSE_EXPECTED));
+					return null;
+				}
+				queries.add(responseCallback);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient coalescing = LogInsightClient.open(config, connectionStrategy);
+		String url = getMessageQueryForTest().toUrlString();
+		CompletableFuture<MessageQueryResponse> first = coalescing.messageQuery(url);
+		queries.get(0).completed(mockResponse(502, "<html><body>Bad Gateway</body></html>"));
+		try {
+			first.get(0, TimeUnit.MILLISECONDS);
+			Assert.fail("Malformed response should fail the query");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ParseException);
+		}
+
+		CompletableFuture<MessageQueryResponse> second = coalescing.messageQuery(url);
+		assertEquals(2, queries.size());
+		queries.get(1).completed(mockResponse(200, SERVER_EXPECTED_QUERY_RESPONSE));
+		assertEquals(1, second.get(0, TimeUnit.MILLISECONDS).getEvents().size());
+		coalescing.close();
+	}
+
+	@Test
+	public void testClientMetrics() throws Exception {
+		config.setMetrics(Configuration.METRICS_HDR);
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws IOException {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				String path = request.getURI().getPath();
+				if (path.startsWith(LogInsightClient.API_URL_INGESTION)) {
+					responseCallback.completed(mockResponse(200, SERVER_EXPECTED_RESPONSE_FOR_INGESTION));
+				} else if (request instanceof HttpPost) {
+					responseCallback.completed(mockResponse(200, SERVER_RESPONSE_EXPECTED));
+				} else {
+					responseCallback.completed(mockResponse(200, SERVER_EXPECTED_AGGREGATE_QUERY_RESPONSE));
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient measured = LogInsightClient.open(config, connectionStrategy);
+		measured.aggregateQuery(new AggregateQuery().toUrlString()).get(0, TimeUnit.MILLISECONDS);
+		IngestionRequest request = new IngestionRequest();
+		request.addMessage(new Message("Testing the metrics"));
+		measured.ingest(request).get(0, TimeUnit.MILLISECONDS);
+
+		HdrClientMetrics metrics = (HdrClientMetrics) measured.getMetrics();
+		assertEquals(1, metrics.getRequestCount(Operation.CONNECT));
+		assertEquals(1, metrics.getRequestCount(Operation.AGGREGATE_QUERY));
+		assertEquals(1, metrics.getRequestCount(Operation.INGEST));
+		assertEquals(0, metrics.getFailureCount(Operation.INGEST));
+		assertEquals(0, metrics.getInFlight(Operation.AGGREGATE_QUERY));
+		assertEquals(1, metrics.getSubmittedMessageCount());
+		assertEquals(1, metrics.getIngestedMessageCount());
+		assertEquals(1, metrics.getNetworkTime(Operation.AGGREGATE_QUERY).getTotalCount());
+		assertEquals((long) SERVER_EXPECTED_AGGREGATE_QUERY_RESPONSE.length(),
+				metrics.getCounters().get("loginsight.aggregate_query.response.bytes").longValue());
+		assertEquals(0, metrics.getGauges().get("loginsight.ingest.budget.requests").longValue());
+		measured.close();
+	}
+
+	private HttpResponse repeatableResponse(int statusCode, String body) throws IOException {
+		HttpResponse response = mockResponse(statusCode, body);
+		when(response.getEntity().getContent()).thenAnswer(invocation -> IOUtils.toInputStream(body, "UTF-8"));
+		return response;
+	}
+
+	@Test
+	public void testRequestsFollowNodeHealth() throws Exception {
+		config.setHosts(Arrays.asList("node-a", "node-b"));
+		config.setNodeBackoff(10);
+		config.setNodeMaxBackoff(20);
+		config.setIngestionPort("9543");
+		HttpResponse auth = repeatableResponse(200, SERVER_RESPONSE_EXPECTED);
+		HttpResponse query = repeatableResponse(200, SERVER_EXPECTED_QUERY_RESPONSE);
+		HttpResponse ingested = repeatableResponse(200, SERVER_EXPECTED_RESPONSE_FOR_INGESTION);
+		HttpResponse unavailable = repeatableResponse(503, "{\"errorMessage\":\"unavailable\"}");
+		List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+		AtomicBoolean nodeBDown = new AtomicBoolean();
+
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				String host = request.getURI().getHost();
+				String path = request.getURI().getPath();
+				requests.add(host + " " + path);
+				if ("node-b".equals(host) && nodeBDown.get()) {
+					responseCallback.completed(unavailable);
+				} else if (path.startsWith(LogInsightClient.API_URL_INGESTION)) {
+					responseCallback.completed(ingested);
+				} else if (request instanceof HttpPost) {
+					responseCallback.completed(auth);
+				} else {
+					responseCallback.completed(query);
+				}
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		LogInsightClient cluster = LogInsightClient.connectAsync(config, connectionStrategy).get(1, TimeUnit.SECONDS);
+		String url = getMessageQueryForTest().toUrlString();
+		for (int i = 0; i < 4; i++) {
+			cluster.messageQuery(url).get(1, TimeUnit.SECONDS);
+		}
+		for (int i = 0; i < 4; i++) {
+			cluster.ingest(new IngestionRequest(Arrays.asList(new Message("line " + i)))).get(1, TimeUnit.SECONDS);
+		}
+		for (String node : Arrays.asList("node-a", "node-b")) {
+			Assert.assertTrue("Queries should reach " + node, requests.stream()
+					.anyMatch(r -> r.startsWith(node + " ") && r.contains("/events")));
+			Assert.assertTrue("Messages should reach " + node, requests.stream()
+					.anyMatch(r -> r.startsWith(node + " ") && r.contains(LogInsightClient.API_URL_INGESTION)));
+		}
+		Assert.assertTrue("Authentication should reach a node", requests.stream()
+				.anyMatch(r -> r.matches("node-[ab] .*/sessions")));
+
+		nodeBDown.set(true);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cluster.messageQuery(url).get(1, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				// the query served by node-b fails
+			}
+		}
+		requests.clear();
+		for (int i = 0; i < 6; i++) {
+			cluster.messageQuery(url).get(1, TimeUnit.SECONDS);
+		}
+		synchronized (requests) {
+			Assert.assertFalse("node-b should be out of rotation",
+					requests.stream().anyMatch(r -> r.startsWith("node-b ") && r.contains("/events")));
+		}
+		Assert.assertTrue("node-b should be probed",
+				waitFor(requests, "node-b " + LogInsightClient.API_URL_VERSION_PATH));
+
+		nodeBDown.set(false);
+		long deadline = System.currentTimeMillis() + 5000;
+		boolean readmitted = false;
+		while (!readmitted && System.currentTimeMillis() < deadline) {
+			cluster.messageQuery(url).get(1, TimeUnit.SECONDS);
+			readmitted = requests.stream().anyMatch(r -> r.startsWith("node-b ") && r.contains("/events"));
+			Thread.sleep(5);
+		}
+		Assert.assertTrue("node-b should be re-admitted after a successful probe", readmitted);
+		cluster.close();
+	}
+
+	@Test
+	public void testConnectServerErrorFailsNode() throws Exception {
+		config.setHosts(Arrays.asList("node-a", "node-b"));
+		config.setNodeBackoff(10);
+		config.setNodeMaxBackoff(20);
+		HttpResponse unavailable = repeatableResponse(503, "{\"errorMessage\":\"unavailable\"}");
+		HttpResponse version = repeatableResponse(200, "{\"version\":\"4.0.0\"}");
+		List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+		doAnswer(new Answer<Future<HttpResponse>>() {
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) {
+				HttpUriRequest request = invocation.getArgumentAt(0, HttpUriRequest.class);
+				@SuppressWarnings("unchecked")
+				FutureCallback<HttpResponse> responseCallback = invocation.getArgumentAt(1, FutureCallback.class);
+				requests.add(request.getURI().getHost() + " " + request.getURI().getPath());
+				if (null == responseCallback) {
+					return ConcurrentUtils.constantFuture(unavailable);
+				}
+				// the probe re-admits the node
+				responseCallback.completed(version);
+				return null;
+			}
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+
+		try {
+			new LogInsightClient(config, connectionStrategy);
+			Assert.fail("Authentication should fail");
+		} catch (AuthFailure e) {
+			// expected
+		}
+		String authHost = requests.get(0).split(" ")[0];
+		Assert.assertTrue("The node answering 5xx should be probed",
+				waitFor(requests, authHost + " " + LogInsightClient.API_URL_VERSION_PATH));
+	}
+
+	private static boolean waitFor(List<String> requests, String request) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!requests.contains(request) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		return requests.contains(request);
+	}
 }
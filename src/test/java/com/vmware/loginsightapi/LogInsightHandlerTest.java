@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.Field;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+public class LogInsightHandlerTest {
+
+	private List<Message> received;
+	private LogInsightHandler handler;
+
+	@Before
+	public void setUp() {
+		received = Collections.synchronizedList(new ArrayList<Message>());
+		LogInsightClient client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			received.addAll(request.getMessages());
+			IngestionResponse response = new IngestionResponse();
+			response.setStatus("ok");
+			response.setIngested(request.count());
+			return CompletableFuture.completedFuture(response);
+		});
+		handler = new LogInsightHandler(new LogShipper(client, 16, 10, 60000, 1, OverflowPolicy.DROP, 0));
+	}
+
+	private static LogRecord record(String loggerName, Level level, String text, Throwable thrown) {
+		LogRecord record = new LogRecord(level, text);
+		record.setLoggerName(loggerName);
+		record.setMillis(1432135888000L);
+		record.setParameters(new Object[] { "42" });
+		record.setThrown(thrown);
+		return record;
+	}
+
+	private static String field(Message message, String name) {
+		for (Field field : message.getFields()) {
+			if (name.equals(field.getName())) {
+				return field.getContent();
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testRecordShipped() {
+		handler.publish(record("com.example.Service", Level.WARNING, "Request {0} failed", null));
+		handler.close();
+		assertEquals(1, received.size());
+		Message message = received.get(0);
+		assertEquals("Request 42 failed", message.getText());
+		assertEquals(1432135888000L, message.getTimestamp().longValue());
+		assertEquals("com.example.Service", field(message, "logger"));
+		assertEquals("WARNING", field(message, "level"));
+		assertEquals(Thread.currentThread().getName(), field(message, "thread"));
+	}
+
+	@Test
+	public void testStackTraceAppended() {
+		handler.publish(record("com.example.Service", Level.SEVERE, "System failed",
+				new IllegalStateException("broken")));
+		handler.close();
+		String text = received.get(0).getText();
+		assertTrue(text.startsWith("System failed"));
+		assertTrue(text.contains("java.lang.IllegalStateException: broken"));
+	}
+
+	@Test
+	public void testLevelAndInternalRecordsIgnored() {
+		handler.setLevel(Level.INFO);
+		handler.publish(record("com.example.Service", Level.FINE, "Details", null));
+		handler.publish(record("org.apache.http.wire", Level.INFO, "bytes", null));
+		handler.close();
+		assertEquals(0, received.size());
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.LogInsightConnectionStrategy;
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
+public class LogShipperTest {
+
+	private LogInsightClient client;
+	private List<IngestionRequest> batches;
+	private List<CompletableFuture<IngestionResponse>> pending;
+	private volatile boolean hold;
+
+	@Before
+	public void setUp() {
+		batches = Collections.synchronizedList(new ArrayList<IngestionRequest>());
+		pending = Collections.synchronizedList(new ArrayList<CompletableFuture<IngestionResponse>>());
+		client = mock(LogInsightClient.class);
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			IngestionRequest request = (IngestionRequest) invocation.getArguments()[0];
+			// the buffer of the request is reused once the ingestion completes
+			batches.add(new IngestionRequest(request.getMessages()));
+			CompletableFuture<IngestionResponse> future = new CompletableFuture<IngestionResponse>();
+			if (hold) {
+				pending.add(future);
+			} else {
+				future.complete(response(request.count()));
+			}
+			return future;
+		});
+	}
+
+	private static IngestionResponse response(int ingested) {
+		IngestionResponse response = new IngestionResponse();
+		response.setStatus("ok");
+		response.setIngested(ingested);
+		return response;
+	}
+
+	private static void await(LogShipper shipper, long shipped) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (shipper.getShippedCount() < shipped && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testBatchSentAfterLinger() throws Exception {
+		LogShipper shipper = new LogShipper(client, 16, 100, 50, 1, OverflowPolicy.DROP, 0);
+		shipper.offer(new Message("message 1"));
+		shipper.offer(new Message("message 2"));
+		shipper.offer(new Message("message 3"));
+		await(shipper, 3);
+		assertEquals(3, shipper.getShippedCount());
+		assertEquals(1, batches.size());
+		assertEquals("message 1", batches.get(0).getMessages().get(0).getText());
+		shipper.close();
+	}
+
+	@Test
+	public void testBatchSizeBounded() throws Exception {
+		LogShipper shipper = new LogShipper(client, 16, 2, 60000, 1, OverflowPolicy.DROP, 0);
+		for (int i = 0; i < 5; i++) {
+			shipper.offer(new Message("message " + i));
+		}
+		shipper.close();
+		assertEquals("Buffered messages are shipped on close", 5, shipper.getShippedCount());
+		for (IngestionRequest batch : batches) {
+			assertTrue(batch.count() <= 2);
+		}
+		assertFalse("Closed shipper drops", shipper.offer(new Message("late")));
+		assertEquals(1, shipper.getDroppedCount());
+	}
+
+	@Test
+	public void testFullBufferDrops() throws Exception {
+		hold = true;
+		LogShipper shipper = new LogShipper(client, 4, 1, 60000, 1, OverflowPolicy.DROP, 0);
+		int accepted = 0;
+		for (int i = 0; i < 100; i++) {
+			if (shipper.offer(new Message("message " + i))) {
+				accepted++;
+			}
+		}
+		assertTrue("At most the buffer, the batch in flight and the batch waiting are accepted", accepted <= 6);
+		assertEquals(100 - accepted, shipper.getDroppedCount());
+
+		hold = false;
+		long deadline = System.currentTimeMillis() + 5000;
+		while (shipper.getShippedCount() < accepted && System.currentTimeMillis() < deadline) {
+			synchronized (pending) {
+				for (CompletableFuture<IngestionResponse> future : pending) {
+					future.complete(response(1));
+				}
+			}
+			Thread.sleep(5);
+		}
+		shipper.close();
+		assertEquals(accepted, shipper.getShippedCount());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		LogShipper shipper = new LogShipper(client, 64, 100, 10, 2, OverflowPolicy.BLOCK, 10000);
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			int producer = t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 5000; i++) {
+					shipper.offer(new Message(producer + ":" + i));
+				}
+			});
+			producers.add(thread);
+			thread.start();
+		}
+		for (Thread thread : producers) {
+			thread.join();
+		}
+		shipper.close();
+		assertEquals(0, shipper.getDroppedCount());
+		assertEquals(20000, shipper.getShippedCount());
+
+		int[] next = new int[4];
+		for (IngestionRequest batch : batches) {
+			for (Message message : batch.getMessages()) {
+				String[] parts = message.getText().split(":");
+				int producer = Integer.parseInt(parts[0]);
+				assertEquals("Messages of a producer keep their order", next[producer]++,
+						Integer.parseInt(parts[1]));
+			}
+		}
+	}
+
+	@Test
+	public void testFailedBatchCounted() throws Exception {
+		doReturn(failed()).when(client).ingest(any(IngestionRequest.class));
+		LogShipper shipper = new LogShipper(client, 16, 10, 60000, 1, OverflowPolicy.DROP, 0);
+		shipper.offer(new Message("message 1"));
+		shipper.offer(new Message("message 2"));
+		shipper.close();
+		assertEquals(2, shipper.getFailedCount());
+		assertEquals(0, shipper.getShippedCount());
+	}
+
+	@Test
+	public void testFailedBatchRetried() throws Exception {
+		doReturn(failed()).doReturn(failed()).doReturn(CompletableFuture.completedFuture(response(2))).when(client)
+				.ingest(any(IngestionRequest.class));
+		LogShipper shipper = new LogShipper(client, 16, 10, 60000, 1, OverflowPolicy.DROP, 0, 3, 10);
+		shipper.offer(new Message("message 1"));
+		shipper.offer(new Message("message 2"));
+		shipper.close();
+		assertEquals(2, shipper.getRetryCount());
+		assertEquals(2, shipper.getShippedCount());
+		assertEquals(0, shipper.getFailedCount());
+	}
+
+	@Test
+	public void testSlotWriter() throws Exception {
+		LogShipper shipper = new LogShipper(client, 4, 10, 60000, 1, OverflowPolicy.DROP, 0);
+		for (int i = 0; i < 20; i++) {
+			shipper.offer((slot, text) -> {
+				slot.setText(text);
+				slot.setTimestamp(1432135888000L);
+				slot.addField("source", "test");
+			}, "message " + i);
+			Thread.sleep(1);
+		}
+		try {
+			shipper.offer((slot, text) -> {
+				slot.setText(text);
+				throw new IllegalStateException("broken");
+			}, "failed");
+		} catch (IllegalStateException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		shipper.close();
+		assertEquals("The failed writer counts as dropped", 21,
+				shipper.getShippedCount() + shipper.getDroppedCount());
+		Message first = batches.get(0).getMessages().get(0);
+		assertEquals("message 0", first.getText());
+		assertEquals(1432135888000L, first.getTimestamp().longValue());
+		assertEquals("test", first.getFields().get(0).getContent());
+		for (IngestionRequest batch : batches) {
+			for (Message message : batch.getMessages()) {
+				assertFalse("Slots are emptied before reuse", "failed".equals(message.getText()));
+				assertEquals(1, message.getFields().size());
+			}
+		}
+	}
+
+	private static CompletableFuture<IngestionResponse> failed() {
+		CompletableFuture<IngestionResponse> future = new CompletableFuture<IngestionResponse>();
+		future.completeExceptionally(new IllegalStateException("unreachable"));
+		return future;
+	}
+
+	@Test
+	public void testMalformedResponseReleasesSlot() throws Exception {
+		CloseableHttpAsyncClient asyncHttpClient = mock(CloseableHttpAsyncClient.class);
+		@SuppressWarnings("unchecked")
+		LogInsightConnectionStrategy<CloseableHttpAsyncClient> connectionStrategy = mock(
+				LogInsightConnectionStrategy.class);
+		when(connectionStrategy.getHttpClient()).thenReturn(asyncHttpClient);
+		AtomicInteger ingestions = new AtomicInteger();
+		doAnswer(invocation -> {
+			HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+			@SuppressWarnings("unchecked")
+			FutureCallback<HttpResponse> callback = (FutureCallback<HttpResponse>) invocation.getArguments()[1];
+			if (request.getURI().getPath().equals(LogInsightClient.API_URL_SESSION_PATH)) {
+				callback.completed(httpResponse(200, "{\"userId\":\"user\",\"sessionId\":\"session\",\"ttl\":1800}"));
+			} else {
+				HttpResponse response = ingestions.getAndIncrement() == 0
+						? httpResponse(200, "<html><body>Bad Gateway</body></html>")
+						: httpResponse(200, "{\"status\":\"ok\",\"message\":\"ingested\",\"ingested\":1}");
+				// as on an I/O dispatcher thread, nothing catches what escapes the callback
+				CompletableFuture.runAsync(() -> callback.completed(response));
+			}
+			return null;
+		}).when(asyncHttpClient).execute(any(HttpUriRequest.class), any(FutureCallback.class));
+		Configuration config = new Configuration("localhost", "user", "password");
+		config.setIngestionPort("9543");
+		LogInsightClient ingestionClient = LogInsightClient.open(config, connectionStrategy);
+
+		LogShipper shipper = new LogShipper(ingestionClient, 16, 1, 60000, 1, OverflowPolicy.DROP, 0, 0, 10);
+		shipper.offer(new Message("message 1"));
+		shipper.offer(new Message("message 2"));
+		shipper.offer(new Message("message 3"));
+		shipper.close();
+		assertEquals(1, shipper.getFailedCount());
+		assertEquals(2, shipper.getShippedCount());
+		ingestionClient.close();
+	}
+
+	private static HttpResponse httpResponse(int statusCode, String body) throws IOException {
+		HttpResponse response = mock(HttpResponse.class);
+		HttpEntity entity = mock(HttpEntity.class);
+		StatusLine statusLine = mock(StatusLine.class);
+		when(response.getEntity()).thenReturn(entity);
+		when(response.getStatusLine()).thenReturn(statusLine);
+		when(statusLine.getStatusCode()).thenReturn(statusCode);
+		when(entity.getContent()).thenReturn(IOUtils.toInputStream(body, "UTF-8"));
+		return response;
+	}
+}
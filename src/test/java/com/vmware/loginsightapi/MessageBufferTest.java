@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageBuffer;
+import com.vmware.loginsightapi.core.MessageSlot;
+
+public class MessageBufferTest {
+
+	private static List<Message> messages() {
+		return Arrays.asList(
+				new MessageBuilder("System \"failed\"\n").field("host", "web-1").field("word", 0, 6)
+						.timestamp(1432135888000L).build(),
+				new MessageBuilder("no fields").build(), new Message(), new MessageBuilder().field("empty", "").build());
+	}
+
+	@Test
+	public void testSerializedAsMessages() {
+		MessageBuffer buffer = new MessageBuffer(1);
+		for (Message message : messages()) {
+			buffer.add(message);
+		}
+		IngestionRequest expected = new IngestionRequest(messages());
+		IngestionRequest request = new IngestionRequest(buffer);
+		assertEquals(4, request.count());
+		assertEquals(expected.toJson(), request.toJson());
+		assertEquals(expected.estimatedSize(), request.estimatedSize());
+		assertEquals(expected.toJson(), new IngestionRequest(request.getMessages()).toJson());
+		assertEquals("{}", new IngestionRequest(new MessageBuffer(1)).toJson());
+	}
+
+	@Test
+	public void testReusedAfterClear() {
+		MessageBuffer buffer = new MessageBuffer(2);
+		MessageSlot slot = new MessageSlot();
+		for (int round = 0; round < 3; round++) {
+			buffer.clear();
+			for (int i = 0; i < 5; i++) {
+				slot.clear();
+				slot.setText("round " + round + " message " + i);
+				slot.addField("index", String.valueOf(i));
+				buffer.add(slot);
+			}
+			assertEquals(5, buffer.size());
+			Message message = buffer.toMessage(4);
+			assertEquals("round " + round + " message 4", message.getText());
+			assertNull(message.getTimestamp());
+			assertEquals(1, message.getFields().size());
+			assertEquals("4", message.getFields().get(0).getContent());
+		}
+		buffer.clear();
+		assertTrue(buffer.isEmpty());
+		assertEquals(0, buffer.estimatedSize());
+	}
+
+	@Test
+	public void testSlotCopiesMessage() {
+		MessageSlot slot = new MessageSlot();
+		slot.copyFrom(messages().get(0));
+		assertEquals(1432135888000L, slot.getTimestamp());
+		assertEquals(2, slot.getFieldCount());
+		slot.copyFrom(messages().get(1));
+		assertEquals(MessageBuffer.NO_TIMESTAMP, slot.getTimestamp());
+		assertEquals(0, slot.getFieldCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFieldWithoutMessage() {
+		new MessageBuffer(1).addField("name", "content");
+	}
+}
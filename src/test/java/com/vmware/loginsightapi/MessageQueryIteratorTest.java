@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+public class MessageQueryIteratorTest {
+
+	private static final Pattern TIMESTAMP = Pattern.compile("timestamp/(GE|LE|LT)\\+(\\d+)");
+	private static final Pattern LIMIT = Pattern.compile("limit=(\\d+)");
+
+	private LogInsightClient client;
+	private List<Message> stored;
+	private List<String> urls;
+
+	@Before
+	public void setUp() {
+		stored = new ArrayList<Message>();
+		urls = new ArrayList<String>();
+		client = mock(LogInsightClient.class);
+		when(client.messageQuery(anyString())).thenAnswer(invocation -> {
+			String url = (String) invocation.getArguments()[0];
+			urls.add(url);
+			long lower = Long.MIN_VALUE;
+			long upper = Long.MAX_VALUE;
+			Matcher matcher = TIMESTAMP.matcher(url);
+			while (matcher.find()) {
+				long value = Long.parseLong(matcher.group(2));
+				switch (matcher.group(1)) {
+				case "GE":
+					lower = value;
+					break;
+				case "LE":
+					upper = value;
+					break;
+				default:
+					upper = value - 1;
+				}
+			}
+			Matcher limitMatcher = LIMIT.matcher(url);
+			int limit = limitMatcher.find() ? Integer.parseInt(limitMatcher.group(1)) : 100;
+			final long from = lower;
+			final long to = upper;
+			MessageQueryResponse response = new MessageQueryResponse();
+			response.setEvents(stored.stream().filter(m -> m.getTimestamp() >= from && m.getTimestamp() <= to)
+					.limit(limit).collect(Collectors.toList()));
+			return CompletableFuture.completedFuture(response);
+		});
+	}
+
+	private void store(long... timestamps) {
+		for (long timestamp : timestamps) {
+			stored.add(new Message("event " + stored.size(), timestamp));
+		}
+	}
+
+	private static MessageQuery query(int limit) {
+		return (MessageQuery) new MessageQuery().limit(limit);
+	}
+
+	@Test
+	public void testWalksRangeWithoutDuplicates() {
+		store(19, 18, 18, 18, 17, 15, 15, 14, 12, 11, 10, 10, 9);
+		List<String> texts;
+		try (Stream<Message> events = new MessageQueryIterator(client, query(3), 10, 20).stream()) {
+			texts = events.map(Message::getText).collect(Collectors.toList());
+		}
+		assertEquals(12, texts.size());
+		assertEquals(12, texts.stream().distinct().count());
+		assertEquals("event 0", texts.get(0));
+		assertEquals("event 11", texts.get(11));
+		assertTrue(urls.get(0).contains("timestamp/GE+10/timestamp/LT+20"));
+		assertTrue(urls.get(1).contains("timestamp/LE+18"));
+	}
+
+	@Test
+	public void testSkipsTimestampLargerThanPage() {
+		store(5, 5, 5, 5, 4);
+		List<String> texts = new ArrayList<String>();
+		new MessageQueryIterator(client, query(2), 0, 10).forEachRemaining(m -> texts.add(m.getText()));
+		assertEquals(Arrays.asList("event 0", "event 1", "event 4"), texts);
+	}
+
+	@Test
+	public void testLazyAndPrefetching() {
+		store(9, 8, 7, 6, 5);
+		MessageQueryIterator iterator = new MessageQueryIterator(client, query(2), 0, 10);
+		assertTrue(urls.isEmpty());
+		iterator.next();
+		assertEquals(1, iterator.getPageCount());
+		assertEquals(2, urls.size());
+		iterator.close();
+		assertTrue(!iterator.hasNext());
+	}
+
+	@Test(expected = LogInsightApiException.class)
+	public void testPageFailure() {
+		CompletableFuture<MessageQueryResponse> failed = new CompletableFuture<MessageQueryResponse>();
+		failed.completeExceptionally(new LogInsightApiException("Failed message Query"));
+		when(client.messageQuery(anyString())).thenReturn(failed);
+		new MessageQueryIterator(client, query(2), 0, 10).hasNext();
+	}
+}
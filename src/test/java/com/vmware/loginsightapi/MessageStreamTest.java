@@ -0,0 +1,180 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.After;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+import com.vmware.loginsightapi.core.MessageQueryStreamParser;
+import com.vmware.loginsightapi.util.MessageStreamConsumer;
+
+public class MessageStreamTest {
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private String buildResponse(int count) {
+		StringBuilder json = new StringBuilder("{\"complete\":true,\"duration\":52,\"events\":[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"text\":\"message line ").append(i).append("\",\"timestamp\":").append(1471886543205L + i)
+					.append(",\"fields\":[{\"name\":\"field1\",\"content\":\"content ").append(i).append("\"}]}");
+		}
+		return json.append("]}").toString();
+	}
+
+	@Test
+	public void testParserMatchesFullParse() throws IOException {
+		String json = buildResponse(100);
+		List<Message> messages = new ArrayList<Message>();
+		MessageQueryResponse streamed = MessageQueryStreamParser
+				.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), messages::add);
+		MessageQueryResponse full = MessageQueryResponse.fromJsonString(json);
+
+		assertEquals(full.isComplete(), streamed.isComplete());
+		assertEquals(full.getDuration(), streamed.getDuration());
+		assertTrue(streamed.getEvents().isEmpty());
+		assertEquals(full.getEvents().size(), messages.size());
+		assertEquals(full.getEvents().get(99).getText(), messages.get(99).getText());
+		assertEquals("content 99", messages.get(99).getFields().get(0).getContent());
+	}
+
+	@Test(expected = ParseException.class)
+	public void testParserInvalidResponse() throws IOException {
+		MessageQueryStreamParser.parse(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)), m -> {
+		});
+	}
+
+	@Test
+	public void testConsumerStreamsEvents() throws Exception {
+		List<Message> messages = new ArrayList<Message>();
+		CompletableFuture<MessageQueryResponse> future = new CompletableFuture<MessageQueryResponse>();
+		MessageStreamConsumer consumer = new MessageStreamConsumer(messages::add, executor, future, 256);
+
+		receive(consumer, 200, buildResponse(500));
+
+		MessageQueryResponse response = future.get(10, TimeUnit.SECONDS);
+		assertTrue(response.isComplete());
+		assertEquals(500, messages.size());
+		assertEquals("message line 499", messages.get(499).getText());
+	}
+
+	@Test
+	public void testConsumerFailsOnErrorStatus() throws Exception {
+		CompletableFuture<MessageQueryResponse> future = new CompletableFuture<MessageQueryResponse>();
+		MessageStreamConsumer consumer = new MessageStreamConsumer(m -> {
+		}, executor, future, 256);
+
+		receive(consumer, 400, "{\"errorMessage\":\"bad query\"}");
+
+		try {
+			future.get(10, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LogInsightApiException);
+			assertTrue(e.getCause().getMessage().contains("400"));
+			return;
+		}
+		throw new AssertionError("Query should fail");
+	}
+
+	private void receive(MessageStreamConsumer consumer, int status, String body) throws Exception {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+		response.setEntity(new BasicHttpEntity());
+		consumer.responseReceived(response);
+		SlicedContentDecoder decoder = new SlicedContentDecoder(body.getBytes(StandardCharsets.UTF_8), 100);
+		while (!decoder.isCompleted()) {
+			consumer.consumeContent(decoder, new NoopIOControl());
+		}
+		consumer.responseCompleted(new BasicHttpContext());
+	}
+
+	/**
+	 * Decoder returning the content in slices
+	 */
+	private static class SlicedContentDecoder implements ContentDecoder {
+
+		private final ByteBuffer content;
+		private final int sliceSize;
+
+		SlicedContentDecoder(byte[] content, int sliceSize) {
+			this.content = ByteBuffer.wrap(content);
+			this.sliceSize = sliceSize;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!content.hasRemaining()) {
+				return -1;
+			}
+			int length = Math.min(Math.min(sliceSize, dst.remaining()), content.remaining());
+			for (int i = 0; i < length; i++) {
+				dst.put(content.get());
+			}
+			return length;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return !content.hasRemaining();
+		}
+	}
+
+	private static class NoopIOControl implements IOControl {
+
+		@Override
+		public void requestInput() {
+		}
+
+		@Override
+		public void suspendInput() {
+		}
+
+		@Override
+		public void requestOutput() {
+		}
+
+		@Override
+		public void suspendOutput() {
+		}
+
+		@Override
+		public void shutdown() throws IOException {
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.LoadBalancer;
+import com.vmware.loginsightapi.core.Node;
+import com.vmware.loginsightapi.core.NodePool;
+import com.vmware.loginsightapi.util.EwmaLoadBalancer;
+import com.vmware.loginsightapi.util.LeastOutstandingLoadBalancer;
+import com.vmware.loginsightapi.util.RoundRobinLoadBalancer;
+
+public class NodePoolTest {
+
+	private static final List<String> HOSTS = Arrays.asList("node1", "node2", "node3");
+
+	private NodePool nodePool;
+
+	@After
+	public void tearDown() {
+		if (null != nodePool) {
+			nodePool.close();
+		}
+	}
+
+	private NodePool buildPool(LoadBalancer loadBalancer) {
+		return buildPool(loadBalancer, node -> CompletableFuture.completedFuture(true));
+	}
+
+	private NodePool buildPool(LoadBalancer loadBalancer, java.util.function.Function<Node, CompletableFuture<Boolean>> probe) {
+		nodePool = new NodePool(HOSTS, loadBalancer, 10, 100, probe);
+		return nodePool;
+	}
+
+	private void waitFor(AtomicBoolean condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.get() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testRoundRobin() {
+		NodePool pool = buildPool(new RoundRobinLoadBalancer());
+		Set<String> hosts = new HashSet<String>();
+		for (int i = 0; i < 3; i++) {
+			Node node = pool.acquire();
+			hosts.add(node.getHost());
+			pool.release(node, 1000, true);
+		}
+		assertEquals(new HashSet<String>(HOSTS), hosts);
+	}
+
+	@Test
+	public void testLeastOutstanding() {
+		NodePool pool = buildPool(new LeastOutstandingLoadBalancer());
+		Node first = pool.acquire();
+		Node second = pool.acquire();
+		Node third = pool.acquire();
+		assertEquals(3, new HashSet<Node>(Arrays.asList(first, second, third)).size());
+		pool.release(second, 1000, true);
+		assertSame(second, pool.acquire());
+	}
+
+	@Test
+	public void testEwmaPrefersFastNode() {
+		NodePool pool = buildPool(new EwmaLoadBalancer());
+		int fast = 0;
+		for (int i = 0; i < 30; i++) {
+			Node node = pool.acquire();
+			boolean isFast = "node2".equals(node.getHost());
+			if (isFast) {
+				fast++;
+			}
+			pool.release(node, isFast ? 1000000 : 50000000, true);
+		}
+		assertTrue("Fast node served " + fast + " requests", fast >= 28);
+	}
+
+	@Test
+	public void testFailedNodeIsProbedAndReadmitted() throws Exception {
+		AtomicBoolean probed = new AtomicBoolean();
+		NodePool pool = buildPool(new RoundRobinLoadBalancer(), node -> {
+			probed.set(true);
+			return CompletableFuture.completedFuture(true);
+		});
+		Node failed = pool.acquire();
+		pool.release(failed, -1, false);
+		assertFalse(failed.isHealthy());
+		for (int i = 0; i < 6; i++) {
+			Node node = pool.acquire();
+			assertTrue("Unhealthy node should not be selected", node != failed || probed.get());
+			pool.release(node, 1000, true);
+		}
+
+		waitFor(probed);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!failed.isHealthy() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(failed.isHealthy());
+		assertEquals(0, failed.getFailures());
+	}
+
+	@Test
+	public void testFailedProbeBacksOff() throws Exception {
+		AtomicInteger probes = new AtomicInteger();
+		AtomicBoolean probedTwice = new AtomicBoolean();
+		NodePool pool = buildPool(new RoundRobinLoadBalancer(), node -> {
+			if (probes.incrementAndGet() >= 2) {
+				probedTwice.set(true);
+			}
+			return CompletableFuture.completedFuture(false);
+		});
+		Node failed = pool.acquire();
+		pool.release(failed, -1, false);
+
+		waitFor(probedTwice);
+		assertFalse(failed.isHealthy());
+		assertTrue(failed.getFailures() >= 2);
+	}
+
+	@Test
+	public void testAllNodesUnhealthyFailsOpen() {
+		NodePool pool = buildPool(new RoundRobinLoadBalancer(), node -> new CompletableFuture<Boolean>());
+		for (int i = 0; i < HOSTS.size(); i++) {
+			pool.release(pool.acquire(), -1, false);
+		}
+		for (Node node : pool.getNodes()) {
+			assertFalse(node.isHealthy());
+		}
+		Node node = pool.acquire();
+		assertTrue(HOSTS.contains(node.getHost()));
+		pool.release(node, 1000, true);
+		assertTrue(node.isHealthy());
+	}
+}
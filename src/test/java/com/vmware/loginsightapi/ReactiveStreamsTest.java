@@ -0,0 +1,229 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.vmware.loginsightapi.core.IngestionRequest;
+import com.vmware.loginsightapi.core.IngestionResponse;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+public class ReactiveStreamsTest {
+
+	private LogInsightClient client;
+	private List<CompletableFuture<IngestionResponse>> ingestions;
+	private List<IngestionRequest> requests;
+
+	@Before
+	public void setUp() {
+		client = mock(LogInsightClient.class);
+		ingestions = Collections.synchronizedList(new ArrayList<CompletableFuture<IngestionResponse>>());
+		requests = Collections.synchronizedList(new ArrayList<IngestionRequest>());
+		when(client.ingest(any(IngestionRequest.class))).thenAnswer(invocation -> {
+			requests.add((IngestionRequest) invocation.getArguments()[0]);
+			CompletableFuture<IngestionResponse> future = new CompletableFuture<IngestionResponse>();
+			ingestions.add(future);
+			return future;
+		});
+	}
+
+	private static IngestionResponse response(int ingested) {
+		IngestionResponse response = new IngestionResponse();
+		response.setStatus("ok");
+		response.setIngested(ingested);
+		return response;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockQuery(int count, AtomicBoolean aborted) {
+		when(client.messageQuery(anyString(), any(Consumer.class))).thenAnswer(invocation -> {
+			Consumer<Message> consumer = (Consumer<Message>) invocation.getArguments()[1];
+			CompletableFuture<MessageQueryResponse> future = new CompletableFuture<MessageQueryResponse>();
+			Thread parser = new Thread(() -> {
+				try {
+					for (int i = 0; i < count; i++) {
+						consumer.accept(new Message("message " + i));
+					}
+					future.complete(new MessageQueryResponse());
+				} catch (RuntimeException e) {
+					aborted.set(true);
+					future.completeExceptionally(e);
+				}
+			});
+			parser.setDaemon(true);
+			parser.start();
+			return future;
+		});
+	}
+
+	private static class RecordingSubscriber implements Subscriber<Message> {
+		private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Subscription subscription;
+		private volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(Message message) {
+			received.add(message.getText());
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			done.countDown();
+		}
+	}
+
+	@Test
+	public void testPublisherEmitsOnDemand() throws Exception {
+		mockQuery(5, new AtomicBoolean());
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new MessageQueryPublisher(client, "/api/v1/events").subscribe(subscriber);
+		subscriber.subscription.request(2);
+		Thread.sleep(100);
+		assertEquals(2, subscriber.received.size());
+		subscriber.subscription.request(10);
+		assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+		assertEquals(5, subscriber.received.size());
+		assertEquals(null, subscriber.error);
+	}
+
+	@Test
+	public void testPublisherCancelAbortsQuery() throws Exception {
+		AtomicBoolean aborted = new AtomicBoolean();
+		mockQuery(100, aborted);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new MessageQueryPublisher(client, "/api/v1/events").subscribe(subscriber);
+		subscriber.subscription.request(1);
+		Thread.sleep(100);
+		subscriber.subscription.cancel();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!aborted.get() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(aborted.get());
+		assertEquals(1, subscriber.received.size());
+		assertEquals(1, subscriber.done.getCount());
+	}
+
+	@Test
+	public void testSubscriberRequestsAsBatchesAreAcknowledged() throws Exception {
+		AtomicLong requested = new AtomicLong();
+		IngestionSubscriber sink = new IngestionSubscriber(client, 2, 2, 60000);
+		sink.onSubscribe(new Subscription() {
+			@Override
+			public void request(long n) {
+				requested.addAndGet(n);
+			}
+
+			@Override
+			public void cancel() {
+			}
+		});
+		assertEquals(4, requested.get());
+		for (int i = 0; i < 4; i++) {
+			sink.onNext(new Message("message " + i));
+		}
+		assertEquals(2, ingestions.size());
+		assertEquals(4, requested.get());
+
+		ingestions.get(0).complete(response(2));
+		assertEquals(6, requested.get());
+		sink.onNext(new Message("message 4"));
+		sink.onComplete();
+		assertEquals(3, ingestions.size());
+		assertEquals(1, requests.get(2).count());
+		assertTrue(!sink.whenCompleted().isDone());
+
+		ingestions.get(1).complete(response(2));
+		ingestions.get(2).complete(response(1));
+		assertEquals(Long.valueOf(5), sink.whenCompleted().get(5, TimeUnit.SECONDS));
+		assertEquals(6, requested.get());
+	}
+
+	@Test
+	public void testSubscriberCancelsOnIngestionFailure() throws Exception {
+		AtomicBoolean cancelled = new AtomicBoolean();
+		IngestionSubscriber sink = new IngestionSubscriber(client, 1, 1, 60000);
+		sink.onSubscribe(new Subscription() {
+			@Override
+			public void request(long n) {
+			}
+
+			@Override
+			public void cancel() {
+				cancelled.set(true);
+			}
+		});
+		sink.onNext(new Message("message"));
+		ingestions.get(0).completeExceptionally(new LogInsightApiException("Ingestion failed"));
+		assertTrue(cancelled.get());
+		try {
+			sink.whenCompleted().get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LogInsightApiException);
+			return;
+		}
+		throw new AssertionError("Completion should fail");
+	}
+
+	@Test
+	public void testSubscriberFlushesAfterLinger() throws Exception {
+		IngestionSubscriber sink = new IngestionSubscriber(client, 100, 1, 20);
+		sink.onSubscribe(new Subscription() {
+			@Override
+			public void request(long n) {
+			}
+
+			@Override
+			public void cancel() {
+			}
+		});
+		sink.onNext(new Message("message"));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (ingestions.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, requests.size());
+		assertEquals(1, requests.get(0).count());
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AuthInfo;
+
+public class SessionManagerTest {
+
+	private final List<CompletableFuture<AuthInfo>> authentications = new ArrayList<CompletableFuture<AuthInfo>>();
+
+	private final SessionManager sessionManager = new SessionManager(() -> {
+		CompletableFuture<AuthInfo> auth = new CompletableFuture<AuthInfo>();
+		synchronized (authentications) {
+			authentications.add(auth);
+		}
+		return auth;
+	});
+
+	@After
+	public void tearDown() {
+		sessionManager.close();
+	}
+
+	private static AuthInfo authInfo(String sessionId, int ttl) {
+		AuthInfo authInfo = new AuthInfo();
+		authInfo.setSessionId(sessionId);
+		authInfo.setTtl(ttl);
+		return authInfo;
+	}
+
+	private int authenticationCount() {
+		synchronized (authentications) {
+			return authentications.size();
+		}
+	}
+
+	@Test
+	public void testConcurrentRenewalsShareOneAuthentication() throws Exception {
+		sessionManager.update(authInfo("session-1", 0));
+		CompletableFuture<String> first = sessionManager.renew("session-1");
+		CompletableFuture<String> second = sessionManager.renew("session-1");
+		assertSame(first, second);
+		assertEquals(1, authenticationCount());
+
+		authentications.get(0).complete(authInfo("session-2", 0));
+		assertEquals("session-2", first.get(1, TimeUnit.SECONDS));
+		assertEquals("session-2", sessionManager.getSessionId());
+	}
+
+	@Test
+	public void testRenewAfterRenewalReturnsCurrentSession() throws Exception {
+		sessionManager.update(authInfo("session-2", 0));
+		assertEquals("session-2", sessionManager.renew("session-1").get(1, TimeUnit.SECONDS));
+		assertEquals(0, authenticationCount());
+	}
+
+	@Test
+	public void testFailedRenewalIsNotCached() throws Exception {
+		sessionManager.update(authInfo("session-1", 0));
+		CompletableFuture<String> failed = sessionManager.renew("session-1");
+		authentications.get(0).completeExceptionally(new AuthFailure("rejected"));
+		try {
+			failed.get(1, TimeUnit.SECONDS);
+			throw new AssertionError("Renewal should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AuthFailure);
+		}
+		assertEquals("session-1", sessionManager.getSessionId());
+
+		sessionManager.renew("session-1");
+		assertEquals(2, authenticationCount());
+	}
+
+	@Test
+	public void testSessionRefreshedBeforeTtl() throws Exception {
+		sessionManager.update(authInfo("session-1", 1));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (authenticationCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, authenticationCount());
+		authentications.get(0).complete(authInfo("session-2", 0));
+		// joins the background renewal
+		assertEquals("session-2", sessionManager.renew("session-1").get(1, TimeUnit.SECONDS));
+		assertEquals(1, authenticationCount());
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.util.SingleFlight;
+
+public class SingleFlightTest {
+
+	private SingleFlight<String> flights;
+	private List<CompletableFuture<String>> calls;
+	private Supplier<CompletableFuture<String>> call;
+
+	@Before
+	public void setUp() {
+		flights = new SingleFlight<String>();
+		calls = new ArrayList<CompletableFuture<String>>();
+		call = () -> {
+			CompletableFuture<String> future = new CompletableFuture<String>();
+			calls.add(future);
+			return future;
+		};
+	}
+
+	@Test
+	public void testConcurrentCallsShared() throws Exception {
+		CompletableFuture<String> first = flights.execute("url", call);
+		CompletableFuture<String> second = flights.execute("url", call);
+		CompletableFuture<String> other = flights.execute("other", call);
+		assertEquals(2, calls.size());
+		assertEquals(1, flights.getCoalescedCount());
+		calls.get(0).complete("response");
+		assertEquals("response", first.get(0, TimeUnit.MILLISECONDS));
+		assertEquals("response", second.get(0, TimeUnit.MILLISECONDS));
+		assertFalse(other.isDone());
+		assertEquals(1, flights.getInFlightCount());
+
+		flights.execute("url", call);
+		assertEquals("Completed calls are not reused", 3, calls.size());
+	}
+
+	@Test
+	public void testCancelledOnceAllCallersCancel() {
+		CompletableFuture<String> first = flights.execute("url", call);
+		CompletableFuture<String> second = flights.execute("url", call);
+		first.cancel(true);
+		assertFalse(calls.get(0).isCancelled());
+		assertFalse(second.isDone());
+		second.cancel(true);
+		assertTrue(calls.get(0).isCancelled());
+		assertEquals(0, flights.getInFlightCount());
+	}
+
+	@Test
+	public void testFailureShared() throws Exception {
+		CompletableFuture<String> first = flights.execute("url", call);
+		CompletableFuture<String> second = flights.execute("url", call);
+		calls.get(0).completeExceptionally(new LogInsightApiException("Failed message Query"));
+		for (CompletableFuture<String> caller : new CompletableFuture[] { first, second }) {
+			try {
+				caller.get(0, TimeUnit.MILLISECONDS);
+				throw new AssertionError("Call should fail");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof LogInsightApiException);
+			}
+		}
+	}
+}
@@ -9,9 +9,13 @@
 package com.vmware.loginsightapi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,6 +24,8 @@ import junit.framework.Assert;
 import org.apache.commons.lang3.NotImplementedException;
 import org.junit.Test;
 
+import com.vmware.loginsightapi.core.OverflowPolicy;
+
 public class TestConfiguration {
 
 	@Test
@@ -220,4 +226,114 @@ public class TestConfiguration {
 		assertEquals("Mismatch in password", Configuration.DEFAULT_SCHEME, config.getScheme());
 	}
 
+	@Test
+	public void testBuildConfigConnectionPool() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_MAX_CONNECTIONS, "64");
+		configData.put(Configuration.KEY_MAX_CONNECTIONS_PER_ROUTE, "16");
+		configData.put(Configuration.KEY_MAX_INGESTION_CONNECTIONS, "48");
+		configData.put(Configuration.KEY_IO_THREADS, "2");
+		configData.put(Configuration.KEY_KEEP_ALIVE, "5000");
+		configData.put(Configuration.KEY_IDLE_TIMEOUT, "10000");
+		Configuration config = Configuration.buildConfig(configData);
+		assertEquals("Mismatch in max connections", 64, config.getMaxConnections());
+		assertEquals("Mismatch in max connections per route", 16, config.getMaxConnectionsPerRoute());
+		assertEquals("Mismatch in max ingestion connections", 48, config.getMaxIngestionConnections());
+		assertEquals("Mismatch in io threads", 2, config.getIoThreads());
+		assertEquals("Mismatch in keep alive", 5000, config.getKeepAlive());
+		assertEquals("Mismatch in idle timeout", 10000, config.getIdleTimeout());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildConfigInvalidConnectionPool() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_MAX_CONNECTIONS, "many");
+		Configuration.buildConfig(configData);
+	}
+
+	@Test
+	public void testBuildConfigHosts() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_LI_HOSTS, "node1, node2,node3");
+		configData.put(Configuration.KEY_LOAD_BALANCER, Configuration.LOAD_BALANCER_EWMA);
+		configData.put(Configuration.KEY_NODE_BACKOFF, "500");
+		configData.put(Configuration.KEY_NODE_MAX_BACKOFF, "8000");
+		Configuration config = Configuration.buildConfig(configData);
+		assertEquals("Mismatch in hosts", Arrays.asList("node1", "node2", "node3"), config.getHosts());
+		assertEquals("Mismatch in host", "node1", config.getHost());
+		assertEquals("Mismatch in load balancer", Configuration.LOAD_BALANCER_EWMA, config.getLoadBalancer());
+		assertEquals("Mismatch in node backoff", 500, config.getNodeBackoff());
+		assertEquals("Mismatch in node max backoff", 8000, config.getNodeMaxBackoff());
+	}
+
+	@Test
+	public void testHostsDefaultToHost() {
+		Configuration config = new Configuration();
+		config.setHost("hostname");
+		assertEquals("Mismatch in hosts", Collections.singletonList("hostname"), config.getHosts());
+	}
+
+	@Test
+	public void testBuildConfigIngestionBudget() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_INGESTION_MAX_IN_FLIGHT, "8");
+		configData.put(Configuration.KEY_INGESTION_MAX_IN_FLIGHT_BYTES, "8388608");
+		configData.put(Configuration.KEY_INGESTION_OVERFLOW_POLICY, "reject");
+		configData.put(Configuration.KEY_INGESTION_BLOCK_TIMEOUT, "100");
+		Configuration config = Configuration.buildConfig(configData);
+		assertEquals("Mismatch in max in flight", 8, config.getIngestionMaxInFlight());
+		assertEquals("Mismatch in max in flight bytes", 8388608L, config.getIngestionMaxInFlightBytes());
+		assertEquals("Mismatch in overflow policy", OverflowPolicy.REJECT, config.getIngestionOverflowPolicy());
+		assertEquals("Mismatch in block timeout", 100, config.getIngestionBlockTimeout());
+	}
+
+	@Test
+	public void testBuildConfigQueryCache() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_QUERY_CACHE_MAX_ENTRIES, "256");
+		configData.put(Configuration.KEY_QUERY_CACHE_MAX_BINS, "50000");
+		configData.put(Configuration.KEY_QUERY_CACHE_TTL, "2000");
+		configData.put(Configuration.KEY_QUERY_CACHE_HISTORICAL_TTL, "3600000");
+		Configuration config = Configuration.buildConfig(configData);
+		assertEquals("Mismatch in cache max entries", 256, config.getQueryCacheMaxEntries());
+		assertEquals("Mismatch in cache max bins", 50000L, config.getQueryCacheMaxBins());
+		assertEquals("Mismatch in cache TTL", 2000, config.getQueryCacheTtl());
+		assertEquals("Mismatch in cache historical TTL", 3600000, config.getQueryCacheHistoricalTtl());
+		assertEquals("Cache should be disabled by default", 0, new Configuration().getQueryCacheMaxEntries());
+	}
+
+	@Test
+	public void testBuildConfigQueryCoalescing() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_QUERY_COALESCING, " true ");
+		assertTrue("Queries should be coalesced", Configuration.buildConfig(configData).isQueryCoalescing());
+		assertFalse("Coalescing should be disabled by default", new Configuration().isQueryCoalescing());
+	}
+
+	@Test
+	public void testBuildConfigMetrics() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_METRICS, " hdr ");
+		assertEquals(Configuration.METRICS_HDR, Configuration.buildConfig(configData).getMetrics());
+		assertEquals(Configuration.METRICS_NONE, new Configuration().getMetrics());
+	}
+
+	@Test
+	public void testBuildConfigWireLog() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_WIRE_LOG_SAMPLE_RATE, " 0.01 ");
+		configData.put(Configuration.KEY_WIRE_LOG_MAX_LENGTH, "256");
+		Configuration config = Configuration.buildConfig(configData);
+		assertEquals(0.01, config.getWireLogSampleRate(), 0);
+		assertEquals(256, config.getWireLogMaxLength());
+		assertEquals("Wire logging should be disabled by default", 0, new Configuration().getWireLogSampleRate(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWireLogSampleRate() {
+		Map<String, String> configData = new HashMap<String, String>();
+		configData.put(Configuration.KEY_WIRE_LOG_SAMPLE_RATE, "2");
+		Configuration.buildConfig(configData);
+	}
+
 }
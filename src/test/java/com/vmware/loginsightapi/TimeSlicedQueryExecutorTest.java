@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.AggregateResponse;
+import com.vmware.loginsightapi.core.AggregateResponseBin;
+import com.vmware.loginsightapi.core.LogInsightApiException;
+import com.vmware.loginsightapi.core.Message;
+import com.vmware.loginsightapi.core.MessageQueryResponse;
+
+public class TimeSlicedQueryExecutorTest {
+
+	private static final Pattern RANGE = Pattern.compile("timestamp/GE\\+(\\d+)/timestamp/LT\\+(\\d+)");
+
+	private LogInsightClient client;
+	private List<Message> stored;
+	private List<String> urls;
+	private List<CompletableFuture<MessageQueryResponse>> pending;
+	private boolean deferred;
+
+	@Before
+	public void setUp() {
+		stored = new ArrayList<Message>();
+		urls = new ArrayList<String>();
+		pending = new ArrayList<CompletableFuture<MessageQueryResponse>>();
+		client = mock(LogInsightClient.class);
+		when(client.messageQuery(anyString())).thenAnswer(invocation -> {
+			String url = (String) invocation.getArguments()[0];
+			urls.add(url);
+			long[] range = range(url);
+			MessageQueryResponse response = new MessageQueryResponse();
+			response.setComplete(true);
+			response.setEvents(stored.stream()
+					.filter(m -> m.getTimestamp() >= range[0] && m.getTimestamp() < range[1])
+					.collect(Collectors.toList()));
+			if (deferred) {
+				CompletableFuture<MessageQueryResponse> future = new CompletableFuture<MessageQueryResponse>();
+				pending.add(future);
+				return future.thenApply(ignored -> response);
+			}
+			return CompletableFuture.completedFuture(response);
+		});
+	}
+
+	private static long[] range(String url) {
+		Matcher matcher = RANGE.matcher(url);
+		assertTrue(matcher.find());
+		return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+	}
+
+	private void store(long... timestamps) {
+		for (long timestamp : timestamps) {
+			stored.add(new Message("event " + timestamp, timestamp));
+		}
+	}
+
+	private static AggregateResponseBin bin(long minTimestamp, long value) {
+		AggregateResponseBin bin = new AggregateResponseBin();
+		bin.setMinTimestamp(minTimestamp);
+		bin.setMaxTimestamp(minTimestamp + 9);
+		bin.setValue(value);
+		return bin;
+	}
+
+	private static AggregateResponse aggregate(boolean complete, AggregateResponseBin... bins) {
+		AggregateResponse response = new AggregateResponse();
+		response.setComplete(complete);
+		response.setBins(new ArrayList<AggregateResponseBin>(Arrays.asList(bins)));
+		return response;
+	}
+
+	@Test
+	public void testSplitAlignsBoundaries() {
+		assertArrayEquals(new long[] { 0, 25, 50, 75, 100 }, TimeSlicedQueryExecutor.split(0, 100, 4, 1));
+		assertArrayEquals(new long[] { 5, 20, 50, 70, 100 }, TimeSlicedQueryExecutor.split(5, 100, 4, 10));
+		assertArrayEquals(new long[] { 0, 3 }, TimeSlicedQueryExecutor.split(0, 3, 4, 10));
+	}
+
+	@Test
+	public void testFixedSlicesMergedNewestFirst() throws Exception {
+		store(95, 72, 71, 40, 12, 3);
+		MessageQuery query = (MessageQuery) new MessageQuery().limit(4);
+		MessageQueryResponse response = new TimeSlicedQueryExecutor(client).messageQuery(query, 0, 100, 4).get(5,
+				TimeUnit.SECONDS);
+		assertEquals(4, urls.size());
+		assertTrue(response.isComplete());
+		assertEquals(Arrays.asList("event 95", "event 72", "event 71", "event 40"),
+				response.getEvents().stream().map(Message::getText).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testConcurrencyCap() throws Exception {
+		deferred = true;
+		store(1, 2, 3);
+		CompletableFuture<MessageQueryResponse> future = new TimeSlicedQueryExecutor(client, 2, 1000)
+				.messageQuery(new MessageQuery(), 0, 100, 5);
+		assertEquals(2, urls.size());
+		pending.get(0).complete(null);
+		assertEquals(3, urls.size());
+		for (int i = 1; i < 5; i++) {
+			pending.get(i).complete(null);
+		}
+		assertEquals(3, future.get(5, TimeUnit.SECONDS).getEvents().size());
+	}
+
+	@Test
+	public void testAdaptiveSlicesFollowCounts() throws Exception {
+		when(client.aggregateQuery(anyString())).thenReturn(CompletableFuture
+				.completedFuture(aggregate(true, bin(0, 1), bin(10, 200), bin(20, 150), bin(30, 10), bin(90, 5))));
+		new TimeSlicedQueryExecutor(client, 4, 100).messageQuery(new MessageQuery(), 0, 1000).get(5,
+				TimeUnit.SECONDS);
+		List<String> ranges = urls.stream().map(url -> Arrays.toString(range(url))).collect(Collectors.toList());
+		assertEquals(Arrays.asList("[0, 20]", "[20, 30]", "[30, 1000]"), ranges);
+	}
+
+	@Test
+	public void testAggregateBinsCombined() throws Exception {
+		when(client.aggregateQuery(anyString())).thenReturn(
+				CompletableFuture.completedFuture(aggregate(true, bin(0, 3), bin(10, 4))),
+				CompletableFuture.completedFuture(aggregate(false, bin(10, 5), bin(20, 6))));
+		AggregateQuery query = new AggregateQuery().binWidth(10);
+		AggregateResponse response = new TimeSlicedQueryExecutor(client).aggregateQuery(query, 0, 30, 2).get(5,
+				TimeUnit.SECONDS);
+		assertFalse(response.isComplete());
+		assertEquals(Arrays.asList(3L, 9L, 6L),
+				response.getBins().stream().map(AggregateResponseBin::getValue).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testSliceFailure() throws Exception {
+		CompletableFuture<AggregateResponse> failed = new CompletableFuture<AggregateResponse>();
+		failed.completeExceptionally(new LogInsightApiException("Failed aggregate query"));
+		when(client.aggregateQuery(anyString())).thenReturn(failed);
+		try {
+			new TimeSlicedQueryExecutor(client).aggregateQuery(new AggregateQuery(), 0, 100000, 3).get(5,
+					TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LogInsightApiException);
+			return;
+		}
+		throw new AssertionError("Query should fail");
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+package com.vmware.loginsightapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.vmware.loginsightapi.core.ClientMetrics.Operation;
+import com.vmware.loginsightapi.util.WireLogger;
+
+public class WireLoggerTest {
+
+	@Test
+	public void testCredentialsRedacted() {
+		assertEquals("{\"username\":\"admin\",\"password\":\"" + WireLogger.REDACTED + "\"}",
+				WireLogger.redact("{\"username\":\"admin\",\"password\":\"s3cr\\\"et\"}"));
+		assertEquals("{\"userId\":\"u\",\"sessionId\" : \"" + WireLogger.REDACTED + "\",\"ttl\":1800}",
+				WireLogger.redact("{\"userId\":\"u\",\"sessionId\" : \"qyOLWEe7f/GjdM1W\",\"ttl\":1800}"));
+		assertEquals("Truncated values are redacted", "{\"password\":\"" + WireLogger.REDACTED,
+				WireLogger.redact("{\"password\":\"s3cr"));
+	}
+
+	@Test
+	public void testDisabledLoggerKeepsContent() throws Exception {
+		InputStream content = IOUtils.toInputStream("{\"complete\":true}", "UTF-8");
+		assertFalse(WireLogger.DISABLED.sample());
+		assertSame(content, WireLogger.DISABLED.response(Operation.MESSAGE_QUERY, 200, content));
+		WireLogger.DISABLED.request(Operation.INGEST, () -> {
+			throw new AssertionError("Body built while disabled");
+		});
+	}
+
+	@Test
+	public void testSampledResponseReplayed() throws Exception {
+		StringBuilder body = new StringBuilder("{\"events\":[");
+		for (int i = 0; i < 100; i++) {
+			body.append("{\"text\":\"line ").append(i).append("\"},");
+		}
+		body.append("{}]}");
+		InputStream content = IOUtils.toInputStream(body, "UTF-8");
+		InputStream replay = new WireLogger(1, 16).response(Operation.MESSAGE_QUERY, 200, content);
+		assertNotSame(content, replay);
+		assertEquals(body.toString(), IOUtils.toString(replay, "UTF-8"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSampleRate() {
+		new WireLogger(1.5, 16);
+	}
+}